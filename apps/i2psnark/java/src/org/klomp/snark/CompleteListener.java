@@ -69,6 +69,24 @@ public interface CompleteListener {
      */
     public BitField getSavedTorrentBitField(Snark snark);
 
+    /**
+     * The progress of an interrupted check, for resuming it.
+     *
+     * @param snark the Snark instance
+     * @return the saved checkpoint, or null if none
+     * @since 0.9.71+
+     */
+    public Storage.Checkpoint getSavedCheckpoint(Snark snark);
+
+    /**
+     * Save the progress of a check in progress, or clear it.
+     *
+     * @param snark the Snark instance
+     * @param checkpoint the progress so far, or null to clear
+     * @since 0.9.71+
+     */
+    public void saveCheckpoint(Snark snark, Storage.Checkpoint checkpoint);
+
     /**
      * The saved preserve-names setting.
      *
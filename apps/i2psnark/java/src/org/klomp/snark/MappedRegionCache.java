@@ -0,0 +1,306 @@
+package org.klomp.snark;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.Log;
+import net.i2p.util.SystemVersion;
+
+/**
+ * A bounded LRU cache of memory-mapped regions of torrent data files, shared by all torrents.
+ *
+ * <p>Reads copy straight from the mapping, and hash checks feed the mapping to the digest
+ * with no copy at all, so neither goes through RandomAccessFile seek/read calls or temporary
+ * heap buffers. Writes copy piece data into a read-write mapping.
+ *
+ * <p>Regions are REGION_SIZE aligned, and mapped on first use. The least recently used are
+ * dropped when the total mapped size is over the limit, or when the owning file is closed.
+ * Java cannot unmap a region explicitly; a dropped mapping goes away when it is garbage
+ * collected, so the limit bounds what the cache holds, not the address space in use at any
+ * moment.
+ *
+ * <p>Disabled by default. A file truncated by another process while mapped will crash
+ * the JVM on access, and on Windows a mapped file cannot be moved or deleted.
+ * Enable with i2psnark.mmap=true (read once at class load; restart to change),
+ * size with i2psnark.mmapCacheMB. Never enabled on Windows or 32-bit JVMs.
+ *
+ * <p>Locking: this, for the region map.
+ *
+ * @since 0.9.71+
+ */
+class MappedRegionCache {
+    private static final Log _log = new Log(MappedRegionCache.class);
+
+    static final String PROP_MMAP = "i2psnark.mmap";
+    static final String PROP_MMAP_MB = "i2psnark.mmapCacheMB";
+    private static final int DEFAULT_MMAP_MB = 256;
+    /** power of two */
+    static final int REGION_SIZE = 4 * 1024 * 1024;
+
+    private final long _maxBytes;
+    /** access order */
+    private final LinkedHashMap<Key, Region> _regions;
+    /** Locking: this */
+    private long _mappedBytes;
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+
+    /**
+     * @return the cache, or null if mapping is disabled
+     */
+    static MappedRegionCache create() {
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        if (!ctx.getBooleanProperty(PROP_MMAP) || SystemVersion.isWindows() || !SystemVersion.is64Bit()) {
+            return null;
+        }
+        long max = Math.max(REGION_SIZE, ctx.getProperty(PROP_MMAP_MB, DEFAULT_MMAP_MB) * 1024L * 1024L);
+        return new MappedRegionCache(max);
+    }
+
+    MappedRegionCache(long maxBytes) {
+        _maxBytes = maxBytes;
+        _regions = new LinkedHashMap<Key, Region>(64, 0.75f, true);
+    }
+
+    /**
+     * Copy from the file to the array.
+     *
+     * @param owner identifies the file, regions are dropped by owner
+     * @param fc open channel for the file
+     * @param length expected file length, regions are never mapped beyond this
+     * @return false if the range can't be mapped (e.g. file shorter than expected),
+     *         use RandomAccessFile instead
+     */
+    public boolean read(Object owner, FileChannel fc, long length, long pos, byte[] bs, int off, int len)
+            throws IOException {
+        while (len > 0) {
+            ByteBuffer buf = get(owner, fc, length, pos, false);
+            if (buf == null) {
+                return false;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(bs, off, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+        return true;
+    }
+
+    /**
+     * Feed a range of the file to the digest, without copying.
+     *
+     * @return false if the range can't be mapped; nothing was added to the digest
+     */
+    public boolean hash(Object owner, FileChannel fc, long length, long pos, int len, MessageDigest md)
+            throws IOException {
+        // map everything first so we never leave a partial update in the digest
+        long end = pos + len;
+        long p = pos;
+        ByteBuffer[] bufs = new ByteBuffer[(int) ((len + REGION_SIZE - 1) / REGION_SIZE) + 1];
+        int count = 0;
+        while (p < end) {
+            ByteBuffer buf = get(owner, fc, length, p, false);
+            if (buf == null) {
+                return false;
+            }
+            int n = (int) Math.min(end - p, buf.remaining());
+            buf.limit(buf.position() + n);
+            bufs[count++] = buf;
+            p += n;
+        }
+        for (int i = 0; i < count; i++) {
+            md.update(bufs[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Copy piece data to the file through a read-write mapping.
+     * The channel must be open read-write.
+     *
+     * @param poff offset in the piece
+     * @return false if the range can't be mapped; nothing was written
+     */
+    public boolean write(Object owner, FileChannel fc, long length, long pos, PartialPiece pp, int poff, int len)
+            throws IOException {
+        if (pos + len > length) {
+            return false;
+        }
+        while (len > 0) {
+            ByteBuffer buf = get(owner, fc, length, pos, true);
+            if (buf == null) {
+                return false;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.limit(buf.position() + n);
+            pp.write(new DataOutputStream(new BufferOutputStream(buf)), poff, n);
+            pos += n;
+            poff += n;
+            len -= n;
+        }
+        return true;
+    }
+
+    /**
+     * A view of the region containing pos, positioned at pos.
+     *
+     * @return null if it can't be mapped
+     */
+    private ByteBuffer get(Object owner, FileChannel fc, long length, long pos, boolean writable)
+            throws IOException {
+        long index = pos / REGION_SIZE;
+        long start = index * REGION_SIZE;
+        Key key = new Key(owner, index);
+        synchronized (this) {
+            Region r = _regions.get(key);
+            if (r != null && (r.writable || !writable)) {
+                _hits.incrementAndGet();
+                ByteBuffer rv = r.buf.duplicate();
+                rv.position((int) (pos - start));
+                return rv;
+            }
+            if (r != null) {
+                // read-only, remap
+                _regions.remove(key);
+                _mappedBytes -= r.buf.capacity();
+            }
+        }
+        _misses.incrementAndGet();
+        long size = Math.min(REGION_SIZE, length - start);
+        if (size <= 0) {
+            return null;
+        }
+        // Read-only mapping past EOF faults on access. A read-write mapping extends
+        // the file, but only up to its expected length, as allocateFile() would.
+        if (!writable && start + size > fc.size()) {
+            return null;
+        }
+        MappedByteBuffer mbb;
+        try {
+            mbb = fc.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, start, size);
+        } catch (IOException ioe) {
+            // out of address space, or closed
+            if (_log.shouldInfo()) {
+                _log.info("[I2PSnark] Unable to map region at " + start + ": " + ioe.getMessage());
+            }
+            return null;
+        } catch (NonWritableChannelException nwce) {
+            return null;
+        }
+        Region r = new Region(mbb, writable);
+        synchronized (this) {
+            Region old = _regions.put(key, r);
+            if (old != null) {
+                _mappedBytes -= old.buf.capacity();
+            }
+            _mappedBytes += size;
+            if (_mappedBytes > _maxBytes) {
+                for (Iterator<Region> iter = _regions.values().iterator(); iter.hasNext() && _mappedBytes > _maxBytes; ) {
+                    Region lru = iter.next();
+                    if (lru == r) {
+                        continue;
+                    }
+                    iter.remove();
+                    _mappedBytes -= lru.buf.capacity();
+                }
+            }
+        }
+        ByteBuffer rv = mbb.duplicate();
+        rv.position((int) (pos - start));
+        return rv;
+    }
+
+    /**
+     * Drop all regions for this file.
+     * Call when the file is closed, moved, or its length changes.
+     */
+    public synchronized void invalidate(Object owner) {
+        if (_regions.isEmpty()) {
+            return;
+        }
+        for (Iterator<Map.Entry<Key, Region>> iter = _regions.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<Key, Region> e = iter.next();
+            if (e.getKey().owner == owner) {
+                _mappedBytes -= e.getValue().buf.capacity();
+                iter.remove();
+            }
+        }
+    }
+
+    /** Total size of the cached regions */
+    public synchronized long getMappedBytes() {
+        return _mappedBytes;
+    }
+
+    /** For debugging */
+    @Override
+    public String toString() {
+        return "MappedRegionCache: " + getMappedBytes() / 1024 + "KB of " + _maxBytes / 1024 +
+               "KB; hits: " + _hits.get() + "; misses: " + _misses.get();
+    }
+
+    private static final class Key {
+        final Object owner;
+        final long index;
+
+        Key(Object owner, long index) {
+            this.owner = owner;
+            this.index = index;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(owner) ^ (int) index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return owner == k.owner && index == k.index;
+        }
+    }
+
+    private static final class Region {
+        final MappedByteBuffer buf;
+        final boolean writable;
+
+        Region(MappedByteBuffer buf, boolean writable) {
+            this.buf = buf;
+            this.writable = writable;
+        }
+    }
+
+    /** Writes to the buffer, which must have room */
+    private static final class BufferOutputStream extends OutputStream {
+        private final ByteBuffer _buf;
+
+        BufferOutputStream(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public void write(int b) {
+            _buf.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            _buf.put(b, off, len);
+        }
+    }
+}
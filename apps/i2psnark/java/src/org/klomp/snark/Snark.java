@@ -223,7 +223,8 @@ public class Snark implements StorageListener, CoordinatorListener, ShutdownList
                 if (completeListener != null) {
                 storage.check(
                         completeListener.getSavedTorrentTime(this),
-                        completeListener.getSavedTorrentBitField(this));
+                        completeListener.getSavedTorrentBitField(this),
+                        completeListener.getSavedCheckpoint(this));
                 } else {
                     storage.check();
                 }
@@ -880,6 +881,16 @@ public class Snark implements StorageListener, CoordinatorListener, ShutdownList
         }
     }
 
+    /**
+     * If checking is in progress, an estimate of the time remaining.
+     *
+     * @return milliseconds, or -1 if not checking or not yet known
+     * @since 0.9.71+
+     */
+    public long getCheckingRemaining() {
+        return storage != null ? storage.getCheckingRemaining() : -1;
+    }
+
     /**
      * Check if disk allocation (ballooning) is in progress.
      *
@@ -1494,6 +1505,20 @@ public class Snark implements StorageListener, CoordinatorListener, ShutdownList
         }
     }
 
+    /**
+     * StorageListener callback to save or clear the progress of a check.
+     *
+     * @param storage the storage
+     * @param checkpoint the progress so far, or null when done
+     * @since 0.9.71+
+     */
+    @Override
+    public void storageCheckpoint(Storage storage, Storage.Checkpoint checkpoint) {
+        if (completeListener != null) {
+            completeListener.saveCheckpoint(this, checkpoint);
+        }
+    }
+
     /** Whether the torrent storage has reported completion. */
     public boolean storageCompleted;
 
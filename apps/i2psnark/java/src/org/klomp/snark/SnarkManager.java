@@ -195,6 +195,12 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
      */
     private static final String PROP_META_ACTIVITY = "activity";
 
+    /**
+     * time,checked,bitfield of an interrupted check
+     * @since 0.9.71+
+     */
+    private static final String PROP_META_CHECKPOINT = "checkpoint";
+
     private static final String CONFIG_FILE_SUFFIX = ".config";
     public static final String CONFIG_FILE = "i2psnark" + CONFIG_FILE_SUFFIX;
     private static final String COMMENT_FILE_SUFFIX = ".comments.txt.gz";
@@ -3566,6 +3572,77 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
         return new BitField(bitfield, len);
     }
 
+    /**
+     * Saved progress of an interrupted check from the config file. A Snark.CompleteListener method.
+     *
+     * @return the checkpoint, or null if none or invalid
+     * @since 0.9.71+
+     */
+    @Override
+    public Storage.Checkpoint getSavedCheckpoint(Snark snark) {
+        MetaInfo metainfo = snark.getMetaInfo();
+        if (metainfo == null) {
+            return null;
+        }
+        String cp = getConfig(snark).getProperty(PROP_META_CHECKPOINT);
+        if (cp == null) {
+            return null;
+        }
+        String[] parts = DataHelper.split(cp, ",", 3);
+        if (parts.length != 3) {
+            return null;
+        }
+        long time = I2PSnarkUtil.parseLong(parts[0], 0);
+        int checked = I2PSnarkUtil.parseInt(parts[1], 0);
+        byte[] bitfield = Base64.decode(parts[2]);
+        int len = metainfo.getPieces();
+        if (time <= 0 || checked <= 0 || bitfield == null || bitfield.length * 8 < len) {
+            return null;
+        }
+        return new Storage.Checkpoint(time, checked, new BitField(bitfield, len));
+    }
+
+    /**
+     * Save or clear the progress of a check in the config file. A Snark.CompleteListener method.
+     *
+     * @param checkpoint null to clear
+     * @since 0.9.71+
+     */
+    @Override
+    public void saveCheckpoint(Snark snark, Storage.Checkpoint checkpoint) {
+        byte[] ih = snark.getInfoHash();
+        synchronized (_configLock) {
+            Properties config = getConfig(ih);
+            if (checkpoint != null) {
+                config.setProperty(PROP_META_CHECKPOINT, checkpoint.getTime() + "," + checkpoint.getChecked() + ',' +
+                                                         Base64.encode(checkpoint.getBitField().getFieldBytes()));
+            } else if (config.remove(PROP_META_CHECKPOINT) == null) {
+                return;
+            }
+            locked_saveTorrentStatus(ih, config);
+        }
+    }
+
+    /**
+     * Progress of all checks in progress, for the UI.
+     *
+     * @return three-element array: torrents being checked, bytes hashed, and total bytes to hash
+     * @since 0.9.71+
+     */
+    public long[] getCheckingStatus() {
+        long[] rv = new long[3];
+        for (Snark snark : _snarks.values()) {
+            Storage storage = snark.getStorage();
+            if (storage != null && storage.isChecking()) {
+                long[] bytes = storage.getCheckingBytes();
+                rv[0]++;
+                rv[1] += bytes[0];
+                rv[2] += bytes[1];
+            }
+        }
+        return rv;
+    }
+
     /**
      * Saved priorities for a torrent from the config file.
      *
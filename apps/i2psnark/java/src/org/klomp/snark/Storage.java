@@ -16,6 +16,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.file.Path;
@@ -38,8 +39,11 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -99,6 +103,13 @@ public class Storage implements Closeable {
     private boolean _inOrder;
     private final AtomicInteger _allocateCount = new AtomicInteger();
     private final AtomicInteger _checkProgress = new AtomicInteger();
+    /** Bytes hashed so far in the current check, and the total to hash */
+    private final AtomicLong _checkBytes = new AtomicLong();
+    private volatile long _checkBytesTotal;
+    /** When hashing started in the current check */
+    private volatile long _checkStart;
+    /** A checkpoint was saved, or we resumed from one, and it must be cleared when done */
+    private volatile boolean _hasCheckpoint;
     private final AtomicLong _activity = new AtomicLong();
     private List<String> _filesExcluded = new ArrayList<>();
     /** Files or folders that exist but could not be read (e.g. permissions). */
@@ -164,6 +175,20 @@ public class Storage implements Closeable {
 
     private static final Semaphore _checkSemaphore = new Semaphore(MAX_CONCURRENT_CHECKS, true);
 
+    /** Pieces up to this size are read ahead by a single sequential reader thread during a check,
+     *  and hashed from memory by the verify threads. Larger pieces are read in windows by the
+     *  verify threads themselves. Disable with i2psnark.verifyReadAhead=false. */
+    private static final int READ_AHEAD_MAX_PIECE = 4 * 1024 * 1024;
+
+    /** Cap on the memory held by read-ahead buffers in a single check. */
+    private static final int READ_AHEAD_BYTES = 32 * 1024 * 1024;
+
+    /** How often a check in progress is checkpointed, so a restart can resume it. */
+    private static final long CHECKPOINT_INTERVAL = 30 * 1000;
+
+    /** Mapped regions for piece I/O, shared by all torrents; null unless i2psnark.mmap=true */
+    private static final MappedRegionCache _mmap = MappedRegionCache.create();
+
     /** The default piece size for new torrents. */
     private static final int DEFAULT_PIECE_SIZE = 256 * 1024;
 
@@ -763,6 +788,76 @@ public class Storage implements Closeable {
         }
     }
 
+    /**
+     * If checking is in progress, the bytes hashed so far and the total to hash, else zeros.
+     * Pieces trusted from a saved state or checkpoint, and padding, are not counted.
+     *
+     * @return two-element array: hashed, total
+     * @since 0.9.71+
+     */
+    public long[] getCheckingBytes() {
+        if (_isChecking) {
+            return new long[] {_checkBytes.get(), _checkBytesTotal};
+        } else {
+            return new long[2];
+        }
+    }
+
+    /**
+     * If checking is in progress, an estimate of the time remaining, from the hashing rate so far.
+     *
+     * @return milliseconds, or -1 if not checking or not yet known
+     * @since 0.9.71+
+     */
+    public long getCheckingRemaining() {
+        long start = _checkStart;
+        if (!_isChecking || start <= 0) {
+            return -1;
+        }
+        long done = _checkBytes.get();
+        long elapsed = System.currentTimeMillis() - start;
+        if (done <= 0 || elapsed < 1000) {
+            return -1;
+        }
+        return (long) ((_checkBytesTotal - done) * (elapsed / (double) done));
+    }
+
+    /**
+     * The state of a check in progress, saved periodically so a restart can resume it.
+     * Pieces below getChecked() were verified, with results in getBitField(),
+     * from files last modified no later than getTime().
+     *
+     * @since 0.9.71+
+     */
+    public static class Checkpoint {
+        private final long _time;
+        private final int _checked;
+        private final BitField _bitfield;
+
+        /**
+         * @param time when hashing started
+         * @param checked pieces below this are done
+         * @param bitfield results, only bits below checked are valid
+         */
+        public Checkpoint(long time, int checked, BitField bitfield) {
+            _time = time;
+            _checked = checked;
+            _bitfield = bitfield;
+        }
+
+        public long getTime() {
+            return _time;
+        }
+
+        public int getChecked() {
+            return _checked;
+        }
+
+        public BitField getBitField() {
+            return _bitfield;
+        }
+    }
+
     /**
      * Disk allocation (ballooning) in progress. Always false on Windows.
      *
@@ -1113,6 +1208,19 @@ public class Storage implements Closeable {
      * @throws IllegalStateException if called more than once
      */
     public void check(long savedTime, BitField savedBitField) throws IOException {
+        check(savedTime, savedBitField, null);
+    }
+
+    /**
+     * As check(savedTime, savedBitField), but if the files must be hashed, resume from
+     * the checkpoint of an interrupted check: pieces it verified that lie entirely within
+     * files unchanged since then are not hashed again.
+     *
+     * @param checkpoint may be null
+     * @throws IllegalStateException if called more than once
+     * @since 0.9.71+
+     */
+    public void check(long savedTime, BitField savedBitField, Checkpoint checkpoint) throws IOException {
         boolean areFilesPublic = _util.getFilesPublic();
         boolean useSavedBitField = savedTime > 0 && savedBitField != null;
 
@@ -1281,15 +1389,31 @@ public class Storage implements Closeable {
                         bitfield.clear(i);
                     }
                 }
+                applyCheckpoint(checkpoint, pieceTrusted);
                 checkCreateFiles(false, pieceTrusted);
             }
         } else {
             // the following sets the needed variable
             changed = true;
-            if (_log.shouldInfo()) {
-                _log.info("[I2PSnark] Forcing integrity check...");
+            boolean[] pieceTrusted = new boolean[pieces];
+            if (applyCheckpoint(checkpoint, pieceTrusted)) {
+                if (_log.shouldInfo()) {
+                    _log.info("[I2PSnark] Resuming integrity check from piece " + checkpoint.getChecked());
+                }
+                checkCreateFiles(false, pieceTrusted);
+            } else {
+                if (_log.shouldInfo()) {
+                    _log.info("[I2PSnark] Forcing integrity check...");
+                }
+                checkCreateFiles(false);
+            }
+        }
+        if (checkpoint != null && listener != null) {
+            // used or stale, either way done with it
+            if (_hasCheckpoint) {
+                _hasCheckpoint = false;
+                listener.storageCheckpoint(this, null);
             }
-            checkCreateFiles(false);
         }
         // Move any file whose pieces are all downloaded out of the staging dir;
         // needed e.g. after a restart where the torrent was already complete
@@ -1311,6 +1435,50 @@ public class Storage implements Closeable {
         }
     }
 
+    /**
+     * Trust the pieces below the checkpoint that lie entirely within files unchanged since it was
+     * saved, taking their bits from the checkpoint. Pieces already trusted are left alone.
+     *
+     * @param checkpoint may be null
+     * @param pieceTrusted array indexed by piece, updated
+     * @return true if any pieces were trusted from the checkpoint
+     * @since 0.9.71+
+     */
+    private boolean applyCheckpoint(Checkpoint checkpoint, boolean[] pieceTrusted) {
+        if (checkpoint == null) {
+            return false;
+        }
+        _hasCheckpoint = true;
+        BitField cpbf = checkpoint.getBitField();
+        int checked = Math.min(checkpoint.getChecked(), pieces);
+        if (cpbf.size() != pieces || checked <= 0) {
+            return false;
+        }
+        List<Boolean> fileTrusted = new ArrayList<>(_torrentFiles.size());
+        for (TorrentFile tf : _torrentFiles) {
+            if (tf.isPadding) {
+                fileTrusted.add(Boolean.TRUE);
+            } else {
+                long lm = tf.RAFfile.lastModified();
+                fileTrusted.add(Boolean.valueOf(lm > 0 && lm <= checkpoint.getTime() && tf.RAFfile.length() == tf.length));
+            }
+        }
+        boolean[] cpTrusted = computeTrustedPieces(fileTrusted);
+        boolean rv = false;
+        for (int i = 0; i < checked; i++) {
+            if (cpTrusted[i] && !pieceTrusted[i]) {
+                pieceTrusted[i] = true;
+                if (cpbf.get(i)) {
+                    bitfield.set(i);
+                } else {
+                    bitfield.clear(i);
+                }
+                rv = true;
+            }
+        }
+        return rv;
+    }
+
     /**
      * For a multi-file torrent with some files trusted from a saved state, marks the pieces that
      * lie entirely within a trusted file. A piece overlapping any changed file must be re-verified.
@@ -1853,19 +2021,20 @@ public class Storage implements Closeable {
         _probablyComplete = true;
         // use local variables during the check
         int need = metainfo.getPieces();
-        if (pieceTrusted != null) {
-            for (boolean trusted : pieceTrusted) {
-                if (trusted) {
-                    need--;
-                }
-            }
-        }
         BitField bfield;
         if (recheck) {
             bfield = new BitField(need);
         } else {
             bfield = bitfield;
         }
+        if (pieceTrusted != null) {
+            // trusted pieces keep their saved bit, only those set are no longer needed
+            for (int i = 0; i < pieces; i++) {
+                if (pieceTrusted[i] && bfield.get(i)) {
+                    need--;
+                }
+            }
+        }
 
         // Make sure all files are available and of correct length
         // The files should all exist as they have been created with zero length by
@@ -1950,12 +2119,12 @@ public class Storage implements Closeable {
 
         // Check which pieces match and which don't
         if (resume) {
-            // verify in windows capped at VERIFY_BUFSIZE, never allocating a whole
-            // piece-sized buffer (piece_size can be 64MB+ on large-piece torrents);
-            // hash pieces on verify-thread workers in parallel, but apply results
-            // in piece order so bitfield, progress and callbacks stay deterministic
-            boolean[] padOnly = new boolean[pieces];
-            int[] lengths = new int[pieces];
+            // hash pieces on verify-thread workers in parallel, but apply results in piece
+            // order so bitfield, progress, callbacks and checkpoints stay deterministic
+            final boolean[] skip = new boolean[pieces];
+            final boolean[] padOnly = new boolean[pieces];
+            final int[] lengths = new int[pieces];
+            long toHash = 0;
             for (int i = 0; i < pieces; i++) {
                 long pieceStart = (long) i * piece_size;
                 lengths[i] = (int) Math.min(piece_size, total_length - pieceStart);
@@ -1963,39 +2132,83 @@ public class Storage implements Closeable {
                     // pad-only pieces hash as zeros (BEP 47), never on disk: skip hashing
                     padOnly[i] = isPaddingPiece(pieceStart);
                 }
+                skip[i] = padOnly[i] || (pieceTrusted != null && pieceTrusted[i]);
+                if (!skip[i]) {
+                    toHash += lengths[i];
+                }
             }
             final Object lock = new Object();
             final boolean[] verified = new boolean[pieces];
             final boolean[] done = new boolean[pieces];
             final AtomicInteger nextPiece = new AtomicInteger();
             final AtomicReference<Throwable> err = new AtomicReference<Throwable>();
-            int threads = Math.min(pieces, getVerifyThreads(ctx));
+            int threads = Math.max(1, Math.min(pieces, getVerifyThreads(ctx)));
+            // Small pieces are read by one sequential reader and hashed from memory.
+            // Otherwise each worker reads its own piece, in windows capped at VERIFY_BUFSIZE,
+            // never allocating a whole piece-sized buffer (piece_size can be 64MB+),
+            // or straight from the mapped regions.
+            final ReadAhead readAhead;
+            if (_mmap == null && piece_size <= READ_AHEAD_MAX_PIECE && toHash > 0
+                    && ctx.getBooleanPropertyDefaultTrue("i2psnark.verifyReadAhead")) {
+                readAhead = new ReadAhead(skip, lengths, threads, err, lock);
+            } else {
+                readAhead = null;
+            }
+            _checkBytes.set(0);
+            _checkBytesTotal = toHash;
+            final long checkStart = System.currentTimeMillis();
+            _checkStart = checkStart;
+            Thread reader = null;
+            if (readAhead != null) {
+                reader = new I2PAppThread(readAhead, "SnarkReadAhead-" + _base.getName(), true);
+                reader.start();
+            }
             Thread[] workers = new Thread[threads];
             for (int t = 0; t < threads; t++) {
-                final byte[] buf = new byte[Math.min(piece_size, VERIFY_BUFSIZE)];
+                final byte[] buf = readAhead == null ? new byte[Math.min(piece_size, VERIFY_BUFSIZE)] : null;
                 workers[t] =
                         new I2PAppThread(
                                 new Runnable() {
                                     public void run() {
-                                        while (err.get() == null) {
-                                            int i = nextPiece.getAndIncrement();
-                                            if (i >= pieces) {
-                                                break;
-                                            }
-                                            if (padOnly[i]
-                                                    || (pieceTrusted != null && pieceTrusted[i])) {
-                                                continue;
+                                        try {
+                                            runVerify();
+                                        } finally {
+                                            // wake the checking thread, it may be waiting on a piece
+                                            // that will never be done if we stopped on an error
+                                            synchronized (lock) {
+                                                lock.notifyAll();
                                             }
+                                        }
+                                    }
+
+                                    private void runVerify() {
+                                        while (err.get() == null) {
+                                            int i;
                                             boolean ok;
                                             try {
-                                                ok = checkPieceHash(i, buf, lengths[i]);
+                                                if (readAhead != null) {
+                                                    ReadPiece rp = readAhead.take();
+                                                    if (rp == null) {
+                                                        break;
+                                                    }
+                                                    i = rp.piece;
+                                                    ok = checkPieceData(i, rp.data, lengths[i]);
+                                                    readAhead.release(rp.data);
+                                                } else {
+                                                    i = nextPiece.getAndIncrement();
+                                                    if (i >= pieces) {
+                                                        break;
+                                                    }
+                                                    if (skip[i]) {
+                                                        continue;
+                                                    }
+                                                    ok = checkPieceHash(i, buf, lengths[i]);
+                                                }
                                             } catch (Throwable t) {
                                                 err.compareAndSet(null, t);
-                                                synchronized (lock) {
-                                                    lock.notifyAll();
-                                                }
                                                 break;
                                             }
+                                            _checkBytes.addAndGet(lengths[i]);
                                             synchronized (lock) {
                                                 verified[i] = ok;
                                                 done[i] = true;
@@ -2008,10 +2221,11 @@ public class Storage implements Closeable {
                                 true);
                 workers[t].start();
             }
+            long lastCheckpoint = checkStart;
             int next = 0;
             while (next < pieces) {
                 if (pieceTrusted != null && pieceTrusted[next]) {
-                    // trusted: saved state says complete, no callback
+                    // trusted: saved state or checkpoint already has its bit, no callback
                     _checkProgress.set(next);
                     next++;
                     continue;
@@ -2046,6 +2260,24 @@ public class Storage implements Closeable {
                 }
                 _checkProgress.set(next);
                 next++;
+                if (listener != null && next < pieces) {
+                    long now = System.currentTimeMillis();
+                    if (now - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                        // Pieces below next are final. Stamp with the start of hashing, so a file
+                        // written since then, even after its pieces were read, is hashed again.
+                        lastCheckpoint = now;
+                        _hasCheckpoint = true;
+                        listener.storageCheckpoint(this,
+                                new Checkpoint(checkStart, next, new BitField(bfield.getFieldBytes(), pieces)));
+                    }
+                }
+            }
+            if (reader != null) {
+                try {
+                    reader.join();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
             }
             for (Thread worker : workers) {
                 try {
@@ -2071,6 +2303,10 @@ public class Storage implements Closeable {
 
         _checkProgress.set(pieces);
         _probablyComplete = complete();
+        if (_hasCheckpoint && listener != null) {
+            _hasCheckpoint = false;
+            listener.storageCheckpoint(this, null);
+        }
 
         // do this here so we don't confuse the user during checking
         needed = need;
@@ -2234,8 +2470,11 @@ public class Storage implements Closeable {
                             }
                         }
                     }
-                    raf.seek(fc.getOffset());
-                    pp.write(raf, written, len);
+                    if (_mmap == null
+                            || !_mmap.write(tf, raf.getChannel(), tf.length, fc.getOffset(), pp, written, len)) {
+                        raf.seek(fc.getOffset());
+                        pp.write(raf, written, len);
+                    }
                 } catch (IOException ioe) {
                     try {
                         tf.closeRAF();
@@ -2604,12 +2843,30 @@ public class Storage implements Closeable {
             return false;
         }
         MessageDigest sha1 = SHA1.getInstance();
-        for (int off = 0; off < length; off += buf.length) {
-            int len = Math.min(buf.length, length - off);
-            getUncheckedPiece(piece, buf, off, len);
-            sha1.update(buf, 0, len);
+        if (_mmap == null || !digestMapped(piece, sha1, buf, length)) {
+            sha1.reset();
+            digest(piece, sha1, buf, length);
         }
-        byte[] hash = sha1.digest();
+        return hashMatches(piece, sha1.digest());
+    }
+
+    /**
+     * Verify a piece's hash from data already read.
+     *
+     * @param data the piece data, starting at index 0
+     * @return true if the computed SHA1 matches the stored piece hash
+     * @since 0.9.71+
+     */
+    private boolean checkPieceData(int piece, byte[] data, int length) {
+        MessageDigest sha1 = SHA1.getInstance();
+        sha1.update(data, 0, length);
+        return hashMatches(piece, sha1.digest());
+    }
+
+    /**
+     * @since 0.9.71+ moved from checkPieceHash()
+     */
+    private boolean hashMatches(int piece, byte[] hash) {
         byte[] hashes = metainfo.getPieceHashes();
         for (int i = 0; i < 20; i++) {
             if (hash[i] != hashes[20 * piece + i]) {
@@ -2619,7 +2876,167 @@ public class Storage implements Closeable {
         return true;
     }
 
-    private int getUncheckedPiece(int piece, byte[] bs, int off, int length) throws IOException {
+    /**
+     * A piece read ahead for hashing.
+     *
+     * @since 0.9.71+
+     */
+    private static class ReadPiece {
+        final int piece;
+        final byte[] data;
+
+        ReadPiece(int piece, byte[] data) {
+            this.piece = piece;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Reads the pieces to be checked in order into a small pool of buffers, so the disk
+     * sees one sequential reader no matter how many threads are hashing.
+     * Memory is bounded by READ_AHEAD_BYTES, with at least two buffers.
+     *
+     * @since 0.9.71+
+     */
+    private class ReadAhead implements Runnable {
+        private final boolean[] _skip;
+        private final int[] _lengths;
+        private final int _consumers;
+        private final AtomicReference<Throwable> _err;
+        private final Object _lock;
+        private final BlockingQueue<byte[]> _free;
+        private final BlockingQueue<ReadPiece> _ready;
+        private final ReadPiece END = new ReadPiece(-1, null);
+
+        /**
+         * @param skip pieces not to read, indexed by piece
+         * @param consumers the number of threads that will call take()
+         * @param err set on failure here, and checked for failures elsewhere
+         * @param lock notified on failure, as the checking thread waits on it
+         */
+        public ReadAhead(boolean[] skip, int[] lengths, int consumers, AtomicReference<Throwable> err,
+                         Object lock) {
+            _skip = skip;
+            _lengths = lengths;
+            _consumers = consumers;
+            _err = err;
+            _lock = lock;
+            int count = Math.max(2, Math.min(2 * consumers, READ_AHEAD_BYTES / piece_size));
+            _free = new ArrayBlockingQueue<byte[]>(count);
+            for (int i = 0; i < count; i++) {
+                _free.offer(new byte[piece_size]);
+            }
+            // room for every buffer plus an end marker per consumer, so offers never fail
+            _ready = new ArrayBlockingQueue<ReadPiece>(count + consumers);
+        }
+
+        public void run() {
+            try {
+                for (int i = 0; i < pieces && _err.get() == null; i++) {
+                    if (_skip[i]) {
+                        continue;
+                    }
+                    byte[] buf = null;
+                    while (buf == null && _err.get() == null) {
+                        buf = _free.poll(100, TimeUnit.MILLISECONDS);
+                    }
+                    if (buf == null) {
+                        break;
+                    }
+                    getUncheckedPiece(i, buf, 0, _lengths[i]);
+                    _ready.offer(new ReadPiece(i, buf));
+                }
+            } catch (Throwable t) {
+                _err.compareAndSet(null, t);
+                synchronized (_lock) {
+                    _lock.notifyAll();
+                }
+            } finally {
+                for (int i = 0; i < _consumers; i++) {
+                    _ready.offer(END);
+                }
+            }
+        }
+
+        /**
+         * Blocking.
+         *
+         * @return the next piece, or null when all have been read or reading failed
+         */
+        public ReadPiece take() throws InterruptedException {
+            ReadPiece rv = _ready.take();
+            return rv != END ? rv : null;
+        }
+
+        /** Return the buffer for reuse */
+        public void release(byte[] buf) {
+            _free.offer(buf);
+        }
+    }
+
+    /**
+     * Feed the piece to the digest in windows no larger than buf.
+     *
+     * @since 0.9.71+ moved from checkPieceHash()
+     */
+    private void digest(int piece, MessageDigest sha1, byte[] buf, int length) throws IOException {
+        for (int off = 0; off < length; off += buf.length) {
+            int len = Math.min(buf.length, length - off);
+            getUncheckedPiece(piece, buf, off, len);
+            sha1.update(buf, 0, len);
+        }
+    }
+
+    /**
+     * Feed the piece to the digest straight from the mapped regions, without copying.
+     * Padding is fed as zeros from buf.
+     *
+     * @return false if any part could not be mapped; the digest must then be reset
+     * @since 0.9.71+
+     */
+    private boolean digestMapped(int piece, MessageDigest sha1, byte[] buf, int length) throws IOException {
+        FileCursor fc = new FileCursor((long) piece * (long) piece_size);
+        int done = 0;
+        while (done < length) {
+            int need = length - done;
+            int len = fc.chunk(need);
+            TorrentFile tf = fc.getFile();
+            if (tf.isPadding) {
+                Arrays.fill(buf, (byte) 0);
+                for (int off = 0; off < len; off += buf.length) {
+                    sha1.update(buf, 0, Math.min(buf.length, len - off));
+                }
+            } else {
+                FileChannel chan = tf.checkChannel();
+                if (!_mmap.hash(tf, chan, tf.length, fc.getOffset(), len, sha1)) {
+                    return false;
+                }
+            }
+            done += len;
+            fc.advance(len, need);
+        }
+        return true;
+    }
+
+    /**
+     * Copy from the mapped regions of the file, without holding the file lock.
+     *
+     * @return false if it could not be mapped, use the RandomAccessFile instead
+     * @since 0.9.71+
+     */
+    private boolean readMapped(TorrentFile tf, long pos, byte[] bs, int off, int len) {
+        try {
+            return _mmap.read(tf, tf.checkChannel(), tf.length, pos, bs, off, len);
+        } catch (IOException ioe) {
+            // closed under us, or can't open; the RAF path will report it
+            return false;
+        }
+    }
+
+    /**
+     * Package private, overridden in StorageTest to fail a read.
+     */
+    int getUncheckedPiece(int piece, byte[] bs, int off, int length) throws IOException {
         // Early typecast, avoid possibly overflowing a temp integer
         FileCursor fc = new FileCursor(((long) piece * (long) piece_size) + off);
         int read = 0;
@@ -2630,6 +3047,8 @@ public class Storage implements Closeable {
             if (tf.isPadding) {
                 // BEP 47: padding regions hash as zeros, never touch disk
                 Arrays.fill(bs, read, read + len, (byte) 0);
+            } else if (_mmap != null && readMapped(tf, fc.getOffset(), bs, read, len)) {
+                // read outside the lock
             } else {
                 synchronized (tf) {
                     try {
@@ -2785,6 +3204,9 @@ public class Storage implements Closeable {
         /** Null when closed; locking: this. */
         private RandomAccessFile raf;
 
+        /** Whether raf is open read-write; locking: this. */
+        private boolean rafRW;
+
         /** Whether the file is empty and sparse; locking: this. */
         public boolean isSparse;
 
@@ -2874,7 +3296,7 @@ public class Storage implements Closeable {
          * @since 0.9.71+
          */
         public synchronized RandomAccessFile checkRAF(boolean forceRW) throws IOException {
-            if (raf != null && !forceRW) {
+            if (raf != null && (!forceRW || rafRW)) {
                 RAFtime = System.currentTimeMillis();
             } else {
                 if (raf != null) {
@@ -2902,10 +3324,22 @@ public class Storage implements Closeable {
 
         /** Locking: this. */
         private synchronized void openRAF(boolean readonly, boolean forceRW) throws IOException {
-            raf = new RandomAccessFile(RAFfile, forceRW ? "rw" : (readonly || !RAFfile.canWrite()) ? "r" : "rw");
+            String mode = forceRW ? "rw" : (readonly || !RAFfile.canWrite()) ? "r" : "rw";
+            raf = new RandomAccessFile(RAFfile, mode);
+            rafRW = mode.equals("rw");
             RAFtime = System.currentTimeMillis();
         }
 
+        /**
+         * The channel of the RAF, opening it if necessary.
+         * Positional access only; never change the position, it is shared with the RAF.
+         *
+         * @since 0.9.71+
+         */
+        public synchronized FileChannel checkChannel() throws IOException {
+            return checkRAF().getChannel();
+        }
+
         /** Close if last used time older than cutoff. locking: this */
         public synchronized void closeRAF(long cutoff) {
             if (RAFtime > 0 && RAFtime < cutoff) {
@@ -2918,11 +3352,15 @@ public class Storage implements Closeable {
         /** Can be called even if not open locking: this */
         public synchronized void closeRAF() throws IOException {
             RAFtime = 0;
+            if (_mmap != null) {
+                _mmap.invalidate(this);
+            }
             if (raf == null) {
                 return;
             }
             raf.close();
             raf = null;
+            rafRW = false;
         }
 
         /**
@@ -57,6 +57,16 @@ interface StorageListener {
      * @param storage the storage instance
      */
     void storageAllChecked(Storage storage);
+    /**
+     * Called periodically during a long check, so the progress can be saved and the check resumed
+     * after a restart; and with null when the check is done and any saved checkpoint should be
+     * discarded.
+     *
+     * @param storage the storage instance
+     * @param checkpoint the progress so far, or null
+     * @since 0.9.71+
+     */
+    void storageCheckpoint(Storage storage, Storage.Checkpoint checkpoint);
 
     /**
      * Called the one time when the data is completely received and checked.
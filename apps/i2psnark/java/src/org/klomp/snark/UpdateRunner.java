@@ -367,6 +367,24 @@ class UpdateRunner implements UpdateTask, CompleteListener {
         return _smgr.getSavedTorrentBitField(snark);
     }
 
+    /**
+     * The saved checkpoint.
+     *
+     * @return the saved checkpoint, or null
+     */
+    @Override
+    public Storage.Checkpoint getSavedCheckpoint(Snark snark) {
+        return _smgr.getSavedCheckpoint(snark);
+    }
+
+    /**
+     * Save the checkpoint.
+     */
+    @Override
+    public void saveCheckpoint(Snark snark, Storage.Checkpoint checkpoint) {
+        _smgr.saveCheckpoint(snark, checkpoint);
+    }
+
     /**
      * The saved preserve-names setting.
      *
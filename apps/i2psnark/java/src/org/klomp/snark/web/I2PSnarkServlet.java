@@ -1610,6 +1610,21 @@ public class I2PSnarkServlet extends BasicServlet {
         buf.append("<span class=badge>").append(tnl[1]).append("</span></span>");
         out.write(buf.toString());
 
+        // Checks in progress span
+        long[] checking = _manager.getCheckingStatus();
+        if (checking[0] > 0) {
+            buf.setLength(0);
+            buf.append("<span id=checkCount class=counter title=\"");
+            buf.append(ngettext("Checking 1 torrent", "Checking {0} torrents", (int) checking[0]));
+            if (checking[2] > 0) {
+                buf.append(": ").append(new DecimalFormat("0.0%").format(checking[1] / (double) checking[2]));
+            }
+            buf.append("\">");
+            appendIcon(buf, "status", "", "", true, false);
+            buf.append("<span class=badge>").append(checking[0]).append("</span></span>");
+            out.write(buf.toString());
+        }
+
         out.write("</span></th>");
 
         if (isConnected && total > 0) {
@@ -5909,8 +5924,13 @@ public class I2PSnarkServlet extends BasicServlet {
             buf.append("<tr id=torrentInfoControl><td colspan=3>");
             if (snark.isChecking()) {
                 buf.append("<span id=fileCheck><b>").append(_t("Checking")).append("&hellip; ")
-                   .append((new DecimalFormat("0.0%")).format(snark.getCheckingProgress()))
-                   .append("&nbsp;<a href=\"").append(base).append("\">")
+                   .append((new DecimalFormat("0.0%")).format(snark.getCheckingProgress()));
+                long remaining = snark.getCheckingRemaining();
+                if (remaining >= 0) {
+                    buf.append(" (").append(_t("ETA")).append(' ')
+                       .append(DataHelper.formatDuration2(Math.max(remaining, 1000))).append(')');
+                }
+                buf.append("&nbsp;<a href=\"").append(base).append("\">")
                    .append(_t("Refresh page for results")).append("</a></b></span>");
             } else if (snark.isStarting()) {
                 buf.append("<b>").append(_t("Starting")).append("&hellip;</b>");
@@ -0,0 +1,137 @@
+package org.klomp.snark;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.i2p.crypto.SHA1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the mapped read, hash, and write paths used by Storage when i2psnark.mmap is set.
+ */
+public class MappedRegionCacheTest {
+
+    private static final int REGION = MappedRegionCache.REGION_SIZE;
+
+    private File _file;
+    private RandomAccessFile _raf;
+    private byte[] _data;
+
+    @Before
+    public void setUp() throws Exception {
+        _file = File.createTempFile("i2psnark-mmap-test", ".dat");
+        // a little over two regions, so ranges cross region boundaries
+        _data = new byte[2 * REGION + 12345];
+        new Random(42).nextBytes(_data);
+        _raf = new RandomAccessFile(_file, "rw");
+        _raf.write(_data);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (_raf != null)
+            _raf.close();
+        _file.delete();
+    }
+
+    @Test
+    public void testReadAcrossRegions() throws Exception {
+        MappedRegionCache cache = new MappedRegionCache(16L * REGION);
+        FileChannel fc = _raf.getChannel();
+        int pos = REGION - 1000;
+        byte[] buf = new byte[REGION + 2000];
+        assertTrue(cache.read(this, fc, _data.length, pos, buf, 0, buf.length));
+        assertArrayEquals(Arrays.copyOfRange(_data, pos, pos + buf.length), buf);
+        // second read hits the cached regions
+        byte[] buf2 = new byte[100];
+        assertTrue(cache.read(this, fc, _data.length, _data.length - 100, buf2, 0, 100));
+        assertArrayEquals(Arrays.copyOfRange(_data, _data.length - 100, _data.length), buf2);
+        assertEquals(_data.length, cache.getMappedBytes());
+    }
+
+    @Test
+    public void testReadPastEndFails() throws Exception {
+        MappedRegionCache cache = new MappedRegionCache(16L * REGION);
+        // expected length longer than the file, read-only mapping must not extend it
+        long length = _data.length + 1000;
+        byte[] buf = new byte[2000];
+        assertFalse(cache.read(this, _raf.getChannel(), length, _data.length - 1000, buf, 0, buf.length));
+        assertEquals(_data.length, _raf.length());
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        MappedRegionCache cache = new MappedRegionCache(16L * REGION);
+        int pos = 3 * 1024;
+        int len = REGION + 777;
+        MessageDigest md = SHA1.getInstance();
+        assertTrue(cache.hash(this, _raf.getChannel(), _data.length, pos, len, md));
+        MessageDigest expected = SHA1.getInstance();
+        expected.update(_data, pos, len);
+        assertArrayEquals(expected.digest(), md.digest());
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        MappedRegionCache cache = new MappedRegionCache(16L * REGION);
+        FileChannel fc = _raf.getChannel();
+        int len = 64 * 1024;
+        byte[] piece = new byte[len];
+        new Random(7).nextBytes(piece);
+        PartialPiece pp = new PartialPiece(new Piece(0), len, _file.getParentFile());
+        pp.read(new DataInputStream(new ByteArrayInputStream(piece)), 0, len, new NullBandwidthListener());
+        // map read-only first, so the write has to remap the region
+        byte[] buf = new byte[10];
+        assertTrue(cache.read(this, fc, _data.length, REGION - 5, buf, 0, 10));
+        assertTrue(cache.write(this, fc, _data.length, REGION - 1000, pp, 0, len));
+        pp.release();
+
+        byte[] check = new byte[len];
+        _raf.seek(REGION - 1000);
+        _raf.readFully(check);
+        assertArrayEquals(piece, check);
+        assertFalse(cache.write(this, fc, _data.length, _data.length - 10, pp, 0, 20));
+    }
+
+    @Test
+    public void testEvictionAndInvalidate() throws Exception {
+        MappedRegionCache cache = new MappedRegionCache(REGION);
+        FileChannel fc = _raf.getChannel();
+        byte[] buf = new byte[10];
+        assertTrue(cache.read(this, fc, _data.length, 0, buf, 0, 10));
+        assertTrue(cache.read(this, fc, _data.length, REGION, buf, 0, 10));
+        assertEquals(REGION, cache.getMappedBytes());
+        Object other = new Object();
+        assertTrue(cache.read(other, fc, _data.length, 2 * REGION, buf, 0, 10));
+        assertEquals(12345, cache.getMappedBytes());
+        cache.invalidate(this);
+        assertEquals(12345, cache.getMappedBytes());
+        cache.invalidate(other);
+        assertEquals(0, cache.getMappedBytes());
+    }
+
+    private static class NullBandwidthListener implements BandwidthListener {
+        public long getUploadRate() { return 0; }
+        public long getDownloadRate() { return 0; }
+        public void uploaded(int size) {}
+        public void downloaded(int size) {}
+        public boolean shouldSend(int size) { return true; }
+        public boolean shouldRequest(Peer peer, int size) { return true; }
+        public long getUpBWLimit() { return 0; }
+        public long getDownBWLimit() { return 0; }
+        public boolean overUpBWLimit() { return false; }
+        public boolean overDownBWLimit() { return false; }
+    }
+}
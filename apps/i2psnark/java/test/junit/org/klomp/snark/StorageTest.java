@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.i2p.I2PAppContext;
 import net.i2p.crypto.SHA1;
@@ -66,6 +67,7 @@ public class StorageTest {
     private static class RecordingListener implements StorageListener {
         final List<Integer> checked = new ArrayList<>();
         final List<Boolean> results = new ArrayList<>();
+        final List<Storage.Checkpoint> checkpoints = new ArrayList<>();
 
         @Override
         public void storageCreateFile(Storage storage, String name, long length) {}
@@ -82,6 +84,11 @@ public class StorageTest {
         @Override
         public void storageAllChecked(Storage storage) {}
 
+        @Override
+        public void storageCheckpoint(Storage storage, Storage.Checkpoint checkpoint) {
+            checkpoints.add(checkpoint);
+        }
+
         @Override
         public void storageCompleted(Storage storage) {}
 
@@ -597,6 +604,111 @@ public class StorageTest {
         assertFalse(s2.getBitField().get(3));
     }
 
+    // ----- resuming an interrupted check -----
+
+    /**
+     * A checkpoint covering pieces 0 and 1, with files unchanged since: only pieces 2 and 3 are
+     * hashed, pieces 0 and 1 take their bits from the checkpoint, and the checkpoint is cleared.
+     */
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        MetaInfo mi = buildTwoFileTorrent(PIECE_LENGTH * 2, PIECE_LENGTH * 2);
+        long cpTime = System.currentTimeMillis();
+        setMtime(new File(_dataDir, "a.dat"), cpTime - 60000);
+        setMtime(new File(_dataDir, "b.dat"), cpTime - 60000);
+        BitField cpbf = new BitField(mi.getPieces());
+        cpbf.set(0);
+
+        RecordingListener l = new RecordingListener();
+        Storage s = newStorage(mi, l);
+        s.check(0, null, new Storage.Checkpoint(cpTime, 2, cpbf));
+        assertEquals(Arrays.asList(2, 3), l.checked);
+        assertTrue(s.getBitField().get(0));
+        assertFalse(s.getBitField().get(1));
+        assertTrue(s.getBitField().get(2));
+        assertTrue(s.getBitField().get(3));
+        assertEquals(1, s.needed());
+        assertEquals(1, l.checkpoints.size());
+        assertNull(l.checkpoints.get(0));
+    }
+
+    /** A file modified after the checkpoint: its pieces are hashed again, the others are not. */
+    @Test
+    public void testCheckpointIgnoredForChangedFile() throws Exception {
+        MetaInfo mi = buildTwoFileTorrent(PIECE_LENGTH * 2, PIECE_LENGTH * 2);
+        long cpTime = System.currentTimeMillis();
+        setMtime(new File(_dataDir, "a.dat"), cpTime - 60000);
+        setMtime(new File(_dataDir, "b.dat"), cpTime + 60000);
+        BitField cpbf = new BitField(mi.getPieces());
+        for (int i = 0; i < 4; i++) {
+            cpbf.set(i);
+        }
+
+        RecordingListener l = new RecordingListener();
+        Storage s = newStorage(mi, l);
+        s.check(0, null, new Storage.Checkpoint(cpTime, 4, cpbf));
+        assertEquals(Arrays.asList(2, 3), l.checked);
+        assertTrue(s.complete());
+    }
+
+    /** With the read-ahead disabled, the verify threads read the pieces themselves. */
+    @Test
+    public void testFullCheckWithoutReadAhead() throws Exception {
+        MetaInfo mi = buildTwoFileTorrent(PIECE_LENGTH * 3 + 100, PIECE_LENGTH * 2);
+        corrupt(new File(_dataDir, "b.dat"), 10);
+        System.setProperty("i2psnark.verifyReadAhead", "false");
+        try {
+            RecordingListener l = new RecordingListener();
+            Storage s = newStorage(mi, l);
+            s.check(0, null);
+            assertEquals(mi.getPieces(), l.checked.size());
+            assertFalse(s.getBitField().get(3));
+            assertEquals(1, s.needed());
+        } finally {
+            System.clearProperty("i2psnark.verifyReadAhead");
+        }
+    }
+
+    /**
+     * A read error in the read-ahead must fail the check, not leave the checking thread waiting
+     * for a piece that will never be hashed.
+     */
+    @Test
+    public void testReadErrorFailsCheck() throws Exception {
+        MetaInfo mi = buildTwoFileTorrent(PIECE_LENGTH * 3, PIECE_LENGTH * 3);
+        final Storage s =
+                new Storage(new I2PSnarkUtil(I2PAppContext.getGlobalContext()), _dataDir, mi, new RecordingListener(), true) {
+                    @Override
+                    int getUncheckedPiece(int piece, byte[] bs, int off, int length) throws IOException {
+                        if (piece == 4) {
+                            // fail after the earlier pieces are done, so nothing else wakes the checker
+                            try {
+                                Thread.sleep(500);
+                            } catch (InterruptedException ie) {}
+                            throw new IOException("test read error");
+                        }
+                        return super.getUncheckedPiece(piece, bs, off, length);
+                    }
+                };
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread checker =
+                new Thread(
+                        new Runnable() {
+                            public void run() {
+                                try {
+                                    s.check(0, null);
+                                } catch (Throwable t) {
+                                    failure.set(t);
+                                }
+                            }
+                        });
+        checker.start();
+        checker.join(30 * 1000);
+        assertFalse("check hung after a read error", checker.isAlive());
+        assertTrue(String.valueOf(failure.get()), failure.get() instanceof IOException);
+        assertEquals("test read error", failure.get().getMessage());
+    }
+
     // ----- BEP 47 padding -----
 
     /**
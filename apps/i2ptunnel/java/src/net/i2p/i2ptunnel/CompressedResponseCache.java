@@ -0,0 +1,376 @@
+package net.i2p.i2ptunnel;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ *  In-memory LRU cache of x-i2p-gzip compressed responses for I2PTunnelHTTPServer,
+ *  shared by all clients of the tunnel, so that a popular static file is fetched from
+ *  the webserver and compressed once, rather than once per request.
+ *  <p>
+ *  Keyed by the Host header and the request URI.
+ *  Only responses to GET with status 200 that a shared cache may store (RFC 9111)
+ *  are stored, as decided by the webserver's own Cache-Control, not the default
+ *  we add for the browser: no Cache-Control no-store or private, no Set-Cookie,
+ *  no Vary other than Accept-Encoding, and a validator (ETag or Last-Modified)
+ *  or an s-maxage or max-age. The response must have a Content-Length, and all of it
+ *  must have been received, as a truncated chunked or close-delimited response
+ *  can't be told from a complete one.
+ *  While fresh per s-maxage or max-age, a stored response is sent without contacting
+ *  the webserver. After that it is revalidated with a conditional request,
+ *  so a 304 from the webserver saves both the transfer and the compression.
+ *  <p>
+ *  Requests with an Authorization or Cookie header are only served from the cache
+ *  if the response was marked public. Requests with their own conditionals or a Range
+ *  bypass the cache.
+ *  <p>
+ *  Off by default, as the webserver may personalize a response by the
+ *  X-I2P-DestB32 header without saying so in Cache-Control or Vary.
+ *
+ *  @since 0.9.71+
+ */
+class CompressedResponseCache {
+    private final Map<String, Entry> _map;
+    private long _maxSize;
+    private long _size;
+
+    /** a bare entry is about this much more than the headers and body */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     *  A stored response
+     */
+    static class Entry {
+        /** the rewritten response headers, as read by CompressedRequestor */
+        final String headers;
+        final String etag;
+        final String lastModified;
+        final boolean isPublic;
+        /** freshness lifetime in ms, 0 to revalidate on every request */
+        final long lifetime;
+        /** the compressed body, set before put() */
+        byte[] body;
+        private volatile long _expires;
+
+        private Entry(String headers, String etag, String lastModified, boolean isPublic, long lifetime) {
+            this.headers = headers;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.isPublic = isPublic;
+            this.lifetime = lifetime;
+        }
+
+        boolean isFresh(long now) {return now < _expires;}
+
+        int size() {return ENTRY_OVERHEAD + (2 * headers.length()) + (body != null ? body.length : 0);}
+
+        /**
+         *  Add our validators to a request, to revalidate this entry.
+         *
+         *  @param headers the request headers to modify
+         *  @return false if there are no validators, so it can't be revalidated
+         */
+        boolean addConditionals(Map<String, List<String>> headers) {
+            if (etag == null && lastModified == null)
+                return false;
+            if (etag != null)
+                I2PTunnelHTTPServer.setEntry(headers, "If-None-Match", etag);
+            if (lastModified != null)
+                I2PTunnelHTTPServer.setEntry(headers, "If-Modified-Since", lastModified);
+            return true;
+        }
+    }
+
+    /**
+     *  @param maxSize in bytes
+     */
+    public CompressedResponseCache(long maxSize) {
+        _maxSize = maxSize;
+        _map = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    }
+
+    /**
+     *  @param maxSize in bytes, entries are evicted if smaller than before
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        _maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     *  @return the largest body to capture for put(), in bytes
+     */
+    public synchronized int getMaxEntrySize() {
+        return (int) Math.min(_maxSize / 4, Integer.MAX_VALUE);
+    }
+
+    /**
+     *  @param credentials the request has an Authorization or Cookie header
+     *  @return null if not found, or not public and the request has credentials
+     */
+    public synchronized Entry get(String key, boolean credentials) {
+        Entry rv = _map.get(key);
+        if (rv != null && credentials && !rv.isPublic)
+            return null;
+        return rv;
+    }
+
+    /**
+     *  Store or replace. The body must be set.
+     *  Too large entries are not stored, and the old entry, if any, is removed.
+     */
+    public synchronized void put(String key, Entry entry, long now) {
+        remove(key);
+        int sz = entry.size();
+        if (sz > _maxSize / 4)
+            return;
+        entry._expires = now + entry.lifetime;
+        _map.put(key, entry);
+        _size += sz;
+        evict();
+    }
+
+    public synchronized void remove(String key) {
+        Entry old = _map.remove(key);
+        if (old != null)
+            _size -= old.size();
+    }
+
+    /**
+     *  The webserver returned 304 for our conditional request.
+     *  Extend the freshness per its Cache-Control, or the stored one if it has none.
+     *
+     *  @param cc the webserver's Cache-Control, may be null
+     */
+    public void revalidated(String key, Entry entry, String cc, long now) {
+        long lifetime = entry.lifetime;
+        if (cc != null) {
+            if (hasDirective(cc, "no-store") || hasDirective(cc, "private")) {
+                remove(key);
+                return;
+            }
+            lifetime = getLifetime(cc);
+        }
+        entry._expires = now + lifetime;
+    }
+
+    public synchronized int getCount() {return _map.size();}
+
+    /** @return total size in bytes */
+    public synchronized long getSize() {return _size;}
+
+    public synchronized void clear() {
+        _map.clear();
+        _size = 0;
+    }
+
+    /**
+     *  Caller must synch
+     */
+    private void evict() {
+        for (Iterator<Entry> iter = _map.values().iterator(); _size > _maxSize && iter.hasNext(); ) {
+            Entry e = iter.next();
+            iter.remove();
+            _size -= e.size();
+        }
+    }
+
+    ////// Request and response policy //////
+
+    private static final String[] BYPASS_HEADERS = {
+        "Range", "If-Match", "If-None-Match", "If-Modified-Since", "If-Unmodified-Since", "If-Range"
+    };
+
+    /**
+     *  @param cmd the request line
+     *  @param headers the request headers, after Host spoofing
+     *  @return the cache key, or null if this request may not be served from or stored in the cache
+     */
+    static String getKey(String cmd, Map<String, List<String>> headers) {
+        if (!cmd.startsWith("GET "))
+            return null;
+        int sp = cmd.indexOf(' ', 4);
+        if (sp < 0)
+            return null;
+        for (String h : BYPASS_HEADERS) {
+            if (getHeader(headers, h) != null)
+                return null;
+        }
+        String cc = getHeader(headers, "Cache-Control");
+        if (cc != null && hasDirective(cc, "no-store"))
+            return null;
+        String host = getHeader(headers, "Host");
+        return (host != null ? host.toLowerCase(Locale.US) : "") + ' ' + cmd.substring(4, sp);
+    }
+
+    /**
+     *  @return true if the request has an Authorization or Cookie header
+     */
+    static boolean hasCredentials(Map<String, List<String>> headers) {
+        return getHeader(headers, "Authorization") != null || getHeader(headers, "Cookie") != null;
+    }
+
+    /**
+     *  A browser reload, must revalidate even if fresh
+     *
+     *  @return true if the request has Cache-Control no-cache or max-age=0, or Pragma no-cache
+     */
+    static boolean isNoCache(Map<String, List<String>> headers) {
+        String cc = getHeader(headers, "Cache-Control");
+        if (cc != null && (hasDirective(cc, "no-cache") || getDirective(cc, "max-age") == 0))
+            return true;
+        String pragma = getHeader(headers, "Pragma");
+        return pragma != null && hasDirective(pragma, "no-cache");
+    }
+
+    /**
+     *  @param headers the rewritten response headers, CRLF separated, starting with the status line
+     *  @return the status code, or -1 if unparseable
+     */
+    static int getStatus(String headers) {
+        if (!headers.startsWith("HTTP/"))
+            return -1;
+        int sp = headers.indexOf(' ');
+        if (sp < 0 || headers.length() < sp + 4)
+            return -1;
+        try {
+            return Integer.parseInt(headers.substring(sp + 1, sp + 4));
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     *  @param headers the rewritten response headers, CRLF separated, starting with the status line
+     *  @param cc the webserver's Cache-Control, may be null
+     *  @param credentials the request has an Authorization or Cookie header
+     *  @return a new entry without a body, or null if the response may not be stored
+     */
+    static Entry newEntry(String headers, String cc, boolean credentials) {
+        if (getStatus(headers) != 200)
+            return null;
+        if (getHeader(headers, "Set-Cookie") != null)
+            return null;
+        String vary = getHeader(headers, "Vary");
+        if (vary != null && !vary.trim().equalsIgnoreCase("Accept-Encoding"))
+            return null;
+        boolean isPublic = false;
+        long lifetime = 0;
+        boolean hasLifetime = false;
+        if (cc != null) {
+            if (hasDirective(cc, "no-store") || hasDirective(cc, "private"))
+                return null;
+            isPublic = hasDirective(cc, "public") || getDirective(cc, "s-maxage") >= 0;
+            lifetime = getLifetime(cc);
+            hasLifetime = lifetime > 0;
+        }
+        if (credentials && !isPublic)
+            return null;
+        String etag = getHeader(headers, "ETag");
+        String lastModified = getHeader(headers, "Last-Modified");
+        if (etag == null && lastModified == null && !hasLifetime)
+            return null;
+        return new Entry(headers, etag, lastModified, isPublic, lifetime);
+    }
+
+    /**
+     *  @param cc the Cache-Control value
+     *  @return s-maxage or max-age in ms, 0 if neither or no-cache
+     */
+    private static long getLifetime(String cc) {
+        if (hasDirective(cc, "no-cache"))
+            return 0;
+        long age = getDirective(cc, "s-maxage");
+        if (age < 0)
+            age = getDirective(cc, "max-age");
+        return age > 0 ? age * 1000 : 0;
+    }
+
+    /**
+     *  @param cc comma separated directives
+     *  @param name lower case
+     */
+    private static boolean hasDirective(String cc, String name) {
+        for (String d : cc.split(",")) {
+            d = d.trim().toLowerCase(Locale.US);
+            if (d.equals(name) || d.startsWith(name + '='))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     *  @param cc comma separated directives
+     *  @param name lower case
+     *  @return the value in seconds, or -1 if not present or invalid
+     */
+    private static long getDirective(String cc, String name) {
+        for (String d : cc.split(",")) {
+            d = d.trim().toLowerCase(Locale.US);
+            if (d.startsWith(name + '=')) {
+                String v = d.substring(name.length() + 1).trim();
+                if (v.length() > 1 && v.startsWith("\"") && v.endsWith("\""))
+                    v = v.substring(1, v.length() - 1);
+                try {
+                    return Math.max(0, Long.parseLong(v));
+                } catch (NumberFormatException nfe) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *  Case-insensitive lookup in a header multimap.
+     *  Multiple values are comma-joined.
+     *
+     *  @return null if not present
+     */
+    private static String getHeader(Map<String, List<String>> headers, String name) {
+        StringBuilder buf = null;
+        for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+            if (!e.getKey().trim().equalsIgnoreCase(name))
+                continue;
+            for (String v : e.getValue()) {
+                if (buf == null)
+                    buf = new StringBuilder(v);
+                else
+                    buf.append(", ").append(v);
+            }
+        }
+        return buf != null ? buf.toString() : null;
+    }
+
+    /**
+     *  Case-insensitive lookup in formatted headers.
+     *  Multiple values are comma-joined.
+     *
+     *  @param headers CRLF separated, starting with the status line
+     *  @return null if not present
+     */
+    private static String getHeader(String headers, String name) {
+        StringBuilder buf = null;
+        int start = headers.indexOf("\r\n");
+        while (start >= 0) {
+            start += 2;
+            int end = headers.indexOf("\r\n", start);
+            if (end < 0)
+                end = headers.length();
+            int colon = headers.indexOf(':', start);
+            if (colon > start && colon < end &&
+                headers.substring(start, colon).trim().equalsIgnoreCase(name)) {
+                String v = headers.substring(colon + 1, end).trim();
+                if (buf == null)
+                    buf = new StringBuilder(v);
+                else
+                    buf.append(", ").append(v);
+            }
+            start = end < headers.length() ? end : -1;
+        }
+        return buf != null ? buf.toString() : null;
+    }
+}
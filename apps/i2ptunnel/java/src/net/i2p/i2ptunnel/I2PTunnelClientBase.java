@@ -18,6 +18,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicLong;
@@ -37,6 +38,7 @@ import net.i2p.util.EventDispatcher;
 import net.i2p.util.I2PAppThread;
 import net.i2p.util.I2PSSLSocketFactory;
 import net.i2p.util.Log;
+import net.i2p.util.VirtualThreads;
 
 /**
  * Abstract base class for I2P client tunnels with common functionality.
@@ -100,6 +102,12 @@ public abstract class I2PTunnelClientBase extends I2PTunnelTask implements Runna
     protected volatile ThreadPoolExecutor _executor;
     /** true if we created _executor ourselves (TCG was null) and must shut it down on close */
     private volatile boolean _ownExecutor;
+    /**
+     *  _executor, counting threads for getRunnerThreads().
+     *  Use for the runners and their forwarders.
+     *  @since 0.9.71+
+     */
+    protected volatile Executor _runnerExecutor;
     /** this is ONLY for shared clients */
     private static I2PSocketManager socketManager;
 
@@ -112,6 +120,8 @@ public abstract class I2PTunnelClientBase extends I2PTunnelTask implements Runna
     private static SocketManagerState socketManagerState = SocketManagerState.INIT;
     /** Property for SSL enable */
     public static final String PROP_USE_SSL = I2PTunnelServer.PROP_USE_SSL;
+    /** @since 0.9.71+ */
+    public static final String PROP_VIRTUAL_THREADS = I2PTunnelServer.PROP_VIRTUAL_THREADS;
 
     /**
      *  This constructor is used to add a client to an existing socket manager.
@@ -721,7 +731,9 @@ public abstract class I2PTunnelClientBase extends I2PTunnelTask implements Runna
         if (dest == null) {throw new NullPointerException();}
         I2PSocket i2ps;
         verifySocketManager();
+        long begin = System.currentTimeMillis();
         i2ps = sockMgr.connect(dest, opt);
+        addConnectTime(System.currentTimeMillis() - begin);
         synchronized (sockLock) {mySockets.add(i2ps);}
         return i2ps;
     }
@@ -847,18 +859,22 @@ public abstract class I2PTunnelClientBase extends I2PTunnelTask implements Runna
     /**
      *  Get the executor from the tunnel controller group, or create one locally
      *  if the group was never started.
+     *  On virtual threads if PROP_VIRTUAL_THREADS is true and the JVM supports them.
      */
     private void initializeExecutor() {
+        boolean virtual = getBooleanOption(PROP_VIRTUAL_THREADS, false);
         TunnelControllerGroup tcg = TunnelControllerGroup.getInstance();
-        if (tcg != null) {_executor = tcg.getClientExecutor();}
+        if (tcg != null) {_executor = tcg.getClientExecutor(virtual);}
         else {
             /* Fallback in case TCG.getInstance() is null, never instantiated and we were not started by TCG.
              * Maybe a plugin loaded before TCG? Should be rare.
              * Locally owned, so we shut it down in close().
              */
-            _executor = new TunnelControllerGroup.CustomThreadPoolExecutor();
+            _executor = virtual && VirtualThreads.isSupported() ? new TunnelControllerGroup.VirtualThreadPoolExecutor()
+                                                                 : new TunnelControllerGroup.CustomThreadPoolExecutor();
             _ownExecutor = true;
         }
+        _runnerExecutor = countThreads(_executor);
     }
 
     /**
@@ -868,14 +884,14 @@ public abstract class I2PTunnelClientBase extends I2PTunnelTask implements Runna
      */
     protected void manageConnection(Socket s) {
         if (s == null) return;
-        ThreadPoolExecutor tpe = _executor;
-        if (tpe == null) {
+        Executor exec = _runnerExecutor;
+        if (exec == null) {
             _log.error("No executor for socket!");
             try {s.close();}
             catch (IOException ioe) { /* ignored */ }
             return;
         }
-        try {tpe.execute(new BlockingRunner(s));}
+        try {exec.execute(new BlockingRunner(s));}
         catch (RejectedExecutionException ree) {
             // should never happen, we have an unbounded pool and never stop the executor
             try {s.close();}
@@ -10,6 +10,7 @@ import java.net.Socket;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executor;
 import net.i2p.I2PException;
 import net.i2p.app.ClientApp;
 import net.i2p.app.ClientAppManager;
@@ -113,8 +114,9 @@ public class I2PTunnelConnectClient extends I2PTunnelHTTPClientBase implements R
      * @since 0.9.70+
      */
     private void executeTask(Runnable task) {
-        if (_executor != null) {
-            _executor.execute(task);
+        Executor exec = _runnerExecutor;
+        if (exec != null) {
+            exec.execute(task);
         } else {
             // Fallback: run inline if executor not yet initialized
             task.run();
@@ -365,7 +367,7 @@ public class I2PTunnelConnectClient extends I2PTunnelHTTPClientBase implements R
             OnTimeout onTimeout = new OnTimeout(s, s.getOutputStream(), targetRequest, usingWWWProxy,
                                                 currentProxy, requestId, targetRequest, false);
             I2PTunnelRunner t = new I2PTunnelRunner(s, i2ps, sockLock, data, response, mySockets, onTimeout);
-            t.setExecutor(_executor);
+            t.setExecutor(_runnerExecutor);
             if (usingWWWProxy) {
                 // isSSL must be false for ConnectClient
                 t.setSuccessCallback(new OnProxySuccess(currentProxy, host, false));
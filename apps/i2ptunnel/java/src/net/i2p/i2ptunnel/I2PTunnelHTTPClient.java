@@ -1497,7 +1497,7 @@ public class I2PTunnelHTTPClient extends I2PTunnelHTTPClientBase implements Runn
                                                         keepaliveI2P, keepalive, isHead);
                 t = hrunner;
             }
-            t.setExecutor(_executor);
+            t.setExecutor(_runnerExecutor);
             if (usingWWWProxy) {
                 t.setSuccessCallback(new OnProxySuccess(currentProxy, hostLowerCase, isConnect));
             }
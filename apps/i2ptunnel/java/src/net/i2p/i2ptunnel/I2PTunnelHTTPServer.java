@@ -4,8 +4,10 @@
 package net.i2p.i2ptunnel;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -19,11 +21,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.HashSet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -81,6 +83,12 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
     public static final String OPT_POST_TOTAL_MAX = "maxTotalPosts";
     /** Config key for post check time window. */
     public static final String OPT_POST_WINDOW = "postCheckTime";
+    /**
+     *  Config key for the size in KB of the shared cache of compressed responses,
+     *  default 0 (disabled).
+     *  @since 0.9.71+
+     */
+    public static final String OPT_RESPONSE_CACHE_SIZE = "responseCacheSize";
 
     /** Max wait for DNS resolution of non-I2P hostnames in the HTTP proxy. */
     private static final int DNS_TIMEOUT_MS = 5000;
@@ -224,6 +232,8 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
     private long _startedOn = 0L;
     /** POST/PUT throttler for rate limiting */
     private ConnThrottler _postThrottler;
+    /** shared cache of compressed responses, null if disabled, @since 0.9.71+ */
+    private volatile CompressedResponseCache _responseCache;
     /** @since 0.9.62+ */
     private static final int HTTP_BLOCKLIST_CLIENT_LIMIT = 512;
     /** HTTP blocklist manager */
@@ -417,6 +427,15 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
         getTunnel().getContext().statManager().createRateStat("i2ptunnel.httpserver.blockingHandleTime",
                                                               "How long the blocking handle takes to complete",
                                                               "Tunnels [HTTPServer]", new long[] { 60*1000, 10*60*1000, 3*60*60*1000 });
+        getTunnel().getContext().statManager().createRateStat("i2ptunnel.httpserver.cacheHit",
+                                                              "Responses sent from the compressed response cache",
+                                                              "Tunnels [HTTPServer]", new long[] { 60*1000, 10*60*1000, 3*60*60*1000 });
+        getTunnel().getContext().statManager().createRateStat("i2ptunnel.httpserver.cacheMiss",
+                                                              "Cacheable requests not found in the compressed response cache",
+                                                              "Tunnels [HTTPServer]", new long[] { 60*1000, 10*60*1000, 3*60*60*1000 });
+        getTunnel().getContext().statManager().createRateStat("i2ptunnel.httpserver.cacheRevalidated",
+                                                              "Cached responses revalidated by the webserver (304)",
+                                                              "Tunnels [HTTPServer]", new long[] { 60*1000, 10*60*1000, 3*60*60*1000 });
         readTimeout = DEFAULT_HTTP_READ_TIMEOUT;
         _blocklistManager = new BlocklistManager(_log, HTTP_BLOCKLIST_CLIENT_LIMIT);
     }
@@ -430,6 +449,7 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
         // Would be better if this was set when the inbound tunnel becomes alive.
         _startedOn = getTunnel().getContext().clock().now();
         setupPostThrottle();
+        setupResponseCache();
     }
 
     /**
@@ -455,6 +475,22 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
         }
     }
 
+    /**
+     *  Create, resize, or disable the compressed response cache from tunnel options.
+     *
+     *  @since 0.9.71+
+     */
+    private synchronized void setupResponseCache() {
+        long size = 1024L * getIntOption(OPT_RESPONSE_CACHE_SIZE, 0);
+        if (size <= 0) {
+            _responseCache = null;
+        } else if (_responseCache == null) {
+            _responseCache = new CompressedResponseCache(size);
+        } else {
+            _responseCache.setMaxSize(size);
+        }
+    }
+
     /**
      *  Get an integer option from the tunnel client options.
      *
@@ -499,6 +535,7 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
     public void optionsUpdated(I2PTunnel tunnel) {
         if (getTunnel() != tunnel) {return;}
         setupPostThrottle();
+        setupResponseCache();
         Properties props = tunnel.getClientOptions();
         // see TunnelController.setSessionOptions()
         String spoofHost = props.getProperty(TunnelController.PROP_SPOOFED_HOST);
@@ -598,16 +635,6 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
                  *  can do the compression/decompression, we don't have to setEntry(headers, "Accept-Encoding", "");
                  */
 
-                socket.setReadTimeout(readTimeout);
-                Socket s = getSocket(peerHash, socket.getLocalPort());
-                long afterSocket = getTunnel().getContext().clock().now();
-
-                /**
-                 *  Instead of i2ptunnelrunner, use something that reads the HTTP request from the socket,
-                 *  modifies the headers, sends the request to the server, reads the response headers,
-                 *  rewriting to include 'Content-Encoding: x-i2p-gzip' if it was one of the
-                 *  Accept-Encoding: values, and gzip the payload
-                 */
                 boolean allowGZIP = isGzipAllowed(opts);
                 if (_log.shouldDebug() && (enc != null || altEnc != null)) {
                     _log.debug("[HTTPServer] Encoding header: " + enc + "/" + altEnc);
@@ -616,7 +643,39 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
                 boolean useGZIP = alt || hasGzipEncoding(enc);
                 // Don't pass this on, outproxies should strip so I2P traffic isn't so obvious but they probably don't
                 if (alt) {headers.remove("X-Accept-Encoding");}
+                boolean compress = allowGZIP && useGZIP;
 
+                // Only compressed responses are cached, as that's the CPU we save
+                CompressedResponseCache cache = _responseCache;
+                String cacheKey = null;
+                boolean credentials = false;
+                CompressedResponseCache.Entry cached = null;
+                boolean fresh = false;
+                if (cache != null && compress && !upgrade) {
+                    cacheKey = CompressedResponseCache.getKey(cmd, headers);
+                    if (cacheKey != null) {
+                        credentials = CompressedResponseCache.hasCredentials(headers);
+                        cached = cache.get(cacheKey, credentials);
+                        if (cached != null) {
+                            fresh = cached.isFresh(afterHeaders) && !CompressedResponseCache.isNoCache(headers);
+                            if (fresh) {getTunnel().getContext().statManager().addRateData("i2ptunnel.httpserver.cacheHit", 1);}
+                            else if (!cached.addConditionals(headers)) {cached = null;}
+                        }
+                        if (cached == null) {getTunnel().getContext().statManager().addRateData("i2ptunnel.httpserver.cacheMiss", 1);}
+                    }
+                }
+
+                socket.setReadTimeout(readTimeout);
+                // Don't connect to the webserver if we have a fresh response
+                Socket s = fresh ? null : getSocket(peerHash, socket.getLocalPort());
+                long afterSocket = getTunnel().getContext().clock().now();
+
+                /**
+                 *  Instead of i2ptunnelrunner, use something that reads the HTTP request from the socket,
+                 *  modifies the headers, sends the request to the server, reads the response headers,
+                 *  rewriting to include 'Content-Encoding: x-i2p-gzip' if it was one of the
+                 *  Accept-Encoding: values, and gzip the payload
+                 */
                 String modifiedHeader = HttpHeaderFormatter.formatHeaders(headers, command);
                 if (_log.shouldDebug()) {_log.debug("[HTTPServer] Modified headers\n\t" + modifiedHeader);}
                 else if (_log.shouldInfo() && !command.toString().toLowerCase().contains("head")) {
@@ -624,10 +683,10 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
                     _log.info("[HTTPServer] Received request headers" + compactHeaders);
                 }
 
-                boolean compress = allowGZIP && useGZIP;
                 AtomicInteger waiter = keepalive ? new AtomicInteger() : null;
                 Runnable t = new CompressedRequestor(s, socket, modifiedHeader, getTunnel().getContext(),
-                                                     _log, compress, upgrade, _clientExecutor, keepalive, waiter);
+                                                     _log, compress, upgrade, _runnerExecutor, keepalive, waiter,
+                                                     cache, cacheKey, credentials, cached);
                 // GET/HEAD requests run inline to support HTTP keepalive.
                 // Non-GET/HEAD requests offload to the executor pool to avoid
                 // blocking the handler thread on slow I2P socket writes.
@@ -635,7 +694,7 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
                     t.run();
                 } else {
                     try {
-                        _clientExecutor.execute(t);
+                        _runnerExecutor.execute(t);
                     } catch (RejectedExecutionException ree) {
                         try { sendError(socket, ERR_UNAVAILABLE); } catch (IOException ioe) {}
                         try { socket.close(); } catch (IOException ioe) {}
@@ -849,8 +908,8 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
         socket.setReadTimeout(SERVER_READ_TIMEOUT_POST);
         Socket s = getSocket(socket.getPeerDestination().calculateHash(), 443);
         I2PTunnelRunner runner = new I2PTunnelRunner(s, socket, slock, null, null, null, (I2PTunnelRunner.FailCallback) null);
-        runner.setExecutor(_clientExecutor);
-        _clientExecutor.execute(runner);
+        runner.setExecutor(_runnerExecutor);
+        _runnerExecutor.execute(runner);
         return true;
     }
 
@@ -1225,9 +1284,13 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
         private final Log _log;
         private final boolean _shouldCompress;
         private final boolean _upgrade;
-        private final ThreadPoolExecutor _tpe;
+        private final Executor _tpe;
         private boolean _keepalive;
         private final AtomicInteger _waiter;
+        private final CompressedResponseCache _cache;
+        private final String _cacheKey;
+        private final boolean _credentials;
+        private final CompressedResponseCache.Entry _cached;
         private static final int BUF_SIZE = 16*1024;
 
         /**
@@ -1236,7 +1299,31 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
          */
         public CompressedRequestor(Socket webserver, I2PSocket browser, String headers,
                                    I2PAppContext ctx, Log log, boolean shouldCompress, boolean upgrade,
-                                   ThreadPoolExecutor tpe, boolean keepalive, AtomicInteger waiter) {
+                                   Executor tpe, boolean keepalive, AtomicInteger waiter) {
+            this(webserver, browser, headers, ctx, log, shouldCompress, upgrade, tpe, keepalive, waiter,
+                 null, null, false, null);
+        }
+
+        /**
+         *  With a CompressedResponseCache.
+         *  If webserver is null, send the cached entry without contacting the webserver.
+         *  Otherwise, if cached is non-null, the request headers include its validators,
+         *  and it is sent if the webserver returns 304.
+         *  Otherwise, the response is stored in the cache if it may be.
+         *
+         *  @param webserver null to send cached
+         *  @param headers null if webserver is null
+         *  @param cache may be null
+         *  @param cacheKey may be null to not store
+         *  @param credentials the request has an Authorization or Cookie header
+         *  @param cached may be null, non-null if webserver is null
+         *  @since 0.9.71+
+         */
+        public CompressedRequestor(Socket webserver, I2PSocket browser, String headers,
+                                   I2PAppContext ctx, Log log, boolean shouldCompress, boolean upgrade,
+                                   Executor tpe, boolean keepalive, AtomicInteger waiter,
+                                   CompressedResponseCache cache, String cacheKey, boolean credentials,
+                                   CompressedResponseCache.Entry cached) {
             _webserver = webserver;
             _browser = browser;
             _headers = headers;
@@ -1247,6 +1334,10 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
             _tpe = tpe;
             _keepalive = keepalive;
             _waiter = waiter;
+            _cache = cache;
+            _cacheKey = cacheKey;
+            _credentials = credentials;
+            _cached = cached;
         }
 
         private static String urlSuffix(String req) {
@@ -1260,6 +1351,10 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
          */
         @Override
         public void run() {
+            if (_webserver == null) {
+                runCached();
+                return;
+            }
             OutputStream serverout = null;
             OutputStream browserout = null;
             CompressedResponseOutputStream compressedout = null;
@@ -1269,6 +1364,8 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
             Sender sender = null;
             IOException ioex = null;
             String req = null;
+            CompressedResponseCache.Entry store = null;
+            boolean sent = false;
             try {
                 serverout = _webserver.getOutputStream();
                 serverout.write(DataHelper.getUTF8(_headers));
@@ -1300,12 +1397,28 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
 
                 try {serverin = new BufferedInputStream(_webserver.getInputStream(), BUF_SIZE);}
                 catch (NullPointerException npe) {throw new IOException("getInputStream NPE");}
-                String modifiedHeaders = readAndRewriteServerResponse(serverin, timeout, _ctx);
+                StringBuilder cacheControl = _cache != null ? new StringBuilder() : null;
+                String modifiedHeaders = readAndRewriteServerResponse(serverin, timeout, _ctx, cacheControl);
                 // after the headers, set a short timeout
                 _webserver.setSoTimeout(SERVER_READ_TIMEOUT_GET);
 
-                if (_shouldCompress) {
+                if (_cached != null && CompressedResponseCache.getStatus(modifiedHeaders) == 304) {
+                    // ours is still good
+                    _cache.revalidated(_cacheKey, _cached, getCacheControl(cacheControl), _ctx.clock().now());
+                    _ctx.statManager().addRateData("i2ptunnel.httpserver.cacheRevalidated", 1);
+                    compressedout = sendCached(browserout);
+                    browserout = compressedout;
+                    if (_log.shouldDebug())
+                        _log.debug("[HTTPServer] Revalidated cached response" + urlSuffix(req));
+                } else if (_shouldCompress) {
+                    if (_cache != null && _cacheKey != null) {
+                        store = CompressedResponseCache.newEntry(modifiedHeaders, getCacheControl(cacheControl), _credentials);
+                        if (store == null && _cached != null)
+                            _cache.remove(_cacheKey);
+                    }
                     compressedout = new CompressedResponseOutputStream(browserout, _keepalive);
+                    if (store != null)
+                        compressedout.setCapture(_cache.getMaxEntrySize());
                     compressedout.write(DataHelper.getUTF8(modifiedHeaders));
                     s = new Sender(compressedout, serverin, "Server -> Client (Gzip) " +
                                    urlSuffix(req), _log);
@@ -1315,10 +1428,13 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
                     s = new Sender(browserout, serverin, "Server -> Client " +
                                    urlSuffix(req), _log);
                 }
-                if (_log.shouldDebug())
-                    _log.debug("[HTTPServer] Running server-to-browser Compressed? " + _shouldCompress + " KeepAlive? " + _keepalive +
-                               urlSuffix(req));
-                s.run(); // same thread
+                if (s != null) {
+                    if (_log.shouldDebug())
+                        _log.debug("[HTTPServer] Running server-to-browser Compressed? " + _shouldCompress + " KeepAlive? " + _keepalive +
+                                   urlSuffix(req));
+                    s.run(); // same thread
+                }
+                sent = true;
             } catch (SSLException she) {
                 if (_log.shouldError()) {_log.error("[HTTPServer] SSL error", she);}
                 try {
@@ -1351,6 +1467,13 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
                         } else {browserout.close();}
                     } catch (IOException ioe) { /* ignored */ }
                 }
+                if (store != null && sent && ioex == null) {
+                    store.body = compressedout.getCompressed();
+                    if (store.body != null)
+                        _cache.put(_cacheKey, store, _ctx.clock().now());
+                    else
+                        _cache.remove(_cacheKey);
+                }
                 if (serverout != null) try { serverout.close(); } catch (IOException ioe) { /* ignored */ }
                 if (!_keepalive && browserin != null) try { browserin.close(); } catch (IOException ioe) { /* ignored */ }
                 if (serverin != null) try { serverin.close(); } catch (IOException ioe) { /* ignored */ }
@@ -1363,6 +1486,52 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
             }
         }
 
+        /**
+         *  @return null if empty
+         *  @since 0.9.71+
+         */
+        private static String getCacheControl(StringBuilder cacheControl) {
+            return cacheControl != null && cacheControl.length() > 0 ? cacheControl.toString() : null;
+        }
+
+        /**
+         *  Send the cached entry without contacting the webserver.
+         *  @since 0.9.71+
+         */
+        private void runCached() {
+            CompressedResponseOutputStream out = null;
+            try {
+                out = sendCached(_browser.getOutputStream());
+                if (_log.shouldDebug())
+                    _log.debug("[HTTPServer] Sent cached response, KeepAlive? " + _keepalive + urlSuffix(_cacheKey));
+            } catch (IOException ioe) {
+                if (_log.shouldWarn())
+                    _log.warn("[HTTPServer] Error sending cached response -> " + ioe.getMessage() + urlSuffix(_cacheKey));
+                _keepalive = false;
+            } finally {
+                if (_waiter != null) {_waiter.set(_keepalive ? 2 : 1);}
+                if (out != null) {
+                    try {
+                        if (_keepalive) {out.finish();}
+                        else {out.close();}
+                    } catch (IOException ioe) { /* ignored */ }
+                }
+                if (!_keepalive) try { _browser.close(); } catch (IOException ioe) { /* ignored */ }
+            }
+        }
+
+        /**
+         *  Write the cached headers and compressed body.
+         *  Caller must finish() or close() the returned stream.
+         *  @since 0.9.71+
+         */
+        private CompressedResponseOutputStream sendCached(OutputStream browserout) throws IOException {
+            CompressedResponseOutputStream rv = new CompressedResponseOutputStream(browserout, _keepalive, true);
+            rv.write(DataHelper.getUTF8(_cached.headers));
+            rv.write(_cached.body);
+            return rv;
+        }
+
         /**
          *  Extract the request URL from headers for logging.
          *  @return a human-readable request description, never null
@@ -1410,11 +1579,28 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
          *  @throws IOException on error
          */
         static String readAndRewriteServerResponse(InputStream serverin, int timeout, I2PAppContext ctx) throws IOException {
+            return readAndRewriteServerResponse(serverin, timeout, ctx, null);
+        }
+
+        /**
+         *  As above, also returning the webserver's own Cache-Control for the
+         *  CompressedResponseCache, before we add our default.
+         *
+         *  @param cacheControl if non-null, the webserver's Cache-Control, if any, is appended
+         *  @since 0.9.71+
+         */
+        static String readAndRewriteServerResponse(InputStream serverin, int timeout, I2PAppContext ctx,
+                                                   StringBuilder cacheControl) throws IOException {
             StringBuilder command = new StringBuilder(512);
             // Change headers to protect server identity
             Map<String, List<String>> headers = readHeaders(null, serverin, command, SERVER_SKIPHEADERS, ctx, timeout);
 
             SecurityHeaderBuilder.filterCacheControlHeaders(headers);
+            if (cacheControl != null) {
+                List<String> ccList = headers.get("Cache-Control");
+                if (ccList != null)
+                    cacheControl.append(String.join(", ", ccList));
+            }
             SecurityHeaderBuilder.filterSetCookieHeaders(headers);
 
             List<String> contentTypeList = headers.get("Content-Type");
@@ -1533,7 +1719,10 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
     private static final int MIN_TO_COMPRESS = 1024;
 
     private static class CompressedResponseOutputStream extends HTTPResponseOutputStream {
-        private GZIPOutputStream _gzipOut;
+        private CountingGZIPOutputStream _gzipOut;
+        private final boolean _precompressed;
+        private int _captureMax;
+        private CaptureOutputStream _capture;
 
         /**
          *  Create a compressed response output stream.
@@ -1542,7 +1731,46 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
          *  @param keepalive if true, don't close the stream on finish
          */
         public CompressedResponseOutputStream(OutputStream o, boolean keepalive) {
+            this(o, keepalive, false);
+        }
+
+        /**
+         *  @param o the underlying output stream
+         *  @param keepalive if true, don't close the stream on finish
+         *  @param precompressed if true, the body will be written already compressed,
+         *                       from the CompressedResponseCache
+         *  @since 0.9.71+
+         */
+        public CompressedResponseOutputStream(OutputStream o, boolean keepalive, boolean precompressed) {
             super(o, false, keepalive, false, null);
+            _precompressed = precompressed;
+        }
+
+        /**
+         *  Keep a copy of the compressed body for the CompressedResponseCache.
+         *  Call before writing the headers.
+         *
+         *  @param max the most to keep, in bytes
+         *  @since 0.9.71+
+         */
+        public void setCapture(int max) {_captureMax = max;}
+
+        /**
+         *  Call after finish() or close().
+         *
+         *  @return the complete compressed body, or null if not compressed,
+         *          not captured, too big, without a Content-Length, or incomplete
+         *  @since 0.9.71+
+         */
+        public byte[] getCompressed() {
+            if (_capture == null || _gzipOut == null || !_gzipOut.isFinished())
+                return null;
+            // Without a Content-Length, a webserver closing early looks just like the end,
+            // so we can't tell if we have all of it.
+            // With one, the webserver closed early if we didn't get that much.
+            if (_dataExpected < 0 || _gzipOut.getBytesRead() != _dataExpected)
+                return null;
+            return _capture.toByteArray();
         }
 
         /**
@@ -1607,13 +1835,71 @@ public class I2PTunnelHTTPServer extends I2PTunnelServer {
          */
         @Override
         protected void beginProcessing() throws IOException {
-            if (shouldCompress()) {
-                _gzipOut = new GZIPOutputStream(out);
+            if (shouldCompress() && !_precompressed) {
+                OutputStream o = out;
+                if (_captureMax > 0) {
+                    _capture = new CaptureOutputStream(o, _captureMax);
+                    o = _capture;
+                }
+                _gzipOut = new CountingGZIPOutputStream(o);
                 out = _gzipOut;
             }
         }
     }
 
+    /**
+     *  To check that the whole response was compressed
+     *  @since 0.9.71+
+     */
+    private static class CountingGZIPOutputStream extends GZIPOutputStream {
+        public CountingGZIPOutputStream(OutputStream o) throws IOException {super(o);}
+
+        /** @return uncompressed bytes written so far */
+        public long getBytesRead() {return def.getBytesRead();}
+
+        /** @return true after finish() */
+        public boolean isFinished() {return def.finished();}
+    }
+
+    /**
+     *  Copy everything written, up to a limit
+     *  @since 0.9.71+
+     */
+    private static class CaptureOutputStream extends FilterOutputStream {
+        private final int _max;
+        private ByteArrayOutputStream _buf;
+
+        public CaptureOutputStream(OutputStream o, int max) {
+            super(o);
+            _max = max;
+            _buf = new ByteArrayOutputStream(Math.min(max, 16*1024));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            capture(new byte[] {(byte) b}, 0, 1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            capture(b, off, len);
+            out.write(b, off, len);
+        }
+
+        private void capture(byte[] b, int off, int len) {
+            if (_buf == null)
+                return;
+            if (_buf.size() + len > _max)
+                _buf = null;
+            else
+                _buf.write(b, off, len);
+        }
+
+        /** @return null if over the limit */
+        public byte[] toByteArray() {return _buf != null ? _buf.toByteArray() : null;}
+    }
+
     /**
      * Add an entry to the multimap. If the key already exists, appends
      * the value to the existing list.
@@ -155,8 +155,8 @@ public class I2PTunnelIRCServer extends I2PTunnelServer implements Runnable {
             I2PTunnelRunner runner = new I2PTunnelRunner(s, socket, slock, null, DataHelper.getUTF8(modifiedRegistration),
                                            null, (I2PTunnelRunner.FailCallback) null);
             // run in the unlimited client pool
-            runner.setExecutor(_clientExecutor);
-            _clientExecutor.execute(runner);
+            runner.setExecutor(_runnerExecutor);
+            _runnerExecutor.execute(runner);
         } catch (RegistrationException ex) {
             try {
                 // Send a response so the user doesn't just see a disconnect
@@ -23,6 +23,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import net.i2p.I2PAppContext;
@@ -47,6 +48,7 @@ import net.i2p.util.EventDispatcher;
 import net.i2p.util.I2PAppThread;
 import net.i2p.util.I2PSSLSocketFactory;
 import net.i2p.util.Log;
+import net.i2p.util.VirtualThreads;
 
 /** Base I2P tunnel server for handling incoming connections.
  * <p>
@@ -106,9 +108,21 @@ public class I2PTunnelServer extends I2PTunnelTask implements Runnable {
     public static final String PROP_UNIQUE_LOCAL = "enableUniqueLocal";
     /** @since 0.9.30 */
     public static final String PROP_ALT_PKF = "altPrivKeyFile";
+    /**
+     *  Config key to run the runners and forwarders on virtual threads,
+     *  if the JVM supports them, see VirtualThreads. Default false.
+     *  @since 0.9.71+
+     */
+    public static final String PROP_VIRTUAL_THREADS = "i2ptunnel.virtualThreads";
     private static final long RECONNECT_DELAY_2MIN = 120 * 1000L;
     private static final long RECONNECT_DELAY_10S = 10 * 1000L;
     protected volatile ThreadPoolExecutor _clientExecutor;
+    /**
+     *  _clientExecutor, counting threads for getRunnerThreads().
+     *  Use for the runners and their forwarders.
+     *  @since 0.9.71+
+     */
+    protected volatile Executor _runnerExecutor;
     private final Map<Integer, InetSocketAddress> _socketMap = new ConcurrentHashMap<>(4);
     private volatile StatefulConnectionFilter _filter;
 
@@ -575,13 +589,16 @@ public class I2PTunnelServer extends I2PTunnelTask implements Runnable {
         i2pss = sockMgr.getServerSocket();
         TunnelControllerGroup tcg = TunnelControllerGroup.getInstance();
         ThreadPoolExecutor serverExec;
+        boolean virtual = getBooleanOption(PROP_VIRTUAL_THREADS, false);
         if (tcg != null) {
             serverExec = tcg.getServerExecutor();
-            _clientExecutor = tcg.getClientExecutor();
+            _clientExecutor = tcg.getClientExecutor(virtual);
         } else {
-            _clientExecutor = new TunnelControllerGroup.CustomThreadPoolExecutor();
+            _clientExecutor = virtual && VirtualThreads.isSupported() ? new TunnelControllerGroup.VirtualThreadPoolExecutor()
+                                                                      : new TunnelControllerGroup.CustomThreadPoolExecutor();
             serverExec = null;
         }
+        _runnerExecutor = countThreads(_clientExecutor);
 
         while (open) {
             I2PSocket i2ps = null;
@@ -768,9 +785,9 @@ public class I2PTunnelServer extends I2PTunnelTask implements Runnable {
             afterSocket = getTunnel().getContext().clock().now();
             I2PTunnelRunner runner = new I2PTunnelRunner(s, socket, slock, null, null,
                                            null, (I2PTunnelRunner.FailCallback) null);
-            runner.setExecutor(_clientExecutor);
+            runner.setExecutor(_runnerExecutor);
             try {
-                _clientExecutor.execute(runner);
+                _runnerExecutor.execute(runner);
             } catch (RejectedExecutionException ree) {
                 // pool saturated: close the local socket we just opened, the runner never ran
                 if (_log.shouldWarn()) {_log.warn("Client handler pool saturated -> closing connection to " + getSocketString(socket.getLocalPort()));}
@@ -956,8 +973,9 @@ public class I2PTunnelServer extends I2PTunnelTask implements Runnable {
             }
             return createPlainSocket(remoteHost, remotePort, timeout);
         } finally {
-            getTunnel().getContext().statManager().addRateData("i2ptunnel.serverHandler.socketConnectTime",
-                               getTunnel().getContext().clock().now() - start);
+            long time = getTunnel().getContext().clock().now() - start;
+            getTunnel().getContext().statManager().addRateData("i2ptunnel.serverHandler.socketConnectTime", time);
+            addConnectTime(time);
         }
     }
 
@@ -4,6 +4,8 @@
 package net.i2p.i2ptunnel;
 
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import net.i2p.client.I2PSession;
 import net.i2p.client.streaming.I2PSocketManager;
 import net.i2p.util.EventDispatcher;
@@ -22,6 +24,10 @@ public abstract class I2PTunnelTask extends EventDispatcherImpl {
     private String name;
     protected volatile boolean open;
     public I2PTunnel tunnel;
+    /** @since 0.9.71+ */
+    private final AtomicInteger _runnerThreads = new AtomicInteger();
+    /** moving average, -1 if none yet, @since 0.9.71+ */
+    private int _connectTime = -1;
 
     protected I2PTunnelTask(String name, EventDispatcher notifyThis, I2PTunnel tunnel) {
         attachEventDispatcher(notifyThis);
@@ -113,6 +119,55 @@ public abstract class I2PTunnelTask extends EventDispatcherImpl {
         return dflt;
     }
 
+    /**
+     *  The number of threads currently running connections for this task,
+     *  i.e. runners and forwarders submitted via countThreads().
+     *
+     *  @since 0.9.71+
+     */
+    public int getRunnerThreads() {return _runnerThreads.get();}
+
+    /**
+     *  The time to open the outbound leg of a connection, to the
+     *  destination for clients or to the local target for servers.
+     *
+     *  @return moving average in ms, or -1 if no connections yet
+     *  @since 0.9.71+
+     */
+    public synchronized int getConnectTime() {return _connectTime;}
+
+    /**
+     *  @param ms time to open the outbound leg of a connection
+     *  @since 0.9.71+
+     */
+    protected synchronized void addConnectTime(long ms) {
+        int t = (int) Math.min(ms, Integer.MAX_VALUE);
+        if (_connectTime < 0) {_connectTime = t;}
+        else {_connectTime = (int) ((_connectTime * 7L + t) / 8);}
+    }
+
+    /**
+     *  Wrap an executor so that the tasks run on it are counted in getRunnerThreads().
+     *
+     *  @param exec may be null
+     *  @return null if exec is null
+     *  @since 0.9.71+
+     */
+    protected Executor countThreads(final Executor exec) {
+        if (exec == null) {return null;}
+        return new Executor() {
+            public void execute(final Runnable r) {
+                exec.execute(new Runnable() {
+                    public void run() {
+                        _runnerThreads.incrementAndGet();
+                        try {r.run();}
+                        finally {_runnerThreads.decrementAndGet();}
+                    }
+                });
+            }
+        };
+    }
+
     /**
      *  Does nothing here. Extending classes may override.
      */
@@ -38,6 +38,7 @@ import net.i2p.util.SecureFile;
 import net.i2p.util.SecureFileOutputStream;
 import net.i2p.util.SimpleTimer2;
 import net.i2p.util.SystemVersion;
+import net.i2p.util.VirtualThreads;
 
 /**
  * Coordinate the runtime operation and configuration of a single I2PTunnel.
@@ -1522,6 +1523,45 @@ public class TunnelController implements Logging {
      */
     public TunnelState getState() { return _state; }
 
+    /**
+     *  The number of threads currently running this tunnel's connections,
+     *  i.e. its runners and forwarders.
+     *
+     *  @return 0 if not running
+     *  @since 0.9.71+
+     */
+    public int getRunnerThreads() {
+        int rv = 0;
+        for (I2PTunnelTask task : _tunnel.getTasks()) {
+            rv += task.getRunnerThreads();
+        }
+        return rv;
+    }
+
+    /**
+     *  The recent time to open the outbound leg of a connection, to the
+     *  destination for clients or to the local target for servers.
+     *
+     *  @return moving average in ms, or -1 if no connections yet
+     *  @since 0.9.71+
+     */
+    public int getConnectTime() {
+        int rv = -1;
+        for (I2PTunnelTask task : _tunnel.getTasks()) {
+            rv = Math.max(rv, task.getConnectTime());
+        }
+        return rv;
+    }
+
+    /**
+     *  @return true if configured for virtual threads and the JVM supports them
+     *  @since 0.9.71+
+     */
+    public boolean getUseVirtualThreads() {
+        return VirtualThreads.isSupported() &&
+               Boolean.parseBoolean(_config.getProperty(PFX_OPTION + I2PTunnelServer.PROP_VIRTUAL_THREADS));
+    }
+
     /**
      *  Checks if the tunnel is in standby mode.
      * <p>
@@ -35,6 +35,7 @@ import net.i2p.util.OrderedProperties;
 import net.i2p.util.RandomSource;
 import net.i2p.util.SecureDirectory;
 import net.i2p.util.SystemVersion;
+import net.i2p.util.VirtualThreads;
 
 /**
  * Coordinates tunnel groups within the JVM, managing configuration persistence.
@@ -99,6 +100,12 @@ public class TunnelControllerGroup implements ClientApp {
     private final Object _executorLock = new Object();
     /** how long to wait before dropping an idle thread */
     private static final long HANDLER_KEEPALIVE_MS = (long) 30*1000;
+    /**
+     *  Virtual thread runners for tunnels with i2ptunnel.virtualThreads=true, guarded by _executorLock
+     *  @since 0.9.71+
+     */
+    private ThreadPoolExecutor _virtualExecutor;
+    private static final AtomicLong _virtualThreadCount = new AtomicLong();
 
     /** Shared bounded executor for server tunnel connection handlers */
     private ThreadPoolExecutor _serverExecutor;
@@ -1417,6 +1424,25 @@ public class TunnelControllerGroup implements ClientApp {
         return _executor;
     }
 
+    /**
+     *  The executor pool for client tunnel tasks, on virtual threads if requested.
+     *  Falls back to the bounded pool from getClientExecutor() if the JVM
+     *  does not support virtual threads, see VirtualThreads.
+     *
+     *  @param virtual true to run the runners and forwarders on virtual threads
+     *  @return non-null
+     *  @since 0.9.71+
+     */
+    ThreadPoolExecutor getClientExecutor(boolean virtual) {
+        if (!virtual || !VirtualThreads.isSupported())
+            return getClientExecutor();
+        synchronized (_executorLock) {
+            if (_virtualExecutor == null)
+                _virtualExecutor = new VirtualThreadPoolExecutor();
+        }
+        return _virtualExecutor;
+    }
+
     /**
      *  Shared bounded executor for server tunnel connection handlers.
      *  Tasks are short-lived (µs-scale), so core threads handle bursts via a queue.
@@ -1487,17 +1513,19 @@ public class TunnelControllerGroup implements ClientApp {
      */
     private void killClientExecutor() {
         killExecutor(_executorLock, "Client");
+        killExecutor(_executorLock, "Virtual");
     }
 
     /**
      *  Shutdown an executor, waiting for termination.
      *
      *  @param lock the monitor guarding the executor
-     *  @param name "Server" or "Client" for logging
+     *  @param name "Server", "Client", or "Virtual" for logging
      */
     private void killExecutor(Object lock, String name) {
         synchronized (lock) {
-            ThreadPoolExecutor executor = name.equals("Server") ? _serverExecutor : _executor;
+            ThreadPoolExecutor executor = name.equals("Server") ? _serverExecutor :
+                                          name.equals("Virtual") ? _virtualExecutor : _executor;
             if (executor != null) {
                 executor.shutdown();
                 try {
@@ -1511,6 +1539,7 @@ public class TunnelControllerGroup implements ClientApp {
                     Thread.currentThread().interrupt();
                 }
                 if (name.equals("Server")) {_serverExecutor = null;}
+                else if (name.equals("Virtual")) {_virtualExecutor = null;}
                 else {_executor = null;}
             }
         }
@@ -1539,6 +1568,32 @@ public class TunnelControllerGroup implements ClientApp {
         }
     }
 
+    /**
+     *  Thread pool executor for I2P tunnel client handlers on virtual threads.
+     *  Unbounded, as a blocked virtual thread only holds its stack,
+     *  and no worker is reused for long, as a new one is as cheap.
+     *  Only construct if VirtualThreads.isSupported().
+     *
+     *  @since 0.9.71+
+     */
+    static class VirtualThreadPoolExecutor extends ThreadPoolExecutor {
+        public VirtualThreadPoolExecutor() {
+             super(0, Integer.MAX_VALUE, 1, TimeUnit.SECONDS,
+                   new SynchronousQueue<>(), new VirtualThreadFactory());
+        }
+    }
+
+    /**
+     *  Virtual threads are always daemon threads
+     *  @since 0.9.71+
+     */
+    private static class VirtualThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            return VirtualThreads.newThread(r, "TunnelVirtualRunner." + _virtualThreadCount.incrementAndGet(), true);
+        }
+    }
+
     /** Thread factory that sets daemon flag and names threads */
     private static class CustomThreadFactory implements ThreadFactory {
         @Override
@@ -118,8 +118,8 @@ public class I2PTunnelDCCServer extends I2PTunnelServer {
                                                (I2PTunnelRunner.FailCallback) null);
                 // run in the unlimited client pool
                 //t.start();
-                runner.setExecutor(_clientExecutor);
-                _clientExecutor.execute(runner);
+                runner.setExecutor(_runnerExecutor);
+                _runnerExecutor.execute(runner);
                 local.socket = socket;
                 local.expire = getTunnel().getContext().clock().now() + OUTBOUND_EXPIRE;
                 _active.put(Integer.valueOf(myPort), local);
@@ -88,7 +88,7 @@ public class I2PSOCKSTunnel extends I2PTunnelClientBase {
             destSock = serv.getDestinationI2PSocket(this);
             I2PTunnelRunner t = new I2PTunnelRunner(clientSock, destSock, sockLock, null, null, mySockets,
                                            (I2PTunnelRunner.FailCallback) null);
-            t.setExecutor(_executor);
+            t.setExecutor(_runnerExecutor);
             t.run();
         } catch (SOCKSException e) {
             if (_log.shouldWarn())
@@ -11,7 +11,8 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -66,11 +67,11 @@ public class CompressedRequestorTest {
         public void setSocketErrorListener(SocketErrorListener lsnr) {}
     }
 
-    private ThreadPoolExecutor _executor;
+    private ExecutorService _executor;
 
     @Before
     public void setUp() {
-        _executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        _executor = Executors.newCachedThreadPool();
     }
 
     @After
@@ -81,11 +82,11 @@ public class CompressedRequestorTest {
     /** Construct the private CompressedRequestor via reflection */
     private static Runnable newRequestor(Socket webserver, BrowserSocket browser, String headers,
                                          boolean compress, boolean upgrade, boolean keepalive,
-                                         AtomicInteger waiter, ThreadPoolExecutor executor) throws Exception {
+                                         AtomicInteger waiter, Executor executor) throws Exception {
         Class<?> clazz = Class.forName(REQUESTOR_CLASS);
         Constructor<?> ctor = clazz.getDeclaredConstructor(Socket.class, I2PSocket.class, String.class,
                                                            I2PAppContext.class, Log.class, boolean.class,
-                                                           boolean.class, ThreadPoolExecutor.class,
+                                                           boolean.class, Executor.class,
                                                            boolean.class, AtomicInteger.class);
         ctor.setAccessible(true);
         return (Runnable) ctor.newInstance(webserver, browser, headers, CTX, LOG, compress, upgrade,
@@ -0,0 +1,314 @@
+package net.i2p.i2ptunnel;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import net.i2p.I2PAppContext;
+import net.i2p.client.streaming.I2PSocket;
+import net.i2p.client.streaming.I2PSocketOptions;
+import net.i2p.data.Destination;
+import net.i2p.util.Log;
+
+import org.junit.Test;
+
+/**
+ * Tests the store and request policy and the LRU eviction of CompressedResponseCache,
+ * and storing, sending, and revalidating through the private CompressedRequestor.
+ *
+ * @since 0.9.71+
+ */
+public class CompressedResponseCacheTest {
+    private static final I2PAppContext CTX = I2PAppContext.getGlobalContext();
+    private static final Log LOG = new Log(CompressedResponseCacheTest.class);
+    private static final String REQUESTOR_CLASS = I2PTunnelHTTPServer.class.getName() + "$CompressedRequestor";
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Type: text/html\r\n";
+
+    /** I2PSocket stub for the browser side, capture output */
+    private static class BrowserSocket implements I2PSocket {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        public InputStream getInputStream() {return new ByteArrayInputStream(new byte[0]);}
+        public OutputStream getOutputStream() {return out;}
+        public void reset() {}
+        public void close() {}
+        public void setReadTimeout(long ms) {}
+        public long getReadTimeout() {return -1;}
+        public int getLocalPort() {return 80;}
+        public int getPort() {return 0;}
+        public boolean isClosed() {return false;}
+        public Destination getPeerDestination() {return null;}
+        public Destination getThisDestination() {return null;}
+        public I2PSocketOptions getOptions() {return null;}
+        public void setOptions(I2PSocketOptions options) {}
+        public void setSocketErrorListener(SocketErrorListener lsnr) {}
+    }
+
+    private static Map<String, List<String>> headers(String... kv) {
+        Map<String, List<String>> rv = new HashMap<String, List<String>>();
+        for (int i = 0; i < kv.length; i += 2) {
+            List<String> l = new ArrayList<String>(1);
+            l.add(kv[i + 1]);
+            rv.put(kv[i], l);
+        }
+        return rv;
+    }
+
+    private static CompressedResponseCache.Entry entry(String cc, int bodySize) {
+        CompressedResponseCache.Entry rv = CompressedResponseCache.newEntry(OK + "ETag: \"1\"", cc, false);
+        assertNotNull(rv);
+        rv.body = new byte[bodySize];
+        return rv;
+    }
+
+    @Test
+    public void testGetKey() {
+        assertEquals("x.i2p /a.css", CompressedResponseCache.getKey("GET /a.css HTTP/1.1", headers("Host", "X.i2p")));
+        assertNull(CompressedResponseCache.getKey("POST /a HTTP/1.1", headers("Host", "x.i2p")));
+        assertNull(CompressedResponseCache.getKey("HEAD /a HTTP/1.1", headers("Host", "x.i2p")));
+        assertNull(CompressedResponseCache.getKey("GET /a HTTP/1.1", headers("Host", "x.i2p", "Range", "bytes=0-9")));
+        assertNull(CompressedResponseCache.getKey("GET /a HTTP/1.1", headers("Host", "x.i2p", "If-None-Match", "\"1\"")));
+        assertNull(CompressedResponseCache.getKey("GET /a HTTP/1.1", headers("Host", "x.i2p", "Cache-Control", "no-store")));
+        assertTrue(CompressedResponseCache.hasCredentials(headers("cookie", "a=b")));
+        assertTrue(CompressedResponseCache.isNoCache(headers("Cache-Control", "max-age=0")));
+        assertTrue(CompressedResponseCache.isNoCache(headers("Pragma", "no-cache")));
+        assertFalse(CompressedResponseCache.isNoCache(headers("Cache-Control", "max-age=60")));
+    }
+
+    @Test
+    public void testNewEntry() {
+        assertNull(CompressedResponseCache.newEntry("HTTP/1.1 404 Not Found\r\nETag: \"1\"", null, false));
+        // no validator and no lifetime
+        assertNull(CompressedResponseCache.newEntry(OK + "Content-Length: 10", null, false));
+        assertNotNull(CompressedResponseCache.newEntry(OK + "Content-Length: 10", "max-age=60", false));
+        // our default for the browser is ignored, only the webserver's counts
+        assertNotNull(CompressedResponseCache.newEntry(OK + "ETag: \"1\"\r\nCache-Control: private, no-cache", null, false));
+        assertNull(CompressedResponseCache.newEntry(OK + "ETag: \"1\"", "private", false));
+        assertNull(CompressedResponseCache.newEntry(OK + "ETag: \"1\"", "no-store", false));
+        assertNull(CompressedResponseCache.newEntry(OK + "ETag: \"1\"\r\nSet-Cookie: a=b", null, false));
+        assertNull(CompressedResponseCache.newEntry(OK + "ETag: \"1\"\r\nVary: User-Agent", null, false));
+        assertNotNull(CompressedResponseCache.newEntry(OK + "ETag: \"1\"\r\nVary: Accept-Encoding", null, false));
+        // credentials need public or s-maxage
+        assertNull(CompressedResponseCache.newEntry(OK + "ETag: \"1\"", null, true));
+        CompressedResponseCache.Entry e = CompressedResponseCache.newEntry(OK + "ETag: \"1\"", "public, max-age=60", true);
+        assertNotNull(e);
+        assertTrue(e.isPublic);
+        assertEquals(60*1000, e.lifetime);
+        e = CompressedResponseCache.newEntry(OK + "Last-Modified: x", "max-age=60, s-maxage=5", false);
+        assertEquals(5*1000, e.lifetime);
+        assertEquals("x", e.lastModified);
+        assertNull(e.etag);
+    }
+
+    @Test
+    public void testFreshnessAndCredentials() {
+        CompressedResponseCache cache = new CompressedResponseCache(100*1024);
+        CompressedResponseCache.Entry e = entry("max-age=10", 100);
+        cache.put("k", e, 1000);
+        assertSame(e, cache.get("k", false));
+        assertNull(cache.get("k", true));
+        assertTrue(e.isFresh(10999));
+        assertFalse(e.isFresh(11000));
+        cache.revalidated("k", e, "max-age=20", 20000);
+        assertTrue(e.isFresh(39999));
+        cache.revalidated("k", e, "no-store", 20000);
+        assertNull(cache.get("k", false));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() {
+        CompressedResponseCache cache = new CompressedResponseCache(40*1024);
+        // too big, over a quarter of the cache
+        cache.put("big", entry(null, 11*1024), 0);
+        assertEquals(0, cache.getCount());
+        for (int i = 0; i < 4; i++) {
+            cache.put("k" + i, entry(null, 9*1024), 0);
+        }
+        assertEquals(4, cache.getCount());
+        // touch k0 so k1 is the eldest
+        assertNotNull(cache.get("k0", false));
+        cache.put("k4", entry(null, 9*1024), 0);
+        assertEquals(4, cache.getCount());
+        assertNull(cache.get("k1", false));
+        assertNotNull(cache.get("k0", false));
+        assertTrue(cache.getSize() <= 40*1024);
+        cache.setMaxSize(20*1024);
+        assertTrue(cache.getSize() <= 20*1024);
+        assertNotNull(cache.get("k4", false));
+        cache.clear();
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    ////// Through CompressedRequestor //////
+
+    /** like java.util.function.Consumer but throws */
+    private interface ThrowingConsumer<T> {
+        void accept(T t) throws Throwable;
+    }
+
+    /** Construct the private CompressedRequestor via reflection */
+    private static Runnable newRequestor(Socket webserver, BrowserSocket browser, String headers, Executor executor,
+                                         CompressedResponseCache cache, String key,
+                                         CompressedResponseCache.Entry cached) throws Exception {
+        Class<?> clazz = Class.forName(REQUESTOR_CLASS);
+        Constructor<?> ctor = clazz.getDeclaredConstructor(Socket.class, I2PSocket.class, String.class,
+                                                           I2PAppContext.class, Log.class, boolean.class,
+                                                           boolean.class, Executor.class,
+                                                           boolean.class, AtomicInteger.class,
+                                                           CompressedResponseCache.class, String.class,
+                                                           boolean.class, CompressedResponseCache.Entry.class);
+        ctor.setAccessible(true);
+        return (Runnable) ctor.newInstance(webserver, browser, headers, CTX, LOG, true, false,
+                                           executor, true, new AtomicInteger(), cache, key, false, cached);
+    }
+
+    /** Run a requestor against a webserver thread that handles one connection */
+    private static void run(BrowserSocket browser, CompressedResponseCache cache, String key,
+                            CompressedResponseCache.Entry cached,
+                            final ThrowingConsumer<Socket> handler) throws Exception {
+        final AtomicReference<Throwable> err = new AtomicReference<Throwable>();
+        final ServerSocket ss = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread server = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Socket s = ss.accept();
+                    handler.accept(s);
+                } catch (Throwable t) {
+                    err.set(t);
+                }
+            }
+        });
+        server.start();
+        Socket webserver = new Socket(InetAddress.getLoopbackAddress(), ss.getLocalPort());
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            newRequestor(webserver, browser, "GET /a HTTP/1.1\r\nHost: x.i2p\r\n\r\n", executor, cache, key, cached).run();
+        } finally {
+            executor.shutdownNow();
+            webserver.close();
+            ss.close();
+        }
+        server.join(10000);
+        if (err.get() != null)
+            throw new AssertionError("server thread failed", err.get());
+    }
+
+    private static void readRequest(InputStream in) throws IOException {
+        int last = 0;
+        int c;
+        while (last != 0x0d0a0d0a && (c = in.read()) != -1) {
+            last = (last << 8) | c;
+        }
+    }
+
+    private static byte[] gunzipBody(byte[] response) throws IOException {
+        String text = new String(response, StandardCharsets.ISO_8859_1);
+        int start = text.indexOf("\r\n\r\n");
+        assertTrue("no header terminator", start >= 0);
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(response, start + 4, response.length - start - 4));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = in.read(buf)) != -1) {out.write(buf, 0, n);}
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testStoreSendRevalidate() throws Exception {
+        CompressedResponseCache cache = new CompressedResponseCache(1024*1024);
+        final byte[] body = new byte[4000];
+        Arrays.fill(body, (byte) 'a');
+
+        // miss, stored
+        BrowserSocket browser = new BrowserSocket();
+        run(browser, cache, "x.i2p /a", null, new ThrowingConsumer<Socket>() {
+            public void accept(Socket s) throws Throwable {
+                readRequest(s.getInputStream());
+                s.getOutputStream().write((OK + "ETag: \"1\"\r\nContent-Length: 4000\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                s.getOutputStream().write(body);
+                s.close();
+            }
+        });
+        byte[] first = browser.out.toByteArray();
+        assertArrayEquals(body, gunzipBody(first));
+        CompressedResponseCache.Entry e = cache.get("x.i2p /a", false);
+        assertNotNull(e);
+        assertTrue(e.body.length < body.length);
+
+        // sent from the cache without a webserver
+        browser = new BrowserSocket();
+        newRequestor(null, browser, null, null, cache, "x.i2p /a", e).run();
+        assertArrayEquals(first, browser.out.toByteArray());
+
+        // revalidated
+        browser = new BrowserSocket();
+        run(browser, cache, "x.i2p /a", e, new ThrowingConsumer<Socket>() {
+            public void accept(Socket s) throws Throwable {
+                readRequest(s.getInputStream());
+                s.getOutputStream().write("HTTP/1.1 304 Not Modified\r\nETag: \"1\"\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                s.close();
+            }
+        });
+        assertArrayEquals(first, browser.out.toByteArray());
+        assertSame(e, cache.get("x.i2p /a", false));
+    }
+
+    @Test
+    public void testIncompleteNotStored() throws Exception {
+        CompressedResponseCache cache = new CompressedResponseCache(1024*1024);
+        BrowserSocket browser = new BrowserSocket();
+        run(browser, cache, "x.i2p /a", null, new ThrowingConsumer<Socket>() {
+            public void accept(Socket s) throws Throwable {
+                readRequest(s.getInputStream());
+                byte[] partial = new byte[2000];
+                Arrays.fill(partial, (byte) 'a');
+                s.getOutputStream().write((OK + "ETag: \"1\"\r\nContent-Length: 4000\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                s.getOutputStream().write(partial);
+                s.close();
+            }
+        });
+        assertEquals(0, cache.getCount());
+    }
+
+    @Test
+    public void testWithoutContentLengthNotStored() throws Exception {
+        CompressedResponseCache cache = new CompressedResponseCache(1024*1024);
+        BrowserSocket browser = new BrowserSocket();
+        final byte[] body = new byte[4000];
+        Arrays.fill(body, (byte) 'a');
+        // close-delimited, a truncated one would look the same
+        run(browser, cache, "x.i2p /a", null, new ThrowingConsumer<Socket>() {
+            public void accept(Socket s) throws Throwable {
+                readRequest(s.getInputStream());
+                s.getOutputStream().write((OK + "ETag: \"1\"\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                s.getOutputStream().write(body);
+                s.close();
+            }
+        });
+        assertArrayEquals(body, gunzipBody(browser.out.toByteArray()));
+        assertEquals(0, cache.getCount());
+    }
+}
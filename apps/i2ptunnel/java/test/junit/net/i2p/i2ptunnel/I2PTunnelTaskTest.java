@@ -0,0 +1,69 @@
+package net.i2p.i2ptunnel;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the runner thread count and connect time metrics of I2PTunnelTask.
+ *
+ * @since 0.9.71+
+ */
+public class I2PTunnelTaskTest {
+
+    private static class TestTask extends I2PTunnelTask {
+        TestTask() {super("test", null, null);}
+
+        public boolean close(boolean forced) {return true;}
+    }
+
+    @Test
+    public void testCountThreads() throws InterruptedException {
+        TestTask task = new TestTask();
+        assertNull(task.countThreads(null));
+        ThreadPoolExecutor tpe = new TunnelControllerGroup.CustomThreadPoolExecutor();
+        try {
+            Executor exec = task.countThreads(tpe);
+            final CountDownLatch started = new CountDownLatch(2);
+            final CountDownLatch release = new CountDownLatch(1);
+            Runnable r = new Runnable() {
+                public void run() {
+                    started.countDown();
+                    try {release.await();}
+                    catch (InterruptedException ie) {}
+                }
+            };
+            exec.execute(r);
+            exec.execute(r);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertEquals(2, task.getRunnerThreads());
+            release.countDown();
+            long end = System.currentTimeMillis() + 10*1000;
+            while (task.getRunnerThreads() > 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, task.getRunnerThreads());
+        } finally {
+            tpe.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConnectTime() {
+        TestTask task = new TestTask();
+        assertEquals(-1, task.getConnectTime());
+        task.addConnectTime(800);
+        assertEquals(800, task.getConnectTime());
+        task.addConnectTime(0);
+        assertEquals(700, task.getConnectTime());
+        for (int i = 0; i < 100; i++) {
+            task.addConnectTime(200);
+        }
+        assertEquals(200, task.getConnectTime(), 8);
+    }
+}
@@ -29,6 +29,23 @@ public interface I2PSocketOptions {
      *  @since 0.9.66 promoted from ConnectionOptions
      */
     public static final int PROFILE_INTERACTIVE = 2;
+    /**
+     *  If set, the congestion control for the socket.
+     *  One of the CONGESTION_CONTROL_ constants below.
+     *  @since 0.9.71+
+     */
+    public static final String PROP_CONGESTION_CONTROL = "i2p.streaming.congestionControl";
+    /**
+     *  Loss based congestion control, halving the window on loss (default).
+     *  @since 0.9.71+
+     */
+    public static final String CONGESTION_CONTROL_RENO = "reno";
+    /**
+     *  Delay based congestion control, sizing the window to the bandwidth-delay product.
+     *  Better for bulk transfers over lossy, high latency tunnels.
+     *  @since 0.9.71+
+     */
+    public static final String CONGESTION_CONTROL_BBR = "bbr";
     /**
      * How long we will wait for the ACK from a SYN, in milliseconds.
      *
@@ -213,6 +213,11 @@ public class SybilRenderer {
         if (mode == 1 || mode == 8 || mode == 9 || mode == 10 || mode == 11) {
             avgMinDist = analysis.getAvgMinDist(ris);
         }
+        // bucket the routers once for the IP and family groups
+        Analysis.Buckets buckets = null;
+        if ((mode >= 2 && mode <= 6) || mode == 17 || mode == 18) {
+            buckets = new Analysis.Buckets(ris);
+        }
         Map<Hash, Points> points = new HashMap<>(64);
 
         if (mode == 0) {
@@ -220,19 +225,19 @@ public class SybilRenderer {
         } else if (mode == 1) {
             renderFFSummary(out, buf, ris, avgMinDist);
         } else if (mode == 2) {
-            renderFamilySummary(out, buf, analysis, ris, points);
+            renderFamilySummary(out, buf, analysis, buckets, points);
         } else if (mode == 3) {
-            renderIPUsSummary(out, buf, analysis, ris, points);
+            renderIPUsSummary(out, buf, analysis, buckets, points);
         } else if (mode == 4) {
-            renderIP32Summary(out, buf, analysis, ris, points);
+            renderIP32Summary(out, buf, analysis, buckets, points);
         } else if (mode == 5) {
-            renderIP24Summary(out, buf, analysis, ris, points);
+            renderIP24Summary(out, buf, analysis, buckets, points);
         } else if (mode == 6) {
-            renderIP16Summary(out, buf, analysis, ris, points);
+            renderIP16Summary(out, buf, analysis, buckets, points);
         } else if (mode == 17) {
-            renderIP64Summary(out, buf, analysis, ris, points);
+            renderIP64Summary(out, buf, analysis, buckets, points);
         } else if (mode == 18) {
-            renderIP48Summary(out, buf, analysis, ris, points);
+            renderIP48Summary(out, buf, analysis, buckets, points);
         } else if (mode == 7) {
             renderPairSummary(out, buf, analysis, ris, points);
         } else if (mode == 8) {
@@ -458,8 +463,8 @@ public class SybilRenderer {
      *
      *  @since 0.9.38 split out from renderRouterInfoHTML()
      */
-    private void renderFamilySummary(Writer out, StringBuilder buf, Analysis analysis, List<RouterInfo> ris, Map<Hash, Points> points) throws IOException {
-        Map<String, List<RouterInfo>> fmap = analysis.calculateIPGroupsFamily(ris, points);
+    private void renderFamilySummary(Writer out, StringBuilder buf, Analysis analysis, Analysis.Buckets buckets, Map<Hash, Points> points) throws IOException {
+        Map<String, List<RouterInfo>> fmap = analysis.calculateIPGroupsFamily(buckets, points);
         renderIPGroupsFamily(out, buf, fmap);
     }
 
@@ -468,13 +473,13 @@ public class SybilRenderer {
      *
      *  @since 0.9.38 split out from renderRouterInfoHTML()
      */
-    private void renderIPUsSummary(Writer out, StringBuilder buf, Analysis analysis, List<RouterInfo> ris, Map<Hash, Points> points) throws IOException {
+    private void renderIPUsSummary(Writer out, StringBuilder buf, Analysis analysis, Analysis.Buckets buckets, Map<Hash, Points> points) throws IOException {
         List<RouterInfo> ri32 = new ArrayList<>(4);
         List<RouterInfo> ri24 = new ArrayList<>(4);
         List<RouterInfo> ri16 = new ArrayList<>(4);
         List<RouterInfo> ri64 = new ArrayList<>(4);
         List<RouterInfo> ri48 = new ArrayList<>(4);
-        analysis.calculateIPGroupsUs(ris, points, ri32, ri24, ri16, ri64, ri48);
+        analysis.calculateIPGroupsUs(buckets, points, ri32, ri24, ri16, ri64, ri48);
         renderIPGroupsUs(out, buf, ri32, ri24, ri16, ri64, ri48);
     }
 
@@ -483,8 +488,8 @@ public class SybilRenderer {
      *
      *  @since 0.9.38 split out from renderRouterInfoHTML()
      */
-    private void renderIP32Summary(Writer out, StringBuilder buf, Analysis analysis, List<RouterInfo> ris, Map<Hash, Points> points) throws IOException {
-        Map<Integer, List<RouterInfo>> map = analysis.calculateIPGroups32(ris, points);
+    private void renderIP32Summary(Writer out, StringBuilder buf, Analysis analysis, Analysis.Buckets buckets, Map<Hash, Points> points) throws IOException {
+        Map<Integer, List<RouterInfo>> map = analysis.calculateIPGroups32(buckets, points);
         renderIPGroups32(out, buf, map);
     }
 
@@ -493,8 +498,8 @@ public class SybilRenderer {
      *
      *  @since 0.9.38 split out from renderRouterInfoHTML()
      */
-    private void renderIP24Summary(Writer out, StringBuilder buf, Analysis analysis, List<RouterInfo> ris, Map<Hash, Points> points) throws IOException {
-        Map<Integer, List<RouterInfo>> map = analysis.calculateIPGroups24(ris, points);
+    private void renderIP24Summary(Writer out, StringBuilder buf, Analysis analysis, Analysis.Buckets buckets, Map<Hash, Points> points) throws IOException {
+        Map<Integer, List<RouterInfo>> map = analysis.calculateIPGroups24(buckets, points);
         renderIPGroups24(out, buf, map);
     }
 
@@ -503,8 +508,8 @@ public class SybilRenderer {
      *
      *  @since 0.9.38 split out from renderRouterInfoHTML()
      */
-    private void renderIP16Summary(Writer out, StringBuilder buf, Analysis analysis, List<RouterInfo> ris, Map<Hash, Points> points) throws IOException {
-        Map<Integer, List<RouterInfo>> map = analysis.calculateIPGroups16(ris, points);
+    private void renderIP16Summary(Writer out, StringBuilder buf, Analysis analysis, Analysis.Buckets buckets, Map<Hash, Points> points) throws IOException {
+        Map<Integer, List<RouterInfo>> map = analysis.calculateIPGroups16(buckets, points);
         renderIPGroups16(out, buf, map);
     }
 
@@ -513,8 +518,8 @@ public class SybilRenderer {
      *
      *  @since 0.9.57
      */
-    private void renderIP64Summary(Writer out, StringBuilder buf, Analysis analysis, List<RouterInfo> ris, Map<Hash, Points> points) throws IOException {
-        Map<Long, List<RouterInfo>> map = analysis.calculateIPGroups64(ris, points);
+    private void renderIP64Summary(Writer out, StringBuilder buf, Analysis analysis, Analysis.Buckets buckets, Map<Hash, Points> points) throws IOException {
+        Map<Long, List<RouterInfo>> map = analysis.calculateIPGroups64(buckets, points);
         renderIPGroups64(out, buf, map);
     }
 
@@ -523,8 +528,8 @@ public class SybilRenderer {
      *
      *  @since 0.9.57
      */
-    private void renderIP48Summary(Writer out, StringBuilder buf, Analysis analysis, List<RouterInfo> ris, Map<Hash, Points> points) throws IOException {
-        Map<Long, List<RouterInfo>> map = analysis.calculateIPGroups48(ris, points);
+    private void renderIP48Summary(Writer out, StringBuilder buf, Analysis analysis, Analysis.Buckets buckets, Map<Hash, Points> points) throws IOException {
+        Map<Long, List<RouterInfo>> map = analysis.calculateIPGroups48(buckets, points);
         renderIPGroups48(out, buf, map);
     }
 
@@ -244,6 +244,9 @@
 <tr class=config><th>router.networkDatabase.flat={true|false}</th></tr>
 <tr><td><%=intl._t("When set to true, the router info files stored in your profile's netDB directory will not be split into 64 sub-directories. [Default is false]")%></td></tr>
 
+<tr class=config><th>router.networkDatabase.segments={true|false} <span class=plus>I2P+</span></th></tr>
+<tr><td><%=intl._t("When set to true, router infos are appended to a few large segment files in the netDb/segments directory instead of being stored one file per router, and existing files are moved into the segments when read. This speeds up startup and reduces disk activity on routers with a large NetDb. [Default is false; restart required]")%></td></tr>
+
 <tr class=config><th>router.overrideIsSlow={true|false} <span class=plus>I2P+</span></th></tr>
 <tr><td><%=intl._t("When set to true, your router will not be classified as slow, regardless of the specifications of your host system. Ordinarily, routers running on hosts with the following characteristics will be classified as slow, and various performance-related router options will be modified accordingly:")%>
 <ul>
@@ -523,6 +526,9 @@
 <tr class=config><th>i2p.streaming.answerPings={true|false}</th></tr>
 <tr><td><%=intl._t("This tunnel-specific setting allows you to enable or disable replies to pings sent to servers hosted by the router. To disable pings, you must add the line <code>i2p.streaming.answerPings=false</code> to the <i>Custom Options</i> section for the server's configuration in the Tunnel Manager.")%></td></tr>
 
+<tr class=config><th>i2p.streaming.congestionControl={reno|bbr} <span class=plus>I2P+</span></th></tr>
+<tr><td><%=intl._t("Congestion control for streaming connections. Reno shrinks the window on every loss, which keeps it small on tunnels with some random loss and a long RTT. BBR sizes the window from the measured bandwidth and minimum RTT and does not back off on isolated losses. May be set per tunnel in the <i>Custom Options</i> section of the Tunnel Manager. [Default is reno]")%></td></tr>
+
 <tr class=config><th>i2p.streaming.defaultStreamDelayMax={n} <span class=plus>I2P+</span></th></tr>
 <tr><td><%=intl._t("Default maximum stream delay in milliseconds when no explicit connect timeout is set. [Default is 10000 (10 seconds)]")%></td></tr>
 
@@ -590,8 +596,14 @@
 <tr class=config><th>i2cp.disableLoopback={true|false}</th></tr>
 <tr><td><%=intl._t("When set to true, disables local-local loopback delivery and forces all traffic through tunnels (outbound tunnel → network → inbound tunnel → local destination). Useful for testing tunnel routing behavior when the source and destination are on the same router. [Disabled by default]")%></td></tr>
 
+<tr class=config><th>i2cp.nio={true|false} <span class=plus>I2P+</span></th></tr>
+<tr><td><%=intl._t("When set to true, external I2CP clients are served by a single selector thread and a small shared reader pool, instead of a reader and a writer thread per client. Useful with SAM bridges or many tunnels. Not used when i2cp.SSL is enabled. Requires a router restart. [Disabled by default]")%></td></tr>
+
 <tr class=section><th>I2NP</th></tr>
 
+<tr class=config><th>crypto.chachaPoly.useJCE={true|false} <span class=plus>I2P+</span></th></tr>
+<tr><td><%=intl._t("When set to true, the NTCP2 and SSU2 data phase is encrypted with the ChaCha20-Poly1305 implementation built into Java, if available, which uses vector instructions on Java 20 and later. When false, I2P's own implementation is used. [Default is true on Java 21 or later, restart required]")%></td></tr>
+
 <tr class=config><th>i2np.blockMyCountry={true|false} <span class=plus>I2P+</span></th></tr>
 <tr><td><%=intl._t("This setting, when set to true, will block direct communication from all routers in your own country and add them to your banlist until your router restarts. [Default is false, or true if router is in hidden mode]")%></td></tr>
 
@@ -35,6 +35,7 @@ import net.i2p.util.Log;
 import net.i2p.util.OrderedProperties;
 import net.i2p.util.PortMapper;
 import net.i2p.util.SimpleTimer2;
+import net.i2p.util.VirtualThreads;
 import java.io.Writer;
 
 /**
@@ -96,6 +97,12 @@ public class SAMBridge implements Runnable, ClientApp {
     public static final String PROP_PW_PREFIX = "sam.auth.";
     /** Property suffix for SAM password hash entries. */
     public static final String PROP_PW_SUFFIX = ".shash";
+    /**
+     * Property to run stream data forwarding on virtual threads,
+     * default true, only used on Java 24+, see VirtualThreads.
+     * @since 0.9.71+
+     */
+    public static final String PROP_VIRTUAL_THREADS = "sam.virtualThreads";
     /** Default listen address for the SAM TCP socket. */
     protected static final String DEFAULT_TCP_HOST = "127.0.0.1";
     /** Default port for the SAM TCP socket. */
@@ -368,6 +375,15 @@ public class SAMBridge implements Runnable, ClientApp {
         return _handlerPool;
     }
 
+    /**
+     * @return true to run stream pipes and accepts on virtual threads
+     * @since 0.9.71+
+     */
+    boolean useVirtualThreads() {
+        return VirtualThreads.isSupported() &&
+               !"false".equals(i2cpProps.getProperty(PROP_VIRTUAL_THREADS));
+    }
+
     /**
      * @return number of registered streams from SessionsDB, or 0 if null
      * @since 0.9.70+
@@ -15,6 +15,7 @@ import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SocketChannel;
@@ -31,11 +32,14 @@ import net.i2p.client.streaming.I2PServerSocket;
 import net.i2p.client.streaming.I2PSocket;
 import net.i2p.client.streaming.I2PSocketManager;
 import net.i2p.client.streaming.I2PSocketOptions;
+import net.i2p.data.ByteArray;
 import net.i2p.data.DataFormatException;
 import net.i2p.data.Destination;
+import net.i2p.util.ByteCache;
 import net.i2p.util.I2PAppThread;
 import net.i2p.util.I2PSSLSocketFactory;
 import net.i2p.util.Log;
+import net.i2p.util.VirtualThreads;
 
 /**
  * SAMv3 STREAM session class.
@@ -44,7 +48,9 @@ import net.i2p.util.Log;
  */
 class SAMv3StreamSession extends SAMStreamSession implements Session {
 
-    private static final int BUFFER_SIZE = 1024;
+    /** holds a full streaming packet */
+    private static final int BUFFER_SIZE = 4096;
+    private static final ByteCache _bufferCache = ByteCache.getInstance(64, BUFFER_SIZE);
     private static final int MAX_ACCEPT_QUEUE = 64;
 
     private final Object socketServerLock = new Object();
@@ -244,17 +250,7 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
                 handler.notifyStreamResult(verbose, "OK", null);
                 handler.stealSocket();
 
-                ReadableByteChannel fromClient = handler.getClientSocket();
-                // NOSONAR channel ownership transferred to the Pipe thread, which closes it in its finally block
-                ReadableByteChannel fromI2P = Channels.newChannel(i2ps.getInputStream());
-                WritableByteChannel toClient = handler.getClientSocket();
-                // NOSONAR channel ownership transferred to the Pipe thread, which closes it in its finally block
-                WritableByteChannel toI2P = Channels.newChannel(i2ps.getOutputStream());
-
-                rec.startThread(new I2PAppThread(
-                    new Pipe(fromClient, toI2P, bridge, nick), "SAM-Pipe-C2I"));
-                rec.startThread(new I2PAppThread(
-                    new Pipe(fromI2P, toClient, bridge, nick), "SAM-Pipe-I2C"));
+                startPipes(rec, handler.getClientSocket(), i2ps, bridge, "SAM-Pipe", bridge.useVirtualThreads());
             } catch (NoRouteToHostException e) {
                 _log.log(Log.INFO, "STREAM CONNECT: NoRouteToHostException to [" + hashPrefix + "]: " + e.getMessage());
                 reportError("CANT_REACH_PEER", e);
@@ -323,7 +319,7 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
         _acceptors.incrementAndGet();
         final SAMv3Handler fHandler = handler;
         final boolean fVerbose = verbose;
-        rec.startThread(new I2PAppThread(new Runnable() {
+        rec.startThread(VirtualThreads.newThread(new Runnable() {
             /**
              * run.
              */
@@ -335,7 +331,7 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
                     _acceptors.decrementAndGet();
                 }
             }
-        }, "SAM-Acc-" + truncNick(nick)));
+        }, "SAM-Acc-" + truncNick(nick), handler.getBridge().useVirtualThreads()));
     }
 
     /**
@@ -360,18 +356,8 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
                 handler.notifyStreamIncomingConnection(i2ps.getPeerDestination(), i2ps.getPort(), i2ps.getLocalPort());
             handler.stealSocket();
 
-            ReadableByteChannel fromClient = handler.getClientSocket();
-            // NOSONAR channel ownership transferred to the Pipe thread, which closes it in its finally block
-            ReadableByteChannel fromI2P = Channels.newChannel(i2ps.getInputStream());
-            WritableByteChannel toClient = handler.getClientSocket();
-            // NOSONAR channel ownership transferred to the Pipe thread, which closes it in its finally block
-            WritableByteChannel toI2P = Channels.newChannel(i2ps.getOutputStream());
-
             SAMBridge bridge = handler.getBridge();
-            rec.startThread(new I2PAppThread(
-                new Pipe(fromClient, toI2P, bridge, nick), "SAM-Pipe-C2I"));
-            rec.startThread(new I2PAppThread(
-                new Pipe(fromI2P, toClient, bridge, nick), "SAM-Pipe-I2C"));
+            startPipes(rec, handler.getClientSocket(), i2ps, bridge, "SAM-Pipe", bridge.useVirtualThreads());
         } catch (ConnectException e) {
             if (_log.shouldWarn()) _log.warn("Accept error", e);
             try {
@@ -430,7 +416,8 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
             this.socketServer = this.socketMgr.getServerSocket();
         }
 
-        SocketForwarder forwarder = new SocketForwarder(host, port, isSSL, verbose, sendPorts);
+        boolean virtual = rec.getHandler().getBridge().useVirtualThreads();
+        SocketForwarder forwarder = new SocketForwarder(host, port, isSSL, verbose, sendPorts, virtual);
         rec.startThread(new I2PAppThread(forwarder, "SAM-StreamFwd"));
     }
 
@@ -443,13 +430,15 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
         private final boolean isSSL;
         private final boolean verbose;
         private final boolean sendPorts;
+        private final boolean virtual;
 
-        SocketForwarder(String host, int port, boolean isSSL, boolean verbose, boolean sendPorts) {
+        SocketForwarder(String host, int port, boolean isSSL, boolean verbose, boolean sendPorts, boolean virtual) {
             this.host = host;
             this.port = port;
             this.verbose = verbose;
             this.sendPorts = sendPorts;
             this.isSSL = isSSL;
+            this.virtual = virtual;
         }
 
         /**
@@ -528,14 +517,7 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
                             SAMv3Handler.notifyStreamIncomingConnection(clientServerSock, i2ps.getPeerDestination());
                         }
                     }
-                    ReadableByteChannel fromClient = clientServerSock;
-                    // NOSONAR channel ownership transferred to the Pipe thread, which closes it in its finally block
-                    ReadableByteChannel fromI2P = Channels.newChannel(i2ps.getInputStream());
-                    WritableByteChannel toClient = clientServerSock;
-                    // NOSONAR channel ownership transferred to the Pipe thread, which closes it in its finally block
-                    WritableByteChannel toI2P = Channels.newChannel(i2ps.getOutputStream());
-                    (new I2PAppThread(new Pipe(fromClient, toI2P, null, nick), "SAM-PipeFwd-C2I")).start();
-                    (new I2PAppThread(new Pipe(fromI2P, toClient, null, nick), "SAM-PipeFwd-I2C")).start();
+                    startPipes(null, clientServerSock, i2ps, null, "SAM-PipeFwd", virtual);
 
                 } catch (IOException e) {
                     try {
@@ -550,9 +532,40 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
         }
     }
 
+    /**
+     *  Start the two pipes between a client socket and an I2P socket.
+     *
+     *  On virtual threads if requested and supported, so a stream costs no
+     *  platform threads; the blocking reads and writes of each pipe
+     *  park the virtual thread, and a full I2P window or client socket
+     *  stops reading from the other side.
+     *
+     *  @param rec to track the threads, may be null
+     *  @param bridge may be null
+     *  @param virtual use virtual threads if supported
+     *  @since 0.9.71+
+     */
+    private void startPipes(SessionRecord rec, ByteChannel client, I2PSocket i2ps,
+                            SAMBridge bridge, String name, boolean virtual) throws IOException {
+        // NOSONAR channel ownership transferred to the Pipe thread, which closes it in its finally block
+        ReadableByteChannel fromI2P = Channels.newChannel(i2ps.getInputStream());
+        // NOSONAR channel ownership transferred to the Pipe thread, which closes it in its finally block
+        WritableByteChannel toI2P = Channels.newChannel(i2ps.getOutputStream());
+        Thread c2i = VirtualThreads.newThread(new Pipe(client, toI2P, bridge, nick), name + "-C2I", virtual);
+        Thread i2c = VirtualThreads.newThread(new Pipe(fromI2P, client, bridge, nick), name + "-I2C", virtual);
+        if (rec != null) {
+            rec.startThread(c2i);
+            rec.startThread(i2c);
+        } else {
+            c2i.start();
+            i2c.start();
+        }
+    }
+
     private static class Pipe implements Runnable, Handler {
         private final ReadableByteChannel in;
         private final WritableByteChannel out;
+        private final ByteArray ba;
         private final ByteBuffer buf;
         private final SAMBridge bridge;
         private final String nick;
@@ -572,7 +585,8 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
         public Pipe(ReadableByteChannel in, WritableByteChannel out, SAMBridge bridge, String nick) {
             this.in = in;
             this.out = out;
-            this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+            this.ba = _bufferCache.acquire();
+            this.buf = ByteBuffer.wrap(ba.getData());
             this.bridge = bridge;
             this.nick = nick;
             this.lastTouch = System.currentTimeMillis();
@@ -611,6 +625,7 @@ class SAMv3StreamSession extends SAMStreamSession implements Session {
                 try {
                     out.close();
                 } catch (IOException e) { /* ignored */ }
+                _bufferCache.release(ba, false);
                 if (bridge != null) bridge.unregister(this);
             }
         }
@@ -0,0 +1,174 @@
+package net.i2p.client.streaming.impl;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.BandwidthEstimator;
+import net.i2p.util.Log;
+
+/**
+ *  A delay based congestion control in the style of BBR,
+ *  sizing the window to the estimated bandwidth-delay product rather than
+ *  backing off on every loss.
+ *
+ *  Tunnels have a high and variable RTT and some random loss,
+ *  which keeps a loss based window far below what the path can carry.
+ *  Here a loss only caps the window at twice the estimated BDP.
+ *
+ *  The bandwidth is the Westwood+ estimate from SimpleBandwidthEstimator,
+ *  and the propagation delay is the lowest smoothed RTT over the last 10 seconds,
+ *  as the tunnels and so the path change every 10 minutes.
+ *  There is no pacing gain, as pacing follows the window (see Connection.updatePacingRate()),
+ *  so the BBR gain cycle is applied to the window instead.
+ *
+ *  Ref: BBR: Congestion-Based Congestion Control, Cardwell et al.
+ *
+ *  @since 0.9.71+
+ */
+class BBRCongestionController implements CongestionController {
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final ConnectionOptions _options;
+    private final BandwidthEstimator _bwEstimator;
+
+    private int _mode;
+    /** packets/ms */
+    private float _fullBw;
+    private int _fullBwCount;
+    private int _cycleIndex;
+    private long _roundStart;
+    private int _rtProp;
+    private long _rtPropStamp;
+    private volatile int _ssthresh;
+
+    private static final int STARTUP = 0;
+    private static final int DRAIN = 1;
+    private static final int PROBE_BW = 2;
+    private static final String[] MODES = { "startup", "drain", "probe" };
+
+    /** per round, probe for more, then drain the queue that made, then cruise */
+    private static final float[] GAIN_CYCLE = { 1.25f, 0.75f, 1, 1, 1, 1, 1, 1 };
+    /** window in BDPs, to keep the pipe full while ACKs are delayed */
+    private static final float CWND_GAIN = 2.0f;
+    /** still in startup if the bandwidth grows by this much per round... */
+    private static final float FULL_BW_GROWTH = 1.25f;
+    /** ... within this many rounds */
+    private static final int FULL_BW_ROUNDS = 3;
+    private static final long RTPROP_WINDOW = 10*1000;
+    private static final int MIN_WINDOW = 4;
+
+    public BBRCongestionController(I2PAppContext ctx, ConnectionOptions opts, BandwidthEstimator bwe) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(BBRCongestionController.class);
+        _options = opts;
+        _bwEstimator = bwe;
+        _mode = STARTUP;
+        _roundStart = ctx.clock().now();
+        _rtProp = opts.getRTT();
+        _rtPropStamp = _roundStart;
+        _ssthresh = ConnectionPacketHandler.getMaxSlowStartWindow(ctx);
+    }
+
+    public int getSSThresh() {return _ssthresh;}
+
+    public synchronized int onAck(int window, int acked) {
+        long now = _context.clock().now();
+        updateRTProp(now);
+        if (now - _roundStart >= _rtProp) {
+            _roundStart = now;
+            newRound();
+        }
+        int target = getTarget();
+        switch (_mode) {
+            case STARTUP:
+                return window + acked;
+
+            case DRAIN:
+                if (window <= target) {
+                    _mode = PROBE_BW;
+                    _cycleIndex = 0;
+                }
+                return target;
+
+            case PROBE_BW:
+            default:
+                if (window < target)
+                    return Math.min(target, window + acked);
+                return target;
+        }
+    }
+
+    public synchronized int onFastRetransmit(int window) {
+        if (_mode == STARTUP && _bwEstimator.getBandwidthEstimate() > 0)
+            _mode = DRAIN;
+        int target = getTarget();
+        _ssthresh = target;
+        if (_log.shouldDebug())
+            _log.debug("Fast retransmit, window " + window + " target " + target + ' ' + this);
+        return Math.max(MIN_WINDOW, Math.min(window, target));
+    }
+
+    public synchronized int onTimeout(int window) {
+        // Grows back to the target within a round in onAck()
+        // if the bandwidth is still there
+        _ssthresh = getTarget();
+        if (_log.shouldDebug())
+            _log.debug("Timeout, window " + window + ' ' + this);
+        return MIN_WINDOW;
+    }
+
+    /**
+     *  Caller must synch
+     */
+    private void newRound() {
+        float bw = _bwEstimator.getBandwidthEstimate();
+        if (_mode == STARTUP) {
+            if (bw >= _fullBw * FULL_BW_GROWTH) {
+                _fullBw = bw;
+                _fullBwCount = 0;
+            } else if (++_fullBwCount >= FULL_BW_ROUNDS) {
+                _mode = DRAIN;
+                if (_log.shouldDebug())
+                    _log.debug("Bandwidth plateau, leaving startup " + this);
+            }
+        } else if (_mode == PROBE_BW) {
+            _cycleIndex = (_cycleIndex + 1) % GAIN_CYCLE.length;
+        }
+    }
+
+    /**
+     *  Windowed min of the smoothed RTT.
+     *  Caller must synch
+     */
+    private void updateRTProp(long now) {
+        int rtt = _options.getRTT();
+        if (rtt <= 0)
+            return;
+        if (rtt <= _rtProp || now - _rtPropStamp > RTPROP_WINDOW) {
+            _rtProp = rtt;
+            _rtPropStamp = now;
+        }
+    }
+
+    /**
+     *  Caller must synch
+     *  @return the window for the current mode and gain, at least MIN_WINDOW
+     */
+    private int getTarget() {
+        float bdp = _bwEstimator.getBandwidthEstimate() * _rtProp;
+        float gain;
+        if (_mode == DRAIN)
+            gain = 1;
+        else if (_mode == PROBE_BW)
+            gain = CWND_GAIN * GAIN_CYCLE[_cycleIndex];
+        else
+            gain = CWND_GAIN;
+        return Math.max(MIN_WINDOW, (int) Math.ceil(bdp * gain));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BBR " + MODES[_mode] +
+               " BW: " + _bwEstimator.getBandwidthEstimate() +
+               " RTprop: " + _rtProp +
+               " Target: " + getTarget();
+    }
+}
@@ -0,0 +1,46 @@
+package net.i2p.client.streaming.impl;
+
+/**
+ *  Sets the send window of a Connection in response to ACKs and losses.
+ *  One per Connection, selected with I2PSocketOptions.PROP_CONGESTION_CONTROL.
+ *
+ *  Calls are made with the connection's window lock or outbound packets lock held,
+ *  so implementations must not call back into the Connection.
+ *  The caller applies the returned window with ConnectionOptions.setWindowSize(),
+ *  which enforces the min and max window sizes.
+ *
+ *  @since 0.9.71+
+ */
+interface CongestionController {
+
+    /**
+     *  New data was ACKed without congestion.
+     *
+     *  @param window the current window
+     *  @param acked how many packets were ACKed, greater than zero
+     *  @return the new window
+     */
+    public int onAck(int window, int acked);
+
+    /**
+     *  A packet is being retransmitted for the first time, at most once per window,
+     *  before the retransmission timer fired, i.e. a single loss.
+     *
+     *  @param window the current window
+     *  @return the new window
+     */
+    public int onFastRetransmit(int window);
+
+    /**
+     *  The retransmission timer fired for a packet not retransmitted before.
+     *
+     *  @param window the current window
+     *  @return the new window
+     */
+    public int onTimeout(int window);
+
+    /**
+     *  @return the slow start threshold, for logging and for the growth in onAck()
+     */
+    public int getSSThresh();
+}
@@ -84,8 +84,6 @@ class Connection {
     private int _dupAckCount;
     /** Last dup ack. */
     private long _lastDupAck;
-    /** Slow start threshold. */
-    private volatile int _ssthresh;
     /** Whether this is an inbound connection. */
     private final boolean _isInbound;
     /** Whether share options have been updated. */
@@ -162,6 +160,7 @@ class Connection {
     private final SimpleTimer2 _timer;
     /** Bandwidth estimator. */
     private final BandwidthEstimator _bwEstimator;
+    private final CongestionController _congestionController;
 
     /** Atomic long. */
     private final AtomicLong _lifetimeBytesSent = new AtomicLong();
@@ -236,10 +235,6 @@ class Connection {
 
     /** Number of remaining unchoke assertions to send. */
     private static final int UNCHOKES_TO_SEND = 8;
-    /** Multiplier for the Westwood BDP estimate used to calculate the new slow start threshold */
-    private static final int SSTHR_BW_FACTOR = 2;
-    /** Minimum slow start threshold after fast retransmit */
-    private static final int MIN_SSTHR_FAST_RETX = 16;
 
     /**
      *  Give up resending an unacked SYN after this many sends.
@@ -319,7 +314,6 @@ class Connection {
         _nextSendTime = -1;
         _createdOn = _context.clock().now();
         _congestionWindowEnd = _options.getWindowSize()-1;
-        _ssthresh = ConnectionPacketHandler.getMaxSlowStartWindow(_context);
         _lastCongestionHighestUnacked = -1;
         _lastReceivedOn = -1;
         _activityTimer = new ActivityTimer();
@@ -343,6 +337,10 @@ class Connection {
         // Initialize random wait for activity timer randomization and bandwidth estimator
         _randomWait = _context.random().nextInt(3*1000); // 0-3 seconds randomization
         _bwEstimator = new SimpleBandwidthEstimator(_context, _options);
+        if (ConnectionOptions.CONGESTION_CONTROL_BBR.equals(_options.getCongestionControl()))
+            _congestionController = new BBRCongestionController(_context, _options, _bwEstimator);
+        else
+            _congestionController = new RenoCongestionController(_context, _options, _bwEstimator);
     }
 
     /**
@@ -408,7 +406,12 @@ class Connection {
     /**
      * @since 0.9.46
      */
-    int getSSThresh() {return _ssthresh;}
+    int getSSThresh() {return _congestionController.getSSThresh();}
+
+    /**
+     * @since 0.9.71+
+     */
+    CongestionController getCongestionController() {return _congestionController;}
 
     /**
      * Next outbound packet sequence number.
@@ -1898,7 +1901,7 @@ class Connection {
             buf.append("\n* Sent: ").append(1 + _lastSendId.get());
             buf.append("; Received: ").append(1 + _inputStream.getHighestBlockId() - missing);
             buf.append("; ACKThru: ").append(_highestAckedThrough.get());
-            buf.append("; SSThresh: ").append(_ssthresh);
+            buf.append("; SSThresh: ").append(_congestionController.getSSThresh());
             buf.append("; MinRTT: ").append(_options.getMinRTT());
             buf.append("; MaxWin: ").append(_options.getMaxWindowSize());
             buf.append("; MTU: ").append(_options.getMaxMessageSize());
@@ -2093,19 +2096,7 @@ class Connection {
                     if (_log.shouldDebug()) {
                         _log.debug(Connection.this + " cutting SlowStartThreshold and Window");
                     }
-                    int wsize = _options.getWindowSize();
-                    _ssthresh = Math.max((int)(_bwEstimator.getBandwidthEstimate() * _options.getMinRTT()), 2 );
-                    _ssthresh = Math.min(ConnectionPacketHandler.getMaxSlowStartWindow(_context), _ssthresh);
-                    // Ensure ssthresh is at least the halved window so the connection
-                    // can slow-start back to at least half its pre-loss capacity.
-                    // Without this floor, a low bandwidth estimate (from the current
-                    // slow window) caps ssthresh at ~4, collapsing CWND from 256 to 4.
-                    _ssthresh = Math.max(_ssthresh, Math.max(1, wsize / 2));
-                    // Floor at 4 so repeated RTO events don't collapse the window
-                    // below a usable minimum — prevents degenerative behavior
-                    // where each retransmit halves the window to 1, making every
-                    // subsequent send a single-packet-at-a-time ordeal.
-                    _options.setWindowSize(Math.max(4, Math.min(_ssthresh, Math.max(1, wsize / 2))));
+                    _options.setWindowSize(_congestionController.onTimeout(_options.getWindowSize()));
                     updatePacingRate();
                 } else if (_log.shouldDebug()) {
                     _log.debug(Connection.this + " not cutting SlowStartThreshold and Window");
@@ -2440,11 +2431,7 @@ class Connection {
                     _options.doubleRTO();
 
                     if (_packet.getNumSends() == 1) {
-                        _ssthresh = Math.max(Math.round(_bwEstimator.getBandwidthEstimate() * _options.getMinRTT() * SSTHR_BW_FACTOR),
-                                             MIN_SSTHR_FAST_RETX);
-                        _ssthresh = Math.min(ConnectionPacketHandler.getMaxSlowStartWindow(_context), _ssthresh);
-                        int wsize = _options.getWindowSize();
-                        _options.setWindowSize(Math.min(_ssthresh, wsize));
+                        _options.setWindowSize(_congestionController.onFastRetransmit(_options.getWindowSize()));
                         updatePacingRate(); // Update pacing when window changes
                     }
 
@@ -32,6 +32,8 @@ class ConnectionOptions extends I2PSocketOptionsImpl {
     private volatile int _windowSize;
     /** Connection traffic profile (only bulk supported). */
     private int _profile;
+    /** Congestion control, CONGESTION_CONTROL_RENO or CONGESTION_CONTROL_BBR */
+    private String _congestionControl;
     /** Smoothed rtt. */
     private int _smoothedRtt;
     /** Min rtt. */
@@ -508,6 +510,7 @@ class ConnectionOptions extends I2PSocketOptionsImpl {
             setMaxWindowSize(opts.getMaxWindowSize());
             setConnectDelay(opts.getConnectDelay());
             setProfile(opts.getProfile());
+            setCongestionControl(opts.getCongestionControl());
             setPassiveFlushDelay(opts.getPassiveFlushDelay());
             setRTTDev(opts.getRTTDev());
             setRTT(opts.getRTT());
@@ -579,6 +582,8 @@ class ConnectionOptions extends I2PSocketOptionsImpl {
         }
         applyInt(opts, PROP_CONNECT_DELAY, -1, onlyIfSet, this::setConnectDelay);
         applyInt(opts, PROP_PROFILE, PROFILE_BULK, onlyIfSet, this::setProfile);
+        if (!onlyIfSet || opts.getProperty(PROP_CONGESTION_CONTROL) != null)
+            setCongestionControl(opts.getProperty(PROP_CONGESTION_CONTROL, CONGESTION_CONTROL_RENO));
         applyInt(opts, PROP_MAX_MESSAGE_SIZE, DEFAULT_MAX_MESSAGE_SIZE, onlyIfSet, this::setMaxMessageSize);
         applyInt(opts, PROP_INITIAL_RESEND_DELAY, defaultRetransmitDelay, onlyIfSet, this::setResendDelay);
         applyInt(opts, PROP_INITIAL_ACK_DELAY, defaultInitialAckDelay, onlyIfSet, this::setSendAckDelay);
@@ -882,6 +887,24 @@ class ConnectionOptions extends I2PSocketOptionsImpl {
      */
     public void setProfile(int profile) {_profile = profile;}
 
+    /**
+     * Congestion control, CONGESTION_CONTROL_RENO or CONGESTION_CONTROL_BBR.
+     * Takes effect for new connections only.
+     * @since 0.9.71+
+     */
+    public String getCongestionControl() {
+        return _congestionControl != null ? _congestionControl : CONGESTION_CONTROL_RENO;
+    }
+
+    /**
+     * Congestion control, CONGESTION_CONTROL_RENO or CONGESTION_CONTROL_BBR.
+     * Anything else is CONGESTION_CONTROL_RENO.
+     * @since 0.9.71+
+     */
+    public void setCongestionControl(String cc) {
+        _congestionControl = CONGESTION_CONTROL_BBR.equalsIgnoreCase(cc) ? CONGESTION_CONTROL_BBR : CONGESTION_CONTROL_RENO;
+    }
+
     /**
      * Effective passive flush delay in ms.
      * @return effective passive flush delay in ms: explicit value if set,
@@ -1104,6 +1127,7 @@ class ConnectionOptions extends I2PSocketOptionsImpl {
         buf.append(" resendDelay=").append(_retransmitDelay);
         buf.append(" ackDelay=").append(_ackDelay);
         buf.append(" cwin=").append(_windowSize);
+        if (CONGESTION_CONTROL_BBR.equals(_congestionControl)) {buf.append(" cc=").append(_congestionControl);}
         buf.append(" maxResends=").append(_maxResends);
         buf.append("\n* writeTimeout=").append(getWriteTimeout());
         buf.append(" readTimeout=").append(getReadTimeout());
@@ -439,9 +439,9 @@ class ConnectionPacketHandler {
     }
 
     /**
-     * Adjust the congestion window based on ACKs received.
-     * This either does nothing or increases the window; it never decreases it.
-     * Decreasing is done in Connection.ResendPacketEvent.retransmit().
+     * Adjust the congestion window based on ACKs received, using the connection's CongestionController.
+     * With the default RenoCongestionController this either does nothing or increases the window;
+     * it never decreases it. Decreasing is done in Connection.ResendPacketEvent.retransmit().
      *
      * @param con the connection
      * @param isNew was it a new packet? false for ack-only
@@ -481,50 +481,7 @@ class ConnectionPacketHandler {
                 int newWindowSize = oldWindow;
 
                 if ((!congested) && (acked > 0)) {
-                    int ssthresh = con.getSSThresh();
-                    if (newWindowSize < ssthresh) {
-                        // slow start - exponential growth
-                        // grow acked/N times (where N = the slow start factor)
-                        // always grow at least 1
-                        int factor = con.getOptions().getSlowStartGrowthRateFactor();
-                        if (factor <= 1) {
-                            // above a certain point, don't grow exponentially
-                            // as it often leads to a big packet loss (30-50) all at once that
-                            // takes quite a while (a minute or more) to recover from,
-                            // especially if crypto tags are lost
-                            newWindowSize = Math.min(ssthresh, newWindowSize + acked);
-                        } else if (acked < factor)
-                            newWindowSize++;
-                        else
-                            newWindowSize += acked / factor;
-                        if (_log.shouldDebug())
-                            _log.debug("Slow start ACKs = " + acked + " for " + con);
-                    // this is too fast since we mostly disabled the CongestionWindowEnd test above
-                    } else {
-                        // congestion avoidance
-                        // linear growth - increase window 1/N per RTT
-                        // we can't use newWindowSize += acked/(oldWindow*N) (where N = the cong. avoid. factor), since we're
-                        // integers, so lets use a random distribution instead
-                        int caFactor = con.getOptions().getCongestionAvoidanceGrowthRateFactor();
-                        int effAcked = acked;
-                        int maxWin = con.getOptions().getMaxWindowSize();
-                        if (newWindowSize < maxWin) {
-                            // Deficit-driven growth: grow faster when well below max window
-                            // so large windows recover quickly after a loss. Tapers to 1/RTT
-                            // as the window fills, preventing overshoot at the plateau.
-                            // At maxWindow: 1x (TCP Reno, 1/RTT).
-                            // At 50% maxWindow: ~5x.
-                            // At 25% maxWindow: ~7x.
-                            int deficit = maxWin - newWindowSize;
-                            int multiplier = 1 + (8 * deficit) / Math.max(1, maxWin);
-                            effAcked = Math.max(acked, acked * multiplier);
-                        }
-                        int shouldIncrement = _context.random().nextInt(Math.max(1, caFactor * newWindowSize));
-                        if (shouldIncrement < effAcked)
-                            newWindowSize++;
-                        if (_log.shouldDebug())
-                            _log.debug("Congestion Avoidance ACKs = " + acked + " for " + con);
-                    }
+                    newWindowSize = con.getCongestionController().onAck(newWindowSize, acked);
                 } else {
                     if (_log.shouldDebug())
                         _log.debug("No change to [Window " + con.getOptions().getWindowSize() +
@@ -0,0 +1,110 @@
+package net.i2p.client.streaming.impl;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.BandwidthEstimator;
+import net.i2p.util.Log;
+
+/**
+ *  The default, loss based congestion control: slow start and congestion
+ *  avoidance as in RFC 5681, with the slow start threshold after a loss
+ *  set from the Westwood+ bandwidth estimate.
+ *
+ *  @since 0.9.71+ moved from ConnectionPacketHandler and Connection
+ */
+class RenoCongestionController implements CongestionController {
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final ConnectionOptions _options;
+    private final BandwidthEstimator _bwEstimator;
+    private volatile int _ssthresh;
+
+    /** Multiplier for the Westwood BDP estimate used to calculate the new slow start threshold */
+    private static final int SSTHR_BW_FACTOR = 2;
+    /** Minimum slow start threshold after fast retransmit */
+    private static final int MIN_SSTHR_FAST_RETX = 16;
+
+    public RenoCongestionController(I2PAppContext ctx, ConnectionOptions opts, BandwidthEstimator bwe) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(RenoCongestionController.class);
+        _options = opts;
+        _bwEstimator = bwe;
+        _ssthresh = ConnectionPacketHandler.getMaxSlowStartWindow(ctx);
+    }
+
+    public int getSSThresh() {return _ssthresh;}
+
+    public int onAck(int window, int acked) {
+        int newWindowSize = window;
+        int ssthresh = _ssthresh;
+        if (newWindowSize < ssthresh) {
+            // slow start - exponential growth
+            // grow acked/N times (where N = the slow start factor)
+            // always grow at least 1
+            int factor = _options.getSlowStartGrowthRateFactor();
+            if (factor <= 1) {
+                // above a certain point, don't grow exponentially
+                // as it often leads to a big packet loss (30-50) all at once that
+                // takes quite a while (a minute or more) to recover from,
+                // especially if crypto tags are lost
+                newWindowSize = Math.min(ssthresh, newWindowSize + acked);
+            } else if (acked < factor)
+                newWindowSize++;
+            else
+                newWindowSize += acked / factor;
+            if (_log.shouldDebug())
+                _log.debug("Slow start ACKs = " + acked);
+        } else {
+            // congestion avoidance
+            // linear growth - increase window 1/N per RTT
+            // we can't use newWindowSize += acked/(oldWindow*N) (where N = the cong. avoid. factor), since we're
+            // integers, so lets use a random distribution instead
+            int caFactor = _options.getCongestionAvoidanceGrowthRateFactor();
+            int effAcked = acked;
+            int maxWin = _options.getMaxWindowSize();
+            if (newWindowSize < maxWin) {
+                // Deficit-driven growth: grow faster when well below max window
+                // so large windows recover quickly after a loss. Tapers to 1/RTT
+                // as the window fills, preventing overshoot at the plateau.
+                // At maxWindow: 1x (TCP Reno, 1/RTT).
+                // At 50% maxWindow: ~5x.
+                // At 25% maxWindow: ~7x.
+                int deficit = maxWin - newWindowSize;
+                int multiplier = 1 + (8 * deficit) / Math.max(1, maxWin);
+                effAcked = Math.max(acked, acked * multiplier);
+            }
+            int shouldIncrement = _context.random().nextInt(Math.max(1, caFactor * newWindowSize));
+            if (shouldIncrement < effAcked)
+                newWindowSize++;
+            if (_log.shouldDebug())
+                _log.debug("Congestion Avoidance ACKs = " + acked);
+        }
+        return newWindowSize;
+    }
+
+    public int onFastRetransmit(int window) {
+        int ssthresh = Math.max(Math.round(_bwEstimator.getBandwidthEstimate() * _options.getMinRTT() * SSTHR_BW_FACTOR),
+                                MIN_SSTHR_FAST_RETX);
+        _ssthresh = Math.min(ConnectionPacketHandler.getMaxSlowStartWindow(_context), ssthresh);
+        return Math.min(_ssthresh, window);
+    }
+
+    public int onTimeout(int window) {
+        int ssthresh = Math.max((int)(_bwEstimator.getBandwidthEstimate() * _options.getMinRTT()), 2 );
+        ssthresh = Math.min(ConnectionPacketHandler.getMaxSlowStartWindow(_context), ssthresh);
+        // Ensure ssthresh is at least the halved window so the connection
+        // can slow-start back to at least half its pre-loss capacity.
+        // Without this floor, a low bandwidth estimate (from the current
+        // slow window) caps ssthresh at ~4, collapsing CWND from 256 to 4.
+        _ssthresh = Math.max(ssthresh, Math.max(1, window / 2));
+        // Floor at 4 so repeated RTO events don't collapse the window
+        // below a usable minimum — prevents degenerative behavior
+        // where each retransmit halves the window to 1, making every
+        // subsequent send a single-packet-at-a-time ordeal.
+        return Math.max(4, Math.min(_ssthresh, Math.max(1, window / 2)));
+    }
+
+    @Override
+    public String toString() {
+        return "Reno SSThresh: " + _ssthresh;
+    }
+}
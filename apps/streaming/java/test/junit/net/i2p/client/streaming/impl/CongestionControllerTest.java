@@ -0,0 +1,168 @@
+package net.i2p.client.streaming.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.Clock;
+
+import org.junit.Test;
+
+/**
+ * Reno vs. BBR congestion control over a simulated tunnel:
+ * a bottleneck with a drop-tail queue, a long RTT, and random loss.
+ * Simulated time, so each run takes a few ms.
+ */
+public class CongestionControllerTest {
+
+    /** packets/ms, about 170 KBps */
+    private static final double RATE = 0.1;
+    private static final int BASE_RTT = 1200;
+    private static final int QUEUE = 128;
+    private static final long DURATION = 5*60*1000;
+    private static final int RUNS = 5;
+    private static final SimContext _context = new SimContext();
+
+    private static class SimClock extends Clock {
+        long now = 1000*1000;
+
+        SimClock(I2PAppContext ctx) {super(ctx);}
+
+        @Override
+        public long now() {return now;}
+    }
+
+    private static class SimContext extends I2PAppContext {
+        private final SimClock _simClock = new SimClock(this);
+
+        @Override
+        public Clock clock() {return _simClock;}
+    }
+
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final long seq;
+        final long sent;
+        /** true if the ACK arrives, false if the loss is detected */
+        final boolean acked;
+
+        Event(long time, long seq, long sent, boolean acked) {
+            this.time = time;
+            this.seq = seq;
+            this.sent = sent;
+            this.acked = acked;
+        }
+
+        public int compareTo(Event e) {
+            if (time != e.time)
+                return time < e.time ? -1 : 1;
+            return seq < e.seq ? -1 : (seq > e.seq ? 1 : 0);
+        }
+    }
+
+    /**
+     * Window limited sender, one ACK per packet. A lost packet is detected
+     * a quarter RTT after its ACK would have arrived, and is a fast retransmit
+     * unless one is already in progress for the current window.
+     *
+     * @return goodput in packets/second
+     */
+    private static double simulate(String cc, double loss, long seed) {
+        SimContext ctx = _context;
+        SimClock clock = (SimClock) ctx.clock();
+        ConnectionOptions opts = new ConnectionOptions();
+        opts.setCongestionControl(cc);
+        SimpleBandwidthEstimator bwe = new SimpleBandwidthEstimator(ctx, opts);
+        CongestionController ctl = ConnectionOptions.CONGESTION_CONTROL_BBR.equals(opts.getCongestionControl()) ?
+                                   new BBRCongestionController(ctx, opts, bwe) :
+                                   new RenoCongestionController(ctx, opts, bwe);
+        Random rand = new Random(seed);
+        PriorityQueue<Event> events = new PriorityQueue<Event>();
+        long start = clock.now;
+        long end = start + DURATION;
+        long nextSeq = 0;
+        long recoveryEnd = -1;
+        int inFlight = 0;
+        long delivered = 0;
+        // time the bottleneck is busy until
+        double busy = start;
+        while (clock.now < end) {
+            while (inFlight < opts.getWindowSize()) {
+                long seq = nextSeq++;
+                inFlight++;
+                double queued = (busy - clock.now) * RATE;
+                if (queued >= QUEUE || rand.nextDouble() < loss) {
+                    long detect = clock.now + BASE_RTT + (long) Math.max(0, busy - clock.now) + opts.getRTT() / 4;
+                    events.add(new Event(detect, seq, clock.now, false));
+                } else {
+                    busy = Math.max(busy, clock.now) + 1 / RATE;
+                    events.add(new Event((long) busy + BASE_RTT, seq, clock.now, true));
+                }
+            }
+            Event e = events.poll();
+            clock.now = Math.max(clock.now, e.time);
+            inFlight--;
+            if (e.acked) {
+                delivered++;
+                opts.updateRTT((int) (e.time - e.sent));
+                bwe.addSample(1);
+                opts.setWindowSize(ctl.onAck(opts.getWindowSize(), 1));
+            } else if (e.seq > recoveryEnd) {
+                // the retransmission is counted as a new packet
+                recoveryEnd = nextSeq;
+                opts.setWindowSize(ctl.onFastRetransmit(opts.getWindowSize()));
+            }
+        }
+        return delivered * 1000d / DURATION;
+    }
+
+    private static double average(String cc, double loss) {
+        double total = 0;
+        for (int i = 0; i < RUNS; i++) {
+            total += simulate(cc, loss, i);
+        }
+        return total / RUNS;
+    }
+
+    @Test
+    public void testLossFreeLink() {
+        double capacity = RATE * 1000;
+        double reno = average(ConnectionOptions.CONGESTION_CONTROL_RENO, 0);
+        double bbr = average(ConnectionOptions.CONGESTION_CONTROL_BBR, 0);
+        assertTrue("Reno goodput " + reno + " of " + capacity, reno > capacity * 0.6);
+        assertTrue("BBR goodput " + bbr + " of " + capacity, bbr > capacity * 0.6);
+    }
+
+    @Test
+    public void testRandomLoss() {
+        double reno = average(ConnectionOptions.CONGESTION_CONTROL_RENO, 0.02);
+        double bbr = average(ConnectionOptions.CONGESTION_CONTROL_BBR, 0.02);
+        assertTrue("BBR goodput " + bbr + " should beat Reno " + reno + " with 2% loss", bbr > reno);
+    }
+
+    @Test
+    public void testTimeout() {
+        SimContext ctx = _context;
+        ConnectionOptions opts = new ConnectionOptions();
+        SimpleBandwidthEstimator bwe = new SimpleBandwidthEstimator(ctx, opts);
+        CongestionController reno = new RenoCongestionController(ctx, opts, bwe);
+        CongestionController bbr = new BBRCongestionController(ctx, opts, bwe);
+        assertTrue(reno.onTimeout(64) >= 4);
+        assertTrue(reno.onTimeout(64) <= 32);
+        assertEquals(4, bbr.onTimeout(64));
+    }
+
+    @Test
+    public void testSelection() {
+        ConnectionOptions opts = new ConnectionOptions();
+        assertEquals(ConnectionOptions.CONGESTION_CONTROL_RENO, opts.getCongestionControl());
+        opts.setCongestionControl("BBR");
+        assertEquals(ConnectionOptions.CONGESTION_CONTROL_BBR, opts.getCongestionControl());
+        ConnectionOptions copy = new ConnectionOptions(opts);
+        assertEquals(ConnectionOptions.CONGESTION_CONTROL_BBR, copy.getCongestionControl());
+        opts.setCongestionControl("cubic");
+        assertEquals(ConnectionOptions.CONGESTION_CONTROL_RENO, opts.getCongestionControl());
+    }
+}
@@ -0,0 +1,98 @@
+package net.i2p.util;
+
+import net.i2p.I2PAppContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleTimer2 with the ScheduledThreadPoolExecutor and timing wheel backends,
+ * for the connection timeout pattern: many events that are pushed back
+ * or cancelled and scheduled again long before they fire.
+ *
+ * @since 0.9.71+
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimpleTimer2Bench {
+    private static final int EVENTS = 4096;
+
+    I2PAppContext ctx = I2PAppContext.getGlobalContext();
+    SimpleTimer2 timer;
+    Event[] events;
+
+    @Param({"executor", "wheel"})
+    public String backend;
+
+    @Setup
+    public void prepare() {
+        timer = new SimpleTimer2(ctx, "bench", true, backend.equals("wheel"));
+        events = new Event[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            events[i] = new Event(timer);
+            events[i].schedule(60*1000 + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Index {
+        int next;
+    }
+
+    private static class Event extends SimpleTimer2.TimedEvent {
+        public Event(SimpleTimer2 pool) { super(pool); }
+        public void timeReached() {}
+    }
+
+    /** Same as a retransmission or inactivity timer pushed back on every packet */
+    @Benchmark
+    public void forceReschedule(Index idx) {
+        int i = idx.next++ & (EVENTS - 1);
+        events[i].forceReschedule(60*1000 + (idx.next & 1023));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void forceRescheduleContended(Index idx) {
+        forceReschedule(idx);
+    }
+
+    @Benchmark
+    public void cancelSchedule(Index idx) {
+        Event e = events[idx.next++ & (EVENTS - 1)];
+        e.cancel();
+        e.schedule(60*1000);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(SimpleTimer2Bench.class.getSimpleName()).build();
+
+        new Runner(opt).run();
+    }
+}
@@ -6,6 +6,7 @@ import net.i2p.util.Log;
 
 import java.util.Properties;
 import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Simple rate calculator for periodically sampled data points - determining an
@@ -13,6 +14,10 @@ import java.util.Arrays;
  * of events (using the interval between events), and lifetime data.
  *
  * If value is always a constant, you should be using Frequency instead.
+ *
+ * A striped Rate does not lock in addData(). The data is summed in
+ * LongAdders and folded into the current and lifetime totals
+ * when those are read or the rate is coalesced.
  */
 public class Rate {
     private volatile float _currentTotalValue;
@@ -34,18 +39,26 @@ public class Rate {
     private volatile long _creationDate;
     private volatile int _period;
 
+    /** striped mode only, else null */
+    private final LongAdder _pendingValue;
+    private final LongAdder _pendingCount;
+    private final LongAdder _pendingTime;
+
     /** In current (partial) period, what is the total value acrued through all events? */
     public double getCurrentTotalValue() {
+        fold();
         return _currentTotalValue;
     }
 
     /** In current (partial) period, how many events have occurred? */
     public long getCurrentEventCount() {
+        fold();
         return _currentEventCount;
     }
 
     /** In current (partial) period, how much of the time has been spent doing the events? */
     public long getCurrentTotalEventTime() {
+        fold();
         return _currentTotalEventTime;
     }
 
@@ -85,16 +98,19 @@ public class Rate {
 
     /** Since rate creation, what was the total value acrued through all events? */
     public double getLifetimeTotalValue() {
+        fold();
         return _lifetimeTotalValue;
     }
 
     /** Since rate creation, how many events have occurred? */
     public long getLifetimeEventCount() {
+        fold();
         return _lifetimeEventCount;
     }
 
     /** Since rate creation, how much of the time was spent doing the events? */
     public long getLifetimeTotalEventTime() {
+        fold();
         return _lifetimeTotalEventTime;
     }
 
@@ -139,11 +155,33 @@ public class Rate {
      * @throws IllegalArgumentException if the period is invalid
      */
     public Rate(long period) throws IllegalArgumentException {
+        this(period, false);
+    }
+
+    /**
+     * A rate with period shorter than Router.COALESCE_TIME = 50*1000 has to
+     * be manually coalesced before values are fetched from it.
+     *
+     * @param period number of milliseconds in the period this rate deals with, min 1, max Integer.MAX_VALUE
+     * @param striped if true, addData() does not lock
+     * @throws IllegalArgumentException if the period is invalid
+     * @since 0.9.71+
+     */
+    public Rate(long period, boolean striped) throws IllegalArgumentException {
         if (period <= 0 || period > Integer.MAX_VALUE) throw new IllegalArgumentException();
 
         _creationDate = now();
         _lastCoalesceDate = _creationDate;
         _period = (int) period;
+        if (striped) {
+            _pendingValue = new LongAdder();
+            _pendingCount = new LongAdder();
+            _pendingTime = new LongAdder();
+        } else {
+            _pendingValue = null;
+            _pendingCount = null;
+            _pendingTime = null;
+        }
     }
 
     /**
@@ -171,11 +209,18 @@ public class Rate {
      * If you always use this call, eventDuration is always zero,
      * and the various get*Saturation*() and get*EventTime() methods will return zero.
      */
-    public synchronized void addData(long value) {
-        _currentTotalValue += value;
-        _currentEventCount++;
-        _lifetimeTotalValue += value;
-        _lifetimeEventCount++;
+    public void addData(long value) {
+        if (_pendingCount != null) {
+            _pendingValue.add(value);
+            _pendingCount.increment();
+            return;
+        }
+        synchronized (this) {
+            _currentTotalValue += value;
+            _currentEventCount++;
+            _lifetimeTotalValue += value;
+            _lifetimeEventCount++;
+        }
     }
 
     /**
@@ -211,14 +256,58 @@ public class Rate {
      * @param value value to accrue in current period
      * @param eventDuration how long it took to accrue this data (set to 0 if it was instantaneous)
      */
-    public synchronized void addData(long value, long eventDuration) {
-        _currentTotalValue += value;
-        _currentEventCount++;
-        _currentTotalEventTime = (int)(_currentTotalEventTime + eventDuration);
+    public void addData(long value, long eventDuration) {
+        if (_pendingCount != null) {
+            _pendingValue.add(value);
+            if (eventDuration != 0)
+                _pendingTime.add(eventDuration);
+            _pendingCount.increment();
+            return;
+        }
+        synchronized (this) {
+            _currentTotalValue += value;
+            _currentEventCount++;
+            _currentTotalEventTime = (int)(_currentTotalEventTime + eventDuration);
+
+            _lifetimeTotalValue += value;
+            _lifetimeEventCount++;
+            _lifetimeTotalEventTime += eventDuration;
+        }
+    }
 
-        _lifetimeTotalValue += value;
-        _lifetimeEventCount++;
-        _lifetimeTotalEventTime += eventDuration;
+    /**
+     * Is addData() lock-free?
+     *
+     * @since 0.9.71+
+     */
+    public boolean isStriped() {
+        return _pendingCount != null;
+    }
+
+    /**
+     * Striped mode only. Move the data summed since the last fold into the
+     * current and lifetime totals.
+     * The count is taken first, so an event in progress may have its
+     * value folded now and its count next time, but nothing is lost.
+     *
+     * Only takes this lock, so it may be called from any synchronized method here.
+     *
+     * @since 0.9.71+
+     */
+    public void fold() {
+        if (_pendingCount == null || _pendingCount.sum() == 0)
+            return;
+        synchronized (this) {
+            long count = _pendingCount.sumThenReset();
+            long value = _pendingValue.sumThenReset();
+            long time = _pendingTime.sumThenReset();
+            _currentTotalValue += value;
+            _currentEventCount = (int) (_currentEventCount + count);
+            _currentTotalEventTime = (int) (_currentTotalEventTime + time);
+            _lifetimeTotalValue += value;
+            _lifetimeEventCount += count;
+            _lifetimeTotalEventTime += time;
+        }
     }
 
     /** 2s is plenty of slack to deal with slow coalescing (across many stats) */
@@ -229,6 +318,7 @@ public class Rate {
      * If the measured period is less than the rate period minus slack, this is a no-op.
      */
     public synchronized void coalesce() {
+        fold();
         long now = now();
         long measuredPeriod = now - _lastCoalesceDate;
         if (measuredPeriod < _period - SLACK) {
@@ -322,6 +412,7 @@ public class Rate {
      * @return the lifetime average value
      */
     public synchronized double getLifetimeAverageValue() {
+        fold();
         if ((_lifetimeTotalValue != 0) && (_lifetimeEventCount > 0)) return _lifetimeTotalValue / _lifetimeEventCount;
 
         return 0.0D;
@@ -334,6 +425,7 @@ public class Rate {
      * @since 0.9.4
      */
     public synchronized double getAvgOrLifetimeAvg() {
+        fold();
         if (getLastEventCount() > 0) return getAverageValue();
         return getLifetimeAverageValue();
     }
@@ -375,6 +467,7 @@ public class Rate {
      * @return ratio, or 0 if event times aren't used
      */
     public synchronized double getLifetimeEventSaturation() {
+        fold();
         if ((_lastEventCount > 0) && (_lifetimeTotalEventTime > 0)) {
             double eventTime = (double) _lifetimeTotalEventTime / (double) _lifetimeEventCount;
             double maxEvents = _period / eventTime;
@@ -446,6 +539,7 @@ public class Rate {
      * @return ratio of last period value to lifetime average period value, or 0 if no data
      */
     public synchronized double getPercentageOfLifetimeValue() {
+        fold();
         if ((_lastTotalValue != 0) && (_lifetimeTotalValue != 0)) {
             double lifetimePeriodValue = _period * (_lifetimeTotalValue / (now() - _creationDate));
             return _lastTotalValue / lifetimePeriodValue;
@@ -475,6 +569,7 @@ public class Rate {
      * @since 0.9.4
      */
     public synchronized RateAverages computeAverages(RateAverages out, boolean useLifetime) {
+        fold();
         out.reset();
 
         final long total = (long) _currentEventCount + _lastEventCount;
@@ -509,6 +604,7 @@ public class Rate {
      * @since 0.9.41
      */
     public synchronized void store(String prefix, StringBuilder buf, boolean addComments) {
+        fold();
         PersistenceHelper.add(buf, addComments, prefix, ".period", "Period for this rate:", _period);
         PersistenceHelper.addDate(buf, addComments, prefix, ".creationDate", "Rate creation time:", _creationDate);
         PersistenceHelper.addDate(buf, addComments, prefix, ".lastCoalesceDate", "Last time rate was coalesced:", _lastCoalesceDate);
@@ -0,0 +1,56 @@
+package net.i2p.stat;
+
+/**
+ * A RateStat resolved once at creation, so hot paths can add data
+ * without looking up the stat by name each time.
+ *
+ * If the stat was not created (see StatManager.ignoreStat()),
+ * the handle is still valid, and addData() does nothing.
+ *
+ * @since 0.9.71+
+ */
+public final class RateHandle {
+    private final String _name;
+    private final RateStat _stat;
+
+    RateHandle(String name, RateStat stat) {
+        _name = name;
+        _stat = stat;
+    }
+
+    /**
+     * @param value the data point value
+     */
+    public void addData(long value) {
+        if (_stat != null)
+            _stat.addData(value);
+    }
+
+    /**
+     * @param value the data point value
+     * @param eventDuration how long the event took, or 0
+     */
+    public void addData(long value, long eventDuration) {
+        if (_stat != null)
+            _stat.addData(value, eventDuration);
+    }
+
+    /**
+     * @return the stat name
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * @return the stat, or null if it was not created
+     */
+    public RateStat getRateStat() {
+        return _stat;
+    }
+
+    @Override
+    public String toString() {
+        return "RateHandle " + _name + (_stat != null ? "" : " (ignored)");
+    }
+}
@@ -32,6 +32,20 @@ public class RateStat {
      * @throws IllegalArgumentException if periods is empty
      */
     public RateStat(String name, String description, String group, long[] periods) {
+        this(name, description, group, periods, false);
+    }
+
+    /**
+     * Unique name of the statistic.
+     * @param name unique name of the statistic
+     * @param description simple description of the statistic
+     * @param group used to group statistics together
+     * @param periods array of period lengths (in milliseconds), must not be empty
+     * @param striped if true, addData() does not lock, see Rate
+     * @throws IllegalArgumentException if periods is empty
+     * @since 0.9.71+
+     */
+    public RateStat(String name, String description, String group, long[] periods, boolean striped) {
         _statName = name;
         _description = description;
         _groupName = group;
@@ -43,7 +57,7 @@ public class RateStat {
 
         _rates = new Rate[periodsCopy.length];
         for (int i = 0; i < periodsCopy.length; i++) {
-            Rate rate = new Rate(periodsCopy[i]);
+            Rate rate = new Rate(periodsCopy[i], striped);
             rate.setRateStat(this);
             _rates[i] = rate;
         }
@@ -70,7 +84,10 @@ public void addData(long value) {
         for (Rate r : _rates) r.addData(value);
     }
 
-    /** Coalesces all the stats. */
+    /**
+     * Coalesces all the stats.
+     * For striped rates, this also folds the data added since the last coalesce.
+     */
     public void coalesceStats() {
         for (Rate r : _rates) r.coalesce();
     }
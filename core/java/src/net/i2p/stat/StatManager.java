@@ -32,6 +32,7 @@ public class StatManager {
     private final ConcurrentHashMap<String, RateStat> _rateStats;
 
     private int coalesceCounter;
+    private final boolean _striped;
 
     /** Frequency stats are coalesced every this many minutes. */
     private static final int FREQ_COALESCE_RATE = 9;
@@ -39,6 +40,14 @@ public class StatManager {
     /** Enables full stat collection; default false. */
     public static final String PROP_STAT_FULL = "stat.full";
 
+    /**
+     * Rate stats do not lock when adding data; default true.
+     * See Rate.
+     *
+     * @since 0.9.71+
+     */
+    public static final String PROP_STAT_STRIPED = "stat.striped";
+
     /**
      * The stat manager should only be constructed and accessed through the
      * application context.  This constructor should only be used by the
@@ -51,6 +60,7 @@ public class StatManager {
         _log = context.logManager().getLog(getClass());
         _frequencyStats = new ConcurrentHashMap<>(8);
         _rateStats = new ConcurrentHashMap<>(128);
+        _striped = context.getProperty(PROP_STAT_STRIPED, true);
     }
 
     /**
@@ -118,10 +128,56 @@ public class StatManager {
      */
     public void createRequiredRateStat(String name, String description, String group, long[] periods) {
         if (_rateStats.containsKey(name)) return;
-        RateStat rs = new RateStat(name, description, group, periods);
+        RateStat rs = new RateStat(name, description, group, periods, _striped);
         _rateStats.putIfAbsent(name, rs);
     }
 
+    /**
+     * As createRateStat(), but returns a handle for adding data without a lookup by name.
+     * The stat is ONLY created if the stat.full property is true or we are not in the router context.
+     * If it is not created, the returned handle does nothing.
+     *
+     * @param name unique name of the statistic
+     * @param description simple description of the statistic
+     * @param group used to group statistics together
+     * @param periods array of period lengths (in milliseconds)
+     * @return non-null
+     * @since 0.9.71+
+     */
+    public RateHandle createRateStatHandle(String name, String description, String group, long[] periods) {
+        createRateStat(name, description, group, periods);
+        return getRateHandle(name);
+    }
+
+    /**
+     * As createRequiredRateStat(), but returns a handle for adding data without a lookup by name.
+     * The stat is always created, independent of the stat.full setting or context.
+     *
+     * @param name unique name of the statistic
+     * @param description simple description of the statistic
+     * @param group used to group statistics together
+     * @param periods array of period lengths (in milliseconds)
+     * @return non-null
+     * @since 0.9.71+
+     */
+    public RateHandle createRequiredRateStatHandle(String name, String description, String group, long[] periods) {
+        createRequiredRateStat(name, description, group, periods);
+        return getRateHandle(name);
+    }
+
+    /**
+     * A handle for adding data to an existing stat without a lookup by name.
+     * If the stat does not exist, the returned handle does nothing.
+     * If the stat is later removed, data added through the handle is discarded.
+     *
+     * @param name the stat name
+     * @return non-null
+     * @since 0.9.71+
+     */
+    public RateHandle getRateHandle(String name) {
+        return new RateHandle(name, _rateStats.get(name));
+    }
+
     /**
      * Remove a rate stat by name.
      *
@@ -15,6 +15,10 @@ import net.i2p.I2PAppContext;
  * Replaces the legacy SimpleTimer (deleted; had lock contention issues).
  * Supports cancel and reschedule. Events must NOT block.
  *
+ * If i2p.timer.wheel=true, backed by a hashed timing wheel instead,
+ * with O(1) schedule and cancel and no allocation per schedule,
+ * at a resolution of 10 ms.
+ *
  * All timer events should extend TimedEvent and use schedule()/cancel() directly.
  *
  * @author zzz
@@ -32,7 +36,16 @@ public class SimpleTimer2 {
 
     private static final int THREADS = 2;
 
+    /**
+     *  Use the timing wheel backend
+     *  @since 0.9.71+
+     */
+    public static final String PROP_WHEEL = "i2p.timer.wheel";
+
+    /** null if _wheel is non-null */
     private final ScheduledThreadPoolExecutor _executor;
+    /** null if _executor is non-null */
+    private final TimerWheel _wheel;
     private final String _name;
     private final AtomicInteger _count = new AtomicInteger();
     private final I2PAppContext _context;
@@ -72,11 +85,28 @@ public class SimpleTimer2 {
      *  @since 0.9
      */
     protected SimpleTimer2(I2PAppContext context, String name, boolean prestartAllThreads) {
+        this(context, name, prestartAllThreads, context.getBooleanProperty(PROP_WHEEL));
+    }
+
+    /**
+     *  @param context the I2P application context
+     *  @param name the timer name
+     *  @param prestartAllThreads whether to prestart all threads
+     *  @param useWheel true for the timing wheel backend, false for ScheduledThreadPoolExecutor
+     *  @since 0.9.71+
+     */
+    protected SimpleTimer2(I2PAppContext context, String name, boolean prestartAllThreads, boolean useWheel) {
         _context = context;
         _name = name;
-        _executor = new CustomScheduledThreadPoolExecutor(THREADS, new CustomThreadFactory());
-        if (prestartAllThreads)
-            _executor.prestartAllCoreThreads();
+        if (useWheel) {
+            _executor = null;
+            _wheel = new TimerWheel(name, THREADS, new CustomThreadFactory(), prestartAllThreads);
+        } else {
+            _wheel = null;
+            _executor = new CustomScheduledThreadPoolExecutor(THREADS, new CustomThreadFactory());
+            if (prestartAllThreads)
+                _executor.prestartAllCoreThreads();
+        }
         context.addShutdownTask(_onShutdown);
     }
 
@@ -100,6 +130,10 @@ public class SimpleTimer2 {
     private void stop(boolean removeTask) {
         if (removeTask)
             _context.removeShutdownTask(_onShutdown);
+        if (_wheel != null) {
+            _wheel.stop();
+            return;
+        }
         _executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
         _executor.shutdownNow();
     }
@@ -131,10 +165,28 @@ public class SimpleTimer2 {
         }
     }
 
+    /**
+     *  @return null for the wheel backend
+     */
     private ScheduledFuture<?> schedule(TimedEvent t, long timeoutMs) {
+        if (_wheel != null) {
+            _wheel.schedule(t, timeoutMs);
+            return null;
+        }
         return _executor.schedule(t, timeoutMs, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     *  @param future ignored for the wheel backend
+     *  @return true if it will not run
+     *  @since 0.9.71+
+     */
+    private boolean cancel(TimedEvent t, ScheduledFuture<?> future) {
+        if (_wheel != null)
+            return _wheel.cancel(t);
+        return future.cancel(true);
+    }
+
     /**
      * Queue up the given event to be fired no sooner than timeoutMs from now.
      * Pool is set automatically from this timer.
@@ -214,6 +266,13 @@ public class SimpleTimer2 {
         protected static final int DEFAULT_FUZZ = 100;
         private ScheduledFuture<?> _future;
 
+        /** Timing wheel links. LOCKING: the TimerWheel */
+        TimedEvent _wheelPrev, _wheelNext;
+        /** Timing wheel tick to run at. LOCKING: the TimerWheel */
+        long _wheelDeadline;
+        /** Timing wheel slot, or -1 if not linked. LOCKING: the TimerWheel */
+        int _wheelSlot = -1;
+
         /** State of the current event. All access should be under lock. */
         protected TimedEventState _state;
         /** Absolute time this event should run next time. LOCKING: this */
@@ -411,7 +470,7 @@ public class SimpleTimer2 {
                         // There's probably a race here, where it's cancelled after it's running
                         // The result (if rescheduled) is a dup on the queue, see tickets 1694, 1705
                         // Mitigated by close-to-execution check in reschedule()
-                    boolean cancelled = _future.cancel(true);
+                    boolean cancelled = _pool.cancel(this, _future);
                     if (cancelled) {
                         _state = TimedEventState.CANCELLED;
                         _future = null;
@@ -446,13 +505,15 @@ public class SimpleTimer2 {
             if (_log.shouldDebug())
                 _log.debug("Running: " + this);
             long startTime = System.currentTimeMillis();
+            long nextRun;
             synchronized (this) {
+                nextRun = _nextRun;
                 if (!checkAndPrepareRun(startTime))
                     return;
             }
             if (_log.shouldWarn()) {
-                if (_future != null) {
-                    long delay = _future.getDelay(TimeUnit.MILLISECONDS);
+                if (_future != null || _pool._wheel != null) {
+                    long delay = _future != null ? _future.getDelay(TimeUnit.MILLISECONDS) : nextRun - startTime;
                     if (delay > 100)
                         _log.warn("Early exec " + this + " (" + delay + "ms)");
                     else if (delay < -1000)
@@ -582,6 +643,8 @@ public class SimpleTimer2 {
 
     /** Warning - slow. */
     private String debug() {
+        if (_wheel != null)
+            return _wheel.debug();
         _executor.purge();  // Remove cancelled tasks from the queue so we get a good queue size stat
         return
             "\n* Pool: " + _name +
@@ -0,0 +1,258 @@
+package net.i2p.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.i2p.I2PAppContext;
+
+/**
+ * Hashed timing wheel backend for SimpleTimer2.
+ *
+ * Events are kept in doubly-linked lists, one per slot, using link fields
+ * in the TimedEvent itself, so schedule and cancel are O(1) and do not allocate.
+ * Events more than one revolution away stay in their slot until their tick comes around.
+ *
+ * A single ticker thread advances the wheel every TICK ms, unlinks the expired events,
+ * and hands them to a small pool to run, or runs them itself if the pool queue is full.
+ * When the wheel is empty, the ticker waits for the next schedule.
+ *
+ * LOCKING: this, for all link fields in the events.
+ * Never held while calling into an event, as the events call in here while
+ * holding their own lock.
+ *
+ * @since 0.9.71+
+ */
+class TimerWheel {
+    private final String _name;
+    private final SimpleTimer2.TimedEvent[] _slots;
+    private final ThreadPoolExecutor _executor;
+    private final Thread _ticker;
+    /** ticker thread only */
+    private final List<SimpleTimer2.TimedEvent> _expired = new ArrayList<SimpleTimer2.TimedEvent>(64);
+    /** nanoTime at tick 0 */
+    private final long _start;
+    /** LOCKING: this */
+    private long _tick;
+    /** LOCKING: this */
+    private int _pending;
+    private volatile boolean _isRunning = true;
+    /** stats only, not synched */
+    private long _completed;
+
+    /** ms per tick */
+    static final int TICK = 10;
+    /** power of two, about 5 seconds per revolution */
+    private static final int SLOTS = 512;
+    private static final int MASK = SLOTS - 1;
+    private static final int QUEUE_SIZE = 1024;
+
+    /**
+     *  @param threads number of threads to run the events
+     */
+    public TimerWheel(String name, int threads, ThreadFactory factory, boolean prestartAllThreads) {
+        _name = name;
+        _slots = new SimpleTimer2.TimedEvent[SLOTS];
+        _executor = new WheelExecutor(threads, factory);
+        if (prestartAllThreads)
+            _executor.prestartAllCoreThreads();
+        _start = System.nanoTime();
+        _ticker = factory.newThread(new Ticker());
+        _ticker.setName(name + " Wheel");
+        _ticker.start();
+    }
+
+    /**
+     *  Link the event in to run after delay ms,
+     *  unlinking it first if it was already linked.
+     *
+     *  @param delay greater than zero
+     */
+    public synchronized void schedule(SimpleTimer2.TimedEvent event, long delay) {
+        if (!_isRunning)
+            return;
+        if (event._wheelSlot >= 0)
+            unlink(event);
+        else
+            _pending++;
+        long deadline = ticks() + ((delay + TICK - 1) / TICK);
+        if (deadline <= _tick)
+            deadline = _tick + 1;
+        event._wheelDeadline = deadline;
+        int slot = (int) (deadline & MASK);
+        SimpleTimer2.TimedEvent head = _slots[slot];
+        event._wheelSlot = slot;
+        event._wheelPrev = null;
+        event._wheelNext = head;
+        if (head != null)
+            head._wheelPrev = event;
+        _slots[slot] = event;
+        if (_pending == 1)
+            notifyAll();
+    }
+
+    /**
+     *  Unlink the event if it hasn't been handed off to run yet.
+     *
+     *  @return true if it was linked and will not run
+     */
+    public synchronized boolean cancel(SimpleTimer2.TimedEvent event) {
+        if (event._wheelSlot < 0)
+            return false;
+        unlink(event);
+        _pending--;
+        return true;
+    }
+
+    /** LOCKING: this */
+    private void unlink(SimpleTimer2.TimedEvent event) {
+        SimpleTimer2.TimedEvent prev = event._wheelPrev;
+        SimpleTimer2.TimedEvent next = event._wheelNext;
+        if (prev != null)
+            prev._wheelNext = next;
+        else
+            _slots[event._wheelSlot] = next;
+        if (next != null)
+            next._wheelPrev = prev;
+        event._wheelPrev = null;
+        event._wheelNext = null;
+        event._wheelSlot = -1;
+    }
+
+    /**
+     *  Cannot be restarted.
+     */
+    public void stop() {
+        synchronized (this) {
+            _isRunning = false;
+            for (int i = 0; i < SLOTS; i++) {
+                SimpleTimer2.TimedEvent e = _slots[i];
+                while (e != null) {
+                    SimpleTimer2.TimedEvent next = e._wheelNext;
+                    e._wheelPrev = null;
+                    e._wheelNext = null;
+                    e._wheelSlot = -1;
+                    e = next;
+                }
+                _slots[i] = null;
+            }
+            _pending = 0;
+            notifyAll();
+        }
+        _ticker.interrupt();
+        _executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        _executor.shutdownNow();
+    }
+
+    /** ticks since start */
+    private long ticks() {
+        return (System.nanoTime() - _start) / (TICK * 1000L * 1000L);
+    }
+
+    private class Ticker implements Runnable {
+        public void run() {
+            while (_isRunning) {
+                try {
+                    synchronized (TimerWheel.this) {
+                        while (_pending <= 0 && _isRunning) {
+                            TimerWheel.this.wait();
+                        }
+                        long now = ticks();
+                        if (now - _tick > SLOTS) {
+                            // idle or stalled, don't walk the same slots more than once
+                            expireAll(now);
+                        } else {
+                            while (_tick < now) {
+                                _tick++;
+                                expire(_slots[(int) (_tick & MASK)]);
+                            }
+                        }
+                    }
+                    dispatch();
+                    long sleep = ((_tick + 1) * TICK * 1000L * 1000L - (System.nanoTime() - _start)) / (1000L * 1000L);
+                    if (sleep > 0)
+                        Thread.sleep(sleep);
+                } catch (InterruptedException ie) {
+                    if (!_isRunning)
+                        break;
+                }
+            }
+        }
+
+        /**
+         *  Hand off everything in _expired.
+         *  Events run here if the pool queue is full.
+         */
+        private void dispatch() {
+            int sz = _expired.size();
+            for (int i = 0; i < sz; i++) {
+                try {
+                    _executor.execute(_expired.get(i));
+                } catch (RuntimeException re) {
+                    // RejectedExecutionException after shutdown, or thrown from
+                    // TimedEvent.run() in this thread, already logged there
+                }
+            }
+            _completed += sz;
+            _expired.clear();
+        }
+
+        /**
+         *  Move the expired events in the list starting at head to _expired.
+         *  LOCKING: TimerWheel.this
+         */
+        private void expire(SimpleTimer2.TimedEvent head) {
+            SimpleTimer2.TimedEvent e = head;
+            while (e != null) {
+                SimpleTimer2.TimedEvent next = e._wheelNext;
+                if (e._wheelDeadline <= _tick) {
+                    unlink(e);
+                    _pending--;
+                    _expired.add(e);
+                }
+                e = next;
+            }
+        }
+
+        /**
+         *  Catch up to now after a long wait, visiting each slot once.
+         *  LOCKING: TimerWheel.this
+         */
+        private void expireAll(long now) {
+            _tick = now;
+            for (int i = 0; i < SLOTS; i++) {
+                expire(_slots[i]);
+            }
+        }
+    }
+
+    private static class WheelExecutor extends ThreadPoolExecutor {
+        public WheelExecutor(int threads, ThreadFactory factory) {
+            // run in the ticker thread if the queue is full
+            super(threads, threads, 60, TimeUnit.SECONDS,
+                  new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            super.afterExecute(r, t);
+            if (t != null) { // shouldn't happen, caught in TimedEvent.run()
+                Log log = I2PAppContext.getGlobalContext().logManager().getLog(SimpleTimer2.class);
+                log.log(Log.CRIT, "Uncaught: " + r, t);
+            }
+        }
+    }
+
+    /** Warning - not synched, approximate */
+    public String debug() {
+        return
+            "\n* Pool: " + _name + " (wheel)" +
+            "; Active: " + _executor.getActiveCount() + '/' + _executor.getPoolSize() +
+            "; Completed: " + _completed +
+            "; Queued: " + _pending +
+            "; Runnable: " + _executor.getQueue().size();
+    }
+}
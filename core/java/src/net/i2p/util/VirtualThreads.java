@@ -0,0 +1,75 @@
+package net.i2p.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ *  Virtual threads, for blocking per-connection I/O without a platform thread
+ *  per connection. Via reflection, as we build for Java 8.
+ *
+ *  Only supported on Java 24 and higher (JEP 491). Before that, a virtual thread
+ *  blocked in a synchronized block or Object.wait(), as the streaming lib does
+ *  on every blocking read and write, pins its carrier thread, and a few hundred
+ *  idle connections would stall all the others.
+ *
+ *  @since 0.9.71+
+ */
+public class VirtualThreads {
+
+    private static final Method _ofVirtual;
+    private static final Method _name;
+    private static final Method _unstarted;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method unstarted = null;
+        if (SystemVersion.isJava(24) && !SystemVersion.isAndroid()) {
+            try {
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                // call through the public interface, the builder class is internal
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                name = builder.getMethod("name", String.class);
+                unstarted = builder.getMethod("unstarted", Runnable.class);
+            } catch (ClassNotFoundException cnfe) {
+                ofVirtual = null;
+            } catch (NoSuchMethodException nsme) {
+                ofVirtual = null;
+            }
+        }
+        _ofVirtual = ofVirtual;
+        _name = name;
+        _unstarted = unstarted;
+    }
+
+    private VirtualThreads() {}
+
+    /**
+     *  @return true if newThread() can return virtual threads
+     */
+    public static boolean isSupported() {
+        return _ofVirtual != null;
+    }
+
+    /**
+     *  A new, unstarted thread, virtual if requested and supported,
+     *  otherwise an I2PAppThread.
+     *
+     *  @param virtual false to always return an I2PAppThread
+     *  @return an unstarted thread
+     */
+    public static Thread newThread(Runnable r, String name, boolean virtual) {
+        if (virtual && _ofVirtual != null) {
+            try {
+                Object builder = _ofVirtual.invoke(null);
+                builder = _name.invoke(builder, name);
+                return (Thread) _unstarted.invoke(builder, r);
+            } catch (IllegalAccessException iae) {
+                // fall through
+            } catch (InvocationTargetException ite) {
+                // fall through
+            }
+        }
+        return new I2PAppThread(r, name);
+    }
+}
@@ -63,4 +63,19 @@ public class RateStatTest extends TestCase {
         assertEquals("cow trueisms", loadedRs.getGroupName());
         assertEquals("moo moo moo", loadedRs.getDescription());
     }
+
+    @Test
+    public void testStripedRateStat() throws Exception {
+        RateStat rs = new RateStat("striped", "striped test", "tests", new long[] {60 * 1000, 60 * 60 * 1000}, true);
+        for (int i = 0; i < 100; i++) {
+            rs.addData(10, 1);
+        }
+        assertEquals(100, rs.getLifetimeEventCount());
+        rs.coalesceStats();
+        Rate r = rs.getRate(60 * 60 * 1000);
+        assertTrue(r.isStriped());
+        assertEquals(100, r.getCurrentEventCount());
+        assertEquals(100, r.getLifetimeTotalEventTime());
+        assertEquals(10.0, rs.getLifetimeAverageValue());
+    }
 }
@@ -35,4 +35,46 @@ public class RateTest extends TestCase {
         // comment lines — not property entries. Use addComments=false for a real round-trip.
         assertEquals(5000, r.getPeriod());
     }
+
+    @Test
+    public void testStripedFold() throws Exception {
+        Rate rate = new Rate(60*1000, true);
+        assertTrue(rate.isStriped());
+        for (int i = 0; i < 50; i++) {
+            rate.addData(i * 100, 20);
+        }
+        rate.addData(7);
+        // folded on read
+        assertEquals(51, rate.getCurrentEventCount());
+        assertEquals(122507.0, rate.getCurrentTotalValue(), 0.0);
+        assertEquals(1000, rate.getCurrentTotalEventTime());
+        assertEquals(51, rate.getLifetimeEventCount());
+        rate.addData(3);
+        assertEquals(52, rate.getLifetimeEventCount());
+        assertEquals(122510.0, rate.getLifetimeTotalValue(), 0.0);
+    }
+
+    @Test
+    public void testStripedConcurrent() throws Exception {
+        final Rate rate = new Rate(60*1000, true);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        rate.addData(2);
+                        if ((j % 1000) == 0)
+                            rate.fold();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        assertEquals(40000, rate.getLifetimeEventCount());
+        assertEquals(80000.0, rate.getLifetimeTotalValue(), 0.0);
+        assertEquals(2.0, rate.getLifetimeAverageValue(), 0.0);
+    }
 }
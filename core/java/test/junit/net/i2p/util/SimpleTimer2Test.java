@@ -0,0 +1,128 @@
+package net.i2p.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.i2p.I2PAppContext;
+
+import org.junit.Test;
+
+/**
+ *  TimedEvent scheduling with both SimpleTimer2 backends.
+ */
+public class SimpleTimer2Test {
+
+    private final I2PAppContext _ctx = I2PAppContext.getGlobalContext();
+
+    private static class Event extends SimpleTimer2.TimedEvent {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch latch;
+        volatile long ranAt;
+
+        public Event(SimpleTimer2 pool, int count) {
+            super(pool);
+            latch = new CountDownLatch(count);
+        }
+
+        public void timeReached() {
+            ranAt = System.currentTimeMillis();
+            runs.incrementAndGet();
+            latch.countDown();
+        }
+    }
+
+    private void testRuns(boolean wheel) throws Exception {
+        SimpleTimer2 timer = new SimpleTimer2(_ctx, "test", false, wheel);
+        try {
+            Event e = new Event(timer, 1);
+            long start = System.currentTimeMillis();
+            e.schedule(50);
+            assertTrue(e.latch.await(5, TimeUnit.SECONDS));
+            assertTrue(e.ranAt - start >= 50 - SimpleTimer2.TimedEvent.DEFAULT_FUZZ);
+            Thread.sleep(100);
+            assertEquals(1, e.runs.get());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void testCancel(boolean wheel) throws Exception {
+        SimpleTimer2 timer = new SimpleTimer2(_ctx, "test", false, wheel);
+        try {
+            Event e = new Event(timer, 1);
+            e.schedule(100);
+            assertTrue(e.cancel());
+            Thread.sleep(300);
+            assertEquals(0, e.runs.get());
+            // and again after cancel
+            e.schedule(20);
+            assertTrue(e.latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void testForceReschedule(boolean wheel) throws Exception {
+        SimpleTimer2 timer = new SimpleTimer2(_ctx, "test", false, wheel);
+        try {
+            Event e = new Event(timer, 1);
+            e.schedule(60*1000);
+            e.forceReschedule(20);
+            assertTrue(e.latch.await(5, TimeUnit.SECONDS));
+            Event e2 = new Event(timer, 1);
+            e2.schedule(20);
+            e2.forceReschedule(60*1000);
+            Thread.sleep(300);
+            assertEquals(0, e2.runs.get());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void testMany(boolean wheel) throws Exception {
+        SimpleTimer2 timer = new SimpleTimer2(_ctx, "test", false, wheel);
+        try {
+            Event[] events = new Event[2000];
+            for (int i = 0; i < events.length; i++) {
+                events[i] = new Event(timer, 1);
+                // some more than one wheel revolution away
+                events[i].schedule(500 + (i * 7) % 6000);
+            }
+            for (int i = 0; i < events.length; i += 2) {
+                events[i].cancel();
+            }
+            for (int i = 1; i < events.length; i += 2) {
+                assertTrue(events[i].latch.await(10, TimeUnit.SECONDS));
+            }
+            for (int i = 0; i < events.length; i++) {
+                assertEquals(i & 1, events[i].runs.get());
+            }
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void testExecutorRuns() throws Exception { testRuns(false); }
+
+    @Test
+    public void testWheelRuns() throws Exception { testRuns(true); }
+
+    @Test
+    public void testExecutorCancel() throws Exception { testCancel(false); }
+
+    @Test
+    public void testWheelCancel() throws Exception { testCancel(true); }
+
+    @Test
+    public void testExecutorForceReschedule() throws Exception { testForceReschedule(false); }
+
+    @Test
+    public void testWheelForceReschedule() throws Exception { testForceReschedule(true); }
+
+    @Test
+    public void testWheelMany() throws Exception { testMany(true); }
+}
@@ -0,0 +1,45 @@
+package net.i2p.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void testSupportedOnlyOnJava24() {
+        if (!SystemVersion.isJava(24))
+            assertFalse(VirtualThreads.isSupported());
+    }
+
+    @Test
+    public void testPlatformThread() throws InterruptedException {
+        final CountDownLatch ran = new CountDownLatch(1);
+        Thread t = VirtualThreads.newThread(new Runnable() {
+            public void run() { ran.countDown(); }
+        }, "test-platform", false);
+        assertTrue(t instanceof I2PAppThread);
+        assertEquals("test-platform", t.getName());
+        assertFalse(t.isAlive());
+        t.start();
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtualOrFallback() throws InterruptedException {
+        final CountDownLatch ran = new CountDownLatch(1);
+        Thread t = VirtualThreads.newThread(new Runnable() {
+            public void run() { ran.countDown(); }
+        }, "test-virtual", true);
+        assertEquals("test-virtual", t.getName());
+        // an I2PAppThread exactly when unsupported
+        assertEquals(!VirtualThreads.isSupported(), t instanceof I2PAppThread);
+        t.start();
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        t.join(10*1000);
+        assertFalse(t.isAlive());
+    }
+}
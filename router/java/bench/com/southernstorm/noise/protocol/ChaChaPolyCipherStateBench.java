@@ -0,0 +1,99 @@
+package com.southernstorm.noise.protocol;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Data phase AEAD, ChaChaPolyCipherState vs. the JDK's ChaCha20-Poly1305,
+ * at SSU2 ACK-only, SSU2 full and NTCP2 max frame sizes.
+ *
+ * Decrypt cycles through packets with different nonces, as the JDK
+ * cipher falls back to ChaChaPolyCipherState on a repeated key and nonce.
+ *
+ * @since 0.9.71+
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class ChaChaPolyCipherStateBench {
+    private static final int PACKETS = 16;
+
+    @Param({"builtin", "jce"})
+    public String impl;
+
+    @Param({"64", "1200", "16384"})
+    public int size;
+
+    ChaChaPolyCipherState sender;
+    ChaChaPolyCipherState receiver;
+    byte[] ad = new byte[16];
+    byte[] buf;
+    byte[][] encrypted;
+    byte[] rcvBuf;
+    int next;
+
+    private ChaChaPolyCipherState newCipher() {
+        return impl.equals("jce") ? new JCEChaChaPolyCipherState() : new ChaChaPolyCipherState();
+    }
+
+    @Setup
+    public void prepare() throws Exception {
+        if (impl.equals("jce") && !JCEChaChaPolyCipherState.isAvailable())
+            throw new IllegalStateException("JDK has no ChaCha20-Poly1305");
+        Random rand = new Random(42);
+        byte[] key = new byte[32];
+        rand.nextBytes(key);
+        rand.nextBytes(ad);
+        sender = newCipher();
+        sender.initializeKey(key, 0);
+        receiver = newCipher();
+        receiver.initializeKey(key, 0);
+        buf = new byte[size + 16];
+        rand.nextBytes(buf);
+        encrypted = new byte[PACKETS][size + 16];
+        ChaChaPolyCipherState enc = newCipher();
+        enc.initializeKey(key, 0);
+        for (int i = 0; i < PACKETS; i++) {
+            rand.nextBytes(encrypted[i]);
+            enc.encryptWithAd(ad, encrypted[i], 0, encrypted[i], 0, size);
+        }
+        rcvBuf = new byte[size + 16];
+    }
+
+    @Benchmark
+    public int encrypt() throws Exception {
+        return sender.encryptWithAd(ad, buf, 0, buf, 0, size);
+    }
+
+    @Benchmark
+    public int decrypt() throws Exception {
+        int i = next++ % PACKETS;
+        receiver.setNonce(i);
+        return receiver.decryptWithAd(ad, encrypted[i], 0, rcvBuf, 0, size + 16);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(ChaChaPolyCipherStateBench.class.getSimpleName()).build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,114 @@
+package net.i2p.router.crypto.ratchet;
+
+import net.i2p.crypto.EncType;
+import net.i2p.crypto.KeyPair;
+import net.i2p.data.Certificate;
+import net.i2p.data.i2np.DataMessage;
+import net.i2p.data.i2np.DeliveryInstructions;
+import net.i2p.data.i2np.GarlicClove;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.router.Router;
+import net.i2p.router.RouterContext;
+import net.i2p.router.message.CloveSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ECIES-X25519-AEAD-Ratchet anonymous (N) New Session encryption and
+ * decryption with the router's SKM, as used for netdb lookups and replies.
+ *
+ * The NS replay filter rejects a repeated ephemeral key, so a new
+ * message is encrypted before each decrypt invocation.
+ *
+ * @since 0.9.71+
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class ECIESAEADEngineBench {
+    RouterContext ctx;
+    ECIESAEADEngine engine;
+    RatchetSKM skm;
+    KeyPair keys;
+    CloveSet cloves;
+
+    @Param({"64", "1024"})
+    public int len;
+
+    @Setup
+    public void prepare() {
+        Router router = new Router();
+        ctx = router.getContext();
+        ctx.initAll();
+        engine = ctx.eciesEngine();
+        skm = new RatchetSKM(ctx);
+        keys = ctx.keyGenerator().generatePKIKeys(EncType.ECIES_X25519);
+
+        DataMessage msg = new DataMessage(ctx);
+        byte[] data = new byte[len];
+        ctx.random().nextBytes(data);
+        msg.setData(data);
+        long exp = ctx.clock().now() + 10*60*1000;
+        msg.setMessageExpiration(exp);
+        GarlicClove clove = new GarlicClove(ctx);
+        clove.setData(msg);
+        clove.setCertificate(Certificate.NULL_CERT);
+        clove.setCloveId(ctx.random().nextLong(I2NPMessage.MAX_ID_VALUE));
+        clove.setExpiration(exp);
+        clove.setInstructions(DeliveryInstructions.LOCAL);
+        // CloveSet expiration goes in the DateTime block, which must be close to now
+        cloves = new CloveSet(new GarlicClove[] { clove }, Certificate.NULL_CERT, clove.getCloveId(), ctx.clock().now());
+    }
+
+    /**
+     * A freshly encrypted message for each decrypt invocation.
+     */
+    @State(Scope.Thread)
+    public static class Encrypted {
+        byte[] data;
+
+        @Setup(Level.Invocation)
+        public void encryptNext(ECIESAEADEngineBench bench) {
+            data = bench.engine.encrypt(bench.cloves, bench.keys.getPublic());
+        }
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return engine.encrypt(cloves, keys.getPublic());
+    }
+
+    @Benchmark
+    public CloveSet decrypt(Encrypted enc) throws Exception {
+        CloveSet rv = engine.decrypt(enc.data, keys.getPrivate(), skm);
+        if (rv == null || rv.getCloveCount() != 1)
+            throw new IllegalStateException("decrypt failed");
+        return rv;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(ECIESAEADEngineBench.class.getSimpleName()).build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,157 @@
+package net.i2p.router.transport.ntcp;
+
+import com.southernstorm.noise.protocol.ChaChaPolyCipherState;
+
+import net.i2p.crypto.SipHashInline;
+import net.i2p.data.DataHelper;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.data.i2np.TunnelDataMessage;
+import net.i2p.router.RouterContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NTCP2 data phase frame handling, as done by NTCPConnection:
+ * SipHash length obfuscation, ChaChaPoly frame encryption/decryption
+ * and NTCP2Payload block writing/parsing, for frames carrying
+ * one or more TunnelDataMessages.
+ *
+ * The encrypted frame is restored from a pristine copy before each
+ * receive, as decryption is in-place.
+ *
+ * @since 0.9.71+
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class NTCP2FrameBench {
+    RouterContext ctx;
+    ChaChaPolyCipherState sender;
+    ChaChaPolyCipherState receiver;
+    long sipk1, sipk2;
+    byte[] sipIV = new byte[8];
+    byte[] curSipIV = new byte[8];
+    List<NTCP2Payload.Block> blocks;
+    byte[] tmp = new byte[NTCPConnection.BUFFER_SIZE];
+    byte[] frame;
+    byte[] rcvBuf;
+    Callback cb;
+
+    @Param({"1", "4"})
+    public int messages;
+
+    @Setup
+    public void prepare() throws Exception {
+        ctx = new RouterContext(null);
+        byte[] key = new byte[32];
+        ctx.random().nextBytes(key);
+        sender = new ChaChaPolyCipherState();
+        sender.initializeKey(key, 0);
+        receiver = new ChaChaPolyCipherState();
+        receiver.initializeKey(key, 0);
+        sipk1 = ctx.random().nextLong();
+        sipk2 = ctx.random().nextLong();
+        ctx.random().nextBytes(sipIV);
+
+        blocks = new ArrayList<NTCP2Payload.Block>(messages + 1);
+        for (int i = 0; i < messages; i++) {
+            TunnelDataMessage tdm = new TunnelDataMessage(ctx);
+            tdm.setTunnelId(1234 + i);
+            byte[] tdata = new byte[TunnelDataMessage.DATA_SIZE];
+            ctx.random().nextBytes(tdata);
+            tdm.setData(tdata);
+            tdm.setMessageExpiration(ctx.clock().now() + 60*1000);
+            blocks.add(new NTCP2Payload.I2NPBlock(tdm));
+        }
+        blocks.add(new NTCP2Payload.PaddingBlock(32));
+        frame = send();
+        rcvBuf = new byte[frame.length];
+    }
+
+    /**
+     * Same as NTCPConnection.sendNTCP2(), without the write queueing.
+     */
+    private byte[] send() throws Exception {
+        int payloadlen = NTCP2Payload.writePayload(tmp, 0, blocks);
+        int framelen = payloadlen + OutboundNTCP2State.MAC_SIZE;
+        byte[] enc = new byte[2 + framelen];
+        sender.setNonce(0);
+        sender.encryptWithAd(null, tmp, 0, enc, 2, payloadlen);
+        System.arraycopy(sipIV, 0, curSipIV, 0, 8);
+        long iv = SipHashInline.hash24(sipk1, sipk2, curSipIV);
+        enc[0] = (byte) ((framelen >> 8) ^ (iv >> 8));
+        enc[1] = (byte) (framelen ^ iv);
+        return enc;
+    }
+
+    @Benchmark
+    public byte[] sendFrame() throws Exception {
+        return send();
+    }
+
+    /**
+     * Same as NTCPConnection.NTCP2ReadState.receive() and decryptAndProcess()
+     * for a complete frame in the buffer.
+     */
+    @Benchmark
+    public int receiveFrame(Blackhole bh) throws Exception {
+        byte[] data = rcvBuf;
+        System.arraycopy(frame, 0, data, 0, frame.length);
+        System.arraycopy(sipIV, 0, curSipIV, 0, 8);
+        long iv = SipHashInline.hash24(sipk1, sipk2, curSipIV);
+        data[0] ^= (byte) (iv >> 8);
+        data[1] ^= (byte) iv;
+        int framelen = (int) DataHelper.fromLong(data, 0, 2);
+        receiver.setNonce(0);
+        receiver.decryptWithAd(null, data, 2, data, 2, framelen);
+        if (cb == null)
+            cb = new Callback(bh);
+        return NTCP2Payload.processPayload(ctx, cb, data, 2, framelen - OutboundNTCP2State.MAC_SIZE, false);
+    }
+
+    /**
+     * Consumes parsed blocks so they are not dead-code eliminated.
+     */
+    private static class Callback implements NTCP2Payload.PayloadCallback {
+        private final Blackhole bh;
+
+        public Callback(Blackhole bh) { this.bh = bh; }
+
+        public void gotDateTime(long time) { bh.consume(time); }
+        public void gotI2NP(I2NPMessage msg) { bh.consume(msg); }
+        public void gotOptions(byte[] options, boolean isHandshake) {}
+        public void gotRI(RouterInfo ri, boolean isHandshake, boolean flood) {}
+        public void gotTermination(int reason, long lastReceived) {}
+        public void gotPadding(int paddingLength, int frameLength) { bh.consume(paddingLength); }
+        public void gotUnknown(int type, int len) {}
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(NTCP2FrameBench.class.getSimpleName()).build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,180 @@
+package net.i2p.router.transport.udp;
+
+import static net.i2p.router.transport.udp.SSU2Util.*;
+
+import com.southernstorm.noise.protocol.ChaChaPolyCipherState;
+
+import net.i2p.data.DataHelper;
+import net.i2p.data.Hash;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.data.i2np.TunnelDataMessage;
+import net.i2p.router.RouterContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.DatagramPacket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSU2 data phase receive path, as done by PeerState2.receivePacket():
+ * header unprotect, ChaChaPoly decrypt in place, and SSU2Payload parsing
+ * of a packet carrying one TunnelDataMessage, an ACK block and padding.
+ *
+ * The encrypted packet is restored from a pristine copy before each
+ * iteration, as decryption is in-place.
+ *
+ * @since 0.9.71+
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class SSU2DataPhaseBench {
+    private static final long CONN_ID = 0x1122334455667788L;
+
+    RouterContext ctx;
+    ChaChaPolyCipherState rcvCha;
+    byte[] hdrKey1 = new byte[32];
+    byte[] hdrKey2 = new byte[32];
+    byte[] encrypted;
+    UDPPacket packet;
+    long pktNum = 42;
+    Callback cb;
+
+    @Setup
+    public void prepare() throws Exception {
+        ctx = new RouterContext(null);
+        ctx.random().nextBytes(hdrKey1);
+        ctx.random().nextBytes(hdrKey2);
+        byte[] chachaKey = new byte[32];
+        ctx.random().nextBytes(chachaKey);
+
+        TunnelDataMessage tdm = new TunnelDataMessage(ctx);
+        tdm.setTunnelId(1234);
+        byte[] tdata = new byte[TunnelDataMessage.DATA_SIZE];
+        ctx.random().nextBytes(tdata);
+        tdm.setData(tdata);
+        tdm.setMessageExpiration(ctx.clock().now() + 60*1000);
+
+        packet = UDPPacket.acquire(ctx, true);
+        DatagramPacket pkt = packet.getPacket();
+        byte[] data = pkt.getData();
+        int off = pkt.getOffset();
+
+        // short header
+        DataHelper.toLong8(data, off, CONN_ID);
+        DataHelper.toLong(data, off + PKT_NUM_OFFSET, 4, pktNum);
+        data[off + TYPE_OFFSET] = DATA_FLAG_BYTE;
+        data[off + TYPE_OFFSET + 1] = 0;
+        data[off + TYPE_OFFSET + 2] = 0;
+        data[off + TYPE_OFFSET + 3] = 0;
+
+        // I2NP block, same format as NTCP2
+        int poff = off + SHORT_HEADER_SIZE;
+        data[poff] = 3;
+        int mlen = tdm.toRawByteArrayNTCP2(data, poff + SSU2Payload.BLOCK_HEADER_SIZE) - (poff + SSU2Payload.BLOCK_HEADER_SIZE);
+        DataHelper.toLong(data, poff + 1, 2, mlen);
+        int len = SSU2Payload.BLOCK_HEADER_SIZE + mlen;
+        List<SSU2Payload.Block> blocks = new ArrayList<SSU2Payload.Block>(2);
+        SSU2Payload.Block block = new SSU2Payload.AckBlock(pktNum - 1, 3, new byte[] { 1, 2 }, 1);
+        blocks.add(block);
+        len += block.getTotalLength();
+        block = new SSU2Payload.PaddingBlock(16);
+        blocks.add(block);
+        len += block.getTotalLength();
+        SSU2Payload.writePayload(data, poff + SSU2Payload.BLOCK_HEADER_SIZE + mlen, blocks);
+
+        ChaChaPolyCipherState sndCha = new ChaChaPolyCipherState();
+        sndCha.initializeKey(chachaKey, 0);
+        sndCha.setNonce(pktNum);
+        sndCha.encryptWithAd(data, off, SHORT_HEADER_SIZE, data, poff, data, poff, len);
+        pkt.setLength(SHORT_HEADER_SIZE + len + MAC_LEN);
+        SSU2Header.encryptShortHeader(packet, hdrKey1, hdrKey2);
+
+        encrypted = new byte[pkt.getLength()];
+        System.arraycopy(data, off, encrypted, 0, encrypted.length);
+        rcvCha = new ChaChaPolyCipherState();
+        rcvCha.initializeKey(chachaKey, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        packet.release();
+    }
+
+    @Benchmark
+    public int receive(Blackhole bh) throws Exception {
+        DatagramPacket pkt = packet.getPacket();
+        byte[] data = pkt.getData();
+        int off = pkt.getOffset();
+        int len = encrypted.length;
+        System.arraycopy(encrypted, 0, data, off, len);
+        pkt.setLength(len);
+
+        SSU2Header.Header header = SSU2Header.trialDecryptShortHeader(packet, hdrKey1, hdrKey2);
+        if (header == null || header.getDestConnID() != CONN_ID || header.getType() != DATA_FLAG_BYTE)
+            throw new IllegalStateException("bad header");
+        long n = header.getPacketNumber();
+        SSU2Header.acceptTrialDecrypt(packet, header);
+        rcvCha.setNonce(n);
+        rcvCha.decryptWithAd(header.data, data, off + SHORT_HEADER_SIZE, data, off + SHORT_HEADER_SIZE, len - SHORT_HEADER_SIZE);
+        int payloadLen = len - (SHORT_HEADER_SIZE + MAC_LEN);
+        if (cb == null)
+            cb = new Callback(bh);
+        return SSU2Payload.processPayload(ctx, cb, data, off + SHORT_HEADER_SIZE, payloadLen, false, null);
+    }
+
+    /**
+     * Consumes parsed blocks so they are not dead-code eliminated.
+     */
+    private static class Callback implements SSU2Payload.PayloadCallback {
+        private final Blackhole bh;
+
+        public Callback(Blackhole bh) { this.bh = bh; }
+
+        public void gotDateTime(long time) { bh.consume(time); }
+        public void gotI2NP(I2NPMessage msg) { bh.consume(msg); }
+        public void gotFragment(byte[] data, int off, int len, long messageID, int frag, boolean isLast) { bh.consume(messageID); }
+        public void gotACK(long ackThru, int acks, byte[] ranges) { bh.consume(ackThru); }
+        public void gotOptions(byte[] options, boolean isHandshake) {}
+        public void gotRI(RouterInfo ri, boolean isHandshake, boolean flood) {}
+        public void gotRIFragment(byte[] data, boolean isHandshake, boolean flood, boolean isGzipped, int frag, int totalFrags) {}
+        public void gotAddress(byte[] ip, int port) {}
+        public void gotRelayTagRequest() {}
+        public void gotRelayTag(long tag) {}
+        public void gotRelayRequest(byte[] data) {}
+        public void gotRelayResponse(int status, byte[] data) {}
+        public void gotRelayIntro(Hash aliceHash, byte[] data) {}
+        public void gotPeerTest(int msg, int status, Hash h, byte[] data) {}
+        public void gotToken(long token, long expires) {}
+        public void gotTermination(int reason, long lastReceived) {}
+        public void gotPathChallenge(RemoteHostId from, byte[] data) {}
+        public void gotPathResponse(RemoteHostId from, byte[] data) {}
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(SSU2DataPhaseBench.class.getSimpleName()).build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,148 @@
+package net.i2p.router.tunnel;
+
+import net.i2p.data.Hash;
+import net.i2p.data.TunnelId;
+import net.i2p.data.i2np.DataMessage;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.router.RouterContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunnel gateway fragmentation in BatchedPreprocessor and
+ * endpoint reassembly in FragmentHandler, for a single I2NP message
+ * of the given size.
+ *
+ * The preprocessor is driven through send() directly, as
+ * preprocessQueue() flushes partial batches based on wall clock delays.
+ *
+ * @since 0.9.71+
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class TunnelFragmentBench {
+    RouterContext ctx;
+    BatchedPreprocessor pre;
+    DataMessage msg;
+    List<byte[]> fragments;
+    FragmentHandler handler;
+    Collector collector = new Collector();
+    Sink sink;
+
+    /** 1 to 5 fragments */
+    @Param({"200", "1800", "4000"})
+    public int size;
+
+    @Setup
+    public void prepare() {
+        ctx = new RouterContext(null);
+        pre = new BatchedPreprocessor(ctx, "bench");
+        msg = new DataMessage(ctx);
+        byte[] data = new byte[size];
+        ctx.random().nextBytes(data);
+        msg.setData(data);
+        msg.setUniqueId(ctx.random().nextLong(I2NPMessage.MAX_ID_VALUE));
+        msg.setMessageExpiration(ctx.clock().now() + 10*60*1000);
+        fragment(collector);
+        fragments = collector.fragments;
+    }
+
+    private void fragment(TunnelGateway.Receiver rcvr) {
+        List<PendingGatewayMessage> pending = new ArrayList<PendingGatewayMessage>(1);
+        PendingGatewayMessage pgm = new PendingGatewayMessage(msg, null, null);
+        pending.add(pgm);
+        while (pgm.getOffset() < pgm.getData().length) {
+            pre.send(pending, 0, 0, collector, rcvr);
+        }
+    }
+
+    @Benchmark
+    public void preprocess(Blackhole bh) {
+        if (sink == null)
+            sink = new Sink(bh);
+        fragment(sink);
+    }
+
+    @Benchmark
+    public void reassemble(Blackhole bh) {
+        if (handler == null)
+            handler = new FragmentHandler(ctx, new Defragmented(bh), true);
+        for (int i = 0; i < fragments.size(); i++) {
+            // FragmentHandler releases the buffer to a cache, so it must be a new one
+            byte[] frag = fragments.get(i).clone();
+            if (!handler.receiveTunnelMessage(frag, 0, frag.length))
+                throw new IllegalStateException("corrupt fragment");
+        }
+    }
+
+    /**
+     * Sender that passes the preprocessed data straight to the receiver.
+     * Also the receiver that collects the fragments during setup.
+     */
+    private static class Collector implements TunnelGateway.Sender, TunnelGateway.Receiver {
+        final List<byte[]> fragments = new ArrayList<byte[]>(8);
+
+        public long sendPreprocessed(byte[] preprocessed, TunnelGateway.Receiver receiver) {
+            return receiver.receiveEncrypted(preprocessed);
+        }
+
+        public long receiveEncrypted(byte[] encrypted) {
+            fragments.add(encrypted.clone());
+            return -1;
+        }
+
+        public Hash getSendTo() { return null; }
+    }
+
+    private static class Sink implements TunnelGateway.Receiver {
+        private final Blackhole bh;
+
+        public Sink(Blackhole bh) { this.bh = bh; }
+
+        public long receiveEncrypted(byte[] encrypted) {
+            bh.consume(encrypted);
+            return -1;
+        }
+
+        public Hash getSendTo() { return null; }
+    }
+
+    private static class Defragmented implements FragmentHandler.DefragmentedReceiver {
+        private final Blackhole bh;
+
+        public Defragmented(Blackhole bh) { this.bh = bh; }
+
+        public void receiveComplete(I2NPMessage msg, Hash toRouter, TunnelId toTunnel) {
+            bh.consume(msg);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(TunnelFragmentBench.class.getSimpleName()).build();
+
+        new Runner(opt).run();
+    }
+}
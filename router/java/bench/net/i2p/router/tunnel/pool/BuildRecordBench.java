@@ -0,0 +1,114 @@
+package net.i2p.router.tunnel.pool;
+
+import net.i2p.crypto.ChaCha20;
+import net.i2p.crypto.EncType;
+import net.i2p.crypto.KeyPair;
+import net.i2p.data.EmptyProperties;
+import net.i2p.data.Hash;
+import net.i2p.data.i2np.BuildRequestRecord;
+import net.i2p.data.i2np.BuildResponseRecord;
+import net.i2p.data.i2np.EncryptedBuildRecord;
+import net.i2p.data.i2np.ShortEncryptedBuildRecord;
+import net.i2p.data.i2np.TunnelBuildMessage;
+import net.i2p.router.Router;
+import net.i2p.router.RouterContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request crypto done by BuildHandler via BuildMessageProcessor
+ * for a short (ECIES) tunnel build record: decrypting our record,
+ * re-encrypting the other records with the reply key, and creating
+ * the encrypted reply record.
+ *
+ * BuildMessageProcessor.decrypt() itself is not used, as its
+ * duplicate filter rejects a repeated reply key.
+ *
+ * @since 0.9.71+
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class BuildRecordBench {
+    RouterContext ctx;
+    KeyPair keys;
+    EncryptedBuildRecord record;
+    BuildRequestRecord request;
+    byte[][] others;
+
+    @Setup
+    public void prepare() {
+        Router router = new Router();
+        ctx = router.getContext();
+        ctx.initAll();
+        keys = ctx.keyGenerator().generatePKIKeys(EncType.ECIES_X25519);
+        Hash us = new Hash(new byte[Hash.HASH_LENGTH]);
+        ctx.random().nextBytes(us.getData());
+        Hash next = new Hash(new byte[Hash.HASH_LENGTH]);
+        ctx.random().nextBytes(next.getData());
+        BuildRequestRecord req = new BuildRequestRecord(ctx, 1 + ctx.random().nextLong(0xffffffffL),
+                                                        1 + ctx.random().nextLong(0xffffffffL), next,
+                                                        ctx.random().nextLong(0xffffffffL),
+                                                        false, false, EmptyProperties.INSTANCE);
+        record = req.encryptECIESRecord(ctx, keys.getPublic(), us);
+        request = decryptRecord();
+        others = new byte[TunnelBuildMessage.MAX_RECORD_COUNT - 1][ShortEncryptedBuildRecord.LENGTH];
+        for (int i = 0; i < others.length; i++) {
+            ctx.random().nextBytes(others[i]);
+        }
+    }
+
+    @Benchmark
+    public BuildRequestRecord decryptRecord() {
+        try {
+            return new BuildRequestRecord(ctx, keys.getPrivate(), record);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Same as the short record loop in BuildMessageProcessor.decrypt()
+     */
+    @Benchmark
+    public byte[][] encryptOtherRecords() {
+        byte[] replyKey = request.getChaChaReplyKey().getData();
+        byte iv[] = new byte[12];
+        for (int i = 0; i < others.length; i++) {
+            byte[] bytes = others[i];
+            iv[4] = (byte) i;
+            ChaCha20.encrypt(replyKey, iv, bytes, 0, bytes, 0, ShortEncryptedBuildRecord.LENGTH);
+        }
+        return others;
+    }
+
+    @Benchmark
+    public ShortEncryptedBuildRecord createReply() {
+        return BuildResponseRecord.createShort(ctx, 0, request.getChaChaReplyKey(),
+                                               request.getChaChaReplyAD(), EmptyProperties.INSTANCE, 0);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(BuildRecordBench.class.getSimpleName()).build();
+
+        new Runner(opt).run();
+    }
+}
@@ -5,12 +5,25 @@ import com.southernstorm.noise.crypto.chacha20.ChaChaCore;
 import java.util.Arrays;
 import javax.crypto.BadPaddingException;
 import javax.crypto.ShortBufferException;
+import net.i2p.I2PAppContext;
+import net.i2p.util.SystemVersion;
 
 /**
  * Implements the ChaChaPoly cipher for Noise.
  */
 public class ChaChaPolyCipherState implements CipherState {
 
+    /**
+     *  Set to true to use the JDK's ChaCha20-Poly1305 for the data phase,
+     *  if available. Set to false to always use this implementation.
+     *  Default true on Java 21+, which has vector intrinsics for it.
+     *
+     *  @since 0.9.71+
+     */
+    public static final String PROP_JCE = "crypto.chachaPoly.useJCE";
+    private static final boolean DEFAULT_JCE = SystemVersion.isJava(21);
+    private static final boolean USE_JCE = useJCE();
+
     private final Poly1305 poly;
     private final int[] input;
     private final int[] output;
@@ -246,11 +259,30 @@ public class ChaChaPolyCipherState implements CipherState {
 
     @Override
     public CipherState fork(byte[] key, int offset) {
-        CipherState cipher = new ChaChaPolyCipherState();
+        CipherState cipher = create();
         cipher.initializeKey(key, offset);
         return cipher;
     }
 
+    /**
+     *  A new cipher state for the data phase. This is the JDK's implementation
+     *  if enabled with PROP_JCE and available, otherwise this one.
+     *
+     *  @since 0.9.71+
+     */
+    public static ChaChaPolyCipherState create() {
+        return USE_JCE ? new JCEChaChaPolyCipherState() : new ChaChaPolyCipherState();
+    }
+
+    /**
+     *  @since 0.9.71+
+     */
+    private static boolean useJCE() {
+        String p = I2PAppContext.getGlobalContext().getProperty(PROP_JCE);
+        boolean rv = p != null ? Boolean.parseBoolean(p) : DEFAULT_JCE;
+        return rv && JCEChaChaPolyCipherState.isAvailable();
+    }
+
     @Override
     public void setNonce(long nonce) {n = nonce;}
 
@@ -0,0 +1,183 @@
+package com.southernstorm.noise.protocol;
+
+import java.security.GeneralSecurityException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * ChaChaPoly using the JDK's ChaCha20-Poly1305 Cipher, available in Java 11+.
+ *
+ * Java 20+ has intrinsics for it that process several blocks at a time
+ * with vector instructions, which is faster than ChaChaPolyCipherState
+ * for data phase sized packets. Before that it is about the same speed
+ * for large packets, and slower for small ones.
+ * The output is identical, the nonce is the same 4 zero bytes
+ * followed by the 64-bit little-endian counter.
+ *
+ * The JDK refuses to init twice in a row with the same key and nonce,
+ * even to decrypt, as for a duplicate packet. The superclass handles those instead.
+ *
+ * The Cipher holds no state between packets, so there is one per thread
+ * rather than one per instance, and clone() stays cheap, as SSU2 clones
+ * the send cipher for every packet.
+ *
+ * Use ChaChaPolyCipherState.create() to get one when enabled.
+ *
+ * @since 0.9.71+
+ */
+class JCEChaChaPolyCipherState extends ChaChaPolyCipherState {
+
+    private static final String ALGO = "ChaCha20-Poly1305";
+    private static final ThreadLocal<Cipher> _cipher = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(ALGO);
+            } catch (GeneralSecurityException gse) {
+                throw new IllegalStateException(gse);
+            }
+        }
+    };
+    private final byte[] nonce = new byte[12];
+    private SecretKeySpec key;
+    private long n;
+
+    /**
+     * Check isAvailable() first.
+     */
+    JCEChaChaPolyCipherState() {
+        super();
+    }
+
+    /**
+     * @return true if the JDK has ChaCha20-Poly1305
+     */
+    static boolean isAvailable() {
+        try {
+            Cipher.getInstance(ALGO);
+            return true;
+        } catch (GeneralSecurityException gse) {
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        key = null;
+    }
+
+    @Override
+    public void initializeKey(byte[] key, int offset) {
+        // the superclass is only used if the JDK refuses
+        super.initializeKey(key, offset);
+        this.key = new SecretKeySpec(key, offset, 32, "ChaCha20");
+        n = 0;
+    }
+
+    @Override
+    public void setNonce(long nonce) {
+        super.setNonce(nonce);
+        n = nonce;
+    }
+
+    private IvParameterSpec nextIV() {
+        if (n == -1L) {throw new IllegalStateException("Nonce has wrapped around");}
+        long v = n;
+        for (int i = 4; i < 12; i++) {
+            nonce[i] = (byte) v;
+            v >>>= 8;
+        }
+        return new IvParameterSpec(nonce);
+    }
+
+    /**
+     *  I2P
+     */
+    @Override
+    public int encryptWithAd(byte[] ad, int adOffset, int adLength, byte[] plaintext, int plaintextOffset,
+            byte[] ciphertext, int ciphertextOffset, int length) throws ShortBufferException {
+        if (!hasKey())
+            return super.encryptWithAd(ad, adOffset, adLength, plaintext, plaintextOffset, ciphertext, ciphertextOffset, length);
+        int space;
+        if (ciphertextOffset > ciphertext.length) {space = 0;}
+        else {space = ciphertext.length - ciphertextOffset;}
+        if (space < 16 || length > (space - 16)) {throw new ShortBufferException();}
+        Cipher cipher = _cipher.get();
+        int rv;
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, nextIV());
+            if (ad != null)
+                cipher.updateAAD(ad, adOffset, adLength);
+            rv = cipher.doFinal(plaintext, plaintextOffset, length, ciphertext, ciphertextOffset);
+        } catch (ShortBufferException sbe) {
+            throw sbe;
+        } catch (GeneralSecurityException gse) {
+            // key and nonce reuse
+            super.setNonce(n);
+            rv = super.encryptWithAd(ad, adOffset, adLength, plaintext, plaintextOffset, ciphertext, ciphertextOffset, length);
+        }
+        n++;
+        return rv;
+    }
+
+    /**
+     *  I2P
+     */
+    @Override
+    public int decryptWithAd(byte[] ad, int adOffset, int adLength, byte[] ciphertext,
+                             int ciphertextOffset, byte[] plaintext, int plaintextOffset,
+                             int length) throws ShortBufferException, BadPaddingException {
+        if (!hasKey())
+            return super.decryptWithAd(ad, adOffset, adLength, ciphertext, ciphertextOffset, plaintext, plaintextOffset, length);
+        int space;
+        if (ciphertextOffset > ciphertext.length) {space = 0;}
+        else {space = ciphertext.length - ciphertextOffset;}
+        if (length > space) {throw new ShortBufferException();}
+        if (plaintextOffset > plaintext.length) {space = 0;}
+        else {space = plaintext.length - plaintextOffset;}
+        if (length < 16) {Noise.throwBadTagException();}
+        if (length - 16 > space) {throw new ShortBufferException();}
+        Cipher cipher = _cipher.get();
+        int rv;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, nextIV());
+            if (ad != null)
+                cipher.updateAAD(ad, adOffset, adLength);
+            rv = cipher.doFinal(ciphertext, ciphertextOffset, length, plaintext, plaintextOffset);
+        } catch (ShortBufferException sbe) {
+            throw sbe;
+        } catch (BadPaddingException bpe) {
+            throw bpe;
+        } catch (GeneralSecurityException gse) {
+            // key and nonce reuse, e.g. a duplicate packet
+            super.setNonce(n);
+            rv = super.decryptWithAd(ad, adOffset, adLength, ciphertext, ciphertextOffset, plaintext, plaintextOffset, length);
+        }
+        n++;
+        return rv;
+    }
+
+    /**
+     *  I2P
+     */
+    @Override
+    public JCEChaChaPolyCipherState clone() throws CloneNotSupportedException {
+        return new JCEChaChaPolyCipherState(this);
+    }
+
+    private JCEChaChaPolyCipherState(JCEChaChaPolyCipherState o) throws CloneNotSupportedException {
+        super(o);
+        key = o.key;
+        n = o.n;
+        System.arraycopy(o.nonce, 0, nonce, 0, nonce.length);
+    }
+
+    @Override
+    public String toString() {
+        return "Cipher State (JCE):\n* Nonce: " + n;
+    }
+}
@@ -411,6 +411,21 @@ public abstract class I2NPMessageImpl implements I2NPMessage {
      */
     public static I2NPMessage fromRawByteArrayNTCP2(I2PAppContext ctx, byte[] buffer, int offset,
                                                     int len, I2NPMessageHandler handler) throws I2NPMessageException {
+        return fromRawByteArrayNTCP2(ctx, buffer, offset, len, handler, false);
+    }
+
+    /**
+     *  Read the message with a short 9-byte header.
+     *  The header consists of a one-byte type, 4-byte ID, and a 4-byte expiration in seconds only.
+     *  Used by NTCP2 and SSU2 only!
+     *
+     *  @param handler ignored, may be null
+     *  @param view if true, a TunnelDataMessage is a view of the buffer, see TunnelDataMessage.readMessageView()
+     *  @since 0.9.71+
+     */
+    public static I2NPMessage fromRawByteArrayNTCP2(I2PAppContext ctx, byte[] buffer, int offset,
+                                                    int len, I2NPMessageHandler handler,
+                                                    boolean view) throws I2NPMessageException {
         if (len < 9)
             throw new I2NPMessageException("Payload is too short " + len);
         int type = buffer[offset] & 0xff;
@@ -425,7 +440,10 @@ public abstract class I2NPMessageImpl implements I2NPMessage {
             long expiration = (DataHelper.fromLong(buffer, offset, 4) * 1000) + 500;
             offset += 4;
             int dataSize = len - 9;
-            msg.readMessage(buffer, offset, dataSize, type, handler);
+            if (view && msg instanceof TunnelDataMessage)
+                ((TunnelDataMessage) msg).readMessageView(buffer, offset, dataSize);
+            else
+                msg.readMessage(buffer, offset, dataSize, type, handler);
             msg.setMessageExpiration(expiration);
             return msg;
         } catch (IllegalArgumentException iae) {
@@ -22,12 +22,20 @@ import net.i2p.util.ByteCache;
  * FastI2NPMessageImpl so we don't verify the checksum on input...
  * because this is a high-usage class.
  *
+ * As of 0.9.71+, the transports read it as a view of their receive buffer,
+ * see readMessageView(). The payload is copied out on the first getData(),
+ * or decrypted out of place by a participating hop, so participating traffic
+ * is copied once on receive rather than twice, and dropped traffic not at all.
+ *
  */
 public class TunnelDataMessage extends FastI2NPMessageImpl {
     private long _tunnelId;
     private TunnelId _tunnelIdObj;
     private byte[] _data;
     private ByteArray _dataBuf;
+    /** The transport's buffer, until detached, see readMessageView() */
+    private byte[] _view;
+    private int _viewOffset;
     /** Message type ID for this I2NP message */
 
     public final static int MESSAGE_TYPE = 18;
@@ -91,6 +99,7 @@ public class TunnelDataMessage extends FastI2NPMessageImpl {
     /** Return the data */
 
     public byte[] getData() {
+        if (_view != null) {detach(true);}
         if (_hadCache && _dataBuf == null) {
             RuntimeException e = new RuntimeException("TDM data buf use after free");
             _log.error("TDM boom", e);
@@ -104,7 +113,7 @@ public class TunnelDataMessage extends FastI2NPMessageImpl {
      *  @throws IllegalStateException if data previously set, to protect saved checksum
      */
     public void setData(byte[] data) {
-        if (_data != null) {throw new IllegalStateException();}
+        if (_data != null || _view != null) {throw new IllegalStateException();}
         if ((data == null) || (data.length <= 0)) {throw new IllegalArgumentException("Empty tunnel payload?");}
         _data = data;
     }
@@ -132,10 +141,91 @@ public class TunnelDataMessage extends FastI2NPMessageImpl {
         System.arraycopy(data, curIndex, _data, 0, DATA_SIZE);
     }
 
+    /**
+     *  Read the message without copying the payload, which stays in the
+     *  caller's buffer until getData(), detach(), or detachForWrite() is called.
+     *  The caller's buffer must not change until then, so this may only be used
+     *  when the message is dispatched before the caller reuses the buffer,
+     *  and anything that keeps the message longer must detach() it first.
+     *
+     *  @since 0.9.71+
+     */
+    void readMessageView(byte[] data, int offset, int dataSize) throws I2NPMessageException {
+        if (dataSize != 4 + DATA_SIZE)
+            throw new I2NPMessageException("bad len " + dataSize);
+        if (offset + dataSize > data.length)
+            throw new I2NPMessageException("buffer overrun");
+        _tunnelId = DataHelper.fromLong(data, offset, 4);
+        if (_tunnelId <= 0) {throw new I2NPMessageException("Invalid tunnel Id " + _tunnelId);}
+        _view = data;
+        _viewOffset = offset + 4;
+    }
+
+    /**
+     *  @return the buffer holding the payload at getViewOffset(), or null if not a view
+     *  @since 0.9.71+
+     */
+    public byte[] getView() {return _view;}
+
+    /**
+     *  @return the offset of the payload in getView()
+     *  @since 0.9.71+
+     */
+    public int getViewOffset() {return _viewOffset;}
+
+    /**
+     *  Copy the payload out of the caller's buffer, if it is a view.
+     *  Must be called before the message is queued or otherwise kept past the
+     *  transport's receive callback.
+     *
+     *  @since 0.9.71+
+     */
+    public void detach() {
+        if (_view != null) {detach(true);}
+    }
+
+    /**
+     *  Detach the payload from the caller's buffer without copying it.
+     *  Call getView() and getViewOffset() first; the caller must then write all
+     *  DATA_SIZE bytes of the returned buffer, e.g. by decrypting from the view into it.
+     *
+     *  @return the buffer that is now the payload, uninitialized
+     *  @throws IllegalStateException if not a view
+     *  @since 0.9.71+
+     */
+    public byte[] detachForWrite() {
+        if (_view == null) {throw new IllegalStateException();}
+        detach(false);
+        return _data;
+    }
+
+    /**
+     *  @param copy copy the payload from the view
+     *  @since 0.9.71+
+     */
+    private void detach(boolean copy) {
+        if (PIPELINED_CACHE) {
+            _dataBuf = _cache.acquire();
+            _data = _dataBuf.getData();
+            _hadCache = true;
+        } else {_data = new byte[DATA_SIZE];}
+        if (copy) {System.arraycopy(_view, _viewOffset, _data, 0, DATA_SIZE);}
+        _view = null;
+    }
+
     /** Calculate the message body's length (not including the header and footer). */
     protected int calculateWrittenLength() {return 4 + DATA_SIZE;}
     /** Write the message body to the output array, starting at the given index. */
     protected int writeMessageBody(byte[] out, int curIndex) throws I2NPMessageException {
+        if (_view != null) {
+            if (_tunnelId <= 0) {
+                throw new I2NPMessageException("Not enough data to write out (id=" + _tunnelId + ")");
+            }
+            DataHelper.toLong(out, curIndex, 4, _tunnelId);
+            curIndex += 4;
+            System.arraycopy(_view, _viewOffset, out, curIndex, DATA_SIZE);
+            return curIndex + DATA_SIZE;
+        }
         if ((_tunnelId <= 0) || (_data == null)) {
             throw new I2NPMessageException("Not enough data to write out (id=" + _tunnelId + ")");
         }
@@ -167,7 +257,7 @@ public class TunnelDataMessage extends FastI2NPMessageImpl {
      * @return whether h code is present
      */
     @Override
-    public int hashCode() {return (int)_tunnelId +DataHelper.hashCode(_data);}
+    public int hashCode() {return (int)_tunnelId +DataHelper.hashCode(getData());}
 
     /**
      * Two TunnelDataMessages are equal if they have the same tunnel ID and data.
@@ -381,6 +381,8 @@ public class InNetMessagePool implements Service {
         if (DISPATCH_DIRECT) {
             doShortCircuitTunnelData(messageBody, from);
         } else {
+            // the transport reuses its buffer once we return
+            ((TunnelDataMessage) messageBody).detach();
             _pendingDataMessages.offer(new QueuedMessage(messageBody, from));
             _context.statManager().addRateData("inNetPool.dataQueueSize", _pendingDataMessages.size());
             if (!_dispatchThreaded)
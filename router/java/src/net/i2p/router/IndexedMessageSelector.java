@@ -0,0 +1,33 @@
+package net.i2p.router;
+
+import net.i2p.data.Hash;
+
+/**
+ * A MessageSelector that only ever matches replies carrying a single known key,
+ * either a DeliveryStatusMessage ID or a netDb key.
+ *
+ * The OutboundMessageRegistry indexes these by that key, so isMatch() is only
+ * called for received messages with the same key, rather than for every message.
+ * Selectors that do not implement this are matched by a linear scan.
+ *
+ * isMatch() must return false for any message not carrying the key.
+ *
+ * @since 0.9.71+
+ */
+public interface IndexedMessageSelector extends MessageSelector {
+
+    /**
+     * The ID of the DeliveryStatusMessage we are waiting for.
+     *
+     * @return the message ID, or -1 if getReplyKey() is non-null
+     */
+    public long getReplyId();
+
+    /**
+     * The key of the DatabaseStoreMessage or search key of the
+     * DatabaseSearchReplyMessage we are waiting for.
+     *
+     * @return the key, or null if getReplyId() is used
+     */
+    public Hash getReplyKey();
+}
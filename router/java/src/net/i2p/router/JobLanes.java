@@ -0,0 +1,436 @@
+package net.i2p.router;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import net.i2p.router.peermanager.PeerTestJob;
+import net.i2p.router.tunnel.pool.TestJob;
+import net.i2p.stat.RateConstants;
+import net.i2p.stat.RateHandle;
+
+/**
+ * Ready jobs for the JobQueue, split into lanes by job type.
+ *
+ * Runners pick a lane by deficit round robin, so each non-empty lane
+ * gets up to its weight in jobs per round. A burst of floodfill lookups
+ * or tunnel tests then only delays tunnel building and client delivery
+ * by its share of the weights, not by the length of the burst.
+ *
+ * When a lane is backlogged, a runner takes a few extra jobs from it
+ * into its own local deque, and runs those first without touching the lanes.
+ * Idle runners steal from the tail of other runners' local deques.
+ *
+ * LOCKING: this, for the lanes. The local deques are concurrent.
+ *
+ * @since 0.9.71+
+ */
+class JobLanes {
+    private final LaneQueue[] _lanes;
+    private final Map<Integer, Deque<Job>> _local;
+    private final Map<Class<?>, Lane> _laneCache;
+    private final boolean _enabled;
+    /** LOCKING: this */
+    private int _cursor;
+    /** LOCKING: this */
+    private int _size;
+    /** LOCKING: this */
+    private int _waiters;
+
+    /** Set to false to put all jobs in the default lane */
+    static final String PROP_LANES = "router.jobLanes";
+    /** Comma-separated lane:weight, e.g. "build:8,netdb:2" */
+    static final String PROP_LANE_WEIGHTS = "router.jobLaneWeights";
+    /** Max jobs a runner takes from a lane at once */
+    private static final int MAX_BATCH = 4;
+    private static final long[] RATES = RateConstants.SHORT_TERM_RATES;
+
+    enum Lane {
+        /** tunnel building and management */
+        BUILD("build", 8),
+        /** client sessions and message delivery */
+        CLIENT("client", 6),
+        DEFAULT("default", 4),
+        /** lookups, stores, and floodfill handling */
+        NETDB("netdb", 2),
+        /** tunnel and peer tests */
+        TEST("test", 1);
+
+        private final String _name;
+        private final int _weight;
+
+        Lane(String name, int weight) {
+            _name = name;
+            _weight = weight;
+        }
+
+        public String getName() {return _name;}
+    }
+
+    private static class LaneQueue {
+        final Lane lane;
+        final Deque<Job> jobs = new ArrayDeque<Job>();
+        final JobStats stats;
+        RateHandle lagStat;
+        int weight;
+        int deficit;
+
+        LaneQueue(Lane lane, int weight) {
+            this.lane = lane;
+            this.weight = weight;
+            stats = new JobStats("Lane: " + lane.getName(), lane.getName());
+        }
+    }
+
+    public JobLanes(RouterContext context) {
+        _enabled = context.getProperty(PROP_LANES, true);
+        Lane[] lanes = Lane.values();
+        _lanes = new LaneQueue[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            _lanes[i] = new LaneQueue(lanes[i], lanes[i]._weight);
+            _lanes[i].lagStat = context.statManager().createRateStatHandle("jobQueue.lag." + lanes[i].getName(),
+                                                                           "Delay before " + lanes[i].getName() +
+                                                                           " lane jobs are run (ms)", "JobQueue", RATES);
+        }
+        parseWeights(context.getProperty(PROP_LANE_WEIGHTS));
+        _local = new ConcurrentHashMap<Integer, Deque<Job>>();
+        _laneCache = new ConcurrentHashMap<Class<?>, Lane>();
+    }
+
+    private void parseWeights(String weights) {
+        if (weights == null)
+            return;
+        StringTokenizer tok = new StringTokenizer(weights, ", ");
+        while (tok.hasMoreTokens()) {
+            String s = tok.nextToken();
+            int colon = s.indexOf(':');
+            if (colon <= 0)
+                continue;
+            String name = s.substring(0, colon);
+            try {
+                int weight = Integer.parseInt(s.substring(colon + 1));
+                if (weight <= 0)
+                    continue;
+                for (LaneQueue q : _lanes) {
+                    if (q.lane.getName().equals(name))
+                        q.weight = weight;
+                }
+            } catch (NumberFormatException nfe) {}
+        }
+    }
+
+    /**
+     *  The lane for this job, by class, cached.
+     */
+    public Lane laneFor(Job job) {
+        return laneFor(job.getClass());
+    }
+
+    private Lane laneFor(Class<?> cls) {
+        if (!_enabled)
+            return Lane.DEFAULT;
+        Lane rv = _laneCache.get(cls);
+        if (rv == null) {
+            rv = classify(cls);
+            _laneCache.put(cls, rv);
+        }
+        return rv;
+    }
+
+    /**
+     *  Override the lane for a job class.
+     */
+    void setLane(Class<?> cls, Lane lane) {
+        _laneCache.put(cls, lane);
+    }
+
+    static Lane classify(Class<?> cls) {
+        if (cls == TestJob.class || cls == PeerTestJob.class)
+            return Lane.TEST;
+        String name = cls.getName();
+        if (name.startsWith("net.i2p.router.tunnel."))
+            return Lane.BUILD;
+        if (name.startsWith("net.i2p.router.networkdb."))
+            return Lane.NETDB;
+        if (name.startsWith("net.i2p.router.client.") ||
+            name.startsWith("net.i2p.router.message."))
+            return Lane.CLIENT;
+        return Lane.DEFAULT;
+    }
+
+    /**
+     *  Add a ready job to the tail of its lane.
+     */
+    public void offer(Job job) {
+        LaneQueue q = _lanes[laneFor(job).ordinal()];
+        synchronized (this) {
+            q.jobs.offer(job);
+            _size++;
+            if (_waiters > 0)
+                notify();
+        }
+    }
+
+    /**
+     *  Add to the head of the default lane, e.g. for a poison job.
+     */
+    public synchronized void offerFirst(Job job) {
+        _lanes[Lane.DEFAULT.ordinal()].jobs.offerFirst(job);
+        _size++;
+        notifyAll();
+    }
+
+    /**
+     *  @return true if it was in a lane or a local deque
+     */
+    public boolean remove(Job job) {
+        synchronized (this) {
+            if (_lanes[laneFor(job).ordinal()].jobs.remove(job)) {
+                _size--;
+                return true;
+            }
+        }
+        for (Deque<Job> d : _local.values()) {
+            if (d.remove(job))
+                return true;
+        }
+        return false;
+    }
+
+    public boolean contains(Job job) {
+        synchronized (this) {
+            if (_lanes[laneFor(job).ordinal()].jobs.contains(job))
+                return true;
+        }
+        for (Deque<Job> d : _local.values()) {
+            if (d.contains(job))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     *  Jobs in the lanes and local deques. Local deques not synched, approximate.
+     */
+    public int size() {
+        int rv;
+        synchronized (this) {
+            rv = _size;
+        }
+        for (Deque<Job> d : _local.values()) {
+            rv += d.size();
+        }
+        return rv;
+    }
+
+    /**
+     *  Add all jobs in the lanes and local deques to the collection.
+     */
+    public void getJobs(Collection<Job> jobs) {
+        synchronized (this) {
+            for (LaneQueue q : _lanes) {
+                jobs.addAll(q.jobs);
+            }
+        }
+        for (Deque<Job> d : _local.values()) {
+            jobs.addAll(d);
+        }
+    }
+
+    /**
+     *  The oldest job at the head of each lane and each local deque.
+     */
+    public void getHeads(Collection<Job> jobs) {
+        synchronized (this) {
+            for (LaneQueue q : _lanes) {
+                Job j = q.jobs.peek();
+                if (j != null)
+                    jobs.add(j);
+            }
+        }
+        for (Deque<Job> d : _local.values()) {
+            Job j = d.peekFirst();
+            if (j != null)
+                jobs.add(j);
+        }
+    }
+
+    public synchronized void clear() {
+        for (LaneQueue q : _lanes) {
+            q.jobs.clear();
+            q.deficit = 0;
+        }
+        _size = 0;
+        for (Deque<Job> d : _local.values()) {
+            d.clear();
+        }
+    }
+
+    /**
+     *  Next job for this runner: from its local deque, then the lanes,
+     *  then stolen from another runner. Waits up to timeout if none.
+     *
+     *  @return job or null on timeout
+     */
+    public Job take(int runnerId, long timeout) throws InterruptedException {
+        Integer id = Integer.valueOf(runnerId);
+        Deque<Job> local = _local.get(id);
+        if (local == null) {
+            local = new ConcurrentLinkedDeque<Job>();
+            _local.put(id, local);
+        }
+        Job rv = local.pollFirst();
+        if (rv != null)
+            return rv;
+        rv = poll(local, runnerId);
+        if (rv != null)
+            return rv;
+        synchronized (this) {
+            if (_size <= 0) {
+                _waiters++;
+                try {
+                    wait(timeout);
+                } finally {
+                    _waiters--;
+                }
+            }
+        }
+        return poll(local, runnerId);
+    }
+
+    /**
+     *  From the lanes, then stolen.
+     */
+    private Job poll(Deque<Job> local, int runnerId) {
+        Job rv;
+        synchronized (this) {
+            rv = next(local);
+            if (rv != null && _waiters > 0 && !local.isEmpty())
+                notify();
+        }
+        if (rv == null)
+            rv = steal(runnerId);
+        return rv;
+    }
+
+    /**
+     *  Deficit round robin over the non-empty lanes. Each visit to a lane
+     *  allows up to its weight in jobs before moving to the next.
+     *  If the lane has more jobs than there are runners waiting,
+     *  move a few more of its allowance to the local deque.
+     *
+     *  LOCKING: this
+     */
+    private Job next(Deque<Job> local) {
+        if (_size <= 0)
+            return null;
+        for (int i = 0; i < _lanes.length; i++) {
+            LaneQueue q = _lanes[_cursor];
+            if (q.jobs.isEmpty()) {
+                q.deficit = 0;
+                _cursor = (_cursor + 1) % _lanes.length;
+                continue;
+            }
+            if (q.deficit <= 0)
+                q.deficit = q.weight;
+            Job rv = q.jobs.poll();
+            q.deficit--;
+            _size--;
+            int extra = Math.min(q.deficit, MAX_BATCH - 1);
+            if (q.jobs.size() > _waiters + extra) {
+                for (int j = 0; j < extra; j++) {
+                    local.offerLast(q.jobs.poll());
+                }
+                q.deficit -= extra;
+                _size -= extra;
+            }
+            if (q.deficit <= 0 || q.jobs.isEmpty()) {
+                if (q.jobs.isEmpty())
+                    q.deficit = 0;
+                _cursor = (_cursor + 1) % _lanes.length;
+            }
+            return rv;
+        }
+        return null;
+    }
+
+    /**
+     *  Take the newest job from the fullest other local deque.
+     */
+    private Job steal(int runnerId) {
+        Deque<Job> victim = null;
+        int max = 0;
+        for (Map.Entry<Integer, Deque<Job>> e : _local.entrySet()) {
+            if (e.getKey().intValue() == runnerId)
+                continue;
+            int sz = e.getValue().size();
+            if (sz > max) {
+                max = sz;
+                victim = e.getValue();
+            }
+        }
+        return victim != null ? victim.pollLast() : null;
+    }
+
+    /**
+     *  Drop the runner's local deque, returning any jobs in it to the lanes.
+     */
+    public void removeRunner(int runnerId) {
+        Deque<Job> local = _local.remove(Integer.valueOf(runnerId));
+        if (local == null)
+            return;
+        Job j;
+        while ((j = local.pollFirst()) != null) {
+            offer(j);
+        }
+    }
+
+    /**
+     *  Record the run in the lane stats.
+     */
+    public void jobRan(Job job, long duration, long lag) {
+        LaneQueue q = _lanes[laneFor(job).ordinal()];
+        q.stats.jobRan(duration, lag);
+        q.lagStat.addData(lag);
+    }
+
+    /**
+     *  Record the drop in the lane stats.
+     */
+    public void jobDropped(Job job) {
+        _lanes[laneFor(job).ordinal()].stats.jobDropped();
+    }
+
+    /**
+     *  Stats for each lane, in lane order.
+     */
+    public void getStats(Collection<JobStats> stats) {
+        for (LaneQueue q : _lanes) {
+            stats.add(q.stats);
+        }
+    }
+
+    /**
+     *  Count the ready jobs of exactly this class. Local deques not synched, approximate.
+     */
+    public int count(Class<?> cls) {
+        int rv = 0;
+        synchronized (this) {
+            for (Job j : _lanes[laneFor(cls).ordinal()].jobs) {
+                if (j.getClass() == cls)
+                    rv++;
+            }
+        }
+        for (Deque<Job> d : _local.values()) {
+            for (Job j : d) {
+                if (j.getClass() == cls)
+                    rv++;
+            }
+        }
+        return rv;
+    }
+}
@@ -15,7 +15,6 @@ import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.i2p.router.message.HandleGarlicMessageJob;
@@ -45,14 +44,12 @@ public class JobQueue {
     private final Map<Integer, JobQueueRunner> _queueRunners;
     /** Counter to identify a job runner */
     private static final AtomicInteger _runnerId = new AtomicInteger(0);
-    /** List of jobs that are ready to run ASAP */
-    private final BlockingQueue<Job> _readyJobs;
+    /** Jobs that are ready to run ASAP, by lane */
+    private final JobLanes _readyJobs;
     /** List of high priority jobs that should run before others */
     private final BlockingQueue<Job> _highPriorityJobs;
     /** SortedSet of jobs that are scheduled for running in the future, earliest first */
     private final Set<Job> _timedJobs;
-    /** Queue of timed jobs that are ready to run (moved from _timedJobs when ready) */
-    private final BlockingQueue<Job> _timedJobsReady;
     /** Track jobs currently being processed by runners to prevent duplicate requeue */
     private final Set<Job> _jobsInFlight;
     /** Job name to JobStat for that job */
@@ -133,10 +130,9 @@ public class JobQueue {
         _context.statManager().createRateStat("jobQueue.jobWait", "Time a scheduled job stays queued before running (ms)", "JobQueue", RATES);
         _context.statManager().createRequiredRateStat("jobQueue.jobLag", "Delay before waiting jobs are run (ms)", "JobQueue", new long[] { RateConstants.ONE_MINUTE, RateConstants.TEN_MINUTES, RateConstants.ONE_HOUR });
 
-        _readyJobs = new LinkedBlockingQueue<>();
+        _readyJobs = new JobLanes(context);
         _highPriorityJobs = new LinkedBlockingQueue<>();
         _timedJobs = new TreeSet<>(new JobComparator());
-        _timedJobsReady = new LinkedBlockingQueue<>();
         _jobsInFlight = Collections.synchronizedSet(new HashSet<>());
         _jobLock = new Object();
         _queueRunners = new ConcurrentHashMap<>(runners);
@@ -167,8 +163,7 @@ public class JobQueue {
             _log.warn(job + " scheduled far in the future: " + (new Date(start)));
         }
         synchronized (_jobLock) {
-            alreadyExists = _readyJobs.contains(job) || _highPriorityJobs.contains(job) ||
-                           _timedJobsReady.contains(job);
+            alreadyExists = _readyJobs.contains(job) || _highPriorityJobs.contains(job);
             // Note: Don't check _jobsInFlight here - a job MUST be allowed to requeue itself
             numReady = _readyJobs.size();
 
@@ -216,11 +211,12 @@ public class JobQueue {
             String key = job.getName();
             JobStats stats = _jobStats.get(key);
             if (stats == null) {
-                stats = new JobStats(key);
+                stats = new JobStats(key, _readyJobs.laneFor(job).getName());
                 JobStats old = _jobStats.putIfAbsent(key, stats);
                 if (old != null) {stats = old;}
             }
             stats.jobDropped();
+            _readyJobs.jobDropped(job);
         }
     }
 
@@ -247,7 +243,6 @@ public class JobQueue {
             if (_timedJobs.remove(job) && _log.shouldWarn()) {
                 _log.warn(job + " removed from queue and promoted to top -> Duplicate instance");
             }
-            _timedJobsReady.remove(job);
             _readyJobs.remove(job);
             // remove() is O(n) on a LinkedBlockingQueue but the queue is always small (< 100).
             // Calling it unconditionally avoids a second linear scan for contains().
@@ -271,10 +266,9 @@ public class JobQueue {
         synchronized (_jobLock) {
             boolean removed = _timedJobs.remove(job);
             if (!removed) {
-                removed = _timedJobsReady.remove(job);
+                removed = _readyJobs.remove(job);
             }
             if (!removed) {
-                _readyJobs.remove(job);
                 _highPriorityJobs.remove(job);
             }
         }
@@ -283,10 +277,10 @@ public class JobQueue {
     /**
      * Number of jobs ready to be executed.
      *
-     * @return count of ready jobs in normal, high priority, and timed-ready queues
+     * @return count of ready jobs in the lanes and the high priority queue
      */
     public int getReadyCount() {
-        return _readyJobs.size() + _highPriorityJobs.size() + _timedJobsReady.size();
+        return _readyJobs.size() + _highPriorityJobs.size();
     }
 
     /**
@@ -309,8 +303,10 @@ public class JobQueue {
         long now = _context.clock().now();
         long maxLag = 0;
 
-        // Check timed jobs ready queue
-        for (Job job : _timedJobsReady) {
+        // Check the oldest job in each lane
+        List<Job> heads = new ArrayList<>(16);
+        _readyJobs.getHeads(heads);
+        for (Job job : heads) {
             JobTiming jt = job.getTiming();
             if (jt != null) {
                 long lag = now - jt.getStartAfter();
@@ -328,16 +324,6 @@ public class JobQueue {
             }
         }
 
-        // Check ready jobs
-        j = _readyJobs.peek();
-        if (j != null) {
-            JobTiming jt = j.getTiming();
-            if (jt != null) {
-                long lag = now - jt.getStartAfter();
-                if (lag > maxLag) maxLag = lag;
-            }
-        }
-
         return maxLag;
     }
 
@@ -381,20 +367,10 @@ public class JobQueue {
         long totalLag = 0;
         int jobCount = 0;
 
-        // Check timed jobs
-        for (Job job : _timedJobsReady) {
-            JobTiming jt = job.getTiming();
-            if (jt != null) {
-                long lag = now - jt.getStartAfter();
-                if (lag > 0) {
-                    totalLag += lag;
-                    jobCount++;
-                }
-            }
-        }
-
         // Check ready jobs
-        for (Job job : _readyJobs) {
+        List<Job> ready = new ArrayList<>(getReadyCount());
+        _readyJobs.getJobs(ready);
+        for (Job job : ready) {
             JobTiming jt = job.getTiming();
             if (jt != null) {
                 long lag = now - jt.getStartAfter();
@@ -495,7 +471,6 @@ public class JobQueue {
         _scaler.shutdown();
         synchronized (_jobLock) {
             _timedJobs.clear();
-            _timedJobsReady.clear();
             _readyJobs.clear();
             _highPriorityJobs.clear();
             _jobLock.notifyAll();
@@ -503,7 +478,7 @@ public class JobQueue {
         Job poison = new PoisonJob();
         for (JobQueueRunner runner : _queueRunners.values()) {
             runner.stopRunning();
-            _readyJobs.offer(poison);
+            _readyJobs.offerFirst(poison);
         }
         _queueRunners.clear();
         _jobStats.clear();
@@ -562,8 +537,14 @@ public class JobQueue {
         return j;
     }
 
-    /** Next job in queue. */
-    Job getNext() {
+    /**
+     * Next job in queue for this runner.
+     * High priority jobs first, then the runner's local jobs,
+     * then the lanes by weight, then jobs stolen from other runners.
+     *
+     * @param runnerId the runner's ID
+     */
+    Job getNext(int runnerId) {
         while (_alive) {
             try {
                 // First check high-priority jobs
@@ -574,16 +555,8 @@ public class JobQueue {
                     return j;
                 }
 
-                // Check timed jobs ready queue first (O(1) instead of iterating TreeSet)
-                j = _timedJobsReady.poll();
-                if (j != null) {
-                    if (j.getJobId() == POISON_ID) break;
-                    _jobsInFlight.add(j);
-                    return j;
-                }
-
                 // Check normal priority jobs
-                j = _readyJobs.poll(50, TimeUnit.MILLISECONDS);
+                j = _readyJobs.take(runnerId, 50);
                 if (j != null) {
                     if (j.getJobId() == POISON_ID) break;
                     _jobsInFlight.add(j);
@@ -629,7 +602,10 @@ public class JobQueue {
      *
      * @param id the runner ID to remove
      */
-    void removeRunner(int id) {_queueRunners.remove(Integer.valueOf(id));}
+    void removeRunner(int id) {
+        _queueRunners.remove(Integer.valueOf(id));
+        _readyJobs.removeRunner(id);
+    }
 
     /**
      * Current number of active job runners.
@@ -792,7 +768,7 @@ public class JobQueue {
                                 _timedJobs.remove(j);
                                 if (j instanceof JobImpl) ((JobImpl)j).madeReady(now);
                                 j.getTiming().setStartAfter(now);
-                                _timedJobsReady.offer(j);
+                                _readyJobs.offer(j);
                                 movedJobs++;
                             }
                             timeToWait = minWaitTime;
@@ -857,7 +833,9 @@ public class JobQueue {
     private void updateJobTimings(long delta) {
         synchronized (_jobLock) {
             for (Job j : _timedJobs) j.getTiming().offsetChanged(delta);
-            for (Job j : _readyJobs) j.getTiming().offsetChanged(delta);
+            List<Job> ready = new ArrayList<>(_readyJobs.size());
+            _readyJobs.getJobs(ready);
+            for (Job j : ready) j.getTiming().offsetChanged(delta);
             for (Job j : _highPriorityJobs) j.getTiming().offsetChanged(delta);
         }
         synchronized (_runnerLock) {
@@ -885,11 +863,12 @@ public class JobQueue {
 
         JobStats stats = _jobStats.get(key);
         if (stats == null) {
-            stats = new JobStats(key);
+            stats = new JobStats(key, _readyJobs.laneFor(job).getName());
             JobStats old = _jobStats.putIfAbsent(key, stats);
             if (old != null) stats = old;
         }
         stats.jobRan(duration, lag);
+        _readyJobs.jobRan(job, duration, lag);
 
         String dieMsg = null;
         if (lag > _lagWarning) {
@@ -961,11 +940,10 @@ public class JobQueue {
             }
         }
         synchronized (_jobLock) {
-            readyJobs.addAll(_readyJobs);
+            _readyJobs.getJobs(readyJobs);
             readyJobs.addAll(_highPriorityJobs);
             timedJobs.addAll(_timedJobs);
         }
-        readyJobs.addAll(_timedJobsReady);
         return _queueRunners.size();
     }
 
@@ -978,6 +956,19 @@ public class JobQueue {
         return Collections.unmodifiableCollection(_jobStats.values());
     }
 
+    /**
+     * Job statistics for each lane, covering all jobs run in that lane.
+     * The pending times are the lag for the lane.
+     *
+     * @return JobStats for each lane, in lane order
+     * @since 0.9.71+
+     */
+    public Collection<JobStats> getLaneStats() {
+        List<JobStats> rv = new ArrayList<>(8);
+        _readyJobs.getStats(rv);
+        return rv;
+    }
+
     /**
      * Count the number of TestJob instances currently queued in the job queue.
      * This includes both ready jobs and timed jobs waiting to be executed.
@@ -988,11 +979,7 @@ public class JobQueue {
         int count = 0;
         synchronized (_jobLock) {
             // Count TestJob instances in ready queues
-            for (Job job : _readyJobs) {
-                if (job instanceof TestJob) {
-                    count++;
-                }
-            }
+            count += _readyJobs.count(TestJob.class);
             for (Job job : _highPriorityJobs) {
                 if (job instanceof TestJob) {
                     count++;
@@ -1019,11 +1006,7 @@ public class JobQueue {
     public int getReadyTestJobCount() {
         int count = 0;
         synchronized (_jobLock) {
-            for (Job job : _readyJobs) {
-                if (job instanceof TestJob) {
-                    count++;
-                }
-            }
+            count += _readyJobs.count(TestJob.class);
             for (Job job : _highPriorityJobs) {
                 if (job instanceof TestJob) {
                     count++;
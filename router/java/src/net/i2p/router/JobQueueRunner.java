@@ -1,5 +1,6 @@
 package net.i2p.router;
 
+import net.i2p.stat.RateHandle;
 import net.i2p.util.I2PThread;
 import net.i2p.util.Log;
 import net.i2p.util.SystemVersion;
@@ -18,6 +19,9 @@ class JobQueueRunner extends I2PThread {
     private volatile Job _lastJob;
     private volatile long _lastBegin;
     private volatile long _lastEnd;
+    private final RateHandle _jobRun;
+    private final RateHandle _jobLag;
+    private final RateHandle _jobWait;
 
     /**
      * Create a new job queue runner.
@@ -32,6 +36,9 @@ class JobQueueRunner extends I2PThread {
         _log = _context.logManager().getLog(JobQueueRunner.class);
         setPriority(NORM_PRIORITY + 1);
         // all createRateStat in JobQueue
+        _jobRun = context.statManager().getRateHandle("jobQueue.jobRun");
+        _jobLag = context.statManager().getRateHandle("jobQueue.jobLag");
+        _jobWait = context.statManager().getRateHandle("jobQueue.jobWait");
     }
 
     /**
@@ -73,7 +80,7 @@ class JobQueueRunner extends I2PThread {
         long lastActive;
         while (_keepRunning && _context.jobQueue().isAlive()) {
             try {
-                Job job = _context.jobQueue().getNext();
+                Job job = _context.jobQueue().getNext(_id);
                 if (job == null) {
                     if (_context.router().isAlive() && _log.shouldError()) {
                         _log.error("Failed to pull next job from queue -> Dead?");
@@ -108,9 +115,9 @@ class JobQueueRunner extends I2PThread {
                 long lag = doStart - origStartAfter;
                 if (lag < 0) {lag = 0;}
 
-                _context.statManager().addRateData("jobQueue.jobRun", duration, duration);
-                _context.statManager().addRateData("jobQueue.jobLag", lag);
-                _context.statManager().addRateData("jobQueue.jobWait", enqueuedTime, enqueuedTime);
+                _jobRun.addData(duration, duration);
+                _jobLag.addData(lag);
+                _jobWait.addData(enqueuedTime, enqueuedTime);
 
                 if (duration > 1500) {
                     _context.statManager().addRateData("jobQueue.jobRunSlow", duration, duration);
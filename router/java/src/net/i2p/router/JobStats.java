@@ -13,6 +13,7 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class JobStats {
     private final String _job;
+    private final String _lane;
     private final AtomicLong _numRuns = new AtomicLong();
     private final AtomicLong _numDropped = new AtomicLong();
     private final AtomicLong _totalTime = new AtomicLong();
@@ -91,7 +92,19 @@ public class JobStats {
      * @param name the name
      */
     public JobStats(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Create statistics tracker for a named job type or lane.
+     *
+     * @param name the name
+     * @param lane the JobQueue lane name, or null if unknown
+     * @since 0.9.71+
+     */
+    public JobStats(String name, String lane) {
         _job = name;
+        _lane = lane;
         _maxTime = -1;
         _minTime = -1;
         _maxPendingTime = -1;
@@ -150,6 +163,15 @@ public class JobStats {
      */
     public String getName() {return _job;}
 
+    /**
+     * Name of the JobQueue lane these jobs run in.
+     * For the per-lane stats, the pending times are the lag of the lane.
+     *
+     * @return the lane name, or null if unknown
+     * @since 0.9.71+
+     */
+    public String getLane() {return _lane;}
+
     /**
      * Maximum number of recent execution entries tracked.
      *
@@ -23,9 +23,10 @@ public interface MessageSelector {
      * will be run for every OutNetMessage associated with this selector
      * (by InNetMessagePool), after calling setMessage() for that ReplyJob.
      *
-     * WARNING this is called from within OutboundMessageSelector.getOriginalMessages()
-     * inside a lock and can lead to deadlocks if the selector does too much in isMatch().
-     * Until the lock is removed, take care to keep it simple.
+     * WARNING this is called from within OutboundMessageRegistry.getOriginalMessages()
+     * inside a lock (the map bin lock for an IndexedMessageSelector's key, or the global
+     * fallback lock otherwise) and can lead to deadlocks if the selector does too much in isMatch().
+     * Take care to keep it simple, and never call back into the registry.
      *
      * @return whether match
      */
@@ -169,6 +169,8 @@ class ClientManager {
             // there's no option to start both an SSL and non-SSL listener
             if (_ctx.getBooleanProperty(PROP_ENABLE_SSL)) {
                 listener = new SSLClientListenerRunner(_ctx, this, _port);
+            } else if (_ctx.getBooleanProperty(NIOClientListenerRunner.PROP_NIO)) {
+                listener = new NIOClientListenerRunner(_ctx, this, _port);
             } else {
                 listener = new ClientListenerRunner(_ctx, this, _port);
             }
@@ -0,0 +1,380 @@
+package net.i2p.router.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.i2p.data.ByteArray;
+import net.i2p.data.i2cp.I2CPMessage;
+import net.i2p.data.i2cp.I2CPMessageException;
+import net.i2p.data.i2cp.I2CPMessageHandler;
+import net.i2p.data.i2cp.I2CPMessageReader;
+import net.i2p.internal.PoisonI2CPMessage;
+import net.i2p.router.RouterContext;
+import net.i2p.util.ByteCache;
+import net.i2p.util.Log;
+
+/**
+ * A ClientConnectionRunner driven by the NIOClientListenerRunner's selector,
+ * instead of a reader thread and a writer thread per client.
+ *
+ * The selector thread frames incoming messages and hands them to a shared
+ * pool of reader threads, one task per connection at a time, so messages
+ * from a client are still delivered to the listener one at a time and in order.
+ * Outgoing messages are serialized by the caller and written by the
+ * selector thread, as many as fit in one gathering write.
+ *
+ * Message handling is otherwise unchanged.
+ *
+ * @since 0.9.71+
+ */
+class NIOClientConnectionRunner extends ClientConnectionRunner {
+    private final NIOClientListenerRunner _nio;
+    private final SocketChannel _chan;
+    private I2CPMessageReader.I2CPMessageEventListener _listener;
+    private volatile boolean _started;
+
+    /** decoded messages waiting for a reader thread, ends with a poison on EOF or error */
+    private final Queue<I2CPMessage> _inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _inboundCount = new AtomicInteger();
+    private final AtomicBoolean _processing = new AtomicBoolean();
+    private volatile Exception _readError;
+    /** set by the selector thread when OP_READ is off because the queue is full */
+    private volatile boolean _readPaused;
+
+    /** serialized messages waiting for the selector thread */
+    private final Queue<ByteBuffer> _outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _outboundCount = new AtomicInteger();
+    private final AtomicBoolean _writeWanted = new AtomicBoolean();
+
+    // following are selector thread only
+    private final ArrayDeque<ByteBuffer> _writing = new ArrayDeque<>();
+    private final ByteBuffer[] _batch = new ByteBuffer[MAX_BATCH];
+    private final byte[] _header = new byte[HEADER_SIZE];
+    private int _headerPos;
+    private byte[] _frame;
+    private ByteArray _pooled;
+    private int _framePos;
+    private int _frameTotal;
+
+    /** stop reading from a client whose messages we haven't handled yet */
+    static final int MAX_PENDING_READS = 64;
+    /** buffers per gathering write */
+    private static final int MAX_BATCH = 64;
+    /** 4 byte length and 1 byte type */
+    private static final int HEADER_SIZE = 5;
+    /** frames up to this size that span reads are assembled in a pooled buffer */
+    private static final int POOLED_SIZE = 32*1024;
+    private static final ByteCache _cache = ByteCache.getInstance(16, POOLED_SIZE);
+
+    /**
+     * @param chan connected, non-blocking, protocol byte already read
+     */
+    public NIOClientConnectionRunner(RouterContext context, ClientManager manager,
+                                     NIOClientListenerRunner nio, SocketChannel chan) {
+        super(context, manager, chan.socket());
+        _nio = nio;
+        _chan = chan;
+    }
+
+    /**
+     * No threads to start. The listener has already registered us
+     * with the selector, reads are not processed until this is called.
+     */
+    @Override
+    public synchronized void startRunning() {
+        if (_started || isDead())
+            throw new IllegalStateException();
+        _listener = createListener();
+        _started = true;
+        if (!_inbound.isEmpty())
+            scheduleProcessing();
+    }
+
+    /**
+     * Calls super() to stop, and drops anything not yet written.
+     */
+    @Override
+    public synchronized void stopRunning() {
+        super.stopRunning();
+        _outbound.clear();
+        _outboundCount.set(0);
+        _inbound.clear();
+    }
+
+    /**
+     *  Since we have no writer thread this shouldn't happen.
+     */
+    @Override
+    void writeMessage(I2CPMessage msg) {throw new UnsupportedOperationException();}
+
+    /**
+     * Serialize the message and queue it for the selector thread.
+     * Non-blocking.
+     *
+     * @throws I2CPMessageException if the queue is full, the runner is dead, or on other errors
+     */
+    @Override
+    void doSend(I2CPMessage msg) throws I2CPMessageException {
+        if (msg == null) throw new I2CPMessageException("Null message?!");
+        if (isDead()) throw new I2CPMessageException("Connection closed");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try {
+            msg.writeMessage(baos);
+        } catch (IOException ioe) {
+            throw new I2CPMessageException("Error writing out the message", ioe);
+        }
+        if (_outboundCount.incrementAndGet() > ClientWriterRunner.getQueueSize()) {
+            _outboundCount.decrementAndGet();
+            _context.statManager().addRateData("client.writerQueueFull", 1);
+            throw new I2CPMessageException("I2CP write to queue failed");
+        }
+        _outbound.offer(ByteBuffer.wrap(baos.toByteArray()));
+        // one selector wakeup for everything queued before it runs
+        if (_writeWanted.compareAndSet(false, true))
+            _nio.wantWrite(this);
+    }
+
+    SocketChannel getChannel() { return _chan; }
+
+    boolean isReadPaused() { return _readPaused; }
+
+    void setReadPaused(boolean paused) { _readPaused = paused; }
+
+    ////// selector thread reads
+
+    /**
+     * Frame as many messages as possible from the buffer and queue them for processing.
+     * Selector thread only. Frames entirely within the buffer are parsed in place.
+     *
+     * @param buf heap buffer, flipped for reading
+     * @return false on a framing or parse error, stop reading
+     */
+    boolean read(ByteBuffer buf) {
+        while (buf.hasRemaining()) {
+            if (_frame == null) {
+                if (_headerPos == 0 && buf.remaining() >= HEADER_SIZE) {
+                    int total = frameSize(buf.getInt(buf.position()));
+                    if (total < 0)
+                        return false;
+                    if (buf.remaining() >= total) {
+                        int pos = buf.position();
+                        buf.position(pos + total);
+                        if (!parse(buf.array(), buf.arrayOffset() + pos, total))
+                            return false;
+                        continue;
+                    }
+                    startFrame(total);
+                } else {
+                    int n = Math.min(HEADER_SIZE - _headerPos, buf.remaining());
+                    buf.get(_header, _headerPos, n);
+                    _headerPos += n;
+                    if (_headerPos < HEADER_SIZE)
+                        break;
+                    int len = ((_header[0] & 0xff) << 24) | ((_header[1] & 0xff) << 16) |
+                              ((_header[2] & 0xff) << 8) | (_header[3] & 0xff);
+                    int total = frameSize(len);
+                    if (total < 0)
+                        return false;
+                    startFrame(total);
+                    System.arraycopy(_header, 0, _frame, 0, HEADER_SIZE);
+                    _framePos = HEADER_SIZE;
+                    _headerPos = 0;
+                    if (_framePos >= total && !endFrame(total))
+                        return false;
+                    continue;
+                }
+            }
+            int total = _frameTotal;
+            int n = Math.min(total - _framePos, buf.remaining());
+            buf.get(_frame, _framePos, n);
+            _framePos += n;
+            if (_framePos >= total && !endFrame(total))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return total frame size including header, or -1 after queueing an error
+     */
+    private int frameSize(int len) {
+        if (len < 0 || len > I2CPMessageHandler.MAX_LENGTH) {
+            readFailed(new I2CPMessageException("Invalid message length specified"));
+            return -1;
+        }
+        return HEADER_SIZE + len;
+    }
+
+    private void startFrame(int total) {
+        if (total <= POOLED_SIZE) {
+            _pooled = _cache.acquire();
+            _frame = _pooled.getData();
+        } else {
+            _frame = new byte[total];
+        }
+        _frameTotal = total;
+        _framePos = 0;
+    }
+
+    private boolean endFrame(int total) {
+        boolean rv = parse(_frame, 0, total);
+        if (_pooled != null) {
+            _cache.release(_pooled, false);
+            _pooled = null;
+        }
+        _frame = null;
+        _framePos = 0;
+        return rv;
+    }
+
+    /**
+     * Messages copy what they need out of the stream, so the buffer may be reused after.
+     */
+    private boolean parse(byte[] data, int off, int len) {
+        I2CPMessage msg;
+        try {
+            msg = I2CPMessageHandler.readMessage(new ByteArrayInputStream(data, off, len));
+        } catch (I2CPMessageException ime) {
+            readFailed(ime);
+            return false;
+        } catch (IOException ioe) {
+            readFailed(ioe);
+            return false;
+        } catch (RuntimeException re) {
+            _log.log(Log.CRIT, "Unhandled error reading I2CP stream \n* Error: " + re.getMessage());
+            readFailed(re);
+            return false;
+        }
+        _inboundCount.incrementAndGet();
+        _inbound.offer(msg);
+        scheduleProcessing();
+        return true;
+    }
+
+    /**
+     * The listener gets readError() after any messages already queued.
+     */
+    private void readFailed(Exception e) {
+        if (_log.shouldWarn())
+            _log.warn("Error handling message", e);
+        _readError = e;
+        _inbound.offer(new PoisonI2CPMessage());
+        scheduleProcessing();
+    }
+
+    /**
+     * The listener gets disconnected() after any messages already queued.
+     */
+    void readClosed() {
+        _inbound.offer(new PoisonI2CPMessage());
+        scheduleProcessing();
+    }
+
+    /**
+     * Selector thread. Pooled buffers aren't zeroed so drop the partial frame.
+     */
+    void releaseBuffers() {
+        if (_pooled != null) {
+            _cache.release(_pooled, false);
+            _pooled = null;
+        }
+        _frame = null;
+        _writing.clear();
+    }
+
+    /** @return number decoded but not yet handled */
+    int getPendingReads() { return _inboundCount.get(); }
+
+    private void scheduleProcessing() {
+        if (_started && _processing.compareAndSet(false, true))
+            _nio.process(_processor);
+    }
+
+    private final Runnable _processor = new Processor();
+
+    /**
+     * Runs on the reader pool. At most one per connection at a time.
+     */
+    private class Processor implements Runnable {
+        public void run() {
+            while (true) {
+                I2CPMessage msg;
+                while ((msg = _inbound.poll()) != null) {
+                    if (msg.getType() == PoisonI2CPMessage.MESSAGE_TYPE) {
+                        _inbound.clear();
+                        Exception e = _readError;
+                        if (e != null)
+                            _listener.readError(null, e);
+                        else
+                            _listener.disconnected(null);
+                        return;
+                    }
+                    int pending = _inboundCount.decrementAndGet();
+                    try {
+                        _listener.messageReceived(null, msg);
+                    } catch (RuntimeException re) {
+                        _log.log(Log.CRIT, "Unhandled error processing I2CP message", re);
+                        _listener.readError(null, re);
+                        _listener.disconnected(null);
+                        return;
+                    }
+                    if (_readPaused && pending <= MAX_PENDING_READS / 2)
+                        _nio.wantRead(NIOClientConnectionRunner.this);
+                }
+                _processing.set(false);
+                // recheck, in case something was queued after the poll and before the set
+                if (_inbound.isEmpty() || !_processing.compareAndSet(false, true))
+                    return;
+            }
+        }
+    }
+
+    ////// selector thread writes
+
+    /**
+     * Write as much as possible. Selector thread only.
+     *
+     * @return true if everything queued was written
+     * @throws IOException on write failure
+     */
+    boolean write() throws IOException {
+        // clear first, so a concurrent doSend() either gets drained below or wakes us again
+        _writeWanted.set(false);
+        while (true) {
+            ByteBuffer b;
+            while ((b = _outbound.poll()) != null) {
+                _writing.add(b);
+            }
+            if (_writing.isEmpty())
+                return true;
+            int n = 0;
+            long total = 0;
+            for (ByteBuffer bb : _writing) {
+                _batch[n++] = bb;
+                total += bb.remaining();
+                if (n >= MAX_BATCH)
+                    break;
+            }
+            long written = _chan.write(_batch, 0, n);
+            for (int i = 0; i < n; i++) {
+                _batch[i] = null;
+            }
+            while ((b = _writing.peek()) != null && !b.hasRemaining()) {
+                _writing.poll();
+                _outboundCount.decrementAndGet();
+            }
+            if (written < total) {
+                // socket buffer full
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package net.i2p.router.client;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.i2p.client.I2PClient;
+import net.i2p.router.Router;
+import net.i2p.router.RouterContext;
+import net.i2p.util.I2PThread;
+import net.i2p.util.Log;
+import net.i2p.util.PortMapper;
+import net.i2p.util.SystemVersion;
+
+/**
+ * Listen for connections on the specified port with a single selector thread
+ * that serves all external I2CP clients, instead of two threads per client.
+ * See NIOClientConnectionRunner.
+ *
+ * Enabled with i2cp.nio=true, not available with SSL.
+ *
+ * @since 0.9.71+
+ */
+class NIOClientListenerRunner extends ClientListenerRunner {
+    private volatile Selector _selector;
+    private volatile ThreadPoolExecutor _readers;
+    private final Queue<NIOClientConnectionRunner> _wantsWrite = new ConcurrentLinkedQueue<>();
+    private final Queue<NIOClientConnectionRunner> _wantsRead = new ConcurrentLinkedQueue<>();
+    /** selector thread only */
+    private final ByteBuffer _readBuf = ByteBuffer.allocate(BUF_SIZE);
+    private final ByteBuffer _validateBuf = ByteBuffer.allocate(1);
+
+    public static final String PROP_NIO = "i2cp.nio";
+    private static final int BUF_SIZE = 32*1024;
+    private static final int READER_THREADS = SystemVersion.isSlow() ? 2 : 4;
+    private static final AtomicInteger __id = new AtomicInteger();
+
+    /**
+     * Attachment for a connection that hasn't sent the protocol byte yet.
+     */
+    private static class Pending {
+        final long accepted;
+        Pending(long now) { accepted = now; }
+    }
+
+    public NIOClientListenerRunner(RouterContext context, ClientManager manager, int port) {
+        super(context, manager, port);
+        context.statManager().createRequiredRateStat("client.writerQueueFull",
+                                          "I2CP writer queue overflow drops", "ClientMessages",
+                                          new long[] { 60*1000L, 10*60*1000L, 60*60*1000L });
+    }
+
+    /**
+     * Open the channel and run the selector loop, retrying like the blocking listener.
+     * This only returns if the channel cannot be opened or there is a catastrophic
+     * failure.
+     */
+    @Override
+    protected void runServer() {
+        _running = true;
+        int curDelay = 1000;
+        _readers = new ThreadPoolExecutor(READER_THREADS, READER_THREADS, 60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), new ReaderFactory());
+        while (_running) {
+            ServerSocketChannel server = null;
+            try {
+                _selector = Selector.open();
+                server = ServerSocketChannel.open();
+                server.socket().bind(getBindAddress());
+                server.configureBlocking(false);
+                server.register(_selector, SelectionKey.OP_ACCEPT);
+                _context.portMapper().register(PortMapper.SVC_I2CP, server.socket().getInetAddress().getHostAddress(), _port);
+                curDelay = 1000;
+                _listening = true;
+                loop();
+            } catch (IOException ioe) {
+                if (isAlive())
+                    _log.error("Error listening on port " + _port, ioe);
+            } catch (ClosedSelectorException cse) {
+                // stopListening()
+            } catch (RuntimeException re) {
+                if (isAlive())
+                    _log.error("Fatal error running client listener - killing the thread!", re);
+                _running = false;
+            } finally {
+                _context.portMapper().unregister(PortMapper.SVC_I2CP);
+                _listening = false;
+                closeAll(server);
+            }
+
+            if (!_running || !isAlive()) break;
+
+            if (curDelay < 60*1000)
+                _log.error("Error listening, waiting " + (curDelay/1000) + "s before we try again");
+            else
+                _log.log(Log.CRIT, "I2CP error listening to port " + _port + " - is another I2P instance running? Resolve conflicts and restart");
+            try { Thread.sleep(curDelay); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+            curDelay = Math.min(curDelay*3, 60*1000);
+        }
+        _readers.shutdownNow();
+        if (_running && isAlive())
+            _log.error("CANCELING I2CP LISTEN", new Exception("I2CP Listen cancelled!!!"));
+        _running = false;
+    }
+
+    private InetSocketAddress getBindAddress() throws IOException {
+        if (_bindAllInterfaces) {
+            if (_log.shouldInfo())
+                _log.info("Listening on port " + _port + " on all interfaces (NIO)");
+            return new InetSocketAddress(_port);
+        }
+        String listenInterface = _context.getProperty(ClientManagerFacadeImpl.PROP_CLIENT_HOST,
+                                                      ClientManagerFacadeImpl.DEFAULT_HOST);
+        if (_log.shouldInfo())
+            _log.info("Listening on port " + _port + " of the specific interface: " + listenInterface + " (NIO)");
+        return new InetSocketAddress(InetAddress.getByName(listenInterface), _port);
+    }
+
+    /**
+     * Same as in super, so unit tests don't NPE
+     */
+    private boolean isAlive() {
+        Router r = _context.router();
+        return r == null || r.isAlive();
+    }
+
+    private void loop() throws IOException {
+        long lastTimeoutCheck = _context.clock().now();
+        while (_running) {
+            _selector.select(1000);
+            processWantsRead();
+            Iterator<SelectionKey> iter = _selector.selectedKeys().iterator();
+            while (iter.hasNext()) {
+                SelectionKey key = iter.next();
+                iter.remove();
+                try {
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    Object att = key.attachment();
+                    if (att instanceof Pending) {
+                        if (key.isReadable())
+                            validate(key);
+                        continue;
+                    }
+                    NIOClientConnectionRunner runner = (NIOClientConnectionRunner) att;
+                    if (key.isReadable())
+                        read(key, runner);
+                    if (key.isValid() && key.isWritable())
+                        write(key, runner);
+                } catch (CancelledKeyException cke) {
+                    // closed by stopRunning() in another thread
+                }
+            }
+            // after the keys, so writes queued while handling reads go out in this pass
+            processWantsWrite();
+            long now = _context.clock().now();
+            if (now - lastTimeoutCheck >= CONNECT_TIMEOUT) {
+                lastTimeoutCheck = now;
+                expirePending(now);
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel chan;
+        while ((chan = server.accept()) != null) {
+            try {
+                chan.configureBlocking(false);
+                chan.register(_selector, SelectionKey.OP_READ, new Pending(_context.clock().now()));
+                if (_log.shouldDebug())
+                    _log.debug("Connection received");
+            } catch (IOException ioe) {
+                if (_log.shouldWarn())
+                    _log.warn("Error accepting", ioe);
+                try { chan.close(); } catch (IOException e) { /* ignored */ }
+            }
+        }
+    }
+
+    /**
+     *  Verify the first byte, then hand off to a runner,
+     *  and read whatever came after it.
+     */
+    private void validate(SelectionKey key) {
+        SocketChannel chan = (SocketChannel) key.channel();
+        _validateBuf.clear();
+        int n;
+        try {
+            n = chan.read(_validateBuf);
+        } catch (IOException ioe) {
+            n = -1;
+        }
+        if (n == 0)
+            return;
+        if (n < 0 || _validateBuf.get(0) != I2PClient.PROTOCOL_BYTE) {
+            if (_log.shouldWarn())
+                _log.warn("Refused connection from " + chan.socket().getInetAddress());
+            close(key);
+            return;
+        }
+        try {
+            chan.socket().setKeepAlive(true);
+        } catch (IOException ioe) { /* ignored */ }
+        NIOClientConnectionRunner runner = new NIOClientConnectionRunner(_context, _manager, this, chan);
+        key.attach(runner);
+        // frames read before this are held until startRunning()
+        _manager.registerConnection(runner);
+        if (key.isValid())
+            read(key, runner);
+    }
+
+    /**
+     *  Give the i2cp client 5 seconds to show that they're really i2cp clients.
+     */
+    private void expirePending(long now) {
+        for (SelectionKey key : _selector.keys()) {
+            Object att = key.attachment();
+            if (att instanceof Pending && now - ((Pending) att).accepted > CONNECT_TIMEOUT) {
+                if (_log.shouldWarn())
+                     _log.warn("Peer did not authenticate themselves as I2CP quickly enough, dropping");
+                close(key);
+            }
+        }
+    }
+
+    private void read(SelectionKey key, NIOClientConnectionRunner runner) {
+        SocketChannel chan = runner.getChannel();
+        // bounded, so one busy client can't starve the others
+        for (int i = 0; i < 4; i++) {
+            _readBuf.clear();
+            int n;
+            try {
+                n = chan.read(_readBuf);
+            } catch (IOException ioe) {
+                if (_log.shouldWarn())
+                    _log.warn("IO Error handling message \n* Error: " + ioe.getMessage());
+                n = -1;
+            }
+            if (n < 0) {
+                key.interestOps(0);
+                runner.releaseBuffers();
+                runner.readClosed();
+                return;
+            }
+            if (n == 0)
+                break;
+            _readBuf.flip();
+            if (!runner.read(_readBuf)) {
+                key.interestOps(0);
+                runner.releaseBuffers();
+                return;
+            }
+            if (n < _readBuf.capacity())
+                break;
+        }
+        if (runner.getPendingReads() >= NIOClientConnectionRunner.MAX_PENDING_READS) {
+            runner.setReadPaused(true);
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            // recheck, the processor may have drained the queue before it could see the flag
+            if (runner.getPendingReads() <= NIOClientConnectionRunner.MAX_PENDING_READS / 2) {
+                runner.setReadPaused(false);
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void write(SelectionKey key, NIOClientConnectionRunner runner) {
+        try {
+            if (runner.write())
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            else
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        } catch (IOException ioe) {
+            if (_log.shouldWarn())
+                _log.warn("Error sending I2CP message to client -> " + ioe.getMessage());
+            key.interestOps(0);
+            runner.releaseBuffers();
+            stop(runner);
+        }
+    }
+
+    private void processWantsWrite() {
+        NIOClientConnectionRunner runner;
+        while ((runner = _wantsWrite.poll()) != null) {
+            SelectionKey key = runner.getChannel().keyFor(_selector);
+            if (key == null || !key.isValid())
+                continue;
+            try {
+                write(key, runner);
+            } catch (CancelledKeyException cke) { /* ignored */ }
+        }
+    }
+
+    private void processWantsRead() {
+        NIOClientConnectionRunner runner;
+        while ((runner = _wantsRead.poll()) != null) {
+            SelectionKey key = runner.getChannel().keyFor(_selector);
+            if (key == null || !key.isValid() || !runner.isReadPaused())
+                continue;
+            runner.setReadPaused(false);
+            try {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            } catch (CancelledKeyException cke) { /* ignored */ }
+        }
+    }
+
+    /**
+     * Runner has something to write. Any thread.
+     */
+    void wantWrite(NIOClientConnectionRunner runner) {
+        _wantsWrite.offer(runner);
+        Selector sel = _selector;
+        if (sel != null)
+            sel.wakeup();
+    }
+
+    /**
+     * Runner has caught up on its queued messages. Any thread.
+     */
+    void wantRead(NIOClientConnectionRunner runner) {
+        _wantsRead.offer(runner);
+        Selector sel = _selector;
+        if (sel != null)
+            sel.wakeup();
+    }
+
+    /**
+     * Run on the reader pool.
+     */
+    void process(Runnable task) {
+        ThreadPoolExecutor readers = _readers;
+        if (readers != null && !readers.isShutdown())
+            readers.execute(task);
+    }
+
+    /**
+     * stopRunning() does a lot, don't block the selector
+     */
+    private void stop(final NIOClientConnectionRunner runner) {
+        process(new Runnable() {
+            public void run() { runner.stopRunning(); }
+        });
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try { key.channel().close(); } catch (IOException ioe) { /* ignored */ }
+    }
+
+    /**
+     * Close the server and all client channels. The runners are stopped
+     * here, as there is nothing left to drive them.
+     */
+    private void closeAll(ServerSocketChannel server) {
+        if (server != null) {
+            try { server.close(); } catch (IOException ioe) { /* ignored */ }
+        }
+        Selector sel = _selector;
+        if (sel == null)
+            return;
+        try {
+            for (SelectionKey key : sel.keys()) {
+                Object att = key.attachment();
+                if (att instanceof NIOClientConnectionRunner)
+                    ((NIOClientConnectionRunner) att).stopRunning();
+                close(key);
+            }
+        } catch (ClosedSelectorException cse) { /* ignored */ }
+        try { sel.close(); } catch (IOException ioe) { /* ignored */ }
+        _selector = null;
+        _wantsRead.clear();
+        _wantsWrite.clear();
+    }
+
+    /** Stop listening for connections, and disconnect everybody. */
+    @Override
+    public void stopListening() {
+        _running = false;
+        Selector sel = _selector;
+        if (sel != null)
+            sel.wakeup();
+    }
+
+    private static class ReaderFactory implements ThreadFactory {
+        public Thread newThread(Runnable r) {
+            Thread t = new I2PThread(r, "I2CP Reader " + __id.incrementAndGet(), true);
+            return t;
+        }
+    }
+}
@@ -214,17 +214,18 @@ public final class ECIESAEADEngine {
 
         byte[] tag = new byte[TAGLEN];
         System.arraycopy(data, 0, tag, 0, TAGLEN);
-        RatchetSessionTag st = new RatchetSessionTag(tag);
-        SessionKeyAndNonce key = keyManager.consumeTag(st);
+        // primitive lookup, only make a tag object if found
+        long ltag = DataHelper.fromLong8(tag, 0);
+        SessionKeyAndNonce key = keyManager.consumeTag(ltag);
         CloveSet decrypted;
         if (key != null) {
-            decrypted = xx_decryptFast(tag, st, key, data, targetPrivateKey, keyManager);
+            decrypted = xx_decryptFast(tag, new RatchetSessionTag(ltag), key, data, targetPrivateKey, keyManager);
             // we do NOT retry as NS
         } else {
             decrypted = x_decryptSlow(data, targetPrivateKey, keyManager);
         }
         if (decrypted == null && _log.shouldDebug())
-            _log.info("Decrypt fail NS/NSR/ES, possible tag: " + st);
+            _log.info("Decrypt fail NS/NSR/ES, possible tag: " + new RatchetSessionTag(ltag));
         return decrypted;
     }
 
@@ -263,11 +264,11 @@ public final class ECIESAEADEngine {
         }
         byte[] tag = new byte[TAGLEN];
         System.arraycopy(data, 0, tag, 0, TAGLEN);
-        RatchetSessionTag st = new RatchetSessionTag(tag);
-        SessionKeyAndNonce key = keyManager.consumeTag(st);
+        long ltag = DataHelper.fromLong8(tag, 0);
+        SessionKeyAndNonce key = keyManager.consumeTag(ltag);
         CloveSet decrypted;
         if (key != null) {
-            decrypted = xx_decryptFast(tag, st, key, data, targetPrivateKey, keyManager);
+            decrypted = xx_decryptFast(tag, new RatchetSessionTag(ltag), key, data, targetPrivateKey, keyManager);
         } else {
             decrypted = null;
         }
@@ -42,8 +42,8 @@ public class RatchetSKM extends SessionKeyManager implements SessionTagListener
     /** Map allowing us to go from the targeted PublicKey to the OutboundSession used */
     private final ConcurrentHashMap<PublicKey, OutboundSession> _outboundSessions;
     private final HashMap<PublicKey, List<OutboundSession>> _pendingOutboundSessions;
-    /** Map allowing us to go from a SessionTag to the containing RatchetTagSet */
-    private final ConcurrentHashMap<RatchetSessionTag, RatchetTagSet> _inboundTagSets;
+    /** Index allowing us to go from a SessionTag to the containing RatchetTagSet */
+    private final TagIndex _inboundTagSets;
     /** The router context */
     protected final RouterContext _context;
     private volatile boolean _alive;
@@ -113,7 +113,7 @@ public class RatchetSKM extends SessionKeyManager implements SessionTagListener
         _type = type;
         _outboundSessions = new ConcurrentHashMap<>(64);
         _pendingOutboundSessions = new HashMap<>(64);
-        _inboundTagSets = new ConcurrentHashMap<>(128);
+        _inboundTagSets = new TagIndex();
         _hkdf = new HKDF(context);
         _replayFilter = new DecayingHashSet(context, (int) ECIESAEADEngine.MAX_NS_AGE, 32, "Ratchet-NS");
         // start the precalc of Elg2 keys if it wasn't already started
@@ -179,9 +179,7 @@ public class RatchetSKM extends SessionKeyManager implements SessionTagListener
      * @return a snapshot of all inbound ratchet tag sets
      */
     private Set<RatchetTagSet> getRatchetTagSets() {
-        synchronized (_inboundTagSets) {
-            return new HashSet<>(_inboundTagSets.values());
-        }
+        return new HashSet<>(_inboundTagSets.getTagSets());
     }
 
     /** OutboundSession - used only by HTML */
@@ -354,8 +352,8 @@ public class RatchetSKM extends SessionKeyManager implements SessionTagListener
                         for (OutboundSession sess : pending) {
                             sess.getHandshakeState().destroy();
                             for (RatchetTagSet ts : sess.getTagSets()) {
-                                for (RatchetSessionTag tag : ts.getRegisteredTags()) {
-                                    _inboundTagSets.remove(tag);
+                                for (long tag : ts.getTags()) {
+                                    _inboundTagSets.remove(tag, ts);
                                 }
                             }
                         }
@@ -613,6 +611,19 @@ public class RatchetSKM extends SessionKeyManager implements SessionTagListener
      * @return a SessionKeyAndNonce or null
      */
     public SessionKeyAndNonce consumeTag(RatchetSessionTag tag) {
+        return consumeTag(tag.getLong());
+    }
+
+    /**
+     * Inbound.
+     *
+     * As consumeTag(RatchetSessionTag), without creating a tag object.
+     *
+     * @param tag the ratchet session tag to consume, as a long
+     * @return a SessionKeyAndNonce or null
+     * @since 0.9.71+
+     */
+    public SessionKeyAndNonce consumeTag(long tag) {
         RatchetTagSet tagSet;
         tagSet = _inboundTagSets.remove(tag);
         if (tagSet == null) {
@@ -645,21 +656,22 @@ public class RatchetSKM extends SessionKeyManager implements SessionTagListener
                 } // else null for SingleTagSets
             }
             if (_log.shouldDebug()) {
+                String b64 = new RatchetSessionTag(tag).toBase64();
                 if (state != null)
-                    _log.debug("Inbound NSR Tag " + key.getNonce() + " consumed: " + tag.toBase64() + "\n* " + tagSet);
+                    _log.debug("Inbound NSR Tag " + key.getNonce() + " consumed: " + b64 + "\n* " + tagSet);
                 else
-                    _log.debug("Inbound ES Tag " + key.getNonce() + " consumed: " + tag.toBase64() + "\n* " + tagSet);
+                    _log.debug("Inbound ES Tag " + key.getNonce() + " consumed: " + b64 + "\n* " + tagSet);
             }
             if (state != null) {
-                // O(tags_in_set) removal using the tagset's registered tags,
-                // instead of O(total_tags) scan of the entire _inboundTagSets map.
-                for (RatchetSessionTag t : tagSet.getRegisteredTags()) {
-                    _inboundTagSets.remove(t);
+                // O(tags_in_set) removal using the tagset's unused tags,
+                // instead of O(total_tags) scan of the entire _inboundTagSets index.
+                for (long t : tagSet.getTags()) {
+                    _inboundTagSets.remove(t, tagSet);
                 }
             }
         } else {
             if (_log.shouldInfo())
-                _log.info(tag + " not found in Tagset \n* " + tagSet);
+                _log.info(new RatchetSessionTag(tag) + " not found in Tagset \n* " + tagSet);
         }
         return key;
     }
@@ -703,15 +715,8 @@ public class RatchetSKM extends SessionKeyManager implements SessionTagListener
     private int aggressiveExpire() {
         long now = _context.clock().now();
 
-        // inbound - single pass over entrySet, remove all entries with expired tagsets
-        int removed = 0;
-        for (Iterator<Map.Entry<RatchetSessionTag, RatchetTagSet>> iter = _inboundTagSets.entrySet().iterator(); iter.hasNext();) {
-            Map.Entry<RatchetSessionTag, RatchetTagSet> entry = iter.next();
-            if (entry.getValue().getExpiration() < now) {
-                iter.remove();
-                removed++;
-            }
-        }
+        // inbound - remove all tags of expired tagsets
+        int removed = _inboundTagSets.removeExpired(now);
 
         // outbound
         int oremoved = 0;
@@ -760,15 +765,15 @@ public class RatchetSKM extends SessionKeyManager implements SessionTagListener
      *  @return true if added, false if dup
      */
     @Override
-    public boolean addTag(RatchetSessionTag tag, RatchetTagSet ts) {
-        return _inboundTagSets.putIfAbsent(tag, ts) == null;
+    public boolean addTag(long tag, RatchetTagSet ts) {
+        return _inboundTagSets.putIfAbsent(tag, ts);
     }
 
     /**
      *  Remove the tag associated with this tagset.
      */
     @Override
-    public void expireTag(RatchetSessionTag tag, RatchetTagSet ts) {
+    public void expireTag(long tag, RatchetTagSet ts) {
         _inboundTagSets.remove(tag, ts);
     }
 
@@ -2,8 +2,6 @@ package net.i2p.router.crypto.ratchet;
 
 import com.southernstorm.noise.protocol.DHState;
 import com.southernstorm.noise.protocol.HandshakeState;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import net.i2p.I2PAppContext;
 import net.i2p.crypto.EncType;
@@ -38,8 +36,8 @@ class RatchetTagSet implements TagSetHandle {
     // NSR only, else null
     private final HandshakeState _state;
     // inbound only, else null
-    // We use object for tags because we must do indexOfValueByValue()
-    private final SparseArray<RatchetSessionTag> _sessionTags;
+    // Tags as longs, so there is no object per look-ahead tag
+    private final SparseLongArray _sessionTags;
     // inbound ES only, else null
     // We use byte[] for key to save space, because we don't need indexOfValueByValue()
     private final SparseArray<byte[]> _sessionKeys;
@@ -57,6 +55,8 @@ class RatchetTagSet implements TagSetHandle {
     private final byte[] _sesstag_constant;
     private final byte[] _symmkey_ck;
     private final byte[] _symmkey_constant;
+    /** for tag generation, caller must synch */
+    private final byte[] _tagTmp;
     private int _lastTag = -1;
     private int _lastKey = -1;
     private KeyPair _nextKeys;
@@ -84,15 +84,6 @@ class RatchetTagSet implements TagSetHandle {
     static final int DEBUG_SINGLE_ES = 0x10003;
     // Start empty (no allocations), we only use storage for gaps
     private static final int INITIAL_KEY_CAPACITY = 0;
-    /**
-     *  Tags registered in the SKM's _inboundTagSets map.
-     *  Used for O(tags_in_set) removal in RatchetSKM.consumeTag() instead of
-     *  O(total_tags) scan of the entire _inboundTagSets map.
-     *  Only populated for inbound tagsets (where _lsnr != null).
-     *
-     *  @since 0.9.70
-     */
-    private final Set<RatchetSessionTag> _registeredTags = ConcurrentHashMap.newKeySet();
 
     /**
      *  Outbound NSR Tagset
@@ -197,12 +188,13 @@ class RatchetTagSet implements TagSetHandle {
         _sesstag_constant = new byte[32];
         _symmkey_ck = new byte[32];
         _symmkey_constant = ZEROLEN;
+        _tagTmp = new byte[32];
         this.hkdf = hkdf;
         hkdf.calculate(rootKey.getData(), data.getData(), INFO_1, _nextRootKey, ck, 0);
         hkdf.calculate(ck, ZEROLEN, INFO_2, _sesstag_ck, _symmkey_ck, 0);
         hkdf.calculate(_sesstag_ck, ZEROLEN, INFO_3, _sesstag_ck, _sesstag_constant, 0);
         if (isInbound) {
-            _sessionTags = new SparseArray<>(minSize);
+            _sessionTags = new SparseLongArray(minSize);
             if (state == null)
                 _sessionKeys = new SparseArray<>(INITIAL_KEY_CAPACITY);
             else
@@ -245,6 +237,7 @@ class RatchetTagSet implements TagSetHandle {
         _sesstag_constant = null;
         _symmkey_ck = null;
         _symmkey_constant = null;
+        _tagTmp = null;
         hkdf = null;
         _sessionTags = null;
         _sessionKeys = null;
@@ -440,15 +433,15 @@ class RatchetTagSet implements TagSetHandle {
      *
      *  @return associated SessionKey or null if not found.
      */
-    public SessionKeyAndNonce consume(RatchetSessionTag tag) {
+    public SessionKeyAndNonce consume(long tag) {
         if (_sessionTags == null)
             throw new IllegalStateException("Outbound tagset");
-        // linear search for tag
-        int idx = _sessionTags.indexOfValueByValue(tag);
+        // linear search for tag, primitive compare
+        int idx = _sessionTags.indexOfValue(tag);
         if (idx < 0) {
             Log log = I2PAppContext.getGlobalContext().logManager().getLog(RatchetTagSet.class);
             if (log.shouldWarn())
-                log.warn("Tag not found " + tag.toBase64() +
+                log.warn("Tag not found " + new RatchetSessionTag(tag).toBase64() +
                          " in:\n" + toString(), new Exception());
             return null;
         }
@@ -483,7 +476,7 @@ class RatchetTagSet implements TagSetHandle {
             // dup or some other error
             Log log = I2PAppContext.getGlobalContext().logManager().getLog(RatchetTagSet.class);
             if (log.shouldWarn())
-                log.warn("No key found for tag " + tag.toBase64() + " at index " + idx +
+                log.warn("No key found for tag " + new RatchetSessionTag(tag).toBase64() + " at index " + idx +
                          " tagnum = " + tagnum + " lastkey = " + _lastKey, new Exception());
             return null;
         }
@@ -541,24 +534,23 @@ class RatchetTagSet implements TagSetHandle {
      *  Inbound only.
      */
     private void storeNextTag() {
-        RatchetSessionTag tag = consumeNext();
-        if (tag == null)
+        if (_lastTag >= MAX)
             return;
+        long tag = nextTag();
         _sessionTags.append(_lastTag, tag);
-        if (_lsnr != null) {
-            _registeredTags.add(tag);
+        if (_lsnr != null)
             _lsnr.addTag(tag, this);
-        }
     }
 
     /**
-     *  Return the set of tags registered in the SKM's _inboundTagSets map.
-     *  Used for O(tags_in_set) removal in RatchetSKM.consumeTag().
+     *  Inbound only. The unused tags, i.e. those registered with the listener,
+     *  for removal from the SKM's index.
      *
-     *  @since 0.9.70
+     *  @return a copy, in tag number order
+     *  @since 0.9.71+ replaces getRegisteredTags()
      */
-    Set<RatchetSessionTag> getRegisteredTags() {
-        return _registeredTags;
+    synchronized long[] getTags() {
+        return _sessionTags != null ? _sessionTags.values() : new long[0];
     }
 
     /**
@@ -570,10 +562,18 @@ class RatchetTagSet implements TagSetHandle {
     public RatchetSessionTag consumeNext() {
         if (_lastTag >= MAX)
             return null;
-        byte[] tmp = new byte[32];
-        hkdf.calculate(_sesstag_ck, _sesstag_constant, INFO_4, _sesstag_ck, tmp, 0);
+        return new RatchetSessionTag(nextTag());
+    }
+
+    /**
+     *  Generate the next tag. Caller must check _lastTag first.
+     *
+     *  @since 0.9.71+
+     */
+    private long nextTag() {
+        hkdf.calculate(_sesstag_ck, _sesstag_constant, INFO_4, _sesstag_ck, _tagTmp, 0);
         _lastTag++;
-        return new RatchetSessionTag(tmp);
+        return DataHelper.fromLong8(_tagTmp, 0);
     }
 
     /**
@@ -657,9 +657,7 @@ class RatchetTagSet implements TagSetHandle {
         if (_sessionTags != null) {
             for (int i = 0; i < sz; i++) {
                 int n = _sessionTags.keyAt(i);
-                RatchetSessionTag tag = _sessionTags.valueAt(i);
-                if (tag == null)
-                    continue;
+                RatchetSessionTag tag = new RatchetSessionTag(_sessionTags.valueAt(i));
                 buf.append("\n* Session Tag ").append(n).append(": ").append(tag.toBase64());
                 if (_sessionKeys != null) {
                     byte[] key = _sessionKeys.get(n);
@@ -10,17 +10,17 @@ interface SessionTagListener {
     /**
      *  Map the tag to this tagset.
      *
-     *  @param tag the session tag
+     *  @param tag the session tag, as a long since 0.9.71+
      *  @param ts the tag set
      *  @return true if added, false if dup
      */
-    public boolean addTag(RatchetSessionTag tag, RatchetTagSet ts);
+    public boolean addTag(long tag, RatchetTagSet ts);
 
     /**
      *  Remove the tag associated with this tagset.
      *
-     *  @param tag the session tag
+     *  @param tag the session tag, as a long since 0.9.71+
      *  @param ts the tag set
      */
-    public void expireTag(RatchetSessionTag tag, RatchetTagSet ts);
+    public void expireTag(long tag, RatchetTagSet ts);
 }
@@ -18,7 +18,7 @@ class SingleTagSet extends RatchetTagSet {
     public SingleTagSet(SessionTagListener lsnr, SessionKey key, RatchetSessionTag tag, long date, long timeout) {
         super(lsnr, key, date, timeout);
         _tag = tag;
-        lsnr.addTag(tag, this);
+        lsnr.addTag(tag.getLong(), this);
     }
 
     @Override
@@ -32,8 +32,8 @@ class SingleTagSet extends RatchetTagSet {
     }
 
     @Override
-    public SessionKeyAndNonce consume(RatchetSessionTag tag) {
-        if (_isUsed || !tag.equals(_tag))
+    public SessionKeyAndNonce consume(long tag) {
+        if (_isUsed || tag != _tag.getLong())
             return null;
         _isUsed = true;
         return new SessionKeyAndNonce(_key.getData(), 0);
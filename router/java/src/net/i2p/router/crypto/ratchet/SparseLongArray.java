@@ -0,0 +1,149 @@
+package net.i2p.router.crypto.ratchet;
+
+/**
+ * Sparse array of int keys to primitive long values, for the inbound session tags of a RatchetTagSet.
+ *
+ * <p>Like SparseArray, keys are kept sorted in a char array, max value 65535,
+ * but values are a long array, so there is no object per entry.
+ * Keys must be appended in ascending order; there is no put().
+ * Removal compacts immediately, as the arrays are small and
+ * entries are mostly removed from the front.</p>
+ *
+ * @since 0.9.71+
+ */
+class SparseLongArray {
+    private static final char[] EMPTY_CHARS = new char[0];
+    private static final long[] EMPTY_LONGS = new long[0];
+
+    private char[] mKeys;
+    private long[] mValues;
+    private int mSize;
+
+    /**
+     * Creates a new SparseLongArray containing no mappings that will not
+     * require any additional memory allocation to store the specified
+     * number of mappings.
+     */
+    public SparseLongArray(int initialCapacity) {
+        if (initialCapacity == 0) {
+            mKeys = EMPTY_CHARS;
+            mValues = EMPTY_LONGS;
+        } else {
+            mKeys = new char[initialCapacity];
+            mValues = new long[initialCapacity];
+        }
+    }
+
+    /**
+     * Returns the number of key-value mappings that this SparseLongArray
+     * currently stores.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, returns
+     * the key from the <code>index</code>th key-value mapping.
+     */
+    public int keyAt(int index) {
+        if (index >= mSize)
+            throw new ArrayIndexOutOfBoundsException(index);
+        return mKeys[index];
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, returns
+     * the value from the <code>index</code>th key-value mapping.
+     */
+    public long valueAt(int index) {
+        if (index >= mSize)
+            throw new ArrayIndexOutOfBoundsException(index);
+        return mValues[index];
+    }
+
+    /**
+     * Returns the index for which {@link #keyAt} would return the
+     * specified key, or a negative number if the specified
+     * key is not mapped.
+     */
+    public int indexOfKey(int key) {
+        return ContainerHelpers.binarySearch(mKeys, mSize, (char) key);
+    }
+
+    /**
+     * Returns the lowest index for which {@link #valueAt} would return the
+     * specified value, or a negative number if no keys map to the
+     * specified value.
+     * Linear search, but over a primitive array.
+     */
+    public int indexOfValue(long value) {
+        final long[] values = mValues;
+        for (int i = 0; i < mSize; i++) {
+            if (values[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the mapping at the given index.
+     */
+    public void removeAt(int index) {
+        removeAtRange(index, 1);
+    }
+
+    /**
+     * Remove a range of mappings as a batch.
+     *
+     * @param index Index to begin at
+     * @param size Number of mappings to remove
+     */
+    public void removeAtRange(int index, int size) {
+        final int end = Math.min(mSize, index + size);
+        if (end <= index)
+            return;
+        System.arraycopy(mKeys, end, mKeys, index, mSize - end);
+        System.arraycopy(mValues, end, mValues, index, mSize - end);
+        mSize -= end - index;
+    }
+
+    /**
+     * Puts a key/value pair into the array, the key must be
+     * greater than all existing keys.
+     */
+    public void append(int key, long value) {
+        if (key < 0 || key > 65535)
+            throw new IllegalArgumentException("bad key " + key);
+        if (mSize != 0 && key <= mKeys[mSize - 1])
+            throw new IllegalArgumentException("key " + key + " not greater than " + (int) mKeys[mSize - 1]);
+        if (mSize >= mKeys.length) {
+            int cap = Math.max(4, mSize + (mSize >> 1));
+            char[] keys = new char[cap];
+            long[] values = new long[cap];
+            System.arraycopy(mKeys, 0, keys, 0, mSize);
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            mKeys = keys;
+            mValues = values;
+        }
+        mKeys[mSize] = (char) key;
+        mValues[mSize] = value;
+        mSize++;
+    }
+
+    /**
+     * Removes all key-value mappings from this SparseLongArray.
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return a copy of the values, in key order
+     */
+    public long[] values() {
+        long[] rv = new long[mSize];
+        System.arraycopy(mValues, 0, rv, 0, mSize);
+        return rv;
+    }
+}
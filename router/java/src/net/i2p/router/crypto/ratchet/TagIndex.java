@@ -0,0 +1,279 @@
+package net.i2p.router.crypto.ratchet;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ *  Inbound session tag to tag set index for RatchetSKM, keyed by the 8-byte tag as a long.
+ *
+ *  Open addressing with linear probing and backward-shift deletion,
+ *  in primitive arrays, so there is no object per tag and no boxing on lookup.
+ *  Split into stripes, each with its own lock, by the high bits of the hash.
+ *
+ *  Lock order: a tag set may call in here while holding its own lock
+ *  (from addTags() in consume()), so never call a tag set method while
+ *  holding a stripe lock.
+ *
+ *  @since 0.9.71+
+ */
+class TagIndex {
+    private final Stripe[] _stripes;
+    private final int _stripeShift;
+
+    private static final int STRIPES = 16;
+    private static final int MIN_CAPACITY = 16;
+
+    public TagIndex() {
+        _stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            _stripes[i] = new Stripe();
+        }
+        _stripeShift = 32 - Integer.numberOfTrailingZeros(STRIPES);
+    }
+
+    /**
+     *  Tags are random, but spread them anyway in case of a poor source.
+     */
+    private static int hash(long tag) {
+        int h = (int) (tag ^ (tag >>> 32));
+        return h * 0x9e3779b9;
+    }
+
+    private Stripe stripe(int hash) {
+        return _stripes[hash >>> _stripeShift];
+    }
+
+    /**
+     *  @return true if added, false if already present
+     */
+    public boolean putIfAbsent(long tag, RatchetTagSet ts) {
+        int h = hash(tag);
+        return stripe(h).putIfAbsent(tag, h, ts);
+    }
+
+    /**
+     *  @return the tag set or null
+     */
+    public RatchetTagSet get(long tag) {
+        int h = hash(tag);
+        return stripe(h).get(tag, h);
+    }
+
+    /**
+     *  @return the tag set the tag was mapped to, or null
+     */
+    public RatchetTagSet remove(long tag) {
+        int h = hash(tag);
+        return stripe(h).remove(tag, h, null);
+    }
+
+    /**
+     *  Remove only if mapped to this tag set.
+     *
+     *  @return true if removed
+     */
+    public boolean remove(long tag, RatchetTagSet ts) {
+        int h = hash(tag);
+        return stripe(h).remove(tag, h, ts) != null;
+    }
+
+    /**
+     *  Number of tags. Not synched across stripes, approximate.
+     */
+    public int size() {
+        int rv = 0;
+        for (Stripe s : _stripes) {
+            rv += s.size();
+        }
+        return rv;
+    }
+
+    public void clear() {
+        for (Stripe s : _stripes) {
+            s.clear();
+        }
+    }
+
+    /**
+     *  @return a snapshot of the distinct tag sets
+     */
+    public Set<RatchetTagSet> getTagSets() {
+        Set<RatchetTagSet> rv = Collections.newSetFromMap(new IdentityHashMap<RatchetTagSet, Boolean>());
+        for (Stripe s : _stripes) {
+            s.getTagSets(rv);
+        }
+        return rv;
+    }
+
+    /**
+     *  Remove all tags of expired tag sets.
+     *  Expiration is checked outside the stripe locks.
+     *
+     *  @return number of tags removed
+     */
+    public int removeExpired(long now) {
+        Set<RatchetTagSet> sets = getTagSets();
+        Set<RatchetTagSet> expired = Collections.newSetFromMap(new IdentityHashMap<RatchetTagSet, Boolean>());
+        for (RatchetTagSet ts : sets) {
+            if (ts.getExpiration() < now)
+                expired.add(ts);
+        }
+        if (expired.isEmpty())
+            return 0;
+        int rv = 0;
+        for (Stripe s : _stripes) {
+            rv += s.removeAll(expired);
+        }
+        return rv;
+    }
+
+    /**
+     *  One lock and table. Empty slots have a null value, so a zero tag is allowed.
+     */
+    private static class Stripe {
+        private long[] _keys;
+        private RatchetTagSet[] _values;
+        private int _size;
+
+        Stripe() {
+            _keys = new long[MIN_CAPACITY];
+            _values = new RatchetTagSet[MIN_CAPACITY];
+        }
+
+        /** @return slot or -1 */
+        private int find(long tag, int h) {
+            int mask = _keys.length - 1;
+            int i = h & mask;
+            while (_values[i] != null) {
+                if (_keys[i] == tag)
+                    return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        synchronized boolean putIfAbsent(long tag, int h, RatchetTagSet ts) {
+            if (find(tag, h) >= 0)
+                return false;
+            if ((_size + 1) * 2 > _keys.length)
+                resize(_keys.length * 2);
+            insert(tag, h, ts);
+            _size++;
+            return true;
+        }
+
+        /** no dup check, must have room */
+        private void insert(long tag, int h, RatchetTagSet ts) {
+            int mask = _keys.length - 1;
+            int i = h & mask;
+            while (_values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            _keys[i] = tag;
+            _values[i] = ts;
+        }
+
+        synchronized RatchetTagSet get(long tag, int h) {
+            int i = find(tag, h);
+            return i >= 0 ? _values[i] : null;
+        }
+
+        /**
+         *  @param ts if non-null, only remove if mapped to this
+         *  @return the removed tag set or null
+         */
+        synchronized RatchetTagSet remove(long tag, int h, RatchetTagSet ts) {
+            int i = find(tag, h);
+            if (i < 0)
+                return null;
+            RatchetTagSet rv = _values[i];
+            if (ts != null && rv != ts)
+                return null;
+            delete(i);
+            if (_size * 8 < _keys.length && _keys.length > MIN_CAPACITY)
+                resize(_keys.length / 2);
+            return rv;
+        }
+
+        /**
+         *  Backward-shift deletion, no tombstones.
+         */
+        private void delete(int i) {
+            int mask = _keys.length - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (_values[j] == null)
+                    break;
+                int home = hash(_keys[j]) & mask;
+                // move j to i if its home is not cyclically in (i, j]
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    _keys[i] = _keys[j];
+                    _values[i] = _values[j];
+                    i = j;
+                }
+            }
+            _values[i] = null;
+            _size--;
+        }
+
+        private void resize(int capacity) {
+            long[] keys = _keys;
+            RatchetTagSet[] values = _values;
+            _keys = new long[capacity];
+            _values = new RatchetTagSet[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null)
+                    insert(keys[i], hash(keys[i]), values[i]);
+            }
+        }
+
+        synchronized int size() {
+            return _size;
+        }
+
+        synchronized void clear() {
+            _keys = new long[MIN_CAPACITY];
+            _values = new RatchetTagSet[MIN_CAPACITY];
+            _size = 0;
+        }
+
+        synchronized void getTagSets(Set<RatchetTagSet> sets) {
+            for (RatchetTagSet ts : _values) {
+                if (ts != null)
+                    sets.add(ts);
+            }
+        }
+
+        /**
+         *  Rebuild without the tags of these tag sets.
+         *
+         *  @return number removed
+         */
+        synchronized int removeAll(Set<RatchetTagSet> sets) {
+            long[] keys = _keys;
+            RatchetTagSet[] values = _values;
+            int removed = 0;
+            for (RatchetTagSet ts : values) {
+                if (ts != null && sets.contains(ts))
+                    removed++;
+            }
+            if (removed == 0)
+                return 0;
+            int size = _size - removed;
+            int capacity = MIN_CAPACITY;
+            while (size * 2 > capacity) {
+                capacity *= 2;
+            }
+            _keys = new long[capacity];
+            _values = new RatchetTagSet[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null && !sets.contains(values[i]))
+                    insert(keys[i], hash(keys[i]), values[i]);
+            }
+            _size = size;
+            return removed;
+        }
+    }
+}
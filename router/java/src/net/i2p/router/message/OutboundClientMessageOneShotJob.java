@@ -31,9 +31,9 @@ import net.i2p.data.i2np.GarlicMessage;
 import net.i2p.data.i2np.I2NPMessage;
 import net.i2p.data.router.RouterInfo;
 import net.i2p.router.ClientMessage;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.JobImpl;
 import net.i2p.router.LeaseSetKeys;
-import net.i2p.router.MessageSelector;
 import net.i2p.router.ReplyJob;
 import net.i2p.router.Router;
 import net.i2p.router.RouterContext;
@@ -1094,7 +1094,7 @@ public class OutboundClientMessageOneShotJob extends JobImpl {
      * sent down the various tunnels to deliver this message
      *
      */
-    private static class ReplySelector implements MessageSelector {
+    private static class ReplySelector implements IndexedMessageSelector {
         private final long _pendingToken;
         private final long _expiration;
 
@@ -1107,6 +1107,10 @@ public class OutboundClientMessageOneShotJob extends JobImpl {
 
         public long getExpiration() {return _expiration;}
 
+        public long getReplyId() {return _pendingToken;}
+
+        public Hash getReplyKey() {return null;}
+
         public boolean isMatch(I2NPMessage inMsg) {
             if (inMsg.getType() == DeliveryStatusMessage.MESSAGE_TYPE) {
                 return _pendingToken == ((DeliveryStatusMessage)inMsg).getMessageId();
@@ -1,9 +1,10 @@
 package net.i2p.router.networkdb.kademlia;
 
+import net.i2p.data.Hash;
 import net.i2p.data.i2np.DatabaseSearchReplyMessage;
 import net.i2p.data.i2np.DatabaseStoreMessage;
 import net.i2p.data.i2np.I2NPMessage;
-import net.i2p.router.MessageSelector;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.RouterContext;
 import net.i2p.util.Log;
 
@@ -20,7 +21,7 @@ import net.i2p.util.Log;
  * Provides specialized logic for flood-based search response handling
  * with profile management and search lifecycle coordination.
  */
-class FloodOnlyLookupSelector implements MessageSelector {
+class FloodOnlyLookupSelector implements IndexedMessageSelector {
     private final RouterContext _context;
     private final FloodOnlySearchJob _search;
     private boolean _matchFound;
@@ -49,6 +50,12 @@ class FloodOnlyLookupSelector implements MessageSelector {
      */
     public long getExpiration() { return (_matchFound ? -1 : _search.getExpiration()); }
 
+    /** @since 0.9.71+ */
+    public long getReplyId() { return -1; }
+
+    /** @since 0.9.71+ */
+    public Hash getReplyKey() { return _search.getKey(); }
+
     /**
      * Whether the message is a store for the searched key.
      *
@@ -0,0 +1,228 @@
+package net.i2p.router.networkdb.kademlia;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.i2p.data.DataHelper;
+import net.i2p.data.Hash;
+import net.i2p.kademlia.XORComparator;
+
+/**
+ *  Floodfill router hashes, kept sorted as unsigned big-endian numbers,
+ *  so that the entries closest to a key by the XOR metric can be walked
+ *  in order without sorting the whole set.
+ *
+ *  In a sorted array, every subtree of the implicit binary trie is a
+ *  contiguous range, split in two by the first entry with the next bit set.
+ *  The walk descends into the half that matches the key's bit first,
+ *  so the first N entries cost O(log n) splits plus a sort of the
+ *  final small ranges.
+ *
+ *  Copy-on-write: updates are rare compared to lookups, and each
+ *  iterator works on the snapshot it was created with.
+ *
+ *  The sort order is by router hash, which does not change at the
+ *  daily routing key rotation; the caller passes the routing key of the target.
+ *  The last rotation seen is stored so the owner can rebuild from its
+ *  authoritative set once a day.
+ *
+ *  @since 0.9.71+
+ */
+class FloodfillIndex {
+    private static final Hash[] EMPTY = new Hash[0];
+    /** ranges this small are sorted with XORComparator rather than split */
+    private static final int SORT_THRESHOLD = 8;
+    private static final int BITS = Hash.HASH_LENGTH * 8;
+
+    private volatile Hash[] _sorted = EMPTY;
+    private volatile long _rotation = -1;
+
+    /**
+     *  @return true if added, false if already present
+     */
+    public synchronized boolean add(Hash h) {
+        Hash[] cur = _sorted;
+        int idx = find(cur, h);
+        if (idx >= 0)
+            return false;
+        idx = -(idx + 1);
+        Hash[] n = new Hash[cur.length + 1];
+        System.arraycopy(cur, 0, n, 0, idx);
+        n[idx] = h;
+        System.arraycopy(cur, idx, n, idx + 1, cur.length - idx);
+        _sorted = n;
+        return true;
+    }
+
+    /**
+     *  @return true if removed, false if not present
+     */
+    public synchronized boolean remove(Hash h) {
+        Hash[] cur = _sorted;
+        int idx = find(cur, h);
+        if (idx < 0)
+            return false;
+        if (cur.length == 1) {
+            _sorted = EMPTY;
+            return true;
+        }
+        Hash[] n = new Hash[cur.length - 1];
+        System.arraycopy(cur, 0, n, 0, idx);
+        System.arraycopy(cur, idx + 1, n, idx, cur.length - idx - 1);
+        _sorted = n;
+        return true;
+    }
+
+    public boolean contains(Hash h) {
+        return find(_sorted, h) >= 0;
+    }
+
+    public int size() {
+        return _sorted.length;
+    }
+
+    /**
+     *  Replace the contents.
+     *
+     *  @param rotation the routing key generator's last change time, for getRotation()
+     */
+    public synchronized void rebuild(Collection<Hash> hashes, long rotation) {
+        Hash[] n = hashes.toArray(new Hash[hashes.size()]);
+        Arrays.sort(n, (l, r) -> DataHelper.compareTo(l.getData(), r.getData()));
+        // source is a set, but make sure
+        int j = 0;
+        for (int i = 0; i < n.length; i++) {
+            if (j == 0 || !n[i].equals(n[j - 1]))
+                n[j++] = n[i];
+        }
+        _sorted = j == n.length ? n : Arrays.copyOf(n, j);
+        _rotation = rotation;
+    }
+
+    /**
+     *  @return the rotation passed to the last rebuild(), or -1 if never built
+     */
+    public long getRotation() {
+        return _rotation;
+    }
+
+    /**
+     *  All entries in order of increasing XOR distance to the key.
+     *  Lazy, so stopping early costs only what was consumed.
+     *  Does not reflect later changes. remove() is not supported.
+     *
+     *  @param key the ROUTING key (NOT the original key)
+     */
+    public Iterator<Hash> iterator(Hash key) {
+        return new XORIterator(_sorted, key);
+    }
+
+    /**
+     *  @return index as in Arrays.binarySearch()
+     */
+    private static int find(Hash[] a, Hash h) {
+        byte[] d = h.getData();
+        int lo = 0;
+        int hi = a.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = DataHelper.compareTo(a[mid].getData(), d);
+            if (c < 0)
+                lo = mid + 1;
+            else if (c > 0)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    private static int bit(byte[] d, int bit) {
+        return (d[bit >> 3] >> (7 - (bit & 7))) & 1;
+    }
+
+    /**
+     *  Depth-first walk of the trie over the sorted array,
+     *  near half first, with an explicit stack of ranges.
+     */
+    private static class XORIterator implements Iterator<Hash> {
+        private final Hash[] _a;
+        private final Hash _key;
+        private final byte[] _kd;
+        // each pop pushes at most two, one per depth, so this can't overflow
+        private final int[] _lo = new int[BITS + 2];
+        private final int[] _hi = new int[BITS + 2];
+        private final int[] _depth = new int[BITS + 2];
+        private int _sp;
+        /** current sorted leaf range */
+        private Hash[] _leaf;
+        private int _leafIdx;
+
+        XORIterator(Hash[] a, Hash key) {
+            _a = a;
+            _key = key;
+            _kd = key.getData();
+            if (a.length > 0)
+                push(0, a.length, 0);
+        }
+
+        private void push(int lo, int hi, int depth) {
+            _lo[_sp] = lo;
+            _hi[_sp] = hi;
+            _depth[_sp] = depth;
+            _sp++;
+        }
+
+        public boolean hasNext() {
+            if (_leaf != null && _leafIdx < _leaf.length)
+                return true;
+            while (_sp > 0) {
+                _sp--;
+                int lo = _lo[_sp];
+                int hi = _hi[_sp];
+                int depth = _depth[_sp];
+                if (hi - lo <= SORT_THRESHOLD || depth >= BITS) {
+                    Hash[] leaf = Arrays.copyOfRange(_a, lo, hi);
+                    if (leaf.length > 1)
+                        Arrays.sort(leaf, new XORComparator<Hash>(_key));
+                    _leaf = leaf;
+                    _leafIdx = 0;
+                    return true;
+                }
+                // first entry in [lo, hi) with the bit set; all share the bits above
+                int l = lo;
+                int h = hi;
+                while (l < h) {
+                    int mid = (l + h) >>> 1;
+                    if (bit(_a[mid].getData(), depth) == 0)
+                        l = mid + 1;
+                    else
+                        h = mid;
+                }
+                if (l == lo || l == hi) {
+                    // all on one side
+                    push(lo, hi, depth + 1);
+                } else if (bit(_kd, depth) == 0) {
+                    push(l, hi, depth + 1);
+                    push(lo, l, depth + 1);
+                } else {
+                    push(lo, l, depth + 1);
+                    push(l, hi, depth + 1);
+                }
+            }
+            return false;
+        }
+
+        public Hash next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return _leaf[_leafIdx++];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
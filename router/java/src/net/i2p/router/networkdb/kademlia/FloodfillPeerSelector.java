@@ -46,6 +46,7 @@ class FloodfillPeerSelector extends PeerSelector {
 
     private BanLogger _banLogger;
     private final KademliaNetworkDatabaseFacade _facade;
+    private final FloodfillIndex _ffIndex = new FloodfillIndex();
 
     private static volatile RouterContext _cfgCtx;
     private static volatile long _cfgRefreshed;
@@ -163,21 +164,70 @@ class FloodfillPeerSelector extends PeerSelector {
         Set<Hash> set = _context.peerManager().getPeersByCapability(FloodfillNetworkDatabaseFacade.CAPABILITY_FLOODFILL);
         List<Hash> rv = new ArrayList<>(set.size());
         for (Hash h : set) {
-            if ((toIgnore != null && toIgnore.contains(h)) ||
-                _context.banlist().isBanlisted(h) ||
-                _context.banlist().isBanlistedForever(h) ||
-                _context.profileOrganizer().peerSendsBadReplies(h)) {
-                continue;
-            }
-            RouterInfo ri = (RouterInfo) _context.netDb().lookupLocallyWithoutValidation(h);
-            if (ri != null && ri.getCapabilities().indexOf(Router.CAPABILITY_UNREACHABLE) >= 0) {
-                continue;
-            }
-            rv.add(h);
+            if (isParticipant(h, toIgnore)) {rv.add(h);}
         }
         return rv;
     }
 
+    /**
+     *  @param toIgnore can be null
+     *  @return true if not ignored, banlisted, sending bad replies, or flagged unreachable
+     *  @since 0.9.71+
+     */
+    private boolean isParticipant(Hash h, Set<Hash> toIgnore) {
+        if ((toIgnore != null && toIgnore.contains(h)) ||
+            _context.banlist().isBanlisted(h) ||
+            _context.banlist().isBanlistedForever(h) ||
+            _context.profileOrganizer().peerSendsBadReplies(h)) {
+            return false;
+        }
+        RouterInfo ri = (RouterInfo) _context.netDb().lookupLocallyWithoutValidation(h);
+        return ri == null || ri.getCapabilities().indexOf(Router.CAPABILITY_UNREACHABLE) < 0;
+    }
+
+    /**
+     *  Update the XOR index after a RouterInfo store.
+     *
+     *  @param isFloodfill whether the new RouterInfo has the floodfill cap
+     *  @since 0.9.71+
+     */
+    void updateFloodfillIndex(Hash peer, boolean isFloodfill) {
+        if (isFloodfill) {_ffIndex.add(peer);}
+        else {_ffIndex.remove(peer);}
+    }
+
+    /**
+     *  Update the XOR index after a RouterInfo is dropped.
+     *
+     *  @since 0.9.71+
+     */
+    void removeFromFloodfillIndex(Hash peer) {
+        _ffIndex.remove(peer);
+    }
+
+    /**
+     *  Rebuild the XOR index from the peer manager's floodfill set
+     *  on first use and at each routing key rotation, which also catches
+     *  any capability changes made without going through the netDb.
+     *
+     *  @since 0.9.71+
+     */
+    private FloodfillIndex getFloodfillIndex() {
+        long rotation = _context.routingKeyGenerator().getLastChanged();
+        if (_ffIndex.getRotation() != rotation) {
+            synchronized (_ffIndex) {
+                if (_ffIndex.getRotation() != rotation) {
+                    Set<Hash> set = _context.peerManager().getPeersByCapability(FloodfillNetworkDatabaseFacade.CAPABILITY_FLOODFILL);
+                    _ffIndex.rebuild(new ArrayList<>(set), rotation);
+                    if (_log.shouldInfo()) {
+                        _log.info("Rebuilt floodfill XOR index with " + _ffIndex.size() + " floodfills");
+                    }
+                }
+            }
+        }
+        return _ffIndex;
+    }
+
     /**
      * Sort the floodfills. The challenge here is to keep the good ones at the front
      * and the bad ones at the back. If they are all good or bad, searches and stores won't work well.
@@ -246,8 +296,8 @@ class FloodfillPeerSelector extends PeerSelector {
      *  @param kbuckets now unused
      */
     private List<Hash> selectFloodfillParticipantsIncludingUs(Hash key, int howMany, Set<Hash> toIgnore, KBucketSet<Hash> kbuckets) {
-        List<Hash> sorted = selectFloodfillParticipants(toIgnore, kbuckets);
-        Collections.sort(sorted, new XORComparator<>(key));
+        FloodfillIndex index = getFloodfillIndex();
+        Set<Hash> floodfills = _context.peerManager().getPeersByCapability(FloodfillNetworkDatabaseFacade.CAPABILITY_FLOODFILL);
 
         int found = 0;
         long now = _context.clock().now();
@@ -256,15 +306,17 @@ class FloodfillPeerSelector extends PeerSelector {
         boolean enforceHeard = installed > 0 && (now - installed) > INSTALL_AGE;
         double maxFailRate = computeMaxFailRate(uptime);
 
-        MaskedIPSet maskedIPs = new MaskedIPSet(Math.min(sorted.size(), 128) * 3);
+        MaskedIPSet maskedIPs = new MaskedIPSet(Math.min(index.size(), 128) * 3);
         // split sorted list into 3 unsorted lists
         List<Hash> rv = new ArrayList<>(howMany);
         List<Hash> okff = new ArrayList<>(howMany);
         List<Hash> badff = new ArrayList<>(howMany);
-        for (int i = 0; found < howMany && i < sorted.size(); i++) {
-            Hash entry = sorted.get(i);
-            if (entry == null) {continue;} // shouldn't happen
+        // walk the index closest-first, filtering as we go, rather than sorting all floodfills
+        for (Iterator<Hash> iter = index.iterator(key); found < howMany && iter.hasNext(); ) {
             if (uptime < 45*1000L) {break;}
+            Hash entry = iter.next();
+            // index may be stale until the next rebuild
+            if (!floodfills.contains(entry) || !isParticipant(entry, toIgnore)) {continue;}
             // Skip recently-queried floodfills to spread load across concurrent searches
             if (_facade.isRecentlyQueried(entry)) {
                 continue;
@@ -100,6 +100,8 @@ public abstract class KademliaNetworkDatabaseFacade extends NetworkDatabaseFacad
     private volatile long _lastRIPublishTime;
     /** Negative cache */
     private NegativeLookupCache _negativeCache;
+    /** shared by the main and client netDbs, as the same entries are stored in several */
+    private static final VerifiedEntryCache _verifiedCache = new VerifiedEntryCache();
     /** Network identifier. */
     protected final int _networkID;
     /** Blind cache */
@@ -332,6 +334,8 @@ public abstract class KademliaNetworkDatabaseFacade extends NetworkDatabaseFacad
         context.statManager().createRateStat("netDb.exploreKeySet", "NetDb keys queued for exploration", "NetworkDatabase", RATES);
         context.statManager().createRateStat("netDb.lookupDeferred", "Deferred NetDb lookups", "NetworkDatabase", RATES);
         context.statManager().createRateStat("netDb.negativeCache", "Aborted NetDb lookups (already cached)", "NetworkDatabase", RATES);
+        context.statManager().createRateStat("netDb.sigCacheHit", "Stored NetDb entries not verified (identical entry already verified)", "NetworkDatabase", RATES);
+        context.statManager().createRateStat("netDb.sigCacheMiss", "Stored NetDb entries verified", "NetworkDatabase", RATES);
 
         /* the following are for StoreJob */
         context.statManager().createRateStat("netDb.ackTime", "Time peer takes to ACK a DbStore", "NetworkDatabase", RATES);
@@ -1783,7 +1787,7 @@ public abstract class KademliaNetworkDatabaseFacade extends NetworkDatabaseFacad
      *  @throws UnsupportedCryptoException if the signature type is unsupported
      */
     private String validateSignature(Hash key, LeaseSet leaseSet, String leaseBase32) throws UnsupportedCryptoException {
-        if (leaseSet.verifySignature()) {return null;}
+        if (verifySignature(leaseSet)) {return null;}
         processStoreFailure(key, leaseSet); // This may throw UnsupportedCryptoException if signature type is unsupported
         if (_log.shouldWarn()) {
             _log.warn("Invalid LeaseSet signature! [" + leaseBase32.substring(0, 8) + "]");
@@ -1791,6 +1795,33 @@ public abstract class KademliaNetworkDatabaseFacade extends NetworkDatabaseFacad
         return "Invalid LeaseSet signature on " + key;
     }
 
+    /**
+     *  Verify the signature, unless a byte-identical entry has already been verified.
+     *  Floodfills get the same unchanged entry from many peers.
+     *
+     *  @param entry a RouterInfo or LeaseSet
+     *  @return true if valid
+     *  @since 0.9.71+
+     */
+    private boolean verifySignature(DatabaseEntry entry) {
+        Hash ck = VerifiedEntryCache.getKey(entry);
+        if (ck != null && _verifiedCache.isVerified(ck, _context.clock().now())) {
+            _context.statManager().addRateData("netDb.sigCacheHit", 1);
+            return true;
+        }
+        boolean rv;
+        if (entry.getType() == DatabaseEntry.KEY_TYPE_ROUTERINFO)
+            rv = ((RouterInfo) entry).isValid();
+        else
+            rv = entry.verifySignature();
+        if (ck != null) {
+            _context.statManager().addRateData("netDb.sigCacheMiss", 1);
+            if (rv)
+                _verifiedCache.verified(ck, entry);
+        }
+        return rv;
+    }
+
     /**
      *  Reject a LeaseSet whose timestamps are outdated (stale).
      *
@@ -2052,7 +2083,7 @@ public abstract class KademliaNetworkDatabaseFacade extends NetworkDatabaseFacad
             return "Key does not match routerInfo.identity";
         }
         // todo experimental sig types
-        if (!routerInfo.isValid()) {
+        if (!verifySignature(routerInfo)) {
             processStoreFailure(key, routerInfo); // throws UnsupportedCryptoException
             if (_log.shouldWarn()) {
                 _log.warn("Invalid RouterInfo signature detected for [" + routerInfo.getIdentity().getHash().toBase64().substring(0,6) + "]");
@@ -2649,6 +2680,9 @@ return false;
             return null;
         }
         _context.peerManager().setCapabilities(key, routerInfo.getCapabilities());
+        if (_peerSelector instanceof FloodfillPeerSelector) {
+            ((FloodfillPeerSelector) _peerSelector).updateFloodfillIndex(key, FloodfillNetworkDatabaseFacade.isFloodfill(routerInfo));
+        }
         _ds.put(key, routerInfo, persist);
         if (rv == null) {_kb.add(key);}
         return rv;
@@ -2736,6 +2770,7 @@ return false;
         if (o == null) {
             if (_kb != null) {_kb.remove(dbEntry);} // if we don't know the key, let's make sure it isn't a now-dead peer
             _context.peerManager().removeCapabilities(dbEntry);
+            removeFromFloodfillIndex(dbEntry);
             return;
         }
 
@@ -2773,6 +2808,15 @@ return false;
      */
     protected void lookupBeforeDropping(Hash peer, RouterInfo info) {dropAfterLookupFailed(peer);} // bah, humbug.
 
+    /**
+     * @since 0.9.71+
+     */
+    private void removeFromFloodfillIndex(Hash peer) {
+        if (_peerSelector instanceof FloodfillPeerSelector) {
+            ((FloodfillPeerSelector) _peerSelector).removeFromFloodfillIndex(peer);
+        }
+    }
+
     /**
      * Final remove for a router info.  Do NOT use for leasesets.
      * @param peer the peer hash
@@ -2783,6 +2827,7 @@ return false;
         boolean loggedFailure = false;
         {
             _context.peerManager().removeCapabilities(peer);
+            removeFromFloodfillIndex(peer);
             _negativeCache.cache(peer);
             _kb.remove(peer);
             _ds.remove(peer);
@@ -10,6 +10,8 @@ package net.i2p.router.networkdb.kademlia;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -54,6 +56,10 @@ import net.i2p.util.SimpleTimer2;
  * to the routing table. Implements both flat and hierarchical directory structures
  * for efficient file organization and access.
  * <p>
+ * With router.networkDatabase.segments=true, RouterInfos are instead appended to
+ * a SegmentStore in the segments subdirectory, and existing files, including
+ * those written by reseeding, are moved into it as they are read.
+ * <p>
  * Public only for access to static methods by startup classes.
  */
 public class PersistentDataStore extends TransientDataStore {
@@ -73,6 +79,10 @@ public class PersistentDataStore extends TransientDataStore {
     private final boolean _flat;
     /** Network ID. */
     private final int _networkID;
+    /** Append-only store, or null for one file per RouterInfo. */
+    private final SegmentStore _segments;
+    /** Whether the segment store has been opened and loaded. */
+    private volatile boolean _segmentsLoaded;
 
     /** Initial delay before first netdb scan. */
     private static final int READ_DELAY = 3*1000;
@@ -80,6 +90,10 @@ public class PersistentDataStore extends TransientDataStore {
     private static final int READ_INTERVAL = 5*60*1000;
     /** Config property to enable flat directory layout. */
     private static final String PROP_FLAT = "router.networkDatabase.flat";
+    /** Config property to store RouterInfos in append-only segments. @since 0.9.71+ */
+    private static final String PROP_SEGMENTS = "router.networkDatabase.segments";
+    /** Subdirectory for the segment files. */
+    private static final String SEGMENT_DIR = "segments";
     /** Directory prefix for netDb files. */
     static final String DIR_PREFIX = "r";
     /** Base64 alphabet used for directory naming. */
@@ -105,6 +119,7 @@ public class PersistentDataStore extends TransientDataStore {
         _networkID = ctx.router().getNetworkID();
         _flat = ctx.getBooleanProperty(PROP_FLAT);
         _dbDir = getDbDir(dbDir);
+        _segments = ctx.getBooleanProperty(PROP_SEGMENTS) ? new SegmentStore(ctx, new SecureDirectory(_dbDir, SEGMENT_DIR)) : null;
         _facade = facade;
         _banLogger = new BanLogger();
         _banLogger.initialize(ctx);
@@ -133,6 +148,7 @@ public class PersistentDataStore extends TransientDataStore {
     public void stop() {
         super.stop();
         _writer.flush();
+        syncSegments(false);
     }
 
     @Override
@@ -306,6 +322,7 @@ public class PersistentDataStore extends TransientDataStore {
                 }
             }
             removeQueued();
+            syncSegments(true);
         }
 
         /**
@@ -514,6 +531,23 @@ public class PersistentDataStore extends TransientDataStore {
      */
     private boolean writeRiFile(Hash key, DatabaseEntry data, File dbFile) throws IOException {
         long dataPublishDate = getPublishDate(data);
+        if (useSegments()) {
+            if (_segments.getPublished(key) >= dataPublishDate) {
+                return false;
+            }
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(2048);
+                data.writeBytes(baos);
+                _segments.put(key, dataPublishDate, baos.toByteArray());
+                if (_log.shouldDebug()) {
+                    _log.debug("Appending RouterInfo [" + key.toBase64().substring(0,6) + "] to NetDb segment");
+                }
+                return false;
+            } catch (DataFormatException dfe) {
+                _log.error("Error writing out malformed object as [" + key.toBase64().substring(0,6) + "]: " + data, dfe);
+                return true;
+            }
+        }
         if (dbFile.lastModified() >= dataPublishDate) {
             return false;
         }
@@ -568,7 +602,36 @@ public class PersistentDataStore extends TransientDataStore {
                 _log.error("Error writing to disk (" + ioe.getMessage() + ")");
             }
         }
-        if (shouldDelete && dbFile != null) {dbFile.delete();}
+        if (shouldDelete && dbFile != null) {
+            if (useSegments()) {removeFile(key, _dbDir);}
+            else {dbFile.delete();}
+        }
+    }
+
+    /**
+     *  Until the segment store is loaded, writes go to files as usual,
+     *  and are moved to the store on the next scan.
+     *
+     *  @return true if RouterInfos are stored in the segment store
+     *  @since 0.9.71+
+     */
+    private boolean useSegments() {return _segments != null && _segmentsLoaded;}
+
+    /**
+     *  Sync the segment store, and compact it if mostly garbage.
+     *  No-op when not using segments.
+     *
+     *  @param compact whether to compact if needed
+     *  @since 0.9.71+
+     */
+    private void syncSegments(boolean compact) {
+        if (!useSegments()) {return;}
+        try {
+            _segments.sync();
+            if (compact) {_segments.compactIfNeeded();}
+        } catch (IOException ioe) {
+            _log.error("Error writing NetDb segment (" + ioe.getMessage() + ")");
+        }
     }
 
     private int cachedRiCount = 0;
@@ -583,6 +646,10 @@ public class PersistentDataStore extends TransientDataStore {
      * @since 0.9.68+
      */
     public int countStoredRIs() {
+        if (useSegments()) {
+            // live count from the index, no need to cache
+            return _segments.size();
+        }
         long now = System.currentTimeMillis();
         if (lastRiCountTime + RI_CACHE_TTL > now) {
             return cachedRiCount;
@@ -653,7 +720,7 @@ public class PersistentDataStore extends TransientDataStore {
          */
         private boolean shouldScan() {
             long lastMod = _dbDir.lastModified();
-            if (lastMod > _lastModified || size() < MIN_ROUTERS + 10) {
+            if (lastMod > _lastModified || size() < MIN_ROUTERS + 10 || (_segments != null && !_segmentsLoaded)) {
                 return true;
             }
             if (!_flat) {
@@ -740,17 +807,57 @@ public class PersistentDataStore extends TransientDataStore {
          */
         private void readFiles() {
             int routerCount = 0;
+            if (_segments != null && !_segmentsLoaded) {
+                routerCount = readSegments();
+            }
             File[] routerInfoFiles = _dbDir.listFiles(RI_FILTER);
 
             if (_flat) {
-                routerCount = readFlatFiles(routerInfoFiles);
+                routerCount += readFlatFiles(routerInfoFiles);
             } else {
-                routerCount = readHierarchicalFiles(routerInfoFiles);
+                routerCount += readHierarchicalFiles(routerInfoFiles);
             }
+            // files read above were moved to the segment store
+            syncSegments(false);
 
             checkReseed(routerCount);
         }
 
+        /**
+         *  Open the segment store and load all entries, in file order.
+         *  Falls back to files if the store can't be opened.
+         *
+         *  @return router count
+         *  @since 0.9.71+
+         */
+        private int readSegments() {
+            final int[] count = new int[1];
+            try {
+                _segments.open();
+                _segmentsLoaded = true;
+                _segments.readAll(new SegmentStore.Visitor() {
+                    public boolean visit(Hash key, long published, byte[] data) {
+                        if (!_context.router().isAlive()) {return false;}
+                        ReadRouterJob rrj = new ReadRouterJob(key, data, published);
+                        if (rrj.read()) {
+                            int i = ++count[0];
+                            if (i == 150 && SystemVersion.isSlow() && !_initialized) {
+                                _setNetDbReady = true;
+                                _context.router().setNetDbReady();
+                            } else if (i == 1000 && !_setNetDbReady) {
+                                _setNetDbReady = true;
+                                _context.router().setNetDbReady();
+                            }
+                        }
+                        return true;
+                    }
+                });
+            } catch (IOException ioe) {
+                _log.error("Unable to read the NetDb segments (" + ioe.getMessage() + ")", ioe);
+            }
+            return count[0];
+        }
+
         /**
          *  Read RouterInfo files from the flat (non-subdirectory) layout.
          *
@@ -822,10 +929,17 @@ public class PersistentDataStore extends TransientDataStore {
         }
     }
 
-    /** Reads a single RouterInfo file from disk and stores it in memory. */
+    /**
+     *  Reads a single RouterInfo file from disk, or the data from the segment store,
+     *  and stores it in memory.
+     */
     private class ReadRouterJob extends JobImpl {
-        /** Router file to read. */
+        /** Router file to read, or null if from the segment store. */
         private final File _routerFile;
+        /** Data from the segment store, or null if from a file. */
+        private final byte[] _data;
+        /** Published date stored with the data. */
+        private final long _storedDate;
         /** Hash key of the router. */
         private final Hash _key;
         /** Published date of the cached entry. */
@@ -839,9 +953,49 @@ public class PersistentDataStore extends TransientDataStore {
         public ReadRouterJob(File routerFile, Hash key) {
             super(PersistentDataStore.this._context);
             _routerFile = routerFile;
+            _data = null;
+            _storedDate = 0;
+            _key = key;
+        }
+
+        /**
+         * Creates a job to load a RouterInfo from the segment store.
+         *
+         * @param key must match the RI hash in the data
+         * @param published as stored with the data
+         * @since 0.9.71+
+         */
+        public ReadRouterJob(Hash key, byte[] data, long published) {
+            super(PersistentDataStore.this._context);
+            _routerFile = null;
+            _data = data;
+            _storedDate = published;
             _key = key;
         }
 
+        /** For logging */
+        private String getSource() {
+            return _routerFile != null ? _routerFile.toString() : "NetDb segment";
+        }
+
+        /** For logging */
+        private String getSourceName() {
+            return _routerFile != null ? _routerFile.getName() : "[" + _key.toBase64().substring(0,6) + "] in NetDb segment";
+        }
+
+        /**
+         * Delete the file, or remove the entry from the segment store.
+         * @since 0.9.71+
+         */
+        private void discard() {
+            if (_routerFile != null) {
+                _routerFile.delete();
+            } else {
+                try {_segments.remove(_key);}
+                catch (IOException ioe) {}
+            }
+        }
+
         @Override
         public String getName() {return "Read RouterInfo";}
 
@@ -856,12 +1010,12 @@ public class PersistentDataStore extends TransientDataStore {
             if (data == null) return true;
             if (data.getType() == DatabaseEntry.KEY_TYPE_ROUTERINFO) {
                 _knownDate = ((RouterInfo)data).getPublished();
-                long fileDate = _routerFile.lastModified();
+                long fileDate = _routerFile != null ? _routerFile.lastModified() : _storedDate;
                 // don't overwrite recent netdb RIs with reseed data
                 return fileDate > _knownDate + (60*60*1000);
             } else {
                 // safety measure - prevent injection from reseeding
-                _log.error("Prevented LeaseSet overwrite by RouterInfo [" + _key.toBase64().substring(0,6) + "] from " + _routerFile);
+                _log.error("Prevented LeaseSet overwrite by RouterInfo [" + _key.toBase64().substring(0,6) + "] from " + getSource());
                 return false;
             }
         }
@@ -879,18 +1033,25 @@ public class PersistentDataStore extends TransientDataStore {
          * @since 0.9.58
          */
         public boolean read() {
-            if (_routerFile.length() > RouterInfo.MAX_UNCOMPRESSED_SIZE) {
+            long length = _routerFile != null ? _routerFile.length() : _data.length;
+            if (length > RouterInfo.MAX_UNCOMPRESSED_SIZE) {
                 if (_log.shouldWarn())
-                    _log.warn("RouterInfo file [" + _routerFile + "] exceeds maximum permitted size of 4KB -> " + _routerFile.length() + "bytes");
-                _routerFile.delete();
+                    _log.warn("RouterInfo file [" + getSource() + "] exceeds maximum permitted size of 4KB -> " + length + "bytes");
+                discard();
+                return false;
+            }
+            if (!shouldRead()) {
+                // the newer copy in memory is persisted to the segment store
+                if (_routerFile != null && useSegments())
+                    _routerFile.delete();
                 return false;
             }
-            if (!shouldRead()) return false;
             if (_log.shouldDebug())
-                _log.debug("Reading " + _routerFile);
+                _log.debug("Reading " + getSource());
 
                 boolean corrupt = false;
-                try (InputStream fis = new BufferedInputStream(new FileInputStream(_routerFile))) {
+                try (InputStream fis = _data != null ? new ByteArrayInputStream(_data)
+                                                     : new BufferedInputStream(new FileInputStream(_routerFile))) {
                     RouterInfo ri = new RouterInfo();
                     ri.readBytes(fis, true);  // true = verify sig on read
                     Hash h = ri.getIdentity().calculateHash();
@@ -924,21 +1085,21 @@ public class PersistentDataStore extends TransientDataStore {
                         corrupt = true;
                         if (_log.shouldError())
                             _log.error("Router [" + truncHash + "] is from a different network");
-                        _routerFile.delete();
+                        discard();
                     } else if (!h.equals(_key)) {
                         // prevent injection from reseeding
                         // this is checked in KNDF.validate() but catch it sooner and log as error.
                         corrupt = true;
                         if (_log.shouldWarn())
-                            _log.warn("RouterInfo [" + truncHash + "] does not match [" + _key.toBase64().substring(0,6) + "] from " + _routerFile);
+                            _log.warn("RouterInfo [" + truncHash + "] does not match [" + _key.toBase64().substring(0,6) + "] from " + getSource());
                         _log.warn("Banning: [" + truncHash + "] for 1h -> Corrupt RouterInfo");
                         _banLogger.logBan(_key, _context, "Corrupt RouterInfo", 60L*60*1000);
                         _context.banlist().banlistRouter(_key, "Corrupt RouterInfo", null, null, now + 60L*60*1000);
-                        _routerFile.delete();
+                        discard();
                     } else if (ri.getPublished() <= _knownDate) {
                         // Don't store but don't delete
                         if (_log.shouldInfo())
-                            _log.info("Skipping since NetDb copy is newer than " + _routerFile);
+                            _log.info("Skipping since NetDb copy is newer than " + getSource());
                     } else if (isSlow || isOldVersion) {
                         // don't store unreachable, K,L,M tier or older peers & delete any existing ri files
                         corrupt = true;
@@ -958,6 +1119,15 @@ public class PersistentDataStore extends TransientDataStore {
                         try {
                             // persist = false so we don't write what we just read
                             _facade.store(ri.getIdentity().getHash(), ri, false);
+                            if (_routerFile != null && useSegments()) {
+                                // move it to the segment store
+                                try {
+                                    _segments.put(_key, ri.getPublished(), ri.toByteArray());
+                                    _routerFile.delete();
+                                } catch (IOException ioe) {
+                                    _log.error("Error writing NetDb segment (" + ioe.getMessage() + ")");
+                                }
+                            }
                             // when heardAbout() was removed from TransientDataStore, it broke
                             // profile bootstrapping for new routers,
                             // so add it here.
@@ -971,18 +1141,18 @@ public class PersistentDataStore extends TransientDataStore {
                 } catch (DataFormatException dfe) {
                     corrupt = true;
                     if (_log.shouldInfo())
-                        _log.info("Deleted " + _routerFile.getName() + " -> File is corrupt \n* " + dfe.getMessage());
+                        _log.info("Deleted " + getSourceName() + " -> File is corrupt \n* " + dfe.getMessage());
                 } catch (IOException ioe) {
                     corrupt = true;
                     if (_log.shouldInfo())
-                        _log.info("Deleted " + _routerFile.getName() + " -> Unable to read Router reference \n* " + ioe.getMessage());
+                        _log.info("Deleted " + getSourceName() + " -> Unable to read Router reference \n* " + ioe.getMessage());
                 } catch (RuntimeException e) {
                     // key certificate problems, etc., don't let one bad RI kill the whole thing
                     corrupt = true;
                     if (_log.shouldInfo())
-                        _log.info("Deleted " + _routerFile.getName() + " -> Unable to read Router reference \n* " + e.getMessage());
+                        _log.info("Deleted " + getSourceName() + " -> Unable to read Router reference \n* " + e.getMessage());
                 }
-                if (corrupt) _routerFile.delete();
+                if (corrupt) discard();
                 return !corrupt;
         }
     }
@@ -1005,6 +1175,11 @@ public class PersistentDataStore extends TransientDataStore {
             _log.info("Scanning for slow RouterInfos to delete (total stored: " + totalStored + ")");
         }
 
+        if (useSegments()) {
+            purgeSlowSegments(totalStored);
+            return;
+        }
+
         FileFilter routerInfoFilter = new FileSuffixFilter(ROUTERINFO_PREFIX, ROUTERINFO_SUFFIX);
         int deletedCount = 0;
 
@@ -1042,30 +1217,10 @@ public class PersistentDataStore extends TransientDataStore {
                     ri.readBytes(fis, true); // verify sig
                 }
 
-                // Determine if this is a slow router
-                String bw = ri.getBandwidthTier();
-                String caps = ri.getCapabilities();
-                boolean isSlow;
-                if (totalStored < 1000) {
-                    isSlow = "K".equals(bw) || "L".equals(bw) || "M".equals(bw);
-                } else if (totalStored < 2000) {
-                    isSlow = "K".equals(bw) || "L".equals(bw) || "M".equals(bw) || "N".equals(bw);
-                } else {
-                    isSlow = "K".equals(bw) || "L".equals(bw) || "M".equals(bw) || "N".equals(bw) || "O".equals(bw);
-                }
-                boolean isDegraded = caps.indexOf(Router.CAPABILITY_CONGESTION_MODERATE) >= 0 ||
-                                     caps.indexOf(Router.CAPABILITY_CONGESTION_SEVERE) >= 0 ||
-                                     caps.indexOf(Router.CAPABILITY_NO_TUNNELS) >= 0;
-
-                if (isSlow) {
+                String reason = getPurgeReason(ri, totalStored);
+                if (reason != null) {
                     if (_log.shouldInfo()) {
-                        _log.info("Deleting slow (" + bw + ") RouterInfo: " + key.toBase64().substring(0, 6) + "...");
-                    }
-                    file.delete();
-                    deletedCount++;
-                } else if (isDegraded) {
-                    if (_log.shouldInfo()) {
-                        _log.info("Deleting degraded (" + bw + ") RouterInfo: " + key.toBase64().substring(0, 6) + "...");
+                        _log.info("Deleting " + reason + " (" + ri.getBandwidthTier() + ") RouterInfo: " + key.toBase64().substring(0, 6) + "...");
                     }
                     file.delete();
                     deletedCount++;
@@ -1083,6 +1238,71 @@ public class PersistentDataStore extends TransientDataStore {
         }
     }
 
+    /**
+     *  Slow or degraded, determined by the total number stored.
+     *
+     *  @return "slow", "degraded", or null to keep
+     *  @since 0.9.71+ split out of purgeSlowRouters()
+     */
+    private static String getPurgeReason(RouterInfo ri, int totalStored) {
+        String bw = ri.getBandwidthTier();
+        String caps = ri.getCapabilities();
+        boolean isSlow;
+        if (totalStored < 1000) {
+            isSlow = "K".equals(bw) || "L".equals(bw) || "M".equals(bw);
+        } else if (totalStored < 2000) {
+            isSlow = "K".equals(bw) || "L".equals(bw) || "M".equals(bw) || "N".equals(bw);
+        } else {
+            isSlow = "K".equals(bw) || "L".equals(bw) || "M".equals(bw) || "N".equals(bw) || "O".equals(bw);
+        }
+        if (isSlow) {return "slow";}
+        boolean isDegraded = caps.indexOf(Router.CAPABILITY_CONGESTION_MODERATE) >= 0 ||
+                             caps.indexOf(Router.CAPABILITY_CONGESTION_SEVERE) >= 0 ||
+                             caps.indexOf(Router.CAPABILITY_NO_TUNNELS) >= 0;
+        return isDegraded ? "degraded" : null;
+    }
+
+    /**
+     *  purgeSlowRouters() for the segment store.
+     *  The entries were verified when loaded, so don't verify again.
+     *
+     *  @since 0.9.71+
+     */
+    private void purgeSlowSegments(final int totalStored) {
+        final List<Hash> toRemove = new ArrayList<>();
+        try {
+            _segments.readAll(new SegmentStore.Visitor() {
+                public boolean visit(Hash key, long published, byte[] data) {
+                    try {
+                        RouterInfo ri = new RouterInfo();
+                        ri.readBytes(new ByteArrayInputStream(data), false);
+                        String reason = getPurgeReason(ri, totalStored);
+                        if (reason != null) {
+                            if (_log.shouldInfo()) {
+                                _log.info("Deleting " + reason + " (" + ri.getBandwidthTier() + ") RouterInfo: " + key.toBase64().substring(0, 6) + "...");
+                            }
+                            toRemove.add(key);
+                        }
+                    } catch (Exception e) {
+                        if (_log.shouldWarn()) {
+                            _log.warn("Error reading RouterInfo [" + key.toBase64().substring(0, 6) + "] from NetDb segment", e);
+                        }
+                    }
+                    return true;
+                }
+            });
+            for (Hash key : toRemove) {
+                _segments.remove(key);
+            }
+            _segments.sync();
+        } catch (IOException ioe) {
+            _log.error("Error purging NetDb segments (" + ioe.getMessage() + ")");
+        }
+        if (_log.shouldInfo()) {
+            _log.info("Deleted " + toRemove.size() + " slow/degraded RouterInfos from NetDb segments");
+        }
+    }
+
     /** Resolve and prepare the database directory, creating subdirs if needed. */
     private File getDbDir(String dbDir) throws IOException {
         File f = new SecureDirectory(_context.getRouterDir(), dbDir);
@@ -1193,8 +1413,17 @@ public class PersistentDataStore extends TransientDataStore {
         } catch (RuntimeException e) {return null;}
     }
 
-    /** Remove file */
+    /** Remove file, and the entry in the segment store if in use */
     private void removeFile(Hash key, File dir) {
+        if (useSegments()) {
+            try {
+                if (_segments.remove(key) && _log.shouldDebug()) {
+                    _log.debug("Removed [" + key.toBase64().substring(0,6) + "] from NetDb segment");
+                }
+            } catch (IOException ioe) {
+                _log.error("Error writing NetDb segment (" + ioe.getMessage() + ")");
+            }
+        }
         String riName = getRouterInfoName(key);
         File f = new File(dir, riName);
         if (f.exists()) {
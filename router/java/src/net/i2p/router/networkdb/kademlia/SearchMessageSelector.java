@@ -6,7 +6,7 @@ import net.i2p.data.i2np.DatabaseSearchReplyMessage;
 import net.i2p.data.i2np.DatabaseStoreMessage;
 import net.i2p.data.i2np.I2NPMessage;
 import net.i2p.data.router.RouterInfo;
-import net.i2p.router.MessageSelector;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.RouterContext;
 import net.i2p.util.Log;
 
@@ -23,7 +23,7 @@ import net.i2p.util.Log;
  * timeout conditions. Ensures proper response correlation
  * between sent queries and received replies.
  */
-class SearchMessageSelector implements MessageSelector {
+class SearchMessageSelector implements IndexedMessageSelector {
     private final Log _log;
     private final RouterContext _context;
     private static final AtomicInteger __searchSelectorId = new AtomicInteger();
@@ -86,6 +86,12 @@ class SearchMessageSelector implements MessageSelector {
     @Override
     public long getExpiration() { return _exp; }
 
+    /** @since 0.9.71+ */
+    public long getReplyId() { return -1; }
+
+    /** @since 0.9.71+ */
+    public Hash getReplyKey() { return _state.getTarget(); }
+
     /**
      * Whether the message is a store for the searched key.
      *
@@ -0,0 +1,542 @@
+package net.i2p.router.networkdb.kademlia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import net.i2p.I2PAppContext;
+import net.i2p.data.Hash;
+import net.i2p.util.Log;
+
+/**
+ * Append-only segment files for RouterInfos, with an in-memory index.
+ * <p>
+ * Each put or remove is a record appended to the active segment, so a write
+ * cycle is one sequential append and one fsync, rather than a file create
+ * per RouterInfo. Startup reads the segments sequentially to build the index,
+ * and the entries are then loaded in file order.
+ * <p>
+ * Record format, all big-endian:
+ * <pre>
+ *   magic (4) type (1) hash (32) published (8) length (4) data (length) crc32 (4)
+ * </pre>
+ * The CRC covers everything after the magic, up to the data.
+ * A remove is a record of type REMOVE with no data.
+ * A torn record at the end of the last segment, after a crash, is truncated on open.
+ * <p>
+ * When less than half of the sealed segments is live, compact() copies the live
+ * records to the active segment and deletes the sealed ones, oldest first,
+ * so a crash part way through never resurrects a removed entry.
+ * <p>
+ * Locking: this, for the segment files. The index is concurrent, so
+ * getPublished() and size() don't block on disk I/O.
+ *
+ * @since 0.9.71+
+ */
+class SegmentStore {
+    private final Log _log;
+    private final File _dir;
+    private final Map<Hash, Location> _index;
+    /** segment number to file, sorted, includes the active segment */
+    private final TreeMap<Integer, File> _segments;
+    private final long _maxSegmentSize;
+    private final CRC32 _crc = new CRC32();
+    /** Locking: this */
+    private int _activeSeq;
+    /** Locking: this */
+    private DataOutputStream _active;
+    /** Locking: this */
+    private FileOutputStream _activeFOS;
+    /** Locking: this */
+    private long _activeSize;
+    /** Locking: this */
+    private boolean _dirty;
+    /** total bytes of all records in the sealed segments */
+    private long _sealedBytes;
+    /** bytes of live records in the sealed segments */
+    private long _sealedLiveBytes;
+    private boolean _open;
+
+    private static final int MAGIC = 0x52490a01;
+    private static final int TYPE_PUT = 1;
+    private static final int TYPE_REMOVE = 2;
+    /** magic, type, hash, published, length */
+    private static final int HEADER_SIZE = 4 + 1 + Hash.HASH_LENGTH + 8 + 4;
+    private static final int MAX_DATA = 64*1024;
+    static final long DEFAULT_SEGMENT_SIZE = 16*1024*1024;
+    /** don't bother compacting less than this */
+    private static final long MIN_COMPACT_BYTES = 4*1024*1024;
+    private static final String PREFIX = "seg-";
+    private static final String SUFFIX = ".dat";
+
+    /** Where a live entry is stored */
+    private static class Location {
+        final int seq;
+        final long offset;
+        final int length;
+        final long published;
+
+        Location(int seq, long offset, int length, long published) {
+            this.seq = seq;
+            this.offset = offset;
+            this.length = length;
+            this.published = published;
+        }
+
+        int recordSize() {return HEADER_SIZE + length + 4;}
+    }
+
+    /**
+     * Callback for readAll()
+     */
+    interface Visitor {
+        /**
+         * @param published as stored with the entry
+         * @return false to stop
+         */
+        boolean visit(Hash key, long published, byte[] data);
+    }
+
+    /**
+     * @param dir created on open() if it does not exist
+     */
+    public SegmentStore(I2PAppContext ctx, File dir) {
+        this(ctx, dir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param maxSegmentSize roll to a new segment after this many bytes
+     */
+    SegmentStore(I2PAppContext ctx, File dir, long maxSegmentSize) {
+        _log = ctx.logManager().getLog(SegmentStore.class);
+        _dir = dir;
+        _maxSegmentSize = maxSegmentSize;
+        _index = new ConcurrentHashMap<Hash, Location>(1024);
+        _segments = new TreeMap<Integer, File>();
+    }
+
+    /**
+     * Scan all segments sequentially and build the index.
+     * Truncates a torn record at the end of the last segment.
+     *
+     * @return number of live entries
+     */
+    public synchronized int open() throws IOException {
+        if (_open)
+            return _index.size();
+        if (!_dir.exists() && !_dir.mkdirs())
+            throw new IOException("Unable to create segment directory " + _dir);
+        File[] files = _dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                int seq = getSeq(f.getName());
+                if (seq >= 0)
+                    _segments.put(Integer.valueOf(seq), f);
+            }
+        }
+        long start = System.currentTimeMillis();
+        int records = 0;
+        long total = 0;
+        for (Map.Entry<Integer, File> e : _segments.entrySet()) {
+            int seq = e.getKey().intValue();
+            File f = e.getValue();
+            boolean last = seq == _segments.lastKey().intValue();
+            long good = scan(seq, f);
+            long len = f.length();
+            if (good < len) {
+                if (last) {
+                    _log.logAlways(Log.WARN, "Truncating NetDb segment " + f.getName() + " at " + good + " of " + len + " bytes");
+                    try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                        raf.setLength(good);
+                    }
+                } else {
+                    _log.logAlways(Log.WARN, "Ignoring corrupt data in NetDb segment " + f.getName() + " after " + good + " of " + len + " bytes");
+                }
+            }
+            total += good;
+        }
+        int active = _segments.isEmpty() ? 1 : _segments.lastKey().intValue();
+        openActive(active);
+        recount();
+        _open = true;
+        if (_log.shouldInfo())
+            _log.info("Scanned " + _segments.size() + " NetDb segments (" + (total / 1024) + "KB) in " +
+                      (System.currentTimeMillis() - start) + "ms -> " + _index.size() + " entries");
+        return _index.size();
+    }
+
+    /**
+     * Read one segment and apply its records to the index.
+     *
+     * @return offset after the last good record
+     */
+    private long scan(int seq, File f) throws IOException {
+        long offset = 0;
+        byte[] hash = new byte[Hash.HASH_LENGTH];
+        byte[] buf = new byte[4096];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64*1024))) {
+            while (true) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException eofe) {
+                    break;
+                }
+                if (magic != MAGIC)
+                    break;
+                int type = in.read();
+                in.readFully(hash);
+                long published = in.readLong();
+                int length = in.readInt();
+                if ((type != TYPE_PUT && type != TYPE_REMOVE) || length < 0 || length > MAX_DATA)
+                    break;
+                if (buf.length < length)
+                    buf = new byte[length];
+                in.readFully(buf, 0, length);
+                int crc = in.readInt();
+                if (crc != crc(type, hash, published, length, buf))
+                    break;
+                Hash key = Hash.create(hash);
+                if (type == TYPE_PUT)
+                    _index.put(key, new Location(seq, offset, length, published));
+                else
+                    _index.remove(key);
+                offset += HEADER_SIZE + length + 4;
+            }
+        } catch (EOFException eofe) {
+            // torn record
+        }
+        return offset;
+    }
+
+    private int crc(int type, byte[] hash, long published, int length, byte[] data) {
+        CRC32 crc = _crc;
+        crc.reset();
+        crc.update(type);
+        crc.update(hash);
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (published >> i));
+        }
+        for (int i = 24; i >= 0; i -= 8) {
+            crc.update(length >> i);
+        }
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /** Locking: this */
+    private void openActive(int seq) throws IOException {
+        File f = segmentFile(seq);
+        _activeFOS = new FileOutputStream(f, true);
+        _active = new DataOutputStream(new BufferedOutputStream(_activeFOS, 64*1024));
+        _activeSeq = seq;
+        _activeSize = f.length();
+        _segments.put(Integer.valueOf(seq), f);
+    }
+
+    /**
+     * Recompute the sealed segment totals from the index and the file sizes.
+     * Locking: this
+     */
+    private void recount() {
+        long sealed = 0;
+        for (Map.Entry<Integer, File> e : _segments.entrySet()) {
+            if (e.getKey().intValue() != _activeSeq)
+                sealed += e.getValue().length();
+        }
+        long live = 0;
+        for (Location loc : _index.values()) {
+            if (loc.seq != _activeSeq)
+                live += loc.recordSize();
+        }
+        _sealedBytes = sealed;
+        _sealedLiveBytes = live;
+    }
+
+    /**
+     * Append an entry. Not synced to disk until sync().
+     *
+     * @param published stored in the index, for getPublished()
+     */
+    public synchronized void put(Hash key, long published, byte[] data) throws IOException {
+        if (data.length > MAX_DATA)
+            throw new IOException("Entry too big: " + data.length);
+        checkOpen();
+        long offset = append(TYPE_PUT, key, published, data);
+        Location old = _index.put(key, new Location(_activeSeq, offset, data.length, published));
+        dropped(old);
+    }
+
+    /**
+     * Append a removal. Not synced to disk until sync().
+     *
+     * @return true if it was present
+     */
+    public synchronized boolean remove(Hash key) throws IOException {
+        checkOpen();
+        Location old = _index.remove(key);
+        if (old == null)
+            return false;
+        append(TYPE_REMOVE, key, 0, new byte[0]);
+        dropped(old);
+        return true;
+    }
+
+    /** Locking: this */
+    private void dropped(Location old) {
+        if (old != null && old.seq != _activeSeq)
+            _sealedLiveBytes -= old.recordSize();
+    }
+
+    /**
+     * Locking: this
+     * @return offset of the record
+     */
+    private long append(int type, Hash key, long published, byte[] data) throws IOException {
+        if (_activeSize >= _maxSegmentSize)
+            roll();
+        long offset = _activeSize;
+        byte[] hash = key.getData();
+        _active.writeInt(MAGIC);
+        _active.write(type);
+        _active.write(hash);
+        _active.writeLong(published);
+        _active.writeInt(data.length);
+        _active.write(data);
+        _active.writeInt(crc(type, hash, published, data.length, data));
+        _activeSize += HEADER_SIZE + data.length + 4;
+        _dirty = true;
+        return offset;
+    }
+
+    /**
+     * Seal the active segment and start a new one.
+     * Locking: this
+     */
+    private void roll() throws IOException {
+        sync();
+        _active.close();
+        long live = 0;
+        for (Location loc : _index.values()) {
+            if (loc.seq == _activeSeq)
+                live += loc.recordSize();
+        }
+        _sealedBytes += _activeSize;
+        _sealedLiveBytes += live;
+        openActive(_activeSeq + 1);
+    }
+
+    /**
+     * Flush and fsync the active segment, if anything was appended.
+     */
+    public synchronized void sync() throws IOException {
+        if (!_dirty || _active == null)
+            return;
+        _active.flush();
+        _activeFOS.getFD().sync();
+        _dirty = false;
+    }
+
+    /**
+     * @return the published date stored with the entry, or -1 if not present
+     */
+    public long getPublished(Hash key) {
+        Location loc = _index.get(key);
+        return loc != null ? loc.published : -1;
+    }
+
+    /**
+     * @return the data, or null if not present
+     */
+    public synchronized byte[] get(Hash key) throws IOException {
+        Location loc = _index.get(key);
+        if (loc == null)
+            return null;
+        if (loc.seq == _activeSeq)
+            _active.flush();
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFile(loc.seq), "r")) {
+            return read(raf, loc);
+        }
+    }
+
+    private static byte[] read(RandomAccessFile raf, Location loc) throws IOException {
+        byte[] rv = new byte[loc.length];
+        raf.seek(loc.offset + HEADER_SIZE);
+        raf.readFully(rv);
+        return rv;
+    }
+
+    /** Number of live entries */
+    public int size() {
+        return _index.size();
+    }
+
+    /**
+     * Visit all live entries in file order, so the reads are sequential.
+     * The visitor may call remove().
+     *
+     * @return number visited
+     */
+    public synchronized int readAll(Visitor v) throws IOException {
+        checkOpen();
+        _active.flush();
+        List<Map.Entry<Hash, Location>> entries = sortedEntries();
+        int rv = 0;
+        RandomAccessFile raf = null;
+        int rafSeq = -1;
+        try {
+            for (Map.Entry<Hash, Location> e : entries) {
+                Location loc = e.getValue();
+                if (_index.get(e.getKey()) != loc)
+                    continue;
+                if (loc.seq != rafSeq) {
+                    if (raf != null)
+                        raf.close();
+                    raf = new RandomAccessFile(segmentFile(loc.seq), "r");
+                    rafSeq = loc.seq;
+                }
+                rv++;
+                if (!v.visit(e.getKey(), loc.published, read(raf, loc)))
+                    break;
+            }
+        } finally {
+            if (raf != null)
+                raf.close();
+        }
+        return rv;
+    }
+
+    /** Locking: this */
+    private List<Map.Entry<Hash, Location>> sortedEntries() {
+        List<Map.Entry<Hash, Location>> rv = new ArrayList<Map.Entry<Hash, Location>>(_index.entrySet());
+        Collections.sort(rv, new Comparator<Map.Entry<Hash, Location>>() {
+            public int compare(Map.Entry<Hash, Location> l, Map.Entry<Hash, Location> r) {
+                Location a = l.getValue();
+                Location b = r.getValue();
+                if (a.seq != b.seq)
+                    return a.seq < b.seq ? -1 : 1;
+                return Long.compare(a.offset, b.offset);
+            }
+        });
+        return rv;
+    }
+
+    /**
+     * Compact if less than half of the sealed segments is live.
+     *
+     * @return true if compacted
+     */
+    public synchronized boolean compactIfNeeded() throws IOException {
+        if (!_open || _sealedBytes < MIN_COMPACT_BYTES || _sealedLiveBytes * 2 > _sealedBytes)
+            return false;
+        compact();
+        return true;
+    }
+
+    /**
+     * Copy the live records of the sealed segments to the active segment,
+     * sync, then delete the sealed segments, oldest first.
+     */
+    synchronized void compact() throws IOException {
+        checkOpen();
+        long start = System.currentTimeMillis();
+        long before = _sealedBytes;
+        sync();
+        List<Integer> sealed = new ArrayList<Integer>();
+        for (Integer seq : _segments.keySet()) {
+            if (seq.intValue() != _activeSeq)
+                sealed.add(seq);
+        }
+        if (sealed.isEmpty())
+            return;
+        int lastSealed = sealed.get(sealed.size() - 1).intValue();
+        int copied = 0;
+        RandomAccessFile raf = null;
+        int rafSeq = -1;
+        try {
+            for (Map.Entry<Hash, Location> e : sortedEntries()) {
+                Location loc = e.getValue();
+                if (loc.seq > lastSealed)
+                    break;
+                if (loc.seq != rafSeq) {
+                    if (raf != null)
+                        raf.close();
+                    raf = new RandomAccessFile(segmentFile(loc.seq), "r");
+                    rafSeq = loc.seq;
+                }
+                byte[] data = read(raf, loc);
+                long offset = append(TYPE_PUT, e.getKey(), loc.published, data);
+                _index.put(e.getKey(), new Location(_activeSeq, offset, data.length, loc.published));
+                copied++;
+            }
+        } finally {
+            if (raf != null)
+                raf.close();
+        }
+        sync();
+        for (Integer seq : sealed) {
+            File f = _segments.remove(seq);
+            if (f != null && !f.delete())
+                _log.warn("Unable to delete NetDb segment " + f);
+        }
+        recount();
+        if (_log.shouldInfo())
+            _log.info("Compacted " + sealed.size() + " NetDb segments (" + (before / 1024) + "KB) -> " + copied +
+                      " entries copied in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Sync and close. The store may not be used after this.
+     */
+    public synchronized void close() {
+        if (!_open)
+            return;
+        try {
+            sync();
+            _active.close();
+        } catch (IOException ioe) {
+            _log.error("Error closing NetDb segment", ioe);
+        }
+        _open = false;
+    }
+
+    /** Number of segment files, including the active one */
+    synchronized int getSegmentCount() {
+        return _segments.size();
+    }
+
+    private void checkOpen() throws IOException {
+        if (!_open)
+            throw new IOException("Segment store not open");
+    }
+
+    private File segmentFile(int seq) {
+        return new File(_dir, PREFIX + String.format("%08d", seq) + SUFFIX);
+    }
+
+    /** @return -1 if not a segment file name */
+    private static int getSeq(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+            return -1;
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+}
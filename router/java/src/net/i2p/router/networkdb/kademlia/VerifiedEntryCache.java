@@ -0,0 +1,112 @@
+package net.i2p.router.networkdb.kademlia;
+
+import java.security.MessageDigest;
+import java.util.Map;
+import net.i2p.crypto.SHA256Generator;
+import net.i2p.data.DatabaseEntry;
+import net.i2p.data.Hash;
+import net.i2p.data.LeaseSet2;
+import net.i2p.util.LHMCache;
+import net.i2p.util.SystemVersion;
+
+/**
+ * Entries whose signature we have already verified, so that an unchanged
+ * RouterInfo or LeaseSet flooded to us by several peers, or stored in
+ * more than one netDb, is not verified again.
+ * <p>
+ * The key is the SHA-256 of the entry type and the complete serialized entry,
+ * signature included, so a hit means the entry is byte-identical to one that verified.
+ * The LS2 types are signed but not serialized, so the type is hashed as well.
+ * The hash and published date are part of the signed data, so they are covered as well.
+ * Only successful verifications are cached.
+ * <p>
+ * Encrypted LeaseSets are never cached, as verifying them also decrypts them.
+ * LeaseSets with offline keys are cached until the transient key expires.
+ * <p>
+ * Shared by all netDbs. Thread-safe.
+ *
+ * @since 0.9.71+
+ */
+class VerifiedEntryCache {
+    private final Map<Hash, Long> _verified;
+
+    private static final int MAX_ENTRIES = SystemVersion.getMaxMemory() < 384*1024*1024L ? 2048 : 8192;
+
+    public VerifiedEntryCache() {
+        this(MAX_ENTRIES);
+    }
+
+    /**
+     * @param max maximum entries before the least recently used are evicted
+     */
+    public VerifiedEntryCache(int max) {
+        _verified = new LHMCache<>(max);
+    }
+
+    /**
+     * @return the cache key, or null if this entry must always be verified
+     */
+    public static Hash getKey(DatabaseEntry entry) {
+        if (entry.getType() == DatabaseEntry.KEY_TYPE_ENCRYPTED_LS2 || entry.getSignature() == null)
+            return null;
+        byte[] data;
+        try {
+            data = entry.toByteArray();
+        } catch (RuntimeException re) {
+            data = null;
+        }
+        // empty on write errors, let the verify fail
+        if (data == null || data.length == 0)
+            return null;
+        SHA256Generator sha = SHA256Generator.getInstance();
+        MessageDigest digest = sha.acquire();
+        digest.update((byte) entry.getType());
+        digest.update(data);
+        Hash rv = new Hash(digest.digest());
+        sha.release(digest);
+        return rv;
+    }
+
+    /**
+     * @param key from getKey()
+     * @return true if an entry with this key verified and has not expired
+     */
+    public boolean isVerified(Hash key, long now) {
+        Long until;
+        synchronized(_verified) {
+            until = _verified.get(key);
+        }
+        return until != null && until.longValue() >= now;
+    }
+
+    /**
+     * Record a successful verification.
+     *
+     * @param key from getKey()
+     * @param entry the verified entry
+     */
+    public void verified(Hash key, DatabaseEntry entry) {
+        long until = Long.MAX_VALUE;
+        if (entry instanceof LeaseSet2) {
+            LeaseSet2 ls2 = (LeaseSet2) entry;
+            if (ls2.isOffline())
+                until = ls2.getTransientExpiration();
+        }
+        Long v = Long.valueOf(until);
+        synchronized(_verified) {
+            _verified.put(key, v);
+        }
+    }
+
+    public int size() {
+        synchronized(_verified) {
+            return _verified.size();
+        }
+    }
+
+    public void clear() {
+        synchronized(_verified) {
+            _verified.clear();
+        }
+    }
+}
@@ -10,8 +10,8 @@ import net.i2p.data.i2np.DatabaseStoreMessage;
 import net.i2p.data.i2np.DeliveryStatusMessage;
 import net.i2p.data.i2np.I2NPMessage;
 import net.i2p.data.router.RouterInfo;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.JobImpl;
-import net.i2p.router.MessageSelector;
 import net.i2p.router.ReplyJob;
 import net.i2p.router.Router;
 import net.i2p.router.RouterContext;
@@ -535,7 +535,7 @@ public class PeerTestJob extends JobImpl {
      * Simple selector looking for a dbStore of the peer specified
      *
      */
-    private class ReplySelector implements MessageSelector {
+    private class ReplySelector implements IndexedMessageSelector {
         private final long _expiration;
         private final long _nonce;
         private final Hash _peer;
@@ -562,6 +562,12 @@ public class PeerTestJob extends JobImpl {
          * @return the expiration
          */
         public long getExpiration() { return _expiration; }
+
+        /** @since 0.9.71+ */
+        public long getReplyId() { return _nonce; }
+
+        /** @since 0.9.71+ */
+        public Hash getReplyKey() { return null; }
         /**
          * Whether the message matches this test.
          *
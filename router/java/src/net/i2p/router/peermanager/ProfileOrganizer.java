@@ -18,6 +18,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import net.i2p.crypto.SipHashInline;
 import net.i2p.data.DataHelper;
@@ -53,7 +54,10 @@ import net.i2p.util.SystemVersion;
  * (with selectability checks to prevent selecting unusable peers)
  *
  * Concurrency: ReentrantReadWriteLock protects all tier maps.
- * reorganize() acquires the write lock; selection methods use the read lock.
+ * reorganize() and other updates acquire the write lock.
+ * The select, count and isX methods read an immutable copy of the tiers instead,
+ * so tunnel building does not stall behind a reorganize; the copy is remade
+ * by the first reader after a change, if it can get the read lock without waiting.
  * getOrCreateProfileNonblocking() uses try-lock escalation for lock-free reads.
  */
 public class ProfileOrganizer {
@@ -243,6 +247,11 @@ public class ProfileOrganizer {
     };
 
     private final ReentrantReadWriteLock _reorganizeLock = new ReentrantReadWriteLock(false);
+    /** copy of the tiers for the selection paths, see tiers() */
+    private volatile Tiers _tiers = Tiers.EMPTY;
+    /** incremented when the tier membership changes, write lock holder only, see tiersChanged() */
+    private volatile int _tierVersion;
+    private final AtomicBoolean _tiersRebuilding = new AtomicBoolean();
 
     /**
      * Creates a profile organizer with empty tier maps and registers
@@ -302,6 +311,68 @@ public class ProfileOrganizer {
     }
     private void releaseWriteLock() {_reorganizeLock.writeLock().unlock();}
 
+    /**
+     *  Invalidate the copy of the tiers, so the next tiers() call makes a new one.
+     *  Call only when a peer was really added to or removed from a tier,
+     *  as every call costs a copy of all of them. Caller must hold the write lock.
+     *
+     *  @since 0.9.71+
+     */
+    private void tiersChanged() {_tierVersion++;}
+
+    /**
+     *  Immutable copy of the tier maps, never modified after construction.
+     *
+     *  @since 0.9.71+
+     */
+    private static final class Tiers {
+        static final Tiers EMPTY = new Tiers(new HashMap<Hash, PeerProfile>(0), new HashMap<Hash, PeerProfile>(0),
+                                             new HashMap<Hash, PeerProfile>(0), new HashMap<Hash, PeerProfile>(0),
+                                             new ArrayList<Hash>(0), 0);
+        final Map<Hash, PeerProfile> fast;
+        final Map<Hash, PeerProfile> highCap;
+        final Map<Hash, PeerProfile> wellIntegrated;
+        final Map<Hash, PeerProfile> notFailing;
+        final List<Hash> notFailingList;
+        final int version;
+
+        Tiers(Map<Hash, PeerProfile> fast, Map<Hash, PeerProfile> highCap, Map<Hash, PeerProfile> wellIntegrated,
+              Map<Hash, PeerProfile> notFailing, List<Hash> notFailingList, int version) {
+            this.fast = new HashMap<>(fast);
+            this.highCap = new HashMap<>(highCap);
+            this.wellIntegrated = new HashMap<>(wellIntegrated);
+            this.notFailing = new HashMap<>(notFailing);
+            this.notFailingList = new ArrayList<>(notFailingList);
+            this.version = version;
+        }
+    }
+
+    /**
+     *  The current tiers, without waiting for the lock.
+     *  If they changed since the last copy, one caller makes a new copy
+     *  under the read lock, if available right away; everybody else,
+     *  and everybody during a reorganize, gets the previous copy.
+     *
+     *  @since 0.9.71+
+     */
+    private Tiers tiers() {
+        Tiers rv = _tiers;
+        if (rv.version == _tierVersion || !_tiersRebuilding.compareAndSet(false, true))
+            return rv;
+        try {
+            if (tryReadLock()) {
+                try {
+                    rv = new Tiers(_fastPeers, _highCapacityPeers, _wellIntegratedPeers,
+                                   _notFailingPeers, _notFailingPeersList, _tierVersion);
+                    _tiers = rv;
+                } finally {releaseReadLock();}
+            }
+        } finally {
+            _tiersRebuilding.set(false);
+        }
+        return rv;
+    }
+
     /**
      * Store the local router hash for self-exclusion from peer selection.
      */
@@ -406,6 +477,7 @@ public class ProfileOrganizer {
                 _highCapacityPeers.put(peer, rv);
             }
             _strictCapacityOrder.add(rv);
+            tiersChanged();
         } finally {releaseWriteLock();}
         return rv;
     }
@@ -440,94 +512,77 @@ public class ProfileOrganizer {
                 _highCapacityPeers.put(peer, profile);
             }
             _strictCapacityOrder.add(profile);
-             enforceProfileCap();
+            enforceProfileCap();
+            tiersChanged();
         } finally {releaseWriteLock();}
         return old;
     }
 
-    private int count(Map<Hash, PeerProfile> m) {
-        getReadLock();
-        try {return m.size();}
-        finally {releaseReadLock();}
-    }
-
     /**
      * Number of peers classified as fast tier.
      *
-     * @return fast peer count (read-lock protected)
+     * @return fast peer count
      */
-    public int countFastPeers() {return count(_fastPeers);}
+    public int countFastPeers() {return tiers().fast.size();}
 
     /**
      * Number of peers classified as high-capacity tier.
      *
-     * @return high-capacity peer count (read-lock protected)
+     * @return high-capacity peer count
      */
-    public int countHighCapacityPeers() {return count(_highCapacityPeers);}
+    public int countHighCapacityPeers() {return tiers().highCap.size();}
 
     /**
      * Total number of peer profiles in memory (all tiers).
      *
-     * @return profile count (read-lock protected)
+     * @return profile count
      */
-    public int countNotFailingPeers() {return count(_notFailingPeers);}
+    public int countNotFailingPeers() {return tiers().notFailing.size();}
 
     /**
      * Count peers with any send or hear activity in the last 4 hours.
      *
-     * @return active peer count (read-lock protected)
+     * @return active peer count
      */
     public int countActivePeers() {
         int activePeers = 0;
         long hideBefore = _context.clock().now() - 4*60*60*1000L;
 
-        getReadLock();
-        try {
-            for (PeerProfile profile : _notFailingPeers.values()) {
-                if (profile.getLastSendSuccessful() >= hideBefore || profile.getLastHeardFrom() >= hideBefore) {
-                    activePeers++;
-                }
+        for (PeerProfile profile : tiers().notFailing.values()) {
+            if (profile.getLastSendSuccessful() >= hideBefore || profile.getLastHeardFrom() >= hideBefore) {
+                activePeers++;
             }
-        } finally {releaseReadLock();}
+        }
         return activePeers;
     }
 
     /**
      * Count peers with activity (send, receive, or failure) within the last hour.
      *
-     * @return recently active peer count (read-lock protected)
+     * @return recently active peer count
      */
     public int countActivePeersInLastHour() {
         int activePeers = 0;
         long hideBefore = _context.clock().now() - 60*60*1000L;
 
-        getReadLock();
-        try {
-            for (PeerProfile profile : _notFailingPeers.values()) {
-                if (profile.getIsActive(60*60*1000L) ||
-                    profile.getLastSendSuccessful() >= hideBefore ||
-                    profile.getLastSendFailed() >= hideBefore ||
-                    profile.getLastHeardFrom() >= hideBefore) {
-                    activePeers++;
-                }
+        for (PeerProfile profile : tiers().notFailing.values()) {
+            if (profile.getIsActive(60*60*1000L) ||
+                profile.getLastSendSuccessful() >= hideBefore ||
+                profile.getLastSendFailed() >= hideBefore ||
+                profile.getLastHeardFrom() >= hideBefore) {
+                activePeers++;
             }
-        } finally {releaseReadLock();}
+        }
         return activePeers;
     }
 
-    private boolean isX(Map<Hash, PeerProfile> m, Hash peer) {
-        getReadLock();
-        try {return m.containsKey(peer);}
-        finally {releaseReadLock();}
-    }
-
     /**
      * Check whether a peer is classified in the fast tier.
      *
      * @param peer the router hash to check
      * @return true if the peer is in the fast tier set
      */
-    public boolean isFast(Hash peer) {return isX(_fastPeers, peer);}
+    public boolean isFast(Hash peer) {return tiers().fast.containsKey(peer);}
 
     /**
      * Check whether a peer is classified in the high-capacity tier.
@@ -535,7 +590,7 @@ public class ProfileOrganizer {
      * @param peer the router hash to check
      * @return true if the peer is in the high-capacity tier set
      */
-    public boolean isHighCapacity(Hash peer) {return isX(_highCapacityPeers, peer);}
+    public boolean isHighCapacity(Hash peer) {return tiers().highCap.containsKey(peer);}
 
     /**
      * Check whether a peer is classified in the well-integrated tier.
@@ -543,7 +598,7 @@ public class ProfileOrganizer {
      * @param peer the router hash to check
      * @return true if the peer is in the well-integrated tier set
      */
-    public boolean isWellIntegrated(Hash peer) {return isX(_wellIntegratedPeers, peer);}
+    public boolean isWellIntegrated(Hash peer) {return tiers().wellIntegrated.containsKey(peer);}
 
     /**
      * Remove all profiles and clear all tier maps.
@@ -558,6 +613,7 @@ public class ProfileOrganizer {
             _notFailingPeersList.clear();
             _wellIntegratedPeers.clear();
             _strictCapacityOrder.clear();
+            tiersChanged();
         } finally {releaseWriteLock();}
     }
 
@@ -623,9 +679,7 @@ public class ProfileOrganizer {
      */
     public void selectFastPeers(int howMany, Set<Hash> exclude, Set<Hash> matches, int mask, MaskedIPSet ipSet) {
         double buildSuccess = getTunnelBuildSuccess();
-        getReadLock();
-        try {locked_selectPeers(_fastPeers, howMany, exclude, matches, mask, ipSet, buildSuccess);}
-        finally {releaseReadLock();}
+        selectFromTier(tiers().fast, howMany, exclude, matches, mask, ipSet, buildSuccess);
         if (matches.size() < howMany) {
             if (_log.shouldDebug()) {
                 _log.debug("Need " + howMany + " Fast peers in tier -> " + matches.size() +
@@ -650,18 +704,16 @@ public class ProfileOrganizer {
     public void selectFastPeers(int howMany, Set<Hash> exclude, Set<Hash> matches, SessionKey randomKey,
                                 Slice subTierMode, int mask, MaskedIPSet ipSet) {
         double buildSuccess = getTunnelBuildSuccess();
-        getReadLock();
-        try {
-            if (subTierMode != Slice.SLICE_ALL) {
-                int sz = _fastPeers.size();
-                if (sz < 6 || (subTierMode.mask >= 3 && sz < 12))
-                    subTierMode = Slice.SLICE_ALL;
-            }
-            if (subTierMode != Slice.SLICE_ALL)
-                locked_selectPeers(_fastPeers, howMany, exclude, matches, randomKey, subTierMode, mask, ipSet, buildSuccess);
-            else
-                locked_selectPeers(_fastPeers, howMany, exclude, matches, mask, ipSet, buildSuccess);
-        } finally {releaseReadLock();}
+        Map<Hash, PeerProfile> fast = tiers().fast;
+        if (subTierMode != Slice.SLICE_ALL) {
+            int sz = fast.size();
+            if (sz < 6 || (subTierMode.mask >= 3 && sz < 12))
+                subTierMode = Slice.SLICE_ALL;
+        }
+        if (subTierMode != Slice.SLICE_ALL)
+            selectFromTier(fast, howMany, exclude, matches, randomKey, subTierMode, mask, ipSet, buildSuccess);
+        else
+            selectFromTier(fast, howMany, exclude, matches, mask, ipSet, buildSuccess);
         if (matches.size() < howMany) {
             if (_log.shouldDebug())
                 _log.debug("Need " + howMany + " Fast peers in tier -> " + matches.size() +
@@ -733,10 +785,7 @@ public class ProfileOrganizer {
      */
     public void selectHighCapacityPeers(int howMany, Set<Hash> exclude, Set<Hash> matches, int mask, MaskedIPSet ipSet) {
         double buildSuccess = getTunnelBuildSuccess();
-        getReadLock();
-        try {
-            locked_selectPeers(_highCapacityPeers, howMany, exclude, matches, mask, ipSet, buildSuccess);
-        } finally {releaseReadLock();}
+        selectFromTier(tiers().highCap, howMany, exclude, matches, mask, ipSet, buildSuccess);
         if (matches.size() < howMany) {
             if (_log.shouldDebug()) {
                 _log.debug("Need " + (howMany > 1 ? "High Capacity peers" : "High Capacity peer") +
@@ -824,9 +873,7 @@ public class ProfileOrganizer {
             List<Hash> connected = _context.commSystem().getEstablished();
             if (connected != null && !connected.isEmpty()) {
                 double buildSuccess = getTunnelBuildSuccess();
-                getReadLock();
-                try {locked_selectActive(connected, howMany, exclude, matches, mask, ipSet, buildSuccess);}
-                finally {releaseReadLock();}
+                selectActive(connected, howMany, exclude, matches, mask, ipSet, buildSuccess);
             }
         }
     }
@@ -876,29 +923,25 @@ public class ProfileOrganizer {
             int needed = howMany - matches.size();
             List<Hash> selected = new ArrayList<>(needed);
             long now = _context.clock().now();
-            getReadLock();
-            try {
-                for (Iterator<Hash> iter = new RandomIterator<>(_notFailingPeersList); selected.size() < needed && iter.hasNext(); ) {
-                    Hash cur = iter.next();
-                    if (matches.contains(cur) || (exclude != null && exclude.contains(cur))) continue;
-                    if (onlyNotFailing && _highCapacityPeers.containsKey(cur)) continue;
-                    if (!isSelectable(cur, buildSuccess)) continue;
-                    RouterInfo info = (RouterInfo) _context.netDb().lookupLocallyWithoutValidation(cur);
-                    if (info != null) {
-                        String tier = DataHelper.stripHTML(info.getBandwidthTier());
-                        if ("O".equals(tier) || "P".equals(tier) || "X".equals(tier)) {
-                            // Reliability check: skip peers with low acceptance or no recent activity
-                            PeerProfile profile = _notFailingPeers.get(cur);
-                            if (profile != null && !isReliableBandwidthPeer(profile, now,
-                                                                            _context.commSystem().isEstablished(cur))) {
-                                continue;
-                            }
-                            selected.add(cur);
+            Tiers tiers = tiers();
+            for (Iterator<Hash> iter = new RandomIterator<>(tiers.notFailingList); selected.size() < needed && iter.hasNext(); ) {
+                Hash cur = iter.next();
+                if (matches.contains(cur) || (exclude != null && exclude.contains(cur))) continue;
+                if (onlyNotFailing && tiers.highCap.containsKey(cur)) continue;
+                if (!isSelectable(cur, buildSuccess)) continue;
+                RouterInfo info = (RouterInfo) _context.netDb().lookupLocallyWithoutValidation(cur);
+                if (info != null) {
+                    String tier = DataHelper.stripHTML(info.getBandwidthTier());
+                    if ("O".equals(tier) || "P".equals(tier) || "X".equals(tier)) {
+                        // Reliability check: skip peers with low acceptance or no recent activity
+                        PeerProfile profile = tiers.notFailing.get(cur);
+                        if (profile != null && !isReliableBandwidthPeer(profile, now,
+                                                                        _context.commSystem().isEstablished(cur))) {
+                            continue;
                         }
+                        selected.add(cur);
                     }
                 }
-            } finally {
-                releaseReadLock();
             }
             matches.addAll(selected);
         }
@@ -963,20 +1006,16 @@ public class ProfileOrganizer {
             int needed = howMany - matches.size();
             List<Hash> selected = new ArrayList<>(needed);
             long now = _context.clock().now();
-            getReadLock();
-            try {
-                for (Iterator<Hash> iter = new RandomIterator<>(_notFailingPeersList); selected.size() < needed && iter.hasNext(); ) {
-                    Hash cur = iter.next();
-                    if (matches.contains(cur) || (exclude != null && exclude.contains(cur))) continue;
-                    if (onlyNotFailing && _highCapacityPeers.containsKey(cur)) continue;
-                    // Keep peers in loss probation out of even the last-resort pool;
-                    // they only get picked if literally nothing else is usable.
-                    PeerProfile prof = locked_getProfile(cur);
-                    if (prof != null && inLossProbation(prof, now)) continue;
-                    if (isSelectable(cur, buildSuccess)) selected.add(cur);
-                }
-            } finally {
-                releaseReadLock();
+            Tiers tiers = tiers();
+            for (Iterator<Hash> iter = new RandomIterator<>(tiers.notFailingList); selected.size() < needed && iter.hasNext(); ) {
+                Hash cur = iter.next();
+                if (matches.contains(cur) || (exclude != null && exclude.contains(cur))) continue;
+                if (onlyNotFailing && tiers.highCap.containsKey(cur)) continue;
+                // Keep peers in loss probation out of even the last-resort pool;
+                // they only get picked if literally nothing else is usable.
+                PeerProfile prof = tiers.notFailing.get(cur);
+                if (prof != null && inLossProbation(prof, now)) continue;
+                if (isSelectable(cur, buildSuccess)) selected.add(cur);
             }
             matches.addAll(selected);
         }
@@ -1015,14 +1054,12 @@ public class ProfileOrganizer {
      * @return a new set containing every tracked peer hash
      */
     public Set<Hash> selectAllPeers() {
-        getReadLock();
-        try {
-            Set<Hash> allPeers = new HashSet<>(_notFailingPeers.size() + _highCapacityPeers.size() + _fastPeers.size());
-            allPeers.addAll(_notFailingPeers.keySet());
-            allPeers.addAll(_highCapacityPeers.keySet());
-            allPeers.addAll(_fastPeers.keySet());
-            return allPeers;
-        } finally {releaseReadLock();}
+        Tiers tiers = tiers();
+        Set<Hash> allPeers = new HashSet<>(tiers.notFailing.size() + tiers.highCap.size() + tiers.fast.size());
+        allPeers.addAll(tiers.notFailing.keySet());
+        allPeers.addAll(tiers.highCap.keySet());
+        allPeers.addAll(tiers.fast.keySet());
+        return allPeers;
     }
 
     /**
@@ -1222,6 +1259,8 @@ public class ProfileOrganizer {
             purgeStaleProfileFiles();
 
         } finally {
+            // rebuilt from scratch, even if we failed partway
+            tiersChanged();
             releaseWriteLock();
         }
     }
@@ -1843,6 +1882,7 @@ public class ProfileOrganizer {
                     _strictCapacityOrder.remove(p);
                 }
             }
+            tiersChanged();
             if (_log.shouldInfo())
                 _log.info("Evicted " + toRemove.size() + " stale profiles (not in netdb) from RAM");
         } finally {
@@ -1930,8 +1970,11 @@ public class ProfileOrganizer {
         return _notFailingPeers.get(peer);
     }
 
-    private void locked_selectPeers(Map<Hash, PeerProfile> peers, int howMany, Set<Hash> toExclude,
-                                    Set<Hash> matches, int mask, MaskedIPSet ipSet, double buildSuccess) {
+    /**
+     *  @param peers a tier from tiers(), not a live map
+     */
+    private void selectFromTier(Map<Hash, PeerProfile> peers, int howMany, Set<Hash> toExclude,
+                                Set<Hash> matches, int mask, MaskedIPSet ipSet, double buildSuccess) {
         // Build candidate list, filtering exclusions and checking selectability
         List<Map.Entry<Hash, PeerProfile>> candidates = new ArrayList<>(peers.size());
         for (Map.Entry<Hash, PeerProfile> entry : peers.entrySet()) {
@@ -1952,12 +1995,15 @@ public class ProfileOrganizer {
         // lower latency = smaller range for random score = higher chance of selection.
         // Moderately-lossy peers get their range widened so they are picked only
         // when the clean candidates run out — lossiness as one signal, not a gate.
-        locked_pickLowestPriority(candidates, howMany, matches);
+        pickLowestPriority(candidates, howMany, matches);
     }
 
-    private void locked_selectPeers(Map<Hash, PeerProfile> peers, int howMany, Set<Hash> toExclude,
-                                    Set<Hash> matches, SessionKey randomKey, Slice subTierMode,
-                                    int mask, MaskedIPSet ipSet, double buildSuccess) {
+    /**
+     *  @param peers a tier from tiers(), not a live map
+     */
+    private void selectFromTier(Map<Hash, PeerProfile> peers, int howMany, Set<Hash> toExclude,
+                                Set<Hash> matches, SessionKey randomKey, Slice subTierMode,
+                                int mask, MaskedIPSet ipSet, double buildSuccess) {
         byte[] rk = randomKey.getData();
         long k0 = DataHelper.fromLong8(rk, 0);
         long k1 = DataHelper.fromLong8(rk, 8);
@@ -1985,14 +2031,13 @@ public class ProfileOrganizer {
 
         // Select with random priority proportional to latency. Moderately-lossy peers
         // get their range widened so they are picked only after the clean peers.
-        locked_pickLowestPriority(candidates, howMany, matches);
+        pickLowestPriority(candidates, howMany, matches);
     }
 
     /**
      *  Selects the lowest-priority candidates, penalizing moderately-lossy peers.
-     *  Must be called with the read lock held.
      */
-    private void locked_pickLowestPriority(List<Map.Entry<Hash, PeerProfile>> candidates, int howMany,
+    private void pickLowestPriority(List<Map.Entry<Hash, PeerProfile>> candidates, int howMany,
                                            Set<Hash> matches) {
         // Select with random priority proportional to latency:
         // lower latency = smaller range for random score = higher chance of selection.
@@ -2020,8 +2065,8 @@ public class ProfileOrganizer {
         }
     }
 
-    private void locked_selectActive(List<Hash> connected, int howMany, Set<Hash> toExclude,
-                                    Set<Hash> matches, int mask, MaskedIPSet ipSet, double buildSuccess) {
+    private void selectActive(List<Hash> connected, int howMany, Set<Hash> toExclude,
+                              Set<Hash> matches, int mask, MaskedIPSet ipSet, double buildSuccess) {
         for (Iterator<Hash> iter = new RandomIterator<>(connected); matches.size() < howMany && iter.hasNext(); ) {
             Hash peer = iter.next();
             if (toExclude != null && toExclude.contains(peer)) continue;
@@ -2365,6 +2410,7 @@ public class ProfileOrganizer {
                     if (inFast) _fastPeers.remove(peer);
                     if (inHighCap) _highCapacityPeers.remove(peer);
                     promoteToFillTiers();
+                    tiersChanged();
                 }
             } finally {
                 releaseWriteLock();
@@ -2389,6 +2435,7 @@ public class ProfileOrganizer {
                 if (inFast) _fastPeers.remove(peer);
                 if (inHighCap) _highCapacityPeers.remove(peer);
                 promoteToFillTiers();
+                tiersChanged();
             }
         } finally {
             releaseWriteLock();
@@ -2416,6 +2463,7 @@ public class ProfileOrganizer {
                 PeerProfile profile = locked_getProfile(peer);
                 if (profile != null) profile.setCapacityBonus(-30);
                 promoteToFillTiers();
+                tiersChanged();
             }
         } finally {
             releaseWriteLock();
@@ -2440,6 +2488,7 @@ public class ProfileOrganizer {
                 if (inFast) _fastPeers.remove(peer);
                 if (inHighCap) _highCapacityPeers.remove(peer);
                 promoteToFillTiers();
+                tiersChanged();
             }
         } finally {
             releaseWriteLock();
@@ -2493,6 +2542,7 @@ public class ProfileOrganizer {
                 if (inHighCap) _highCapacityPeers.remove(peer);
                 if (profile != null) profile.setCapacityBonus(-30);
                 promoteToFillTiers();
+                tiersChanged();
             }
         } finally {
             releaseWriteLock();
@@ -2524,6 +2574,7 @@ public class ProfileOrganizer {
                     PeerProfile profile = locked_getProfile(peer);
                     if (profile != null) profile.setCapacityBonus(-30);
                     promoteToFillTiers();
+                    tiersChanged();
                 }
             } finally {
                 releaseWriteLock();
@@ -2777,6 +2828,8 @@ public class ProfileOrganizer {
                 // so it cannot be re-promoted on stale values before the
                 // readmission conditions are met.
                 profile.setLossySince(_context.clock().now());
+                if (wasFast || wasHighCap)
+                    tiersChanged();
                 if ((wasFast || wasHighCap) && _log.shouldDebug()) {
                     _log.debug("Demoting peer [" + peer.toBase32().substring(0, 6) +
                                "] from fast/high-cap tiers: loss " + profile.getLossScore(_context.clock().now()));
@@ -43,8 +43,6 @@ import net.i2p.stat.RateStat;
 import net.i2p.util.Addresses;
 import net.i2p.util.I2PAppThread;
 import net.i2p.util.Log;
-import net.i2p.util.ObjectCounterUnsafe;
-import net.i2p.util.SystemVersion;
 import net.i2p.util.Translate;
 
 /**
@@ -458,15 +456,13 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
         }
 
         // IP analysis
-        calculateIPGroupsFamily(ris, points);
+        Buckets buckets = new Buckets(ris);
+        calculateIPGroupsFamily(buckets, points);
         // unused here, just for the console, so use the same for all of them
         List<RouterInfo> dummy = new DummyList();
-        calculateIPGroupsUs(ris, points, dummy, dummy, dummy, dummy, dummy);
-        long sz = ris.size();
-        if (sz * sz < SystemVersion.getMaxMemory() / 10) {
-            List<Pair> pairs = new ArrayList<>(PAIRMAX);
-            calculatePairDistance(ris, points, pairs);
-        }
+        calculateIPGroupsUs(buckets, points, dummy, dummy, dummy, dummy, dummy);
+        List<Pair> pairs = new ArrayList<>(PAIRMAX);
+        calculatePairDistance(ris, points, pairs);
 
         // Distance to our router analysis
         // closest to our routing key today
@@ -570,6 +566,7 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
     /**
      * Calculate average pairwise distance between floodfills and identifies routers that are
      * unusually close to each other.
+     * Uses a DistanceIndex, O(n log n), instead of comparing every pair.
      *
      * @param ris the list of router infos to analyze
      * @param points map to accumulate sybil points
@@ -579,28 +576,14 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
      */
     public double calculatePairDistance(List<RouterInfo> ris, Map<Hash, Points> points, List<Pair> pairs) {
         int sz = ris.size();
-        double total = 0;
-        for (int i = 0; i < sz; i++) {
-            RouterInfo info1 = ris.get(i);
+        List<RouterInfo> ffs = new ArrayList<>(sz);
+        for (RouterInfo info : ris) {
             // don't do distance calculation for non-floodfills
-            if (!info1.getCapabilities().contains("f")) {continue;}
-            for (int j = i + 1; j < sz; j++) {
-                RouterInfo info2 = ris.get(j);
-                // don't do distance calculation for non-floodfills
-                if (!info2.getCapabilities().contains("f")) {continue;}
-                BigInteger dist = HashDistance.getDistance(info1.getHash(), info2.getHash());
-                if (pairs.isEmpty()) {
-                    pairs.add(new Pair(info1, info2, dist));
-                } else if (pairs.size() < PAIRMAX) {
-                    pairs.add(new Pair(info1, info2, dist));
-                    Collections.sort(pairs);
-                } else if (dist.compareTo(pairs.get(PAIRMAX - 1).dist) < 0) {
-                    pairs.set(PAIRMAX - 1, new Pair(info1, info2, dist));
-                    Collections.sort(pairs);
-                }
-                total += biLog2(dist);
-            }
+            if (info.getCapabilities().contains("f")) {ffs.add(info);}
         }
+        DistanceIndex index = new DistanceIndex(ffs);
+        pairs.addAll(index.getClosestPairs(PAIRMAX));
+        double total = index.totalLog2Distance();
 
         double avg = total / (sz * sz / 2d);
         String other = _context.getBooleanProperty(PROP_NONFF) ? "router" : "floodfill";
@@ -673,6 +656,19 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
     public void calculateIPGroupsUs(List<RouterInfo> ris, Map<Hash, Points> points,
                                     List<RouterInfo> ri32, List<RouterInfo> ri24, List<RouterInfo> ri16,
                                     List<RouterInfo> ri64, List<RouterInfo> ri48) {
+        calculateIPGroupsUs(new Buckets(ris), points, ri32, ri24, ri16, ri64, ri48);
+    }
+
+    /**
+     * As above, with the routers already bucketed.
+     * Only visits the routers in our /16 and /48.
+     *
+     * @param b the routers to analyze
+     * @since 0.9.71+
+     */
+    public void calculateIPGroupsUs(Buckets b, Map<Hash, Points> points,
+                                    List<RouterInfo> ri32, List<RouterInfo> ri24, List<RouterInfo> ri16,
+                                    List<RouterInfo> ri64, List<RouterInfo> ri48) {
         RouterInfo us = _context.router().getRouterInfo();
         byte[] ourIP = getIP(us);
         if (ourIP == null) {
@@ -729,43 +725,87 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
             reason64 = null;
             reason48 = null;
         }
-        for (RouterInfo info : ris) {
-            if (ourIP != null) {
+        List<RouterInfo> same16 = ourIP != null ? b.ip16.get(Integer.valueOf((int) DataHelper.fromLong(ourIP, 0, 2))) : null;
+        if (same16 != null) {
+            for (RouterInfo info : same16) {
                 byte[] ip = getIP(info);
-                if (ip == null)
-                    continue;
-                if (ip[0] == ourIP[0] && ip[1] == ourIP[1]) {
-                    if (ip[2] == ourIP[2]) {
-                        if (ip[3] == ourIP[3]) {
-                            addPoints(points, info.getHash(), POINTS_US32, reason32);
-                            ri32.add(info);
-                        } else {
-                            addPoints(points, info.getHash(), POINTS_US24, reason24);
-                            ri24.add(info);
-                        }
+                if (ip[2] == ourIP[2]) {
+                    if (ip[3] == ourIP[3]) {
+                        addPoints(points, info.getHash(), POINTS_US32, reason32);
+                        ri32.add(info);
                     } else {
-                        addPoints(points, info.getHash(), POINTS_US16, reason16);
-                        ri16.add(info);
+                        addPoints(points, info.getHash(), POINTS_US24, reason24);
+                        ri24.add(info);
                     }
+                } else {
+                    addPoints(points, info.getHash(), POINTS_US16, reason16);
+                    ri16.add(info);
                 }
             }
-            if (ourIPv6 != null) {
+        }
+        List<RouterInfo> same48 = ourIPv6 != null ? b.ip48.get(Long.valueOf(DataHelper.fromLong(ourIPv6, 0, 6))) : null;
+        if (same48 != null) {
+            for (RouterInfo info : same48) {
                 byte[] ip = getIPv6(info);
-                if (ip == null)
-                    continue;
-                if (DataHelper.eq(ip, 0, ourIPv6, 0, 6)) {
-                    if (ip[6] == ourIPv6[6] && ip[7] == ourIPv6[7]) {
-                        addPoints(points, info.getHash(), POINTS_V6_US64, reason64);
-                        ri64.add(info);
-                    } else {
-                        addPoints(points, info.getHash(), POINTS_V6_US48, reason48);
-                        ri48.add(info);
-                    }
+                if (ip[6] == ourIPv6[6] && ip[7] == ourIPv6[7]) {
+                    addPoints(points, info.getHash(), POINTS_V6_US64, reason64);
+                    ri64.add(info);
+                } else {
+                    addPoints(points, info.getHash(), POINTS_V6_US48, reason48);
+                    ri48.add(info);
                 }
             }
         }
     }
 
+    /**
+     *  Routers bucketed by IPv4 /32, /24, /16, IPv6 /64, /48 and family
+     *  in one pass over the list, so that each group calculation only
+     *  visits the routers in its own groups.
+     *  Build once and pass to each of the calculateIPGroups methods.
+     *
+     *  @since 0.9.71+
+     */
+    public static class Buckets {
+        final Map<Integer, List<RouterInfo>> ip32 = new HashMap<>();
+        final Map<Integer, List<RouterInfo>> ip24 = new HashMap<>();
+        final Map<Integer, List<RouterInfo>> ip16 = new HashMap<>();
+        final Map<Long, List<RouterInfo>> ip64 = new HashMap<>();
+        final Map<Long, List<RouterInfo>> ip48 = new HashMap<>();
+        final Map<String, List<RouterInfo>> family = new HashMap<>();
+
+        /**
+         *  @param ris the list of router infos to analyze
+         */
+        public Buckets(List<RouterInfo> ris) {
+            for (RouterInfo info : ris) {
+                byte[] ip = getIP(info);
+                if (ip != null) {
+                    add(ip32, Integer.valueOf((int) DataHelper.fromLong(ip, 0, 4)), info);
+                    add(ip24, Integer.valueOf((int) DataHelper.fromLong(ip, 0, 3)), info);
+                    add(ip16, Integer.valueOf((int) DataHelper.fromLong(ip, 0, 2)), info);
+                }
+                ip = getIPv6(info);
+                if (ip != null) {
+                    add(ip64, Long.valueOf(DataHelper.fromLong8(ip, 0)), info);
+                    add(ip48, Long.valueOf(DataHelper.fromLong(ip, 0, 6)), info);
+                }
+                String fam = info.getOption("family");
+                if (fam != null)
+                    add(family, fam, info);
+            }
+        }
+
+        private static <K> void add(Map<K, List<RouterInfo>> map, K key, RouterInfo info) {
+            List<RouterInfo> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                map.put(key, list);
+            }
+            list.add(info);
+        }
+    }
+
     /**
      * Categorize routers by their IP address to identify routers sharing the same IP.
      *
@@ -775,23 +815,24 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
      * @since 0.9.38 split out from renderIPGroups32()
      */
     public Map<Integer, List<RouterInfo>> calculateIPGroups32(List<RouterInfo> ris, Map<Hash, Points> points) {
-        ObjectCounterUnsafe<Integer> oc = new ObjectCounterUnsafe<>();
-        for (RouterInfo info : ris) {
-            byte[] ip = getIP(info);
-            if (ip == null)
-                continue;
-            Integer x = Integer.valueOf((int) DataHelper.fromLong(ip, 0, 4));
-            oc.increment(x);
-        }
+        return calculateIPGroups32(new Buckets(ris), points);
+    }
+
+    /**
+     * As above, with the routers already bucketed.
+     *
+     * @param b the routers to analyze
+     * @param points map to accumulate sybil points
+     * @since 0.9.71+
+     */
+    public Map<Integer, List<RouterInfo>> calculateIPGroups32(Buckets b, Map<Hash, Points> points) {
         Map<Integer, List<RouterInfo>> rv = new HashMap<>();
-        for (Integer ii : oc.objects()) {
-            int count = oc.count(ii);
-            if (count >= 2)
-                rv.put(ii, new ArrayList<>(count));
-        }
-        for (Map.Entry<Integer, List<RouterInfo>> e : rv.entrySet()) {
+        for (Map.Entry<Integer, List<RouterInfo>> e : b.ip32.entrySet()) {
+            List<RouterInfo> list = e.getValue();
+            int count = list.size();
+            if (count < 2)
+                continue;
             Integer ii = e.getKey();
-            int count = oc.count(ii);
             double point = POINTS32 * (count - 1);
             int i = ii.intValue();
             int i0 = (i >> 24) & 0xff;
@@ -801,21 +842,10 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
             String reason = "Same IP with <a href=\"/netdb?ip=" +
                             i0 + '.' + i1 + '.' + i2 + '.' + i3 + "&amp;sybil\">" +
                             (count - 1) + " other" + (( count > 2) ? "s" : "") + "</a>";
-            for (RouterInfo info : ris) {
-                byte[] ip = getIP(info);
-                if (ip == null)
-                    continue;
-                if ((ip[0] & 0xff) != i0)
-                    continue;
-                if ((ip[1] & 0xff) != i1)
-                    continue;
-                if ((ip[2] & 0xff) != i2)
-                    continue;
-                if ((ip[3] & 0xff) != i3)
-                    continue;
-                e.getValue().add(info);
+            for (RouterInfo info : list) {
                 addPoints(points, info.getHash(), point, reason);
             }
+            rv.put(ii, list);
         }
         return rv;
     }
@@ -829,24 +859,25 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
      * @since 0.9.38 split out from renderIPGroups24()
      */
     public Map<Integer, List<RouterInfo>> calculateIPGroups24(List<RouterInfo> ris, Map<Hash, Points> points) {
-        ObjectCounterUnsafe<Integer> oc = new ObjectCounterUnsafe<>();
-        for (RouterInfo info : ris) {
-            byte[] ip = getIP(info);
-            if (ip == null)
-                continue;
-            Integer x = Integer.valueOf((int) DataHelper.fromLong(ip, 0, 3));
-            oc.increment(x);
-        }
+        return calculateIPGroups24(new Buckets(ris), points);
+    }
+
+    /**
+     * As above, with the routers already bucketed.
+     *
+     * @param b the routers to analyze
+     * @param points map to accumulate sybil points
+     * @since 0.9.71+
+     */
+    public Map<Integer, List<RouterInfo>> calculateIPGroups24(Buckets b, Map<Hash, Points> points) {
         Map<Integer, List<RouterInfo>> rv = new HashMap<>();
-        for (Integer ii : oc.objects()) {
-            int count = oc.count(ii);
-            if (count >= 2)
-                rv.put(ii, new ArrayList<>(count));
-        }
         FamilyKeyCrypto fkc = _context.router().getFamilyKeyCrypto();
-        for (Map.Entry<Integer, List<RouterInfo>> e : rv.entrySet()) {
+        for (Map.Entry<Integer, List<RouterInfo>> e : b.ip24.entrySet()) {
+            List<RouterInfo> list = e.getValue();
+            int count = list.size();
+            if (count < 2)
+                continue;
             Integer ii = e.getKey();
-            int count = oc.count(ii);
             double point = POINTS24 * (count - 1);
             int i = ii.intValue();
             int i0 = i >> 16;
@@ -855,25 +886,18 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
             String reason = "Same IPv4 /24 with <a href=\"/netdb?ip=" +
                             i0 + '.' + i1 + '.' + i2 + ".0/24&amp;sybil\">" +
                             (count - 1) + " other" + (( count > 2) ? "s" : "") + "</a>";
-            for (RouterInfo info : ris) {
-                byte[] ip = getIP(info);
-                if (ip == null)
-                    continue;
-                if ((ip[0] & 0xff) != i0)
-                    continue;
-                if ((ip[1] & 0xff) != i1)
-                    continue;
-                if ((ip[2] & 0xff) != i2)
-                    continue;
+            List<RouterInfo> group = new ArrayList<>(count);
+            for (RouterInfo info : list) {
                 if (fkc != null) {
                     String f = info.getOption("family");
                     if (f != null && _familyExemptPoints24.contains(f) &&
                         fkc.verify(info) == FamilyKeyCrypto.Result.STORED_KEY)
                         continue;
                 }
-                e.getValue().add(info);
+                group.add(info);
                 addPoints(points, info.getHash(), point, reason);
             }
+            rv.put(ii, group);
         }
         return rv;
     }
@@ -887,23 +911,24 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
      *  @since 0.9.38 split out from renderIPGroups16()
      */
     public Map<Integer, List<RouterInfo>> calculateIPGroups16(List<RouterInfo> ris, Map<Hash, Points> points) {
-        ObjectCounterUnsafe<Integer> oc = new ObjectCounterUnsafe<>();
-        for (RouterInfo info : ris) {
-            byte[] ip = getIP(info);
-            if (ip == null)
-                continue;
-            Integer x = Integer.valueOf((int) DataHelper.fromLong(ip, 0, 2));
-            oc.increment(x);
-        }
+        return calculateIPGroups16(new Buckets(ris), points);
+    }
+
+    /**
+     * As above, with the routers already bucketed.
+     *
+     * @param b the routers to analyze
+     * @param points map to accumulate sybil points
+     * @since 0.9.71+
+     */
+    public Map<Integer, List<RouterInfo>> calculateIPGroups16(Buckets b, Map<Hash, Points> points) {
         Map<Integer, List<RouterInfo>> rv = new HashMap<>();
-        for (Integer ii : oc.objects()) {
-            int count = oc.count(ii);
-            if (count >= 4)
-                rv.put(ii, new ArrayList<>(count));
-        }
-        for (Map.Entry<Integer, List<RouterInfo>> e : rv.entrySet()) {
+        for (Map.Entry<Integer, List<RouterInfo>> e : b.ip16.entrySet()) {
+            List<RouterInfo> list = e.getValue();
+            int count = list.size();
+            if (count < 4)
+                continue;
             Integer ii = e.getKey();
-            int count = oc.count(ii);
             double point = POINTS16 * (count - 1);
             int i = ii.intValue();
             int i0 = i >> 8;
@@ -911,17 +936,10 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
             String reason = "Same IPv4 /16 with <a href=\"/netdb?ip=" +
                             i0 + '.' + i1 + ".0.0/16&amp;sybil\">" +
                             (count - 1) + " other" + (( count > 2) ? "s" : "") + "</a>";
-            for (RouterInfo info : ris) {
-                byte[] ip = getIP(info);
-                if (ip == null)
-                    continue;
-                if ((ip[0] & 0xff) != i0)
-                    continue;
-                if ((ip[1] & 0xff) != i1)
-                    continue;
-                e.getValue().add(info);
+            for (RouterInfo info : list) {
                 addPoints(points, info.getHash(), point, reason);
             }
+            rv.put(ii, list);
         }
         return rv;
     }
@@ -935,23 +953,24 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
      *  @since 0.9.57
      */
     public Map<Long, List<RouterInfo>> calculateIPGroups64(List<RouterInfo> ris, Map<Hash, Points> points) {
-        ObjectCounterUnsafe<Long> oc = new ObjectCounterUnsafe<>();
-        for (RouterInfo info : ris) {
-            byte[] ip = getIPv6(info);
-            if (ip == null)
-                continue;
-            Long x = Long.valueOf(DataHelper.fromLong8(ip, 0));
-            oc.increment(x);
-        }
+        return calculateIPGroups64(new Buckets(ris), points);
+    }
+
+    /**
+     * As above, with the routers already bucketed.
+     *
+     * @param b the routers to analyze
+     * @param points map to accumulate sybil points
+     * @since 0.9.71+
+     */
+    public Map<Long, List<RouterInfo>> calculateIPGroups64(Buckets b, Map<Hash, Points> points) {
         Map<Long, List<RouterInfo>> rv = new HashMap<>();
-        for (Long ii : oc.objects()) {
-            int count = oc.count(ii);
-            if (count >= 2)
-                rv.put(ii, new ArrayList<>(count));
-        }
-        for (Map.Entry<Long, List<RouterInfo>> e : rv.entrySet()) {
+        for (Map.Entry<Long, List<RouterInfo>> e : b.ip64.entrySet()) {
+            List<RouterInfo> list = e.getValue();
+            int count = list.size();
+            if (count < 2)
+                continue;
             Long ii = e.getKey();
-            int count = oc.count(ii);
             double point = POINTS64 * (count - 1);
             long i = ii.longValue();
             int i0 = (int) ((i >> 56) & 0xff);
@@ -969,29 +988,10 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
                             Integer.toString((i6 << 8) | i7, 16) +
                             "::&amp;sybil\">" +
                             (count - 1) + " other" + (( count > 2) ? "s" : "") + "</a>";
-            for (RouterInfo info : ris) {
-                byte[] ip = getIPv6(info);
-                if (ip == null)
-                    continue;
-                if ((ip[0] & 0xff) != i0)
-                    continue;
-                if ((ip[1] & 0xff) != i1)
-                    continue;
-                if ((ip[2] & 0xff) != i2)
-                    continue;
-                if ((ip[3] & 0xff) != i3)
-                    continue;
-                if ((ip[4] & 0xff) != i4)
-                    continue;
-                if ((ip[5] & 0xff) != i5)
-                    continue;
-                if ((ip[6] & 0xff) != i6)
-                    continue;
-                if ((ip[7] & 0xff) != i7)
-                    continue;
-                e.getValue().add(info);
+            for (RouterInfo info : list) {
                 addPoints(points, info.getHash(), point, reason);
             }
+            rv.put(ii, list);
         }
         return rv;
     }
@@ -1005,23 +1005,24 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
      *  @since 0.9.57
      */
     public Map<Long, List<RouterInfo>> calculateIPGroups48(List<RouterInfo> ris, Map<Hash, Points> points) {
-        ObjectCounterUnsafe<Long> oc = new ObjectCounterUnsafe<>();
-        for (RouterInfo info : ris) {
-            byte[] ip = getIPv6(info);
-            if (ip == null)
-                continue;
-            Long x = Long.valueOf(DataHelper.fromLong(ip, 0, 6));
-            oc.increment(x);
-        }
+        return calculateIPGroups48(new Buckets(ris), points);
+    }
+
+    /**
+     * As above, with the routers already bucketed.
+     *
+     * @param b the routers to analyze
+     * @param points map to accumulate sybil points
+     * @since 0.9.71+
+     */
+    public Map<Long, List<RouterInfo>> calculateIPGroups48(Buckets b, Map<Hash, Points> points) {
         Map<Long, List<RouterInfo>> rv = new HashMap<>();
-        for (Long ii : oc.objects()) {
-            int count = oc.count(ii);
-            if (count >= 4)
-                rv.put(ii, new ArrayList<>(count));
-        }
-        for (Map.Entry<Long, List<RouterInfo>> e : rv.entrySet()) {
+        for (Map.Entry<Long, List<RouterInfo>> e : b.ip48.entrySet()) {
+            List<RouterInfo> list = e.getValue();
+            int count = list.size();
+            if (count < 4)
+                continue;
             Long ii = e.getKey();
-            int count = oc.count(ii);
             double point = POINTS48 * (count - 1);
             long i = ii.longValue();
             int i0 = (int) ((i >> 40) & 0xff);
@@ -1036,25 +1037,10 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
                             Integer.toString((i4 << 8) | i5, 16) +
                             "::&amp;sybil\">" +
                             (count - 1) + " other" + (( count > 2) ? "s" : "") + "</a>";
-            for (RouterInfo info : ris) {
-                byte[] ip = getIPv6(info);
-                if (ip == null)
-                    continue;
-                if ((ip[0] & 0xff) != i0)
-                    continue;
-                if ((ip[1] & 0xff) != i1)
-                    continue;
-                if ((ip[2] & 0xff) != i2)
-                    continue;
-                if ((ip[3] & 0xff) != i3)
-                    continue;
-                if ((ip[4] & 0xff) != i4)
-                    continue;
-                if ((ip[5] & 0xff) != i5)
-                    continue;
-                e.getValue().add(info);
+            for (RouterInfo info : list) {
                 addPoints(points, info.getHash(), point, reason);
             }
+            rv.put(ii, list);
         }
         return rv;
     }
@@ -1069,18 +1055,18 @@ public class Analysis extends JobImpl implements RouterApp, Runnable {
      *  @since 0.9.38 split out from renderIPGroupsFamily()
      */
     public Map<String, List<RouterInfo>> calculateIPGroupsFamily(List<RouterInfo> ris, Map<Hash, Points> points) {
-        Map<String, List<RouterInfo>> rv = new HashMap<>();
-        for (RouterInfo info : ris) {
-            String fam = info.getOption("family");
-            if (fam == null)
-                continue;
-            List<RouterInfo> fris = rv.get(fam);
-            if (fris == null) {
-                fris = new ArrayList<>(4);
-                rv.put(fam, fris);
-            }
-            fris.add(info);
-        }
+        return calculateIPGroupsFamily(new Buckets(ris), points);
+    }
+
+    /**
+     * As above, with the routers already bucketed.
+     *
+     * @param b the routers to analyze
+     * @param points map to accumulate sybil points
+     * @since 0.9.71+
+     */
+    public Map<String, List<RouterInfo>> calculateIPGroupsFamily(Buckets b, Map<Hash, Points> points) {
+        Map<String, List<RouterInfo>> rv = b.family;
         FamilyKeyCrypto fkc = _context.router().getFamilyKeyCrypto();
         String ourFamily = fkc != null ? fkc.getOurFamilyName() : null;
         for (Map.Entry<String, List<RouterInfo>> e : rv.entrySet()) {
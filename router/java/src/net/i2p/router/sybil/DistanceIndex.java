@@ -0,0 +1,162 @@
+package net.i2p.router.sybil;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import net.i2p.data.Hash;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.router.util.HashDistance;
+
+/**
+ *  Routers sorted by hash, for XOR distance queries over all pairs
+ *  without comparing every pair.
+ *  <p>
+ *  Sorted by hash, the routers sharing a k-bit prefix are contiguous,
+ *  like the leaves under one node of a binary trie, and two routers are
+ *  closer than 2**(256 - k) iff they share a k-bit prefix.
+ *  So the common prefix length of each adjacent pair is all that is
+ *  needed to count the pairs at each distance, and to find the closest pairs.
+ *  <p>
+ *  Not thread-safe, build a new one for each analysis.
+ *
+ *  @since 0.9.71+
+ */
+class DistanceIndex {
+    private final RouterInfo[] _sorted;
+    /** _lcp[i] is the common prefix in bits of _sorted[i] and _sorted[i + 1] */
+    private final int[] _lcp;
+
+    private static final int BITS = Hash.HASH_LENGTH * 8;
+    /** mean of the fractional part of Util.biLog2() for random hashes, which is in [0.5, 1) */
+    private static final double MEAN_LOG2_FRACTION = 0.75;
+
+    private static class HashComparator implements Comparator<RouterInfo> {
+        public int compare(RouterInfo l, RouterInfo r) {
+            byte[] lh = l.getHash().getData();
+            byte[] rh = r.getHash().getData();
+            for (int i = 0; i < Hash.HASH_LENGTH; i++) {
+                int c = (lh[i] & 0xff) - (rh[i] & 0xff);
+                if (c != 0)
+                    return c;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     *  @param ris not modified
+     */
+    public DistanceIndex(List<RouterInfo> ris) {
+        _sorted = ris.toArray(new RouterInfo[ris.size()]);
+        Arrays.sort(_sorted, new HashComparator());
+        _lcp = new int[Math.max(0, _sorted.length - 1)];
+        for (int i = 0; i < _lcp.length; i++) {
+            _lcp[i] = commonPrefix(_sorted[i].getHash().getData(), _sorted[i + 1].getHash().getData());
+        }
+    }
+
+    /**
+     *  @return the common prefix length in bits, 0-256
+     */
+    static int commonPrefix(byte[] a, byte[] b) {
+        for (int i = 0; i < Hash.HASH_LENGTH; i++) {
+            int x = (a[i] ^ b[i]) & 0xff;
+            if (x != 0)
+                return (i * 8) + Integer.numberOfLeadingZeros(x) - 24;
+        }
+        return BITS;
+    }
+
+    /**
+     *  The number of pairs sharing a prefix of at least prefix bits,
+     *  i.e. closer than 2**(256 - prefix).
+     *  O(n).
+     */
+    public long countPairs(int prefix) {
+        long rv = 0;
+        long run = 1;
+        for (int i = 0; i < _lcp.length; i++) {
+            if (_lcp[i] >= prefix) {
+                run++;
+            } else {
+                rv += run * (run - 1) / 2;
+                run = 1;
+            }
+        }
+        rv += run * (run - 1) / 2;
+        return rv;
+    }
+
+    /**
+     *  The total log2 distance over all pairs, as Util.biLog2().
+     *  Pairs are counted exactly by common prefix length, which gives the integer
+     *  part of the log2 distance; the fractional part is the mean for random hashes.
+     *  O(n * 256).
+     *
+     *  @return the total over all pairs, divide by the number of pairs for the average
+     */
+    public double totalLog2Distance() {
+        if (_sorted.length < 2)
+            return 0;
+        double rv = 0;
+        long prev = countPairs(0);
+        for (int prefix = 1; prefix <= BITS && prev > 0; prefix++) {
+            long count = countPairs(prefix);
+            // pairs with exactly prefix - 1 bits in common
+            long diverge = prev - count;
+            if (diverge > 0)
+                rv += diverge * ((BITS - prefix) + MEAN_LOG2_FRACTION);
+            prev = count;
+        }
+        return rv;
+    }
+
+    /**
+     *  The closest pairs, exactly as a comparison of every pair would find them.
+     *  Finds the longest prefix shared by at least max pairs, so all of the max closest
+     *  pairs share it, and only compares the pairs within each run sharing it.
+     *  There are fewer than 2 * max + n of those, whatever the distribution of hashes.
+     *  O(n log n).
+     *
+     *  @param max the number of pairs to return
+     *  @return up to max pairs, closest first
+     */
+    public List<Pair> getClosestPairs(int max) {
+        if (_sorted.length < 2 || max <= 0)
+            return Collections.emptyList();
+        // binary search for the longest prefix with at least max pairs,
+        // or zero, i.e. all pairs, if there are fewer than max in total
+        int lo = 0;
+        int hi = BITS;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (countPairs(mid) >= max)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        int prefix = lo;
+        List<Pair> rv = new ArrayList<Pair>(max * 2);
+        int start = 0;
+        for (int i = 0; i <= _lcp.length; i++) {
+            if (i < _lcp.length && _lcp[i] >= prefix)
+                continue;
+            // run is start through i inclusive
+            for (int j = start; j < i; j++) {
+                Hash hj = _sorted[j].getHash();
+                for (int k = j + 1; k <= i; k++) {
+                    BigInteger dist = HashDistance.getDistance(hj, _sorted[k].getHash());
+                    rv.add(new Pair(_sorted[j], _sorted[k], dist));
+                }
+            }
+            start = i + 1;
+        }
+        Collections.sort(rv);
+        if (rv.size() > max)
+            rv = new ArrayList<Pair>(rv.subList(0, max));
+        return rv;
+    }
+}
@@ -4,8 +4,24 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import net.i2p.data.i2np.DatabaseLookupMessage;
+import net.i2p.data.i2np.DatabaseSearchReplyMessage;
+import net.i2p.data.i2np.DatabaseStoreMessage;
+import net.i2p.data.i2np.OutboundTunnelBuildReplyMessage;
+import net.i2p.data.i2np.ShortTunnelBuildMessage;
+import net.i2p.data.i2np.TunnelBuildMessage;
+import net.i2p.data.i2np.TunnelBuildReplyMessage;
+import net.i2p.data.i2np.TunnelDataMessage;
+import net.i2p.data.i2np.TunnelGatewayMessage;
+import net.i2p.data.i2np.VariableTunnelBuildMessage;
+import net.i2p.data.i2np.VariableTunnelBuildReplyMessage;
+import net.i2p.router.OutNetMessage;
 import net.i2p.router.RouterContext;
 import net.i2p.router.util.PQEntry;
 import net.i2p.stat.RateConstants;
@@ -32,25 +48,26 @@ import net.i2p.util.Log;
  *
  * <strong>Concurrency Strategy:</strong>
  * <ul>
- *   <li>Java 5: Used synchronized ArrayList with head/tail access</li>
- *   <li>Java 6+: Uses LinkedBlockingDeque for lock-free operations</li>
+ *   <li>Pending requests in concurrent queues, one per traffic class outbound</li>
+ *   <li>One thread at a time hands out bandwidth, others never wait for it (tryLock)</li>
  *   <li>Request polling from queue head for efficiency</li>
- *   <li>Partial request satisfaction with push-back mechanism</li>
+ *   <li>Partial request satisfaction, the request stays at the head</li>
  * </ul>
  *
  * <strong>Algorithm:</strong>
  * <ul>
- *   <li>Token refill at fixed intervals</li>
+ *   <li>Token refill by the refiller thread, and on demand by requests
+ *       between its ticks (since 0.9.71+)</li>
  *   <li>Request processing when tokens available</li>
  *   <li>Burst prevention through token depletion</li>
- *   <li>Priority-based request handling</li>
+ *   <li>Deficit round robin between outbound traffic classes, FIFO within a class</li>
  * </ul>
  */
 public class FIFOBandwidthLimiter {
     private final Log _log;
     private final RouterContext _context;
-    private final List<SimpleRequest> _pendingInboundRequests;
-    private final List<SimpleRequest> _pendingOutboundRequests;
+    private final RequestQueue _pendingInboundRequests;
+    private final RequestQueue _pendingOutboundRequests;
     /** How many bytes we can consume for inbound transmission immediately. */
     private final AtomicInteger _availableInbound = new AtomicInteger();
     /** How many bytes we can consume for outbound transmission immediately. */
@@ -90,6 +107,30 @@ public class FIFOBandwidthLimiter {
     private volatile float _sendBps15s;
     private volatile float _recvBps15s;
 
+    /**
+     *  Outbound traffic classes, see trafficClass().
+     *  Inbound requests are not classified, we don't know what they are until they're read.
+     *  @since 0.9.71+
+     */
+    public static final int CLASS_OTHER = 0;
+    /** @since 0.9.71+ */
+    public static final int CLASS_BUILD = 1;
+    /** @since 0.9.71+ */
+    public static final int CLASS_PARTICIPATING = 2;
+    /** @since 0.9.71+ */
+    public static final int CLASS_CLIENT = 3;
+    /** @since 0.9.71+ */
+    public static final int CLASS_NETDB = 4;
+    private static final String[] CLASS_NAMES = { "other", "build", "participating", "client", "netdb" };
+    private static final String[] DELAYED_STATS = new String[CLASS_NAMES.length];
+    static {
+        for (int i = 0; i < CLASS_NAMES.length; i++) {
+            DELAYED_STATS[i] = "bwLimiter.outboundDelayedTime." + CLASS_NAMES[i];
+        }
+    }
+    /** bytes per class per round, so one class with big requests can't starve the others */
+    private static final int QUANTUM = 4096;
+
     /**
      * Current time in milliseconds from the System clock.
      */
@@ -108,8 +149,13 @@ public class FIFOBandwidthLimiter {
         _context.statManager().createRateStat("bwLimiter.pendingInboundRequests", "Inbound non-zero length requests ahead of current", "BandwidthLimiter", RateConstants.BANDWIDTH_RATES);
         _context.statManager().createRateStat("bwLimiter.outboundDelayedTime", "Time to honor non-zero length outbound request (ms)", "BandwidthLimiter", RateConstants.BANDWIDTH_RATES);
         _context.statManager().createRateStat("bwLimiter.inboundDelayedTime", "Time to honor non-zero length inbound request (ms)", "BandwidthLimiter", RateConstants.BANDWIDTH_RATES);
-        _pendingInboundRequests = new ArrayList<>(16);
-        _pendingOutboundRequests = new ArrayList<>(16);
+        for (int i = 0; i < CLASS_NAMES.length; i++) {
+            _context.statManager().createRateStat(DELAYED_STATS[i],
+                                                  "Time to honor non-zero length outbound " + CLASS_NAMES[i] + " request (ms)",
+                                                  "BandwidthLimiter", RateConstants.BANDWIDTH_RATES);
+        }
+        _pendingInboundRequests = new RequestQueue(false);
+        _pendingOutboundRequests = new RequestQueue(true);
         _lastTotalSent = _totalAllocatedOutboundBytes.get();
         _lastTotalReceived = _totalAllocatedInboundBytes.get();
         _lastStatsUpdated = now();
@@ -273,7 +319,8 @@ public class FIFOBandwidthLimiter {
      * Request some bytes. Does not block.
      */
     public Request requestInbound(int bytesIn, String purpose) {
-        // try to satisfy without grabbing the global lock
+        _refiller.refillNow();
+        // try to satisfy without queueing
         if (shortcutSatisfyInboundRequest(bytesIn))
             return _noop;
         SimpleRequest req = new SimpleRequest(bytesIn, 0);
@@ -308,8 +355,10 @@ public class FIFOBandwidthLimiter {
                         return sr;
                     }
                 }
-            } else if (candidate == _noop && shortcutSatisfyInboundRequest(bytesIn)) {
-                return _noop;
+            } else if (candidate == _noop) {
+                _refiller.refillNow();
+                if (shortcutSatisfyInboundRequest(bytesIn))
+                    return _noop;
             }
         }
         return requestInbound(bytesIn, purpose);
@@ -321,11 +370,9 @@ public class FIFOBandwidthLimiter {
      * So there's no more casting
      */
     private void requestInbound(SimpleRequest req, int bytesIn, String purpose) {
-        int pending;
-        synchronized (_pendingInboundRequests) {
-            pending = _pendingInboundRequests.size();
-            _pendingInboundRequests.add(req);
-        }
+        int pending = _pendingInboundRequests.add(req);
+        // no-op if just done by the caller
+        _refiller.refillNow();
         satisfyInboundRequests(req.satisfiedBuffer);
         req.satisfiedBuffer.clear();
         if (pending > 0)
@@ -336,10 +383,22 @@ public class FIFOBandwidthLimiter {
      * Request some bytes. Does not block.
      */
     public Request requestOutbound(int bytesOut, int priority, String purpose) {
-        // try to satisfy without grabbing the global lock
+        return requestOutbound(bytesOut, priority, CLASS_OTHER, purpose);
+    }
+
+    /**
+     * Request some bytes. Does not block.
+     *
+     * @param trafficClass CLASS_*, see trafficClass()
+     * @since 0.9.71+
+     */
+    public Request requestOutbound(int bytesOut, int priority, int trafficClass, String purpose) {
+        _refiller.refillNow();
+        // try to satisfy without queueing
         if (shortcutSatisfyOutboundRequest(bytesOut))
             return _noop;
         SimpleRequest req = new SimpleRequest(bytesOut, priority);
+        req.setTrafficClass(trafficClass);
         requestOutbound(req, bytesOut, purpose);
         return req;
     }
@@ -362,29 +421,74 @@ public class FIFOBandwidthLimiter {
      * @since 0.9.71+
      */
     public Request requestOutbound(Request candidate, int bytesOut, int priority, String purpose) {
+        return requestOutbound(candidate, bytesOut, priority, CLASS_OTHER, purpose);
+    }
+
+    /**
+     * Request some bytes, reusing the given request if possible.
+     * Does not block.
+     *
+     * @param trafficClass CLASS_*, see trafficClass()
+     * @since 0.9.71+
+     */
+    public Request requestOutbound(Request candidate, int bytesOut, int priority, int trafficClass, String purpose) {
         if (candidate != null) {
             if (candidate instanceof SimpleRequest) {
                 SimpleRequest sr = (SimpleRequest) candidate;
                 synchronized (sr) {
                     if (!sr._aborted && sr.getPendingRequested() == 0) {
                         sr.reset(bytesOut, priority);
+                        sr.setTrafficClass(trafficClass);
                         requestOutbound(sr, bytesOut, purpose);
                         return sr;
                     }
                 }
-            } else if (candidate == _noop && shortcutSatisfyOutboundRequest(bytesOut)) {
-                return _noop;
+            } else if (candidate == _noop) {
+                _refiller.refillNow();
+                if (shortcutSatisfyOutboundRequest(bytesOut))
+                    return _noop;
             }
         }
-        return requestOutbound(bytesOut, priority, purpose);
+        return requestOutbound(bytesOut, priority, trafficClass, purpose);
     }
 
-    private void requestOutbound(SimpleRequest req, int bytesOut, String purpose) {
-        int pending;
-        synchronized (_pendingOutboundRequests) {
-            pending = _pendingOutboundRequests.size();
-            _pendingOutboundRequests.add(req);
+    /**
+     *  The traffic class for an outbound message.
+     *  Tunnel data is participating if sent at participating priority or lower,
+     *  otherwise it's ours.
+     *
+     *  @param i2npType the I2NP message type, or -1 if none (acks, establishment)
+     *  @param priority the OutNetMessage priority
+     *  @return CLASS_*
+     *  @since 0.9.71+
+     */
+    public static int trafficClass(int i2npType, int priority) {
+        switch (i2npType) {
+            case TunnelBuildMessage.MESSAGE_TYPE:
+            case TunnelBuildReplyMessage.MESSAGE_TYPE:
+            case VariableTunnelBuildMessage.MESSAGE_TYPE:
+            case VariableTunnelBuildReplyMessage.MESSAGE_TYPE:
+            case ShortTunnelBuildMessage.MESSAGE_TYPE:
+            case OutboundTunnelBuildReplyMessage.MESSAGE_TYPE:
+                return CLASS_BUILD;
+            case DatabaseStoreMessage.MESSAGE_TYPE:
+            case DatabaseLookupMessage.MESSAGE_TYPE:
+            case DatabaseSearchReplyMessage.MESSAGE_TYPE:
+                return CLASS_NETDB;
+            case TunnelDataMessage.MESSAGE_TYPE:
+            case TunnelGatewayMessage.MESSAGE_TYPE:
+                return priority <= OutNetMessage.PRIORITY_PARTICIPATING ? CLASS_PARTICIPATING : CLASS_CLIENT;
+            case -1:
+                return CLASS_OTHER;
+            default:
+                return CLASS_CLIENT;
         }
+    }
+
+    private void requestOutbound(SimpleRequest req, int bytesOut, String purpose) {
+        int pending = _pendingOutboundRequests.add(req);
+        // no-op if just done by the caller
+        _refiller.refillNow();
         satisfyOutboundRequests(req.satisfiedBuffer);
         req.satisfiedBuffer.clear();
         if (pending > 0)
@@ -453,14 +557,13 @@ public class FIFOBandwidthLimiter {
     }
 
     /**
-     * More bytes are available - add them to the queue and satisfy any requests
-     * we can
+     * More bytes are available - add them to the buckets.
+     * Does not satisfy any requests, caller must call satisfyRequests().
      *
-     * @param buf contains satisfied outbound requests, really just to avoid object thrash, not really used
      * @param maxBurstIn allow up to this many bytes in from the burst section for this time period (may be negative)
      * @param maxBurstOut allow up to this many bytes in from the burst section for this time period (may be negative)
      */
-    final void refillBandwidthQueues(List<Request> buf, long bytesInbound, long bytesOutbound, long maxBurstIn, long maxBurstOut) {
+    final void addBandwidth(long bytesInbound, long bytesOutbound, long maxBurstIn, long maxBurstOut) {
         // Take some care throughout to minimize accesses to the atomics,
         // both for efficiency and to not let strange things happen if
         // it changes out from under us
@@ -515,12 +618,9 @@ public class FIFOBandwidthLimiter {
                 }
             }
         }
-
-        satisfyRequests(buf);
-        updateStats();
     }
 
-    private void updateStats() {
+    void updateStats() {
         long now = now();
         long time = now - _lastStatsUpdated;
         // If at least one second has passed
@@ -552,69 +652,83 @@ public class FIFOBandwidthLimiter {
     }
 
     /**
-     * Go through the queue, satisfying as many requests as possible (notifying
+     * Go through the queues, satisfying as many requests as possible (notifying
      * each one satisfied that the request has been granted).
      *
-     * @param buffer Out parameter, returned with the satisfied outbound requests only
+     * @param buffer scratch space for the satisfied requests, cleared on return
      */
-    private final void satisfyRequests(List<Request> buffer) {
+    final void satisfyRequests(List<Request> buffer) {
         buffer.clear();
         satisfyInboundRequests(buffer);
-        buffer.clear();
         satisfyOutboundRequests(buffer);
     }
 
     /**
      * Satisfy the pending inbound requests with currently available bandwidth.
-     * @param satisfied Out parameter, returned with the satisfied requests added
+     * @param satisfied scratch space for the satisfied requests, cleared on return
      */
     private final void satisfyInboundRequests(List<Request> satisfied) {
-        synchronized (_pendingInboundRequests) {
-            if (_inboundUnlimited) {
-                locked_satisfyInboundUnlimited(satisfied);
-            } else {
-                if (_availableInbound.get() > 0) {
-                    locked_satisfyInboundAvailable(satisfied);
+        satisfy(_pendingInboundRequests, true, satisfied);
+    }
+
+    /**
+     * Satisfy the pending outbound requests with currently available bandwidth.
+     * @param satisfied scratch space for the satisfied requests, cleared on return
+     */
+    private final void satisfyOutboundRequests(List<Request> satisfied) {
+        satisfy(_pendingOutboundRequests, false, satisfied);
+    }
+
+    /**
+     *  Only one thread at a time hands out bandwidth from a queue.
+     *  A thread that can't get the lock marks the queue dirty and returns
+     *  without waiting, and the holder goes around again, so a request
+     *  added during a pass is not left for the next refill.
+     *  Requests are notified outside the lock.
+     *
+     *  @since 0.9.71+
+     */
+    private void satisfy(RequestQueue q, boolean inbound, List<Request> satisfied) {
+        while (true) {
+            // set before trying, so either we get the lock or the holder sees it after unlocking
+            q.dirty.set(true);
+            if (!q.lock.tryLock())
+                return;
+            try {
+                q.dirty.set(false);
+                if (inbound ? _inboundUnlimited : _outboundUnlimited) {
+                    locked_satisfyUnlimited(q, inbound, satisfied);
+                } else if ((inbound ? _availableInbound : _availableOutbound).get() > 0) {
+                    locked_satisfyAvailable(q, inbound, satisfied);
                 } else {
                     // no bandwidth available
                     if (_log.shouldDebug())
-                        _log.debug("Denying " + _pendingInboundRequests.size()
-                                  + " pending inbound requests (no bandwidth available)\n* Status: " + getInboundStatus()
-                                  + "Longest waited " + locked_getLongestInboundWait() + "ms");
+                        _log.debug("Denying " + q.size() + " pending " + (inbound ? "inbound" : "outbound")
+                                  + " requests (no bandwidth available)\n* Status: "
+                                  + (inbound ? getInboundStatus() : getOutboundStatus())
+                                  + "Longest waited " + locked_getLongestWait(q) + "ms");
                 }
+            } finally {
+                q.lock.unlock();
             }
-        }
-
-        if (satisfied != null) {
             for (int i = 0; i < satisfied.size(); i++) {
                 SimpleRequest creq = (SimpleRequest)satisfied.get(i);
                 creq.notifyAllocation();
             }
+            satisfied.clear();
+            if (!q.dirty.get())
+                return;
         }
     }
 
     /** Called from debug logging only. */
-    private long locked_getLongestInboundWait() {
-        long start = -1;
-        for (int i = 0; i < _pendingInboundRequests.size(); i++) {
-            Request req = _pendingInboundRequests.get(i);
-            if ( (start < 0) || (start > req.getRequestTime()) )
-                start = req.getRequestTime();
-        }
-        if (start == -1)
-            return 0;
-        else
-            return now() - start;
-    }
-
-    /** Called from debug logging only. */
-    private long locked_getLongestOutboundWait() {
+    private long locked_getLongestWait(RequestQueue q) {
         long start = -1;
-        for (int i = 0; i < _pendingOutboundRequests.size(); i++) {
-            Request req = _pendingOutboundRequests.get(i);
-            if (req == null) continue;
-            if ( (start < 0) || (start > req.getRequestTime()) )
-                start = req.getRequestTime();
+        for (Queue<SimpleRequest> cq : q.queues) {
+            for (SimpleRequest req : cq) {
+                if ( (start < 0) || (start > req.getRequestTime()) )
+                    start = req.getRequestTime();
+            }
         }
         if (start == -1)
             return 0;
@@ -623,200 +737,129 @@ public class FIFOBandwidthLimiter {
     }
 
     /**
-     * There are no limits, so just give every inbound request whatever they want
+     * There are no limits, so just give every request whatever they want
      *
      * @param satisfied out param, list of requests that were completely satisfied
      */
-    private final void locked_satisfyInboundUnlimited(List<Request> satisfied) {
-        while (!_pendingInboundRequests.isEmpty()) {
-            SimpleRequest req = _pendingInboundRequests.remove(0);
+    private final void locked_satisfyUnlimited(RequestQueue q, boolean inbound, List<Request> satisfied) {
+        AtomicLong total = inbound ? _totalAllocatedInboundBytes : _totalAllocatedOutboundBytes;
+        SimpleRequest req;
+        while ((req = q.poll()) != null) {
             int allocated = req.getPendingRequested();
-            _totalAllocatedInboundBytes.addAndGet(allocated);
+            total.addAndGet(allocated);
             req.allocateBytes(allocated);
             satisfied.add(req);
             long waited = now() - req.getRequestTime();
             if (_log.shouldDebug())
-                 _log.debug("Granting inbound request " + req + " fully (waited "
+                 _log.debug("Granting " + (inbound ? "inbound" : "outbound") + " request " + req + " fully (waited "
                             + waited
-                            + "ms) pending " + _pendingInboundRequests.size());
-            if (waited > 10)
-                _context.statManager().addRateData("bwLimiter.inboundDelayedTime", waited);
+                            + "ms) pending " + q.size());
+            delayed(req, inbound, waited);
         }
     }
 
     /**
      * We have limits, so iterate through the requests, allocating as much
      * bandwidth as we can to those who have used what we have given them and are waiting
-     * for more (giving priority to the first ones who requested it)
+     * for more (giving priority to the first ones who requested it).
      *
-     * @param satisfied out param, list of requests that were completely satisfied
-     */
-    private final void locked_satisfyInboundAvailable(List<Request> satisfied) {
-        for (int i = 0; i < _pendingInboundRequests.size(); i++) {
-            SimpleRequest req = _pendingInboundRequests.get(i);
-            long waited = now() - req.getRequestTime();
-            if (req.getAborted()) {
-                // connection decided they don't want the data anymore
-                if (_log.shouldDebug())
-                     _log.debug("Aborting inbound request to "
-                                + req
-                                + " waited "
-                                + waited
-                                + "ms) pending " + _pendingInboundRequests.size());
-                _pendingInboundRequests.remove(i);
-                i--;
-                continue;
-            }
-            int avi = _availableInbound.get();
-            if (avi <= 0) break;
-            // NO, don't do this, since SSU requires a full allocation to proceed.
-            // By stopping after a partial allocation, we stall SSU.
-            // ok, they are really waiting for us to give them stuff
-            int requested = req.getPendingRequested();
-            int allocated;
-            if (avi >= requested)
-                allocated = requested;
-            else
-                allocated = avi;
-            _availableInbound.addAndGet(0 - allocated);
-            _totalAllocatedInboundBytes.addAndGet(allocated);
-            req.allocateBytes(allocated);
-            satisfied.add(req);
-            if (req.getPendingRequested() > 0) {
-                if (_log.shouldDebug())
-                     _log.debug("Allocating " + allocated + " bytes inbound as a partial grant to "
-                                + req
-                                + " waited "
-                                + waited
-                                + "ms) pending " + _pendingInboundRequests.size()
-                                + ", longest waited " + locked_getLongestInboundWait() + " in");
-            } else {
-                if (_log.shouldDebug())
-                     _log.debug("Allocating " + allocated + " bytes inbound to finish the partial grant to "
-                                + req
-                                + " waited "
-                                + waited
-                                + "ms) pending " + _pendingInboundRequests.size()
-                                + ", longest waited " + locked_getLongestInboundWait() + " out");
-                _pendingInboundRequests.remove(i);
-                i--;
-                if (waited > 10)
-                    _context.statManager().addRateData("bwLimiter.inboundDelayedTime", waited);
-            }
-        }
-    }
-
-    /**
-     * Satisfy the pending outbound requests with currently available bandwidth.
-     * @param satisfied Out parameter, returned with the satisfied requests added
+     * Outbound, the traffic classes take turns (deficit round robin),
+     * each getting up to QUANTUM bytes per round, FIFO within a class,
+     * and the class that goes first changes every round.
+     *
+     * @param satisfied out param, list of requests that were allocated anything
      */
-    private final void satisfyOutboundRequests(List<Request> satisfied) {
-        synchronized (_pendingOutboundRequests) {
-            if (_outboundUnlimited) {
-                locked_satisfyOutboundUnlimited(satisfied);
-            } else {
-                if (_availableOutbound.get() > 0) {
-                    locked_satisfyOutboundAvailable(satisfied);
-                } else {
-                    // no bandwidth available
+    private final void locked_satisfyAvailable(RequestQueue q, boolean inbound, List<Request> satisfied) {
+        AtomicInteger available = inbound ? _availableInbound : _availableOutbound;
+        AtomicLong total = inbound ? _totalAllocatedInboundBytes : _totalAllocatedOutboundBytes;
+        int classes = q.queues.length;
+        long quantum = classes > 1 ? QUANTUM : Integer.MAX_VALUE;
+        int pass = q.nextPass();
+        boolean progress = true;
+        while (progress && q.size() > 0 && available.get() > 0) {
+            progress = false;
+            for (int i = 0; i < classes; i++) {
+                int c = (q.next + i) % classes;
+                Queue<SimpleRequest> cq = q.queues[c];
+                if (cq.isEmpty()) {
+                    q.deficit[c] = 0;
+                    continue;
+                }
+                if (available.get() <= 0)
+                    break;
+                q.deficit[c] += quantum;
+                SimpleRequest req;
+                while ((req = cq.peek()) != null) {
+                    long waited = now() - req.getRequestTime();
+                    if (req.getAborted()) {
+                        // connection decided they don't want the data anymore
+                        if (_log.shouldDebug())
+                             _log.debug("Aborting " + (inbound ? "inbound" : "outbound") + " request to "
+                                        + req
+                                        + " waited "
+                                        + waited
+                                        + "ms) pending " + q.size());
+                        q.remove(cq);
+                        progress = true;
+                        continue;
+                    }
+                    int avail = available.get();
+                    if (avail <= 0)
+                        break;
+                    // NO, don't stop after a partial allocation, since SSU requires a full allocation to proceed.
+                    // By stopping after a partial allocation, we stall SSU.
+                    // ok, they are really waiting for us to give them stuff
+                    int requested = req.getPendingRequested();
+                    int allocated = (int) Math.min(Math.min(requested, avail), q.deficit[c]);
+                    if (allocated <= 0 && requested > 0)
+                        break;
+                    q.deficit[c] -= allocated;
+                    available.addAndGet(0 - allocated);
+                    total.addAndGet(allocated);
+                    req.allocateBytes(allocated);
+                    progress = true;
+                    // once per pass, so a request isn't completed twice
+                    if (req.markPass(pass))
+                        satisfied.add(req);
+                    if (req.getPendingRequested() > 0) {
+                        if (_log.shouldDebug())
+                             _log.debug("Allocating " + allocated + " bytes " + (inbound ? "inbound" : "outbound")
+                                        + " as a partial grant to "
+                                        + req
+                                        + " waited "
+                                        + waited
+                                        + "ms) pending " + q.size());
+                        break;
+                    }
                     if (_log.shouldDebug())
-                        _log.debug("Denying " + _pendingOutboundRequests.size()
-                                  + " pending outbound requests (no bandwidth available)\n* Status: " + getOutboundStatus()
-                                  + "Longest waited " + locked_getLongestOutboundWait() + "ms");
+                         _log.debug("Allocating " + allocated + " bytes " + (inbound ? "inbound" : "outbound")
+                                    + " to finish the partial grant to "
+                                    + req
+                                    + " waited "
+                                    + waited
+                                    + "ms) pending " + q.size());
+                    q.remove(cq);
+                    delayed(req, inbound, waited);
                 }
+                if (cq.isEmpty())
+                    q.deficit[c] = 0;
             }
-        }
-
-        if (satisfied != null) {
-            for (int i = 0; i < satisfied.size(); i++) {
-                SimpleRequest creq = (SimpleRequest)satisfied.get(i);
-                creq.notifyAllocation();
-            }
-        }
-    }
-
-    /**
-     * There are no limits, so just give every outbound request whatever they want
-     *
-     * @param satisfied out param, list of requests that were completely satisfied
-     */
-    private final void locked_satisfyOutboundUnlimited(List<Request> satisfied) {
-        while (!_pendingOutboundRequests.isEmpty()) {
-            SimpleRequest req = _pendingOutboundRequests.remove(0);
-            int allocated = req.getPendingRequested();
-            _totalAllocatedOutboundBytes.addAndGet(allocated);
-            req.allocateBytes(allocated);
-            satisfied.add(req);
-            long waited = now() - req.getRequestTime();
-            if (_log.shouldDebug())
-                 _log.debug("Granting outbound request " + req + " fully (waited "
-                            + waited
-                            + "ms) pending " + _pendingOutboundRequests.size()
-                            + ", longest waited " + locked_getLongestOutboundWait() + " out");
-            if (waited > 10)
-                _context.statManager().addRateData("bwLimiter.outboundDelayedTime", waited);
+            q.next = (q.next + 1) % classes;
         }
     }
 
     /**
-     * We have limits, so iterate through the requests, allocating as much
-     * bandwidth as we can to those who have used what we have given them and are waiting
-     * for more (giving priority to the first ones who requested it)
-     *
-     * @param satisfied out param, list of requests that were completely satisfied
+     *  Stats for a request that had to wait
+     *  @since 0.9.71+
      */
-    private final void locked_satisfyOutboundAvailable(List<Request> satisfied) {
-        for (int i = 0; i < _pendingOutboundRequests.size(); i++) {
-            SimpleRequest req = _pendingOutboundRequests.get(i);
-            long waited = now() - req.getRequestTime();
-            if (req.getAborted()) {
-                // connection decided they don't want the data anymore
-                if (_log.shouldDebug())
-                     _log.debug("Aborting outbound request to "
-                                + req
-                                + " waited "
-                                + waited
-                                + "ms) pending " + _pendingOutboundRequests.size());
-                _pendingOutboundRequests.remove(i);
-                i--;
-                continue;
-            }
-            int avo = _availableOutbound.get();
-            if (avo <= 0) break;
-            // NO, don't do this, since SSU requires a full allocation to proceed.
-            // By stopping after a partial allocation, we stall SSU.
-            // ok, they are really waiting for us to give them stuff
-            int requested = req.getPendingRequested();
-            int allocated;
-            if (avo >= requested)
-                allocated = requested;
-            else
-                allocated = avo;
-            _availableOutbound.addAndGet(0 - allocated);
-            _totalAllocatedOutboundBytes.addAndGet(allocated);
-            req.allocateBytes(allocated);
-            satisfied.add(req);
-            if (req.getPendingRequested() > 0) {
-                if (_log.shouldDebug())
-                     _log.debug("Allocating " + allocated + " bytes outbound as a partial grant to "
-                                + req
-                                + " waited "
-                                + waited
-                                + "ms) pending " + _pendingOutboundRequests.size()
-                                + ", longest waited " + locked_getLongestOutboundWait() + " out");
-            } else {
-                if (_log.shouldDebug())
-                     _log.debug("Allocating " + allocated + " bytes outbound to finish the partial grant to "
-                                + req
-                                + " waited "
-                                + waited
-                                + "ms) pending " + _pendingOutboundRequests.size()
-                                + ", longest waited " + locked_getLongestOutboundWait() + " out)");
-                _pendingOutboundRequests.remove(i);
-                i--;
-                if (waited > 10)
-                    _context.statManager().addRateData("bwLimiter.outboundDelayedTime", waited);
-            }
+    private void delayed(SimpleRequest req, boolean inbound, long waited) {
+        if (waited <= 10)
+            return;
+        if (inbound) {
+            _context.statManager().addRateData("bwLimiter.inboundDelayedTime", waited);
+        } else {
+            _context.statManager().addRateData("bwLimiter.outboundDelayedTime", waited);
+            _context.statManager().addRateData(DELAYED_STATS[req.getTrafficClass()], waited);
         }
     }
 
@@ -831,7 +874,7 @@ public class FIFOBandwidthLimiter {
      */
     private boolean shortcutSatisfyInboundRequest(int requested) {
         boolean rv = _inboundUnlimited ||
-                     (_pendingInboundRequests.isEmpty() &&
+                     (_pendingInboundRequests.size() == 0 &&
                       _availableInbound.get() >= requested);
         if (rv) {
             _availableInbound.addAndGet(0 - requested);
@@ -851,7 +894,7 @@ public class FIFOBandwidthLimiter {
      */
     private boolean shortcutSatisfyOutboundRequest(int requested) {
         boolean rv = _outboundUnlimited ||
-                     (_pendingOutboundRequests.isEmpty() &&
+                     (_pendingOutboundRequests.size() == 0 &&
                       _availableOutbound.get() >= requested);
         if (rv) {
             _availableOutbound.addAndGet(0 - requested);
@@ -860,6 +903,90 @@ public class FIFOBandwidthLimiter {
         return rv;
     }
 
+    /**
+     *  Pending requests, one FIFO per traffic class, or just one for inbound.
+     *  Adds are lock-free. Removals and the round robin state
+     *  are for the holder of the lock only.
+     *
+     *  @since 0.9.71+
+     */
+    private static class RequestQueue {
+        final Queue<SimpleRequest>[] queues;
+        final long[] deficit;
+        final ReentrantLock lock = new ReentrantLock();
+        final AtomicBoolean dirty = new AtomicBoolean();
+        /** may be briefly higher than the actual count, never lower */
+        private final AtomicInteger _size = new AtomicInteger();
+        /** following are lock holder only */
+        int next;
+        private int _pass;
+
+        @SuppressWarnings("unchecked")
+        RequestQueue(boolean classed) {
+            int n = classed ? CLASS_NAMES.length : 1;
+            queues = new Queue[n];
+            for (int i = 0; i < n; i++) {
+                queues[i] = new ConcurrentLinkedQueue<SimpleRequest>();
+            }
+            deficit = new long[n];
+        }
+
+        /**
+         *  @return the number pending before this one
+         */
+        int add(SimpleRequest req) {
+            // count first, so the shortcut doesn't jump ahead of it
+            int rv = _size.getAndIncrement();
+            queues[queues.length > 1 ? req.getTrafficClass() : 0].offer(req);
+            return rv;
+        }
+
+        int size() { return _size.get(); }
+
+        /** Lock holder only. Remove the head of cq */
+        void remove(Queue<SimpleRequest> cq) {
+            if (cq.poll() != null)
+                _size.decrementAndGet();
+        }
+
+        /** Lock holder only, any order */
+        SimpleRequest poll() {
+            for (Queue<SimpleRequest> cq : queues) {
+                SimpleRequest rv = cq.poll();
+                if (rv != null) {
+                    _size.decrementAndGet();
+                    return rv;
+                }
+            }
+            return null;
+        }
+
+        /** Lock holder only, never 0 */
+        int nextPass() {
+            if (++_pass == 0)
+                _pass = 1;
+            return _pass;
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                for (Queue<SimpleRequest> cq : queues) {
+                    int n = 0;
+                    while (cq.poll() != null) {
+                        n++;
+                    }
+                    _size.addAndGet(0 - n);
+                }
+                for (int i = 0; i < deficit.length; i++) {
+                    deficit[i] = 0;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
     /** @deprecated not worth translating */
     @Deprecated
     public void renderStatusHTML(Writer out) throws IOException {
@@ -878,6 +1005,9 @@ public class FIFOBandwidthLimiter {
         private CompleteListener _lsnr;
         private Object _attachment;
         private int _priority;
+        private int _trafficClass;
+        /** queue lock holder only */
+        private int _pass;
 
         /**
          *  Allocation request for the given byte count.
@@ -910,6 +1040,31 @@ public class FIFOBandwidthLimiter {
             _waited = false;
             _lsnr = null;
             _attachment = null;
+            _trafficClass = CLASS_OTHER;
+            _pass = 0;
+        }
+
+        /**
+         *  Must be set before the request is queued.
+         *  @since 0.9.71+
+         */
+        void setTrafficClass(int cls) {
+            _trafficClass = (cls >= 0 && cls < CLASS_NAMES.length) ? cls : CLASS_OTHER;
+        }
+
+        /** @since 0.9.71+ */
+        int getTrafficClass() { return _trafficClass; }
+
+        /**
+         *  Queue lock holder only.
+         *  @return true the first time this is called for the pass
+         *  @since 0.9.71+
+         */
+        boolean markPass(int pass) {
+            if (_pass == pass)
+                return false;
+            _pass = pass;
+            return true;
         }
 
         /** Uses System clock, not context clock. */
@@ -2,6 +2,7 @@ package net.i2p.router.transport;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import net.i2p.router.Router;
 import net.i2p.router.RouterContext;
 
@@ -21,7 +22,9 @@ import net.i2p.util.SystemVersion;
  *
  * <strong>Refill Strategy:</strong>
  * <ul>
- *   <li>Fixed interval token replenishment</li>
+ *   <li>Fixed interval token replenishment, and on demand
+ *       by requests between intervals (since 0.9.71+)</li>
+ *   <li>Fractional bytes carried over, so short intervals lose nothing</li>
  *   <li>Configurable refill rates and amounts</li>
  *   <li>Separate inbound and outbound bandwidth tracking</li>
  *   <li>Participating bandwidth counter (since 0.8.12)</li>
@@ -74,6 +77,10 @@ public class FIFOBandwidthRefiller implements Runnable {
     /** How frequently we check the config for updates. */
     private volatile long _configCheckPeriodMs = 60*1000L;
     private volatile boolean _isRunning;
+    /** guards the refill time and the remainders below */
+    private final ReentrantLock _refillLock = new ReentrantLock();
+    /** fractions of a byte, in thousandths, not yet added */
+    private long _inRemainder, _outRemainder, _burstInRemainder, _burstOutRemainder;
 
     /** Property for inbound bandwidth. */
     public static final String PROP_INBOUND_BANDWIDTH = "i2np.bandwidth.inboundKBytesPerSecond";
@@ -152,9 +159,17 @@ public class FIFOBandwidthRefiller implements Runnable {
         _isRunning = true;
     }
 
-    /** Shut down the bandwidth refiller */
+    /**
+     *  Shut down the bandwidth refiller.
+     *  Waits for a refill in progress, nothing is added after this returns.
+     */
     synchronized void shutdown() {
-        _isRunning = false;
+        _refillLock.lock();
+        try {
+            _isRunning = false;
+        } finally {
+            _refillLock.unlock();
+        }
     }
 
     public void run() {
@@ -173,10 +188,7 @@ public class FIFOBandwidthRefiller implements Runnable {
             if ((++i) == 0)
                 updateParticipating(now);
 
-            boolean updated = updateQueues(buffer, now);
-            if (updated) {
-                _lastRefillTime = now;
-            }
+            updateQueues(buffer, now);
 
             try { Thread.sleep(_replenishFrequency); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
         }
@@ -184,38 +196,90 @@ public class FIFOBandwidthRefiller implements Runnable {
 
     /** Reset refill timing and reload configuration. */
     synchronized void reinitialize() {
-        _lastRefillTime = _limiter.now();
+        _refillLock.lock();
+        try {
+            _lastRefillTime = _limiter.now();
+            _inRemainder = _outRemainder = _burstInRemainder = _burstOutRemainder = 0;
+        } finally {
+            _refillLock.unlock();
+        }
         checkConfig();
         _lastCheckConfigTime = _lastRefillTime;
     }
 
-    private boolean updateQueues(List<FIFOBandwidthLimiter.Request> buffer, long now) {
-        long numMs = (now - _lastRefillTime);
-        if (_log.shouldDebug())
-            _log.debug("Updating bandwidth after " + numMs + "ms"
-                       + "\n* Status: " + _limiter.getStatus().toString()
-                       + " Rate in: " + _inboundKBytesPerSecond + "KB/s;"
-                       + " Rate out: " + _outboundKBytesPerSecond + "KB/s");
-        // clock skew
-        if (numMs >= _replenishFrequency * 50 || numMs <= 0)
-            numMs = _replenishFrequency;
-        if (numMs >= _replenishFrequency) {
-            long inboundToAdd = ((long) 1024 * _inboundKBytesPerSecond * numMs)/1000;
-            long outboundToAdd = ((long) 1024 * _outboundKBytesPerSecond * numMs)/1000;
-
-            if (inboundToAdd < 0) inboundToAdd = 0;
-            if (outboundToAdd < 0) outboundToAdd = 0;
-
-            long maxBurstIn = ((long) (_inboundBurstKBytesPerSecond-_inboundKBytesPerSecond) * 1024 * numMs)/1000;
-            long maxBurstOut = ((long) (_outboundBurstKBytesPerSecond-_outboundKBytesPerSecond) * 1024 * numMs)/1000;
-            _limiter.refillBandwidthQueues(buffer, inboundToAdd, outboundToAdd, maxBurstIn, maxBurstOut);
-
-            return true;
-        } else {
+    /**
+     *  Add what's due and satisfy what we can.
+     *  Requests may have refilled since our last run, see refillNow(),
+     *  but the queues still need a pass.
+     */
+    private void updateQueues(List<FIFOBandwidthLimiter.Request> buffer, long now) {
+        _refillLock.lock();
+        try {
+            long numMs = (now - _lastRefillTime);
             if (_log.shouldDebug())
-                _log.debug("Refresh delay too fast (" + numMs + "ms)");
-            return false;
+                _log.debug("Updating bandwidth after " + numMs + "ms"
+                           + "\n* Status: " + _limiter.getStatus().toString()
+                           + " Rate in: " + _inboundKBytesPerSecond + "KB/s;"
+                           + " Rate out: " + _outboundKBytesPerSecond + "KB/s");
+            if (numMs != 0)
+                refill(now, numMs);
+        } finally {
+            _refillLock.unlock();
         }
+        _limiter.satisfyRequests(buffer);
+        _limiter.updateStats();
+    }
+
+    /**
+     *  Add the bytes due since the last refill, so a request doesn't
+     *  wait for the next interval when the bucket has just run dry.
+     *  Does not satisfy queued requests, the limiter does that.
+     *  Does not block; returns if another thread is refilling.
+     *
+     *  @since 0.9.71+
+     */
+    void refillNow() {
+        long now = _limiter.now();
+        if (now == _lastRefillTime || !_refillLock.tryLock())
+            return;
+        try {
+            long numMs = now - _lastRefillTime;
+            if (numMs != 0)
+                refill(now, numMs);
+        } finally {
+            _refillLock.unlock();
+        }
+    }
+
+    /**
+     *  Refill lock must be held.
+     *  Does nothing after shutdown.
+     *  @param numMs nonzero
+     *  @since 0.9.71+
+     */
+    private void refill(long now, long numMs) {
+        if (!_isRunning)
+            return;
+        // clock skew
+        if (numMs >= _replenishFrequency * 50 || numMs < 0)
+            numMs = _replenishFrequency;
+        // in thousandths of a byte, carrying the remainder from last time
+        long in = (long) 1024 * _inboundKBytesPerSecond * numMs + _inRemainder;
+        long out = (long) 1024 * _outboundKBytesPerSecond * numMs + _outRemainder;
+        long burstIn = (long) (_inboundBurstKBytesPerSecond - _inboundKBytesPerSecond) * 1024 * numMs + _burstInRemainder;
+        long burstOut = (long) (_outboundBurstKBytesPerSecond - _outboundKBytesPerSecond) * 1024 * numMs + _burstOutRemainder;
+        _inRemainder = Math.max(0, in % 1000);
+        _outRemainder = Math.max(0, out % 1000);
+        _burstInRemainder = Math.max(0, burstIn % 1000);
+        _burstOutRemainder = Math.max(0, burstOut % 1000);
+        long inboundToAdd = in / 1000;
+        long outboundToAdd = out / 1000;
+
+        if (inboundToAdd < 0) inboundToAdd = 0;
+        if (outboundToAdd < 0) outboundToAdd = 0;
+
+        _limiter.addBandwidth(inboundToAdd, outboundToAdd, burstIn / 1000, burstOut / 1000);
+        _lastRefillTime = now;
     }
 
     /**
@@ -12,15 +12,20 @@ package net.i2p.router.transport;
  * Tracks the status of outbound messages.
  */
 
-import java.io.IOException;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import net.i2p.data.Hash;
+import net.i2p.data.i2np.DatabaseSearchReplyMessage;
+import net.i2p.data.i2np.DatabaseStoreMessage;
+import net.i2p.data.i2np.DeliveryStatusMessage;
 import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.Job;
 import net.i2p.router.MessageSelector;
 import net.i2p.router.OutNetMessage;
@@ -32,13 +37,31 @@ import net.i2p.util.SimpleTimer2;
 
 /**
  *  Tracks outbound messages.
+ *
+ *  IndexedMessageSelectors are kept in a concurrent map keyed by the
+ *  DeliveryStatusMessage ID (as a Long) or netDb key (as a Hash) they wait for,
+ *  so a received message only has to be checked against the selectors for its own key.
+ *  Each key's selectors are matched under that key's bin lock in the map.
+ *  All other selectors are checked in a linear scan of a fallback list.
  */
 public class OutboundMessageRegistry {
     private final Log _log;
-    /** List of currently active MessageSelector instances. */
+    /**
+     *  Currently active MessageSelector instances that are not indexed.
+     *  Also the lock for matching them and for the CleanupTask expiration.
+     */
     private final List<MessageSelector> _selectors;
-    /** Map of active MessageSelector to either an OutNetMessage or a List of OutNetMessages causing it (for quick removal). */
-    private final Map<MessageSelector, Object> _selectorToMessage;
+    /**
+     *  Currently active IndexedMessageSelector instances, by Long ID or Hash key.
+     *  Arrays are copy-on-write, only modified in compute methods.
+     *  @since 0.9.71+
+     */
+    private final ConcurrentHashMap<Object, MessageSelector[]> _index;
+    /**
+     *  Map of active MessageSelector to either an OutNetMessage or a List of OutNetMessages causing it (for quick removal).
+     *  Lists are copy-on-write, only modified in compute methods.
+     */
+    private final ConcurrentHashMap<MessageSelector, Object> _selectorToMessage;
     /**
      *  set of active OutNetMessage (for quick removal and selector fetching)
      *  !! Really? seems only for dup detection in registerPending().
@@ -51,14 +74,17 @@ public class OutboundMessageRegistry {
     private final CleanupTask _cleanupTask;
     private final RouterContext _context;
 
+    private static final MessageSelector[] EMPTY = new MessageSelector[0];
+
     /**
      * OutboundMessageRegistry.
      */
     public OutboundMessageRegistry(RouterContext context) {
         _context = context;
         _log = _context.logManager().getLog(OutboundMessageRegistry.class);
-        _selectors = new ArrayList<>(64);
-        _selectorToMessage = new HashMap<>(64);
+        _selectors = new CopyOnWriteArrayList<MessageSelector>();
+        _index = new ConcurrentHashMap<Object, MessageSelector[]>(256);
+        _selectorToMessage = new ConcurrentHashMap<MessageSelector, Object>(256);
         _activeMessages = new ConcurrentHashSet<>(64);
         _cleanupTask = new CleanupTask();
     }
@@ -67,12 +93,9 @@ public class OutboundMessageRegistry {
      *  Does something @since 0.8.8
      */
     public void shutdown() {
-        synchronized (_selectors) {
-            _selectors.clear();
-        }
-        synchronized (_selectorToMessage) {
-            _selectorToMessage.clear();
-        }
+        _selectors.clear();
+        _index.clear();
+        _selectorToMessage.clear();
         // Calling the fail job for every active message would
         // be way too much at shutdown/restart, right?
         _activeMessages.clear();
@@ -103,18 +126,27 @@ public class OutboundMessageRegistry {
         List<MessageSelector> matchedSelectors = null;
         List<MessageSelector> removedSelectors = null;
 
-        synchronized (_selectors) {
-            for (int i = 0; i < _selectors.size(); i++) {
-                MessageSelector sel = _selectors.get(i);
-                boolean isMatch = sel.isMatch(message);
-                if (isMatch) {
-                    if (matchedSelectors == null) matchedSelectors = new ArrayList<>(1);
-                    matchedSelectors.add(sel);
-                    if (!sel.continueMatching()) {
-                        if (removedSelectors == null) removedSelectors = new ArrayList<>(1);
-                        removedSelectors.add(sel);
-                        _selectors.remove(i);
-                        i--;
+        Object key = getReplyKey(message);
+        if (key != null && _index.containsKey(key)) {
+            IndexMatcher matcher = new IndexMatcher(message);
+            _index.computeIfPresent(key, matcher);
+            matchedSelectors = matcher.matched;
+            removedSelectors = matcher.removed;
+        }
+
+        if (!_selectors.isEmpty()) {
+            synchronized (_selectors) {
+                for (MessageSelector sel : _selectors) {
+                    boolean isMatch = sel.isMatch(message);
+                    if (isMatch) {
+                        if (matchedSelectors == null) matchedSelectors = new ArrayList<>(1);
+                        matchedSelectors.add(sel);
+                        if (!sel.continueMatching()) {
+                            if (removedSelectors == null) removedSelectors = new ArrayList<>(1);
+                            removedSelectors.add(sel);
+                            // iterator is a snapshot
+                            _selectors.remove(sel);
+                        }
                     }
                 }
             }
@@ -125,31 +157,24 @@ public class OutboundMessageRegistry {
             rv = new ArrayList<>(matchedSelectors.size());
             for (MessageSelector sel : matchedSelectors) {
                 boolean removed = false;
-                OutNetMessage msg = null;
-                List<OutNetMessage> msgs = null;
-                synchronized (_selectorToMessage) {
-                    Object o;
-                    if ( (removedSelectors != null) && (removedSelectors.contains(sel)) ) {
-                        o = _selectorToMessage.remove(sel);
-                        removed = true;
-                    } else {
-                        o = _selectorToMessage.get(sel);
-                    }
-
-                    if (o instanceof OutNetMessage) {
-                        msg = (OutNetMessage)o;
-                        rv.add(msg);
-                    } else if (o instanceof List) {
-                        msgs = (List<OutNetMessage>)o;
-                        rv.addAll(msgs);
-                    }
+                Object o;
+                if ( (removedSelectors != null) && (removedSelectors.contains(sel)) ) {
+                    o = _selectorToMessage.remove(sel);
+                    removed = true;
+                } else {
+                    o = _selectorToMessage.get(sel);
                 }
-                if (removed) {
-                    if (msg != null) {
+
+                if (o instanceof OutNetMessage) {
+                    OutNetMessage msg = (OutNetMessage)o;
+                    rv.add(msg);
+                    if (removed)
                         _activeMessages.remove(msg);
-                    } else if (msgs != null) {
+                } else if (o instanceof List) {
+                    List<OutNetMessage> msgs = (List<OutNetMessage>)o;
+                    rv.addAll(msgs);
+                    if (removed)
                         _activeMessages.removeAll(msgs);
-                    }
                 }
             }
         } else {
@@ -159,6 +184,152 @@ public class OutboundMessageRegistry {
         return rv;
     }
 
+    /**
+     *  The index key of a received message.
+     *
+     *  @return Long, Hash, or null if the message type is not indexed
+     *  @since 0.9.71+
+     */
+    private static Object getReplyKey(I2NPMessage message) {
+        switch (message.getType()) {
+            case DeliveryStatusMessage.MESSAGE_TYPE:
+                return Long.valueOf(((DeliveryStatusMessage) message).getMessageId());
+            case DatabaseStoreMessage.MESSAGE_TYPE:
+                return ((DatabaseStoreMessage) message).getKey();
+            case DatabaseSearchReplyMessage.MESSAGE_TYPE:
+                return ((DatabaseSearchReplyMessage) message).getSearchKey();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     *  The index key of a selector.
+     *
+     *  @return Long, Hash, or null if it can't be indexed
+     *  @since 0.9.71+
+     */
+    private static Object getIndexKey(MessageSelector sel) {
+        if (!(sel instanceof IndexedMessageSelector))
+            return null;
+        IndexedMessageSelector isel = (IndexedMessageSelector) sel;
+        Hash h = isel.getReplyKey();
+        if (h != null)
+            return h;
+        long id = isel.getReplyId();
+        return id >= 0 ? Long.valueOf(id) : null;
+    }
+
+    /**
+     *  Calls isMatch() on each selector for a key, and removes the ones that are done.
+     *  Runs inside ConcurrentHashMap.computeIfPresent(), so isMatch() is never
+     *  called concurrently for the same key.
+     *
+     *  @since 0.9.71+
+     */
+    private static class IndexMatcher implements BiFunction<Object, MessageSelector[], MessageSelector[]> {
+        private final I2NPMessage _message;
+        List<MessageSelector> matched;
+        List<MessageSelector> removed;
+
+        public IndexMatcher(I2NPMessage message) {
+            _message = message;
+        }
+
+        public MessageSelector[] apply(Object key, MessageSelector[] sels) {
+            for (MessageSelector sel : sels) {
+                if (sel.isMatch(_message)) {
+                    if (matched == null) matched = new ArrayList<MessageSelector>(1);
+                    matched.add(sel);
+                    if (!sel.continueMatching()) {
+                        if (removed == null) removed = new ArrayList<MessageSelector>(1);
+                        removed.add(sel);
+                    }
+                }
+            }
+            if (removed == null)
+                return sels;
+            int remaining = sels.length - removed.size();
+            if (remaining <= 0)
+                return null;
+            MessageSelector[] rv = new MessageSelector[remaining];
+            int i = 0;
+            for (MessageSelector sel : sels) {
+                if (!removed.contains(sel))
+                    rv[i++] = sel;
+            }
+            return rv;
+        }
+    }
+
+    /**
+     *  Add to the index, or to the fallback list if it can't be indexed.
+     *  No-op if already present.
+     *
+     *  @since 0.9.71+
+     */
+    private void addSelector(final MessageSelector sel) {
+        Object key = getIndexKey(sel);
+        if (key == null) {
+            ((CopyOnWriteArrayList<MessageSelector>) _selectors).addIfAbsent(sel);
+            return;
+        }
+        _index.compute(key, new BiFunction<Object, MessageSelector[], MessageSelector[]>() {
+            public MessageSelector[] apply(Object k, MessageSelector[] sels) {
+                if (sels == null)
+                    return new MessageSelector[] { sel };
+                for (MessageSelector s : sels) {
+                    if (s == sel)
+                        return sels;
+                }
+                MessageSelector[] rv = new MessageSelector[sels.length + 1];
+                System.arraycopy(sels, 0, rv, 0, sels.length);
+                rv[sels.length] = sel;
+                return rv;
+            }
+        });
+    }
+
+    /**
+     *  Remove from the index or the fallback list.
+     *
+     *  @since 0.9.71+
+     */
+    private void removeSelector(final MessageSelector sel) {
+        Object key = getIndexKey(sel);
+        if (key == null) {
+            _selectors.remove(sel);
+            return;
+        }
+        _index.computeIfPresent(key, new BiFunction<Object, MessageSelector[], MessageSelector[]>() {
+            public MessageSelector[] apply(Object k, MessageSelector[] sels) {
+                return without(sels, sel);
+            }
+        });
+    }
+
+    /**
+     *  @return a copy without sel, the same array if sel is not present, or null if empty
+     *  @since 0.9.71+
+     */
+    private static MessageSelector[] without(MessageSelector[] sels, MessageSelector sel) {
+        int idx = -1;
+        for (int i = 0; i < sels.length; i++) {
+            if (sels[i] == sel) {
+                idx = i;
+                break;
+            }
+        }
+        if (idx < 0)
+            return sels;
+        if (sels.length == 1)
+            return null;
+        MessageSelector[] rv = new MessageSelector[sels.length - 1];
+        System.arraycopy(sels, 0, rv, 0, idx);
+        System.arraycopy(sels, idx + 1, rv, idx, rv.length - idx);
+        return rv;
+    }
+
     /**
      *  Registers a new, empty OutNetMessage, with the reply and timeout jobs specified.
      *  The onTimeout job is called at replySelector.getExpiration() (if no reply is received by then)
@@ -193,7 +364,7 @@ public class OutboundMessageRegistry {
      *  @param allowEmpty is msg.getMessage() allowed to be null?
      */
     @SuppressWarnings("unchecked")
-    private void registerPending(OutNetMessage msg, boolean allowEmpty) {
+    private void registerPending(final OutNetMessage msg, boolean allowEmpty) {
         if ( (!allowEmpty) && (msg.getMessage() == null) )
                 throw new IllegalArgumentException("OutNetMessage doesn't contain an I2NPMessage? Impossible?");
         MessageSelector sel = msg.getReplySelector();
@@ -202,25 +373,24 @@ public class OutboundMessageRegistry {
         if (!_activeMessages.add(msg))
             return; // don't add dups
 
-        synchronized (_selectorToMessage) {
-            Object oldMsg = _selectorToMessage.put(sel, msg);
-            if (oldMsg != null) {
-                List<OutNetMessage> multi = null;
+        Object multi = _selectorToMessage.compute(sel, new BiFunction<MessageSelector, Object, Object>() {
+            public Object apply(MessageSelector s, Object oldMsg) {
+                if (oldMsg == null)
+                    return msg;
+                List<OutNetMessage> rv;
                 if (oldMsg instanceof OutNetMessage) {
-                    multi = new ArrayList<>(4);
-                    multi.add((OutNetMessage)oldMsg);
-                    multi.add(msg);
-                    _selectorToMessage.put(sel, multi);
-                } else if (oldMsg instanceof List) {
-                    multi = (List<OutNetMessage>)oldMsg;
-                    multi.add(msg);
-                    _selectorToMessage.put(sel, multi);
+                    rv = new ArrayList<>(4);
+                    rv.add((OutNetMessage)oldMsg);
+                } else {
+                    rv = new ArrayList<>((List<OutNetMessage>)oldMsg);
                 }
-                if (_log.shouldWarn())
-                    _log.warn("A single message selector [" + sel + "] with multiple messages (" + multi + ")");
+                rv.add(msg);
+                return rv;
             }
-        }
-        synchronized (_selectors) { _selectors.add(sel); }
+        });
+        if (multi instanceof List && _log.shouldWarn())
+            _log.warn("A single message selector [" + sel + "] with multiple messages (" + multi + ")");
+        addSelector(sel);
 
         _cleanupTask.scheduleExpiration(sel);
     }
@@ -229,23 +399,22 @@ public class OutboundMessageRegistry {
      *  @param msg may be be null, if non-null should have a non-null selector
      */
     @SuppressWarnings("unchecked")
-    public void unregisterPending(OutNetMessage msg) {
+    public void unregisterPending(final OutNetMessage msg) {
         if (msg == null) return;
         MessageSelector sel = msg.getReplySelector();
-        boolean stillActive = false;
-        synchronized (_selectorToMessage) {
-            Object old = _selectorToMessage.remove(sel);
-            if (old instanceof List) {
-                    List<OutNetMessage> l = (List<OutNetMessage>)old;
+        Object remaining = _selectorToMessage.computeIfPresent(sel, new BiFunction<MessageSelector, Object, Object>() {
+            public Object apply(MessageSelector s, Object old) {
+                if (old instanceof List) {
+                    List<OutNetMessage> l = new ArrayList<>((List<OutNetMessage>)old);
                     l.remove(msg);
-                    if (!l.isEmpty()) {
-                        _selectorToMessage.put(sel, l);
-                        stillActive = true;
-                    }
+                    if (!l.isEmpty())
+                        return l;
+                }
+                return null;
             }
-        }
-        if (!stillActive)
-            synchronized (_selectors) { _selectors.remove(sel); }
+        });
+        if (remaining == null)
+            removeSelector(sel);
         _activeMessages.remove(msg);
     }
 
@@ -266,30 +435,60 @@ public class OutboundMessageRegistry {
          */
         @SuppressWarnings("unchecked")
         public void timeReached() {
-            long now = _context.clock().now();
-            List<MessageSelector> removing = new ArrayList<>(8);
+            final long now = _context.clock().now();
+            final List<MessageSelector> removing = new ArrayList<>(8);
             synchronized (_selectors) {
-                for (int i = 0; i < _selectors.size(); i++) {
-                    MessageSelector sel = _selectors.get(i);
+                for (MessageSelector sel : _selectors) {
                     long expiration = sel.getExpiration();
                     if (expiration <= now) {
                         removing.add(sel);
-                        _selectors.remove(i);
-                        i--;
+                        // iterator is a snapshot
+                        _selectors.remove(sel);
                     } else if (expiration < _nextExpire || _nextExpire < now) {
                         _nextExpire = expiration;
                     }
                 }
             }
+            BiFunction<Object, MessageSelector[], MessageSelector[]> expirer = new BiFunction<Object, MessageSelector[], MessageSelector[]>() {
+                public MessageSelector[] apply(Object key, MessageSelector[] sels) {
+                    MessageSelector[] rv = sels;
+                    for (MessageSelector sel : sels) {
+                        if (sel.getExpiration() <= now) {
+                            removing.add(sel);
+                            rv = without(rv, sel);
+                            if (rv == null)
+                                break;
+                        }
+                    }
+                    return rv;
+                }
+            };
+            long nextIndexed = Long.MAX_VALUE;
+            for (Map.Entry<Object, MessageSelector[]> e : _index.entrySet()) {
+                MessageSelector[] sels = e.getValue();
+                boolean expired = false;
+                for (MessageSelector sel : sels) {
+                    long expiration = sel.getExpiration();
+                    if (expiration <= now)
+                        expired = true;
+                    else if (expiration < nextIndexed)
+                        nextIndexed = expiration;
+                }
+                if (expired)
+                    _index.computeIfPresent(e.getKey(), expirer);
+            }
+            if (nextIndexed != Long.MAX_VALUE) {
+                synchronized (_selectors) {
+                    if (nextIndexed < _nextExpire || _nextExpire < now)
+                        _nextExpire = nextIndexed;
+                }
+            }
             boolean log = _log.shouldDebug();
             if (!removing.isEmpty()) {
                 for (MessageSelector sel : removing) {
                     OutNetMessage msg = null;
                     List<OutNetMessage> msgs = null;
-                    Object o;
-                    synchronized (_selectorToMessage) {
-                        o = _selectorToMessage.remove(sel);
-                    }
+                    Object o = _selectorToMessage.remove(sel);
                     if (o instanceof OutNetMessage) {
                         msg = (OutNetMessage)o;
                     } else if (o instanceof List) {
@@ -320,13 +519,11 @@ public class OutboundMessageRegistry {
 
             if (log) {
                 int e = removing.size();
-                int r;
-                synchronized(_selectors) {
-                    r = _selectors.size();
-                }
+                int r = _selectors.size();
+                int k = _index.size();
                 int a = _activeMessages.size();
-                if (r > 0 || e > 0 || a > 0)
-                    _log.debug("Expired: " + e + " remaining: " + r + " active: " + a);
+                if (r > 0 || k > 0 || e > 0 || a > 0)
+                    _log.debug("Expired: " + e + " remaining: " + r + " unindexed, " + k + " keys; active: " + a);
             }
             synchronized(_selectors) {
                 if (_nextExpire <= now)
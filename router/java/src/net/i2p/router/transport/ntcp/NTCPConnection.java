@@ -972,6 +972,8 @@ public class NTCPConnection implements Closeable {
         }
         _currentOutbound.add(msg);
         I2NPMessage m = msg.getMessage();
+        // the first message decides the bandwidth class for the frame
+        int trafficClass = FIFOBandwidthLimiter.trafficClass(m.getType(), msg.getPriority());
         Block block = pool.acquireI2NP(m);
         blocks.add(block);
         size += block.getTotalLength();
@@ -1037,7 +1039,7 @@ public class NTCPConnection implements Closeable {
             size += block.getTotalLength();
         }
         byte[] tmp = size <= BUFFER_SIZE ? buf.unencrypted : new byte[size];
-        sendNTCP2(tmp, blocks);
+        sendNTCP2(tmp, blocks, trafficClass);
         pool.release(blocks);
     }
 
@@ -1130,7 +1132,7 @@ public class NTCPConnection implements Closeable {
         }
         // use a "read buf" for the temp array
         ByteArray dataBuf = acquireReadBuf();
-        sendNTCP2(dataBuf.getData(), blocks);
+        sendNTCP2(dataBuf.getData(), blocks, FIFOBandwidthLimiter.CLASS_NETDB);
         releaseReadBuf(dataBuf);
         pool.release(blocks);
     }
@@ -1182,7 +1184,7 @@ public class NTCPConnection implements Closeable {
         ByteArray dataBuf = acquireReadBuf();
         synchronized(_writeLock) {
             if (_sender != null) {
-                sendNTCP2(dataBuf.getData(), blocks);
+                sendNTCP2(dataBuf.getData(), blocks, FIFOBandwidthLimiter.CLASS_OTHER);
                 // sendNTCP2() -> wantsWrite() -> pumper.processWrite() -> fail -> close() -> NPE
                 if (_sender != null) {
                     _sender.destroy();
@@ -1204,9 +1206,10 @@ public class NTCPConnection implements Closeable {
      *
      *  @param tmp to be used for output of NTCP2Payload.writePayload(),
      *         must have room for block output. May be released immediately on return.
+     *  @param trafficClass for the bandwidth limiter, FIFOBandwidthLimiter.CLASS_* (since 0.9.71+)
      *  @since 0.9.36
      */
-    private void sendNTCP2(byte[] tmp, List<Block> blocks) {
+    private void sendNTCP2(byte[] tmp, List<Block> blocks, int trafficClass) {
         int payloadlen = NTCP2Payload.writePayload(tmp, 0, blocks);
         int framelen = payloadlen + OutboundNTCP2State.MAC_SIZE;
         byte[] enc = new byte[2 + framelen];
@@ -1229,7 +1232,7 @@ public class NTCPConnection implements Closeable {
             toLong8LE(_sendSipIV, 0, sipIV);
         enc[0] = (byte) ((framelen >> 8) ^ (sipIV >> 8));
         enc[1] = (byte) (framelen ^ sipIV);
-            wantsWrite(enc);
+            wantsWrite(enc, 0, enc.length, trafficClass);
         }
 
         if (_log.shouldDebug()) {
@@ -1345,8 +1348,23 @@ public class NTCPConnection implements Closeable {
      *  @since 0.9.35 off/len version, moved from EventPumper in 0.9.52
      */
     void wantsWrite(byte[] data, int off, int len) {
+        wantsWrite(data, off, len, FIFOBandwidthLimiter.CLASS_OTHER);
+    }
+
+    /**
+     *  Call when there is data ready to write.
+     *  If we have bandwidth, calls write() which calls EventPumnper.wantsWrite(con).
+     *  If no bandwidth, calls queuedWrite().
+     *
+     *  @param data the data to write
+     *  @param off the offset in the data
+     *  @param len the length of the data
+     *  @param trafficClass FIFOBandwidthLimiter.CLASS_*
+     *  @since 0.9.71+
+     */
+    private void wantsWrite(byte[] data, int off, int len, int trafficClass) {
         ByteBuffer buf = ByteBuffer.wrap(data, off, len);
-        FIFOBandwidthLimiter.Request req = _context.bandwidthLimiter().requestOutbound(len, 0, "NTCP write");
+        FIFOBandwidthLimiter.Request req = _context.bandwidthLimiter().requestOutbound(len, 0, trafficClass, "NTCP write");
         if (req.getPendingRequested() > 0) {
             if (_log.shouldInfo())
                 _log.info("Queued write on " + toString() + " for " + len);
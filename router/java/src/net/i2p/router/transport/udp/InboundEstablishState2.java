@@ -1096,9 +1096,9 @@ class InboundEstablishState2 extends InboundEstablishState implements SSU2Payloa
         byte[] h_ba = new byte[32];
         hkdf.calculate(k_ab, ZEROLEN, INFO_DATA, d_ab, h_ab, 0);
         hkdf.calculate(k_ba, ZEROLEN, INFO_DATA, d_ba, h_ba, 0);
-        ChaChaPolyCipherState sender = new ChaChaPolyCipherState();
+        ChaChaPolyCipherState sender = ChaChaPolyCipherState.create();
         sender.initializeKey(d_ba, 0);
-        ChaChaPolyCipherState rcvr = new ChaChaPolyCipherState();
+        ChaChaPolyCipherState rcvr = ChaChaPolyCipherState.create();
         rcvr.initializeKey(d_ab, 0);
         Arrays.fill(ckd, (byte) 0);
         Arrays.fill(k_ab, (byte) 0);
@@ -1147,9 +1147,9 @@ class InboundEstablishState2 extends InboundEstablishState implements SSU2Payloa
         byte[] h_ba = new byte[32];
         hkdf.calculate(k_ab, ZEROLEN, INFO_DATA, d_ab, h_ab, 0);
         hkdf.calculate(k_ba, ZEROLEN, INFO_DATA, d_ba, h_ba, 0);
-        ChaChaPolyCipherState sender = new ChaChaPolyCipherState();
+        ChaChaPolyCipherState sender = ChaChaPolyCipherState.create();
         sender.initializeKey(d_ba, 0);
-        ChaChaPolyCipherState rcvr = new ChaChaPolyCipherState();
+        ChaChaPolyCipherState rcvr = ChaChaPolyCipherState.create();
         rcvr.initializeKey(d_ab, 0);
         _handshakeState.destroy();
         return new PeerStateDestroyed(_context, _transport, _remoteHostId,
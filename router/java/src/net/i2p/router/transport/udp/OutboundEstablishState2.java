@@ -866,9 +866,9 @@ class OutboundEstablishState2 extends OutboundEstablishState implements SSU2Payl
             byte[] h_ba = new byte[32];
             hkdf.calculate(k_ab, ZEROLEN, INFO_DATA, d_ab, h_ab, 0);
             hkdf.calculate(k_ba, ZEROLEN, INFO_DATA, d_ba, h_ba, 0);
-            ChaChaPolyCipherState sender = new ChaChaPolyCipherState();
+            ChaChaPolyCipherState sender = ChaChaPolyCipherState.create();
             sender.initializeKey(d_ab, 0);
-            ChaChaPolyCipherState rcvr = new ChaChaPolyCipherState();
+            ChaChaPolyCipherState rcvr = ChaChaPolyCipherState.create();
             rcvr.initializeKey(d_ba, 0);
           /****
             if (_log.shouldDebug())
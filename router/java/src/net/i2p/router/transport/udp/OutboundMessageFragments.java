@@ -10,6 +10,7 @@ import net.i2p.data.router.RouterInfo;
 import net.i2p.stat.RateConstants;
 import net.i2p.router.OutNetMessage;
 import net.i2p.router.RouterContext;
+import net.i2p.router.transport.FIFOBandwidthLimiter;
 import net.i2p.router.transport.udp.PacketBuilder.Fragment;
 import net.i2p.util.Log;
 import net.i2p.util.SystemVersion;
@@ -401,6 +402,8 @@ class OutboundMessageFragments {
                     OutNetMessage msg = sendNext.get(0).state.getMessage();
                     int msgType = (msg != null) ? msg.getMessageTypeId() : -1;
                     pkt.setMessageType(msgType);
+                    if (msg != null)
+                        pkt.setTrafficClass(FIFOBandwidthLimiter.trafficClass(msgType, msg.getPriority()));
                 }
 
                 rv.add(pkt);
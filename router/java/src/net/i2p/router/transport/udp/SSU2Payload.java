@@ -308,7 +308,7 @@ class SSU2Payload {
                         throw new IOException("Illegal block in handshake: " + type);
                     if (len < 9)
                         throw new IOException("I2NP block too short: " + len);
-                    I2NPMessage msg = I2NPMessageImpl.fromRawByteArrayNTCP2(ctx, payload, i, len, null);
+                    I2NPMessage msg = I2NPMessageImpl.fromRawByteArrayNTCP2(ctx, payload, i, len, null, true);
                     cb.gotI2NP(msg);
                     break;
 
@@ -5,7 +5,13 @@ import java.net.DatagramSocket;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import net.i2p.router.RouterContext;
 import net.i2p.router.transport.TransportUtil;
@@ -15,6 +21,12 @@ import net.i2p.util.SystemVersion;
 /**
  * Coordinate the low-level datagram socket, creating and managing the UDPSender and
  * UDPReceiver.
+ *
+ * If i2np.udp.channel=true, the socket is a non-blocking DatagramChannel instead,
+ * and the sender and receivers read and write it in batches.
+ * If i2np.udp.receiverThreads is greater than one and the JVM supports SO_REUSEPORT,
+ * that many channels are bound to the same port, each with its own UDPReceiver,
+ * and the kernel spreads inbound flows across them. Sends always go out the first channel.
  */
 class UDPEndpoint implements SocketListener {
     private final RouterContext _context;
@@ -22,8 +34,10 @@ class UDPEndpoint implements SocketListener {
     private int _listenPort;
     private final UDPTransport _transport;
     private UDPSender _sender;
-    private UDPReceiver _receiver;
+    private final List<UDPReceiver> _receivers = new ArrayList<UDPReceiver>(1);
     private DatagramSocket _socket;
+    /** null unless in channel mode, first one is shared with the sender */
+    private List<DatagramChannel> _channels;
     private final InetAddress _bindAddress;
     private final boolean _isIPv4;
     private final boolean _isIPv6;
@@ -31,6 +45,22 @@ class UDPEndpoint implements SocketListener {
 
     private static final int MIN_SOCKET_BUFFER = 256*1024;
 
+    /**
+     *  Use non-blocking DatagramChannels with batched reads and writes
+     *  @since 0.9.71+
+     */
+    public static final String PROP_CHANNEL = "i2np.udp.channel";
+    /**
+     *  Number of receiver threads and channels per endpoint in channel mode,
+     *  only honored if SO_REUSEPORT is available
+     *  @since 0.9.71+
+     */
+    public static final String PROP_RECEIVER_THREADS = "i2np.udp.receiverThreads";
+    private static final int DEFAULT_RECEIVER_THREADS = 1;
+    private static final int MAX_RECEIVER_THREADS = 8;
+    /** StandardSocketOptions.SO_REUSEPORT, Java 9+, or null */
+    private static final SocketOption<Boolean> SO_REUSEPORT = getReusePortOption();
+
     /**
      *  @param transport may be null for unit testing ONLY
      *  @param listenPort -1 or the requested port, may not be honored
@@ -55,17 +85,39 @@ class UDPEndpoint implements SocketListener {
         if (_log.shouldDebug())
             _log.debug("Starting up the UDP endpoint");
         shutdown();
-        _socket = getSocket();
+        // channel mode requires a transport, receive() below is blocking socket only
+        if (_transport != null && _context.getBooleanProperty(PROP_CHANNEL)) {
+            _channels = getChannels();
+            if (_channels != null)
+                _socket = _channels.get(0).socket();
+        } else {
+            _channels = null;
+            _socket = getSocket();
+        }
         if (_socket == null) {
             _log.log(Log.CRIT, "[UDP] Unable to open a port");
             throw new SocketException("[SSU] Unable to bind to a port on " + _bindAddress);
         }
         int count = _counter.incrementAndGet();
+        if (_channels != null) {
+            _sender = new UDPSender(_context, _channels.get(0), "UDPSender " + count, this);
+            _sender.startup();
+            for (int i = 0; i < _channels.size(); i++) {
+                String name = "UDPReceiver " + count;
+                if (_channels.size() > 1)
+                    name += '.' + Integer.toString(i + 1);
+                UDPReceiver rcvr = new UDPReceiver(_context, _transport, _channels.get(i), name, this);
+                _receivers.add(rcvr);
+                rcvr.startup();
+            }
+            return;
+        }
         _sender = new UDPSender(_context, _socket, "UDPSender " + count, this);
         _sender.startup();
         if (_transport != null) {
-            _receiver = new UDPReceiver(_context, _transport, _socket, "UDPReceiver " + count, this);
-            _receiver.startup();
+            UDPReceiver rcvr = new UDPReceiver(_context, _transport, _socket, "UDPReceiver " + count, this);
+            _receivers.add(rcvr);
+            rcvr.startup();
         }
     }
 
@@ -75,7 +127,16 @@ class UDPEndpoint implements SocketListener {
     public synchronized void shutdown() {
         if (_sender != null) {
             _sender.shutdown();
-            _receiver.shutdown();
+        }
+        for (UDPReceiver rcvr : _receivers) {
+            rcvr.shutdown();
+        }
+        _receivers.clear();
+        if (_channels != null) {
+            for (DatagramChannel chan : _channels) {
+                try {chan.close();} catch (IOException ioe) {}
+            }
+            _channels = null;
         }
         if (_socket != null) {
             _socket.close();
@@ -139,6 +200,126 @@ class UDPEndpoint implements SocketListener {
         return socket;
     }
 
+    /**
+     *  Open non-blocking channels using requested port in _listenPort and bind host in _bindAddress.
+     *  Same port selection as getSocket().
+     *  If more than one receiver thread is configured and SO_REUSEPORT is supported,
+     *  additional channels are bound to the same port.
+     *
+     *  @return null on failure, or a list of at least one channel
+     *  Sets _listenPort to actual port or -1 on failure
+     *  @since 0.9.71+
+     */
+    private List<DatagramChannel> getChannels() {
+        int threads = _context.getProperty(PROP_RECEIVER_THREADS, DEFAULT_RECEIVER_THREADS);
+        threads = Math.max(1, Math.min(MAX_RECEIVER_THREADS, threads));
+        if (threads > 1 && SO_REUSEPORT == null) {
+            if (_log.shouldWarn())
+                _log.warn("SO_REUSEPORT not supported by this JVM, using a single UDP receiver");
+            threads = 1;
+        }
+        boolean reuse = threads > 1;
+        DatagramChannel chan = null;
+        int port = _listenPort;
+        if (port > 0 && !TransportUtil.isValidPort(port)) {
+            TransportUtil.logInvalidPort(_log, "UDP", port);
+            port = -1;
+        }
+
+        for (int i = 0; i < MAX_PORT_RETRIES; i++) {
+            if (port <= 0)
+                port = TransportUtil.selectRandomPort(_context, UDPTransport.STYLE);
+            try {
+                chan = openChannel(port, reuse);
+                break;
+            } catch (IOException ioe) {
+                if (_log.shouldWarn())
+                    _log.warn("Binding to port " + port + " failed", ioe);
+            }
+            port = -1;
+        }
+        if (chan == null) {
+            _log.log(Log.CRIT, "[SSU] Unable to bind to a port on: " + _bindAddress);
+            _listenPort = -1;
+            return null;
+        }
+        if (port != _listenPort) {
+            if (_listenPort > 0)
+                _log.error("[SSU] Unable to bind to requested port " + _listenPort + ", using random port: " + port);
+            else
+                _log.logAlways(Log.INFO, "UDP random port selected: " + port);
+        }
+        _listenPort = port;
+        List<DatagramChannel> rv = new ArrayList<DatagramChannel>(threads);
+        rv.add(chan);
+        for (int i = 1; i < threads; i++) {
+            try {
+                rv.add(openChannel(port, true));
+            } catch (IOException ioe) {
+                if (_log.shouldWarn())
+                    _log.warn("Unable to open additional UDP channel on port " + port, ioe);
+                break;
+            }
+        }
+        if (_log.shouldInfo())
+            _log.info("Opened " + rv.size() + " UDP channel(s) on port " + port);
+        return rv;
+    }
+
+    /**
+     *  @param reuse set SO_REUSEPORT, must be supported
+     *  @return a bound, non-blocking channel
+     *  @since 0.9.71+
+     */
+    private DatagramChannel openChannel(int port, boolean reuse) throws IOException {
+        DatagramChannel chan = DatagramChannel.open();
+        try {
+            if (reuse)
+                chan.setOption(SO_REUSEPORT, Boolean.TRUE);
+            if (!SystemVersion.isAndroid()) {
+                if (chan.getOption(StandardSocketOptions.SO_SNDBUF) < MIN_SOCKET_BUFFER)
+                    chan.setOption(StandardSocketOptions.SO_SNDBUF, MIN_SOCKET_BUFFER);
+                if (chan.getOption(StandardSocketOptions.SO_RCVBUF) < MIN_SOCKET_BUFFER)
+                    chan.setOption(StandardSocketOptions.SO_RCVBUF, MIN_SOCKET_BUFFER);
+            }
+            if (_bindAddress == null)
+                chan.bind(new InetSocketAddress(port));
+            else
+                chan.bind(new InetSocketAddress(_bindAddress, port));
+            chan.configureBlocking(false);
+            return chan;
+        } catch (IOException ioe) {
+            try {chan.close();} catch (IOException e) {}
+            throw ioe;
+        } catch (RuntimeException re) {
+            // UnsupportedOperationException from setOption()
+            try {chan.close();} catch (IOException e) {}
+            throw new IOException(re);
+        }
+    }
+
+    /**
+     *  StandardSocketOptions.SO_REUSEPORT is Java 9+, look it up by reflection.
+     *
+     *  @return null if unavailable
+     *  @since 0.9.71+
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> getReusePortOption() {
+        if (SystemVersion.isWindows())
+            return null;
+        try {
+            SocketOption<Boolean> opt = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            DatagramChannel chan = DatagramChannel.open();
+            try {
+                return chan.supportedOptions().contains(opt) ? opt : null;
+            } finally {
+                chan.close();
+            }
+        } catch (Exception e) {
+            return null;
+        }
+    }
 
     /** Call after startup() to get the actual port, or -1 on startup failure. */
     public int getListenPort() { return _listenPort; }
@@ -27,6 +27,7 @@ class UDPPacket implements CDPQEntry {
     private final AtomicReference<FIFOBandwidthLimiter.Request> _bandwidthRequest = new AtomicReference<>();
     private long _seqNum;
     private int _messageType;
+    private int _trafficClass;
     private int _fragmentCount;
 
     /**
@@ -138,6 +139,7 @@ class UDPPacket implements CDPQEntry {
         _remoteHost = null;
         _released = false;
         _messageType = -1;
+        _trafficClass = FIFOBandwidthLimiter.CLASS_OTHER;
         _enqueueTime = 0;
         _receivedTime = 0;
         _fragmentCount = 0;
@@ -218,6 +220,14 @@ class UDPPacket implements CDPQEntry {
         _messageType = type;
     }
 
+    /**
+     *  Bandwidth limiter class, FIFOBandwidthLimiter.CLASS_*
+     *  @since 0.9.71+
+     */
+    void setTrafficClass(int cls) {
+        _trafficClass = cls;
+    }
+
     /** Fragment count */
     int getFragmentCount() {
         return _fragmentCount;
@@ -284,7 +294,8 @@ class UDPPacket implements CDPQEntry {
     public void requestOutboundBandwidth() {
         verifyNotReleased();
         FIFOBandwidthLimiter.Request req = _context.bandwidthLimiter().requestOutbound(_bandwidthRequest.get(),
-                                                                                        _packet.getLength(), 0, "UDP sender");
+                                                                                        _packet.getLength(), 0, _trafficClass,
+                                                                                        "UDP sender");
         _bandwidthRequest.set(req);
     }
 
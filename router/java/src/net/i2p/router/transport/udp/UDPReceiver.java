@@ -3,6 +3,12 @@ package net.i2p.router.transport.udp;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.Arrays;
 import net.i2p.router.RouterContext;
 import net.i2p.router.transport.FIFOBandwidthLimiter;
@@ -17,14 +23,20 @@ import net.i2p.util.SystemVersion;
  *
  * There is a UDPReceiver for each UDPEndpoint. It contains a thread but no queue.
  * Received packets are queued in the common PacketHandler queue.
+ *
+ * In channel mode, there may be several UDPReceivers per UDPEndpoint, one per
+ * SO_REUSEPORT channel. Each drains its channel in batches after a select,
+ * through a direct buffer owned by its thread.
  */
 class UDPReceiver {
     private final RouterContext _context;
     private final Log _log;
     private final DatagramSocket _socket;
+    /** null unless in channel mode */
+    private final DatagramChannel _channel;
     private String _name;
     private volatile boolean _keepRunning;
-    private final Runner _runner;
+    private final Runnable _runner;
     private final UDPTransport _transport;
     private final PacketHandler _handler;
     private final SocketListener _endpoint;
@@ -34,21 +46,44 @@ class UDPReceiver {
     private static final boolean IS_ANDROID = SystemVersion.isAndroid();
     /** How long to sleep between throttle checks while inbound is throttled */
     private static final int THROTTLE_WAIT_MS = 10;
+    /** Max datagrams read from the channel per select, channel mode only */
+    private static final int MAX_BATCH = 32;
+    /** Select timeout so shutdown is noticed, channel mode only */
+    private static final long SELECT_TIMEOUT = 1000;
 
     /** Constructor name parameter. */
     public UDPReceiver(RouterContext ctx, UDPTransport transport, DatagramSocket socket, String name,
                        SocketListener lsnr) {
+        this(ctx, transport, socket, null, name, lsnr);
+    }
+
+    /**
+     *  Channel mode.
+     *
+     *  @param channel non-blocking and bound
+     *  @since 0.9.71+
+     */
+    public UDPReceiver(RouterContext ctx, UDPTransport transport, DatagramChannel channel, String name,
+                       SocketListener lsnr) {
+        this(ctx, transport, channel.socket(), channel, name, lsnr);
+    }
+
+    private UDPReceiver(RouterContext ctx, UDPTransport transport, DatagramSocket socket, DatagramChannel channel,
+                        String name, SocketListener lsnr) {
         _context = ctx;
         _log = ctx.logManager().getLog(UDPReceiver.class);
         _name = name;
         _socket = socket;
+        _channel = channel;
         _transport = transport;
         _endpoint = lsnr;
         _handler = transport.getPacketHandler();
         if (_handler == null) {throw new IllegalStateException();}
-        _runner = new Runner();
+        _runner = channel != null ? new ChannelRunner() : new Runner();
         _context.statManager().createRateStat("udp.ignorePacketFromDroplist", "Packet lifetime for those dropped on the drop list", "Transport [UDP]", UDPTransport.RATES);
         _context.statManager().createRateStat("udp.receiveFailsafe", "How often we failed to receive a UDP packet", "Transport [UDP]", UDPTransport.RATES);
+        if (channel != null)
+            _context.statManager().createRateStat("udp.receiveBatchSize", "Number of UDP packets read per select", "Transport [UDP]", UDPTransport.RATES);
     }
 
     /** Cannot be restarted (socket is final). */
@@ -106,6 +141,41 @@ class UDPReceiver {
         return 0;
     }
 
+    /**
+     * Bandwidth limit and queue a received packet, or drop it if too short.
+     * Called on the runner thread only.
+     *
+     * @param size bytes received, already checked for truncation
+     * @since 0.9.71+ moved from Runner.run()
+     */
+    private void handleReceived(UDPPacket packet, int size) {
+        if (_context.commSystem().isDummy()) {packet.release();} // testing
+        else if (size >= SSU2Util.MIN_DATA_LEN) {
+            FIFOBandwidthLimiter.Request req = _context.bandwidthLimiter().requestInbound(_bandwidthRequest, size, "UDP receiver");
+            _bandwidthRequest = req;
+            int waitCount = 0; // failsafe, don't wait forever
+            while (req.getPendingRequested() > 0 && waitCount++ < 5) {req.waitForNextAllocation();}
+            if (waitCount >= 5) {
+                // tell FBL we didn't receive it, but accept it anyway
+                req.abort();
+                // aborted requests stay queued in the limiter until swept;
+                // drop it so the next cycle allocates a fresh one
+                _bandwidthRequest = null;
+                _context.statManager().addRateData("udp.receiveFailsafe", 1);
+            }
+            receive(packet);
+            //_context.statManager().addRateData("udp.receivePacketSize", size);
+        } else {
+            // SSU1 had 0 byte hole punch, SSU2 does not
+            if (_log.shouldWarn()) {
+                DatagramPacket dpacket = packet.getPacket();
+                String ipAddress = dpacket.getAddress().toString().replace("/", "");
+                _log.warn("Dropping short " + size + " byte UDP packet from " + ipAddress + ":" + dpacket.getPort());
+            }
+            packet.release();
+        }
+    }
+
     private class Runner implements Runnable {
 
         /**
@@ -145,30 +215,7 @@ class UDPReceiver {
                         // DatagramSocket javadocs: If the message is longer than the packet's length, the message is truncated.
                         throw new IOException("UDP packet too large! Truncated and dropped from: " + packet.getRemoteHost());
                     }
-                    if (_context.commSystem().isDummy()) {packet.release();} // testing
-                    else if (size >= SSU2Util.MIN_DATA_LEN) {
-                        FIFOBandwidthLimiter.Request req = _context.bandwidthLimiter().requestInbound(_bandwidthRequest, size, "UDP receiver");
-                        _bandwidthRequest = req;
-                        int waitCount = 0; // failsafe, don't wait forever
-                        while (req.getPendingRequested() > 0 && waitCount++ < 5) {req.waitForNextAllocation();}
-                        if (waitCount >= 5) {
-                            // tell FBL we didn't receive it, but accept it anyway
-                            req.abort();
-                            // aborted requests stay queued in the limiter until swept;
-                            // drop it so the next cycle allocates a fresh one
-                            _bandwidthRequest = null;
-                            _context.statManager().addRateData("udp.receiveFailsafe", 1);
-                        }
-                        receive(packet);
-                        //_context.statManager().addRateData("udp.receivePacketSize", size);
-                    } else {
-                        // SSU1 had 0 byte hole punch, SSU2 does not
-                        if (_log.shouldWarn()) {
-                            String ipAddress = dpacket.getAddress().toString().replace("/", "");
-                            _log.warn("Dropping short " + size + " byte UDP packet from " + ipAddress + ":" + dpacket.getPort());
-                        }
-                        packet.release();
-                    }
+                    handleReceived(packet, size);
                 } catch (IOException ioe) {
                     if (_log.shouldDebug()) {_log.debug("Error receiving UDP packet", ioe);}
                     else if (_log.shouldWarn()) {_log.warn("Error receiving UDP packet: " + ioe.getMessage());}
@@ -191,4 +238,112 @@ class UDPReceiver {
         }
     }
 
+    /**
+     * Channel mode receive loop: throttle-check, select, then read up to MAX_BATCH
+     * datagrams through the direct buffer into pooled packets before
+     * pushing them to the handler.
+     *
+     * @since 0.9.71+
+     */
+    private class ChannelRunner implements Runnable {
+        private final ByteBuffer _buf = ByteBuffer.allocateDirect(UDPPacket.MAX_PACKET_SIZE);
+        private final UDPPacket[] _batch = new UDPPacket[MAX_BATCH];
+        private final int[] _sizes = new int[MAX_BATCH];
+        /** number of packets in _batch */
+        private int _count;
+
+        @Override
+        public void run() {
+            Selector selector;
+            try {
+                selector = Selector.open();
+                _channel.register(selector, SelectionKey.OP_READ);
+            } catch (IOException ioe) {
+                _log.error("Unable to select on UDP channel", ioe);
+                if (_keepRunning) {
+                    _keepRunning = false;
+                    _endpoint.fail();
+                }
+                return;
+            }
+            while (_keepRunning) {
+                while (_keepRunning && !_context.throttle().acceptNetworkMessage()) {
+                    try {Thread.sleep(THROTTLE_WAIT_MS);}
+                    catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        _keepRunning = false;
+                        break;
+                    }
+                }
+                if (!_keepRunning) {break;}
+
+                try {
+                    _count = 0;
+                    if (selector.select(SELECT_TIMEOUT) <= 0) {continue;}
+                    selector.selectedKeys().clear();
+                    readBatch();
+                } catch (IOException ioe) {
+                    if (_log.shouldDebug()) {_log.debug("Error receiving UDP packet", ioe);}
+                    else if (_log.shouldWarn()) {_log.warn("Error receiving UDP packet: " + ioe.getMessage());}
+                    if (!_channel.isOpen()) {
+                        if (_keepRunning) {
+                            _keepRunning = false;
+                            _endpoint.fail();
+                        }
+                    } else if (_keepRunning) {
+                        try {Thread.sleep(100);}
+                        catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+                // packets read before an exception are still handled
+                int count = _count;
+                if (count > 0) {
+                    _context.statManager().addRateData("udp.receiveBatchSize", count);
+                    for (int i = 0; i < count; i++) {
+                        UDPPacket packet = _batch[i];
+                        _batch[i] = null;
+                        if (_keepRunning) {handleReceived(packet, _sizes[i]);}
+                        else {packet.release();}
+                    }
+                }
+            }
+            try {selector.close();} catch (IOException ioe) {}
+            if (_log.shouldWarn()) {_log.warn("Stopped receiving UDP packets on: " + _endpoint);}
+        }
+
+        /**
+         * Non-blocking reads until the channel is empty or the batch is full.
+         * Oversize datagrams are dropped here.
+         *
+         * Sets _count to the number of packets in _batch, also on exception.
+         */
+        private void readBatch() throws IOException {
+            _count = 0;
+            while (_count < MAX_BATCH) {
+                _buf.clear();
+                SocketAddress from = _channel.receive(_buf);
+                if (from == null) {break;}
+                int size = _buf.position();
+                UDPPacket packet = UDPPacket.acquire(_context, true);
+                DatagramPacket dpacket = packet.getPacket();
+                byte[] data = dpacket.getData();
+                // channel receive silently truncates to the buffer size
+                if (size >= UDPPacket.MAX_PACKET_SIZE || size > data.length) {
+                    if (_log.shouldWarn()) {_log.warn("UDP packet too large! Truncated and dropped from: " + from);}
+                    packet.release();
+                    continue;
+                }
+                _buf.flip();
+                _buf.get(data, 0, size);
+                dpacket.setLength(size);
+                dpacket.setSocketAddress((InetSocketAddress) from);
+                packet.resetBegin();
+                _sizes[_count] = size;
+                _batch[_count++] = packet;
+            }
+        }
+    }
+
 }
@@ -3,11 +3,19 @@ package net.i2p.router.transport.udp;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import net.i2p.router.RouterContext;
 import net.i2p.router.transport.FIFOBandwidthLimiter;
 import net.i2p.router.util.CoDelPriorityBlockingQueue;
 import net.i2p.stat.RateConstants;
+import net.i2p.stat.RateHandle;
 import net.i2p.util.I2PThread;
 import net.i2p.util.Log;
 import net.i2p.util.SystemVersion;
@@ -23,17 +31,24 @@ import net.i2p.util.SystemVersion;
  * packet queueing delay and manages bandwidth throttling for sending.
  * <p>
  * Supports graceful startup and shutdown signaling using a poison packet.
+ * <p>
+ * In channel mode, the queue is drained in batches and written to a
+ * non-blocking DatagramChannel through a direct buffer.
  */
 public class UDPSender {
     private final RouterContext _context;
     private final Log _log;
     private final DatagramSocket _socket;
+    /** null unless in channel mode */
+    private final DatagramChannel _channel;
     private String _name;
     private final BlockingQueue<UDPPacket> _outboundQueue;
     private volatile boolean _keepRunning;
-    private final Runner _runner;
+    private final Runnable _runner;
     private final boolean _dummy;
     private final SocketListener _endpoint;
+    private final RateHandle _pushTime;
+    private final RateHandle _sendPacketSize;
 
     /**
      * Poison packet message type used to signal shutdown to sender thread.
@@ -47,6 +62,11 @@ public class UDPSender {
     private static final int MIN_QUEUE_SIZE = 128;
     private static final int MAX_QUEUE_SIZE = 1024;
 
+    /** Max packets taken from the queue at once, channel mode only */
+    private static final int MAX_BATCH = 32;
+    /** How long to wait for the channel to become writable, channel mode only */
+    private static final long WRITE_TIMEOUT = 100;
+
     /** CoDel algorithm target delay in milliseconds and interval to control pacing. */
     public static final int CODEL_TARGET = 20;
     /**
@@ -85,6 +105,23 @@ public class UDPSender {
      * @param lsnr the associated socket listener endpoint
      */
     public UDPSender(RouterContext ctx, DatagramSocket socket, String name, SocketListener lsnr) {
+        this(ctx, socket, null, name, lsnr);
+    }
+
+    /**
+     * Create a UDPSender in channel mode.
+     *
+     * @param ctx the router context
+     * @param channel non-blocking and bound
+     * @param name thread name identifier for this sender
+     * @param lsnr the associated socket listener endpoint
+     * @since 0.9.71+
+     */
+    public UDPSender(RouterContext ctx, DatagramChannel channel, String name, SocketListener lsnr) {
+        this(ctx, channel.socket(), channel, name, lsnr);
+    }
+
+    private UDPSender(RouterContext ctx, DatagramSocket socket, DatagramChannel channel, String name, SocketListener lsnr) {
         _context = ctx;
         _dummy = false; // ctx.commSystem().isDummy();
         _log = ctx.logManager().getLog(UDPSender.class);
@@ -96,14 +133,15 @@ public class UDPSender {
                 ctx.getProperty(PROP_CODEL_TARGET, CODEL_TARGET),
                 ctx.getProperty(PROP_CODEL_INTERVAL, CODEL_INTERVAL));
         _socket = socket;
-        _runner = new Runner();
+        _channel = channel;
+        _runner = channel != null ? new ChannelRunner() : new Runner();
         _name = name;
         _endpoint = lsnr;
 
-        _context.statManager().createRequiredRateStat("udp.pushTime", "Time taken for a UDP packet get pushed out", "Transport [UDP]", new long[] { RateConstants.ONE_MINUTE, RateConstants.TEN_MINUTES, RateConstants.ONE_HOUR });
+        _pushTime = _context.statManager().createRequiredRateStatHandle("udp.pushTime", "Time taken for a UDP packet get pushed out", "Transport [UDP]", new long[] { RateConstants.ONE_MINUTE, RateConstants.TEN_MINUTES, RateConstants.ONE_HOUR });
         _context.statManager().createRateStat("udp.sendQueueSize", "Number of packets queued on the UDP sender", "Transport [UDP]", RATES);
         _context.statManager().createRateStat("udp.sendQueueTrimmed", "Stale packets removed from queue", "Transport [UDP]", RATES);
-        _context.statManager().createRequiredRateStat("udp.sendPacketSize", "Size of sent packets (bytes)", "Transport [UDP]", RATES);
+        _sendPacketSize = _context.statManager().createRequiredRateStatHandle("udp.sendPacketSize", "Size of sent packets (bytes)", "Transport [UDP]", RATES);
         _context.statManager().createRateStat("udp.sendBWThrottleTime", "How long send is blocked by bandwidth throttle", "Transport [UDP]", RATES);
         _context.statManager().createRateStat("udp.sendACKTime", "How long an ACK packet is blocked for", "Transport [UDP]", RATES);
         _context.statManager().createRateStat("udp.sendFailsafe", "Time bandwidth limiter is stuck", "Transport [UDP]", RATES);
@@ -112,6 +150,8 @@ public class UDPSender {
             _context.statManager().createRequiredRateStat("udp.sendException", "Send fails (Windows exception?)", "Transport [UDP]", RATES);
         else
             _context.statManager().createRequiredRateStat("udp.sendException", "Send fails (Windows exception?)", "Transport", RATES);
+        if (channel != null)
+            _context.statManager().createRateStat("udp.sendBatchSize", "Number of UDP packets taken from the queue at once", "Transport [UDP]", RATES);
     }
 
     /**
@@ -226,6 +266,84 @@ public class UDPSender {
         }
     }
 
+    /**
+     * Failsafe: wait briefly for the bandwidth allocation requested in add(),
+     * but avoid indefinite blocking.
+     *
+     * @since 0.9.71+ moved from Runner.run()
+     */
+    private void waitForBandwidth(UDPPacket packet, int size) {
+        if (size <= 0)
+            return;
+        FIFOBandwidthLimiter.Request req = packet.getBandwidthRequest();
+        if (req != null) {
+            int waitCount = 0;
+            while (req.getPendingRequested() > 0 && waitCount++ < 5) {
+                req.waitForNextAllocation();
+            }
+            if (waitCount >= 5) {
+                req.abort();
+                _context.statManager().addRateData("udp.sendFailsafe", 1);
+            }
+        }
+    }
+
+    /**
+     * Stats after a successful send.
+     *
+     * @since 0.9.71+ moved from Runner.run()
+     */
+    private void sent(UDPPacket packet, int size, long acquireTime, long afterBW) {
+        if (_log.shouldDebug()) {
+            _log.debug("Sent UDP packet to " + packet);
+        }
+        long throttleTime = afterBW - acquireTime;
+        if (throttleTime > 10) {
+            _context.statManager().addRateData("udp.sendBWThrottleTime", throttleTime, acquireTime - packet.getBegin());
+        }
+        if (packet.getMarkedType() == 1) {
+            _context.statManager().addRateData("udp.sendACKTime", throttleTime);
+        }
+        _pushTime.addData(packet.getLifetime());
+        _sendPacketSize.addData(size);
+    }
+
+    /**
+     * Log and fail the endpoint if the socket is closed.
+     *
+     * @since 0.9.71+ moved from Runner.run()
+     */
+    private void sendFailed(UDPPacket packet, IOException ioe) {
+        String ipaddress = packet.getPacket().getAddress().toString().replace("/", "");
+        if (_log.shouldWarn()) {
+            _log.warn("Error sending to " + ipaddress + "\n* Error: " + ioe.getMessage());
+        }
+        _context.statManager().addRateData("udp.sendException", 1);
+        if (_socket.isClosed() && _keepRunning) {
+            _keepRunning = false;
+            _endpoint.fail();
+        }
+    }
+
+    /**
+     * @return the CoDel target from the config, or the default
+     * @since 0.9.71+ moved from Runner.getNextPacket()
+     */
+    private int getCodelTarget() {
+        int codelTarget = CODEL_TARGET;
+        String propValue = _context.getProperty(PROP_CODEL_TARGET);
+        if (propValue != null) {
+            try {
+                codelTarget = Integer.parseInt(propValue);
+            } catch (NumberFormatException nfe) {
+                if (_log.shouldWarn()) {
+                    _log.warn("Invalid property value for " + PROP_CODEL_TARGET + ": " + propValue);
+                }
+            }
+        }
+        return codelTarget;
+    }
+
     /**
      * Internal runner class responsible for dequeuing and sending UDP packets.
      * This class runs on its own dedicated high-priority thread.
@@ -248,48 +366,14 @@ public class UDPSender {
                     }
                     int size = packet.getPacket().getLength();
                     long acquireTime = _context.clock().now();
-
-                    if (size > 0) {
-                        FIFOBandwidthLimiter.Request req = packet.getBandwidthRequest();
-                        if (req != null) {
-                            // Failsafe: wait briefly for bandwidth allocation but avoid indefinite blocking
-                            int waitCount = 0;
-                            while (req.getPendingRequested() > 0 && waitCount++ < 5) {
-                                req.waitForNextAllocation();
-                            }
-                            if (waitCount >= 5) {
-                                req.abort();
-                                _context.statManager().addRateData("udp.sendFailsafe", 1);
-                            }
-                        }
-                    }
-
+                    waitForBandwidth(packet, size);
                     long afterBW = _context.clock().now();
                     try {
                         DatagramPacket dp = packet.getPacket();
                         _socket.send(dp);
-                        if (_log.shouldDebug()) {
-                            _log.debug("Sent UDP packet to " + packet);
-                        }
-                        long throttleTime = afterBW - acquireTime;
-                        if (throttleTime > 10) {
-                            _context.statManager().addRateData("udp.sendBWThrottleTime", throttleTime, acquireTime - packet.getBegin());
-                        }
-                        if (packet.getMarkedType() == 1) {
-                            _context.statManager().addRateData("udp.sendACKTime", throttleTime);
-                        }
-                        _context.statManager().addRateData("udp.pushTime", packet.getLifetime());
-                        _context.statManager().addRateData("udp.sendPacketSize", size);
+                        sent(packet, size, acquireTime, afterBW);
                     } catch (IOException ioe) {
-                        String ipaddress = packet.getPacket().getAddress().toString().replace("/", "");
-                        if (_log.shouldWarn()) {
-                            _log.warn("Error sending to " + ipaddress + "\n* Error: " + ioe.getMessage());
-                        }
-                        _context.statManager().addRateData("udp.sendException", 1);
-                        if (_socket.isClosed() && _keepRunning) {
-                                _keepRunning = false;
-                                _endpoint.fail();
-                        }
+                        sendFailed(packet, ioe);
                     }
 
                     // Release packet back to cache after sending or on failure
@@ -314,17 +398,7 @@ public class UDPSender {
          */
         private UDPPacket getNextPacket() {
             UDPPacket packet = null;
-            int codelTarget = CODEL_TARGET;
-            String propValue = _context.getProperty(PROP_CODEL_TARGET);
-            if (propValue != null) {
-                try {
-                    codelTarget = Integer.parseInt(propValue);
-                } catch (NumberFormatException nfe) {
-                    if (_log.shouldWarn()) {
-                        _log.warn("Invalid property value for " + PROP_CODEL_TARGET + ": " + propValue);
-                    }
-                }
-            }
+            int codelTarget = getCodelTarget();
 
             while (_keepRunning) {
                 try {
@@ -357,4 +431,93 @@ public class UDPSender {
             return packet;
         }
     }
+
+    /**
+     * Channel mode runner. Blocks for the first packet, then takes up to
+     * MAX_BATCH - 1 more without blocking, and writes them all to the channel.
+     * If the socket send buffer is full, waits up to WRITE_TIMEOUT for it to drain.
+     *
+     * @since 0.9.71+
+     */
+    private class ChannelRunner implements Runnable {
+        private final ByteBuffer _buf = ByteBuffer.allocateDirect(UDPPacket.MAX_PACKET_SIZE);
+        private final List<UDPPacket> _batch = new ArrayList<UDPPacket>(MAX_BATCH);
+        private Selector _selector;
+
+        @Override
+        public void run() {
+            if (_log.shouldDebug()) {
+                _log.debug("Running the UDP channel sender...");
+            }
+            try {
+                _selector = Selector.open();
+                _channel.register(_selector, SelectionKey.OP_WRITE);
+            } catch (IOException ioe) {
+                _log.error("Unable to select on UDP channel", ioe);
+                if (_keepRunning) {
+                    _keepRunning = false;
+                    _endpoint.fail();
+                }
+                return;
+            }
+            while (_keepRunning) {
+                try {
+                    _batch.add(_outboundQueue.take());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    continue;
+                }
+                _outboundQueue.drainTo(_batch, MAX_BATCH - 1);
+                int count = _batch.size();
+                if (count > 1)
+                    _context.statManager().addRateData("udp.sendBatchSize", count);
+                int codelTarget = getCodelTarget();
+                for (int i = 0; i < count; i++) {
+                    UDPPacket packet = _batch.get(i);
+                    if (packet.getMessageType() == TYPE_POISON) {
+                        _keepRunning = false;
+                    } else if (!_keepRunning) {
+                        // drop the rest
+                    } else if (packet.getLifetime() > codelTarget * 3) {
+                        _context.statManager().addRateData("udp.sendQueueTrimmed", 1);
+                    } else {
+                        send(packet);
+                    }
+                    packet.release();
+                }
+                _batch.clear();
+            }
+            try {_selector.close();} catch (IOException ioe) {}
+            if (_log.shouldWarn()) {
+                _log.warn("Stop sending on " + _endpoint);
+            }
+            _outboundQueue.clear();
+        }
+
+        private void send(UDPPacket packet) {
+            if (_log.shouldDebug()) {
+                _log.debug("Attempting to send UDP packet to known peer at " + packet);
+            }
+            DatagramPacket dp = packet.getPacket();
+            int size = dp.getLength();
+            long acquireTime = _context.clock().now();
+            waitForBandwidth(packet, size);
+            long afterBW = _context.clock().now();
+            try {
+                SocketAddress to = dp.getSocketAddress();
+                _buf.clear();
+                _buf.put(dp.getData(), dp.getOffset(), size);
+                _buf.flip();
+                if (_channel.send(_buf, to) == 0) {
+                    // send buffer full, nothing was sent
+                    _selector.selectedKeys().clear();
+                    if (_selector.select(WRITE_TIMEOUT) <= 0 || _channel.send(_buf, to) == 0)
+                        throw new IOException("UDP send buffer full");
+                }
+                sent(packet, size, acquireTime, afterBW);
+            } catch (IOException ioe) {
+                sendFailed(packet, ioe);
+            }
+        }
+    }
 }
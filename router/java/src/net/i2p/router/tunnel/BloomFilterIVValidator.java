@@ -4,6 +4,7 @@ import java.io.File;
 import net.i2p.data.DataHelper;
 import net.i2p.router.RouterContext;
 import net.i2p.router.tasks.OOMListener;
+import net.i2p.router.util.ConcurrentDecayingBloomFilter;
 import net.i2p.router.util.DecayingBloomFilter;
 import net.i2p.router.util.DecayingHashSet;
 import net.i2p.util.Log;
@@ -42,6 +43,8 @@ class BloomFilterIVValidator implements IVValidator {
     private static final String PROP_FORCE = "router.forceDecayingBloomFilter";
     /** For testing. */
     private static final String PROP_DISABLE = "router.disableDecayingBloomFilter";
+    /** Set to false to use the locking DecayingBloomFilter */
+    private static final String PROP_CONCURRENT = "router.concurrentIVFilter";
 
     /**
      *  Construct the validator, selecting filter size based on bandwidth and memory.
@@ -57,7 +60,7 @@ class BloomFilterIVValidator implements IVValidator {
         // See DBF, BloomSHA1, and KeySelector for details.
         long maxMemory = SystemVersion.getMaxMemory();
         if (_context.getBooleanProperty(PROP_FORCE)) {
-            _filter = new DecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV");  // 2MB fixed
+            _filter = newFilter(ctx, 0);  // 2MB fixed
         } else if (_context.getBooleanProperty(PROP_DISABLE)) {
             _filter = null;
         } else if (KBps < MIN_SHARE_KBPS_TO_USE_BLOOM || maxMemory < MIN_MEM_TO_USE_BLOOM) {
@@ -65,30 +68,42 @@ class BloomFilterIVValidator implements IVValidator {
                 warn(maxMemory, KBps, MIN_MEM_TO_USE_BLOOM, MIN_SHARE_KBPS_TO_USE_BLOOM);
             _filter = new DecayingHashSet(ctx, HALFLIFE_MS, 16, "TunnelIVV"); // appx. 4MB max
         } else if (KBps >= MIN_SHARE_KBPS_FOR_HUGE4_BLOOM && maxMemory >= MIN_MEM_FOR_HUGE4_BLOOM) {
-            _filter = new DecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV", 28);  // 64MB fixed
+            _filter = newFilter(ctx, 28);  // 64MB fixed
         } else if (KBps >= MIN_SHARE_KBPS_FOR_HUGE3_BLOOM && maxMemory >= MIN_MEM_FOR_HUGE3_BLOOM) {
-            _filter = new DecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV", 27);  // 32MB fixed
+            _filter = newFilter(ctx, 27);  // 32MB fixed
         } else if (KBps >= MIN_SHARE_KBPS_FOR_HUGE2_BLOOM && maxMemory >= MIN_MEM_FOR_HUGE2_BLOOM) {
-            _filter = new DecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV", 26);  // 16MB fixed
+            _filter = newFilter(ctx, 26);  // 16MB fixed
             if (KBps >= MIN_SHARE_KBPS_FOR_HUGE3_BLOOM)
                 warn(maxMemory, KBps, MIN_MEM_FOR_HUGE3_BLOOM, MIN_SHARE_KBPS_FOR_HUGE3_BLOOM);
         } else if (KBps >= MIN_SHARE_KBPS_FOR_HUGE_BLOOM && maxMemory >= MIN_MEM_FOR_HUGE_BLOOM) {
             if (KBps >= MIN_SHARE_KBPS_FOR_HUGE2_BLOOM)
                 warn(maxMemory, KBps, MIN_MEM_FOR_HUGE2_BLOOM, MIN_SHARE_KBPS_FOR_HUGE2_BLOOM);
-            _filter = new DecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV", 25);  // 8MB fixed
+            _filter = newFilter(ctx, 25);  // 8MB fixed
         } else if (KBps >= MIN_SHARE_KBPS_FOR_BIG_BLOOM && maxMemory >= MIN_MEM_FOR_BIG_BLOOM) {
             if (KBps >= MIN_SHARE_KBPS_FOR_HUGE_BLOOM)
                 warn(maxMemory, KBps, MIN_MEM_FOR_HUGE_BLOOM, MIN_SHARE_KBPS_FOR_HUGE_BLOOM);
-            _filter = new DecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV", 24);  // 4MB fixed
+            _filter = newFilter(ctx, 24);  // 4MB fixed
         } else {
             if (KBps >= MIN_SHARE_KBPS_FOR_BIG_BLOOM)
                 warn(maxMemory, KBps, MIN_MEM_FOR_BIG_BLOOM, MIN_SHARE_KBPS_FOR_BIG_BLOOM);
-            _filter = new DecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV");  // 2MB fixed
+            _filter = newFilter(ctx, 0);  // 2MB fixed
         }
         ctx.statManager().createRateStat("tunnel.duplicateIV", "Note that a duplicate IV was received", "Tunnels",
                                          new long[] { 60*1000, 60*60*1000L });
     }
 
+    /**
+     *  @param m filter size exponent, or 0 for the default
+     *  @since 0.9.71+
+     */
+    private static DecayingBloomFilter newFilter(RouterContext ctx, int m) {
+        if (m <= 0)
+            m = ctx.getProperty("router.decayingBloomFilterM", 23);
+        if (ctx.getProperty(PROP_CONCURRENT, true))
+            return new ConcurrentDecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV", m);
+        return new DecayingBloomFilter(ctx, HALFLIFE_MS, 16, "TunnelIVV", m);
+    }
+
     @Override
     public boolean receiveIV(byte[] ivData, int ivOffset, byte[] payload, int payloadOffset) {
         if (_filter == null)  // testing only
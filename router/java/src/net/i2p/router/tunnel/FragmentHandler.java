@@ -1,5 +1,6 @@
 package net.i2p.router.tunnel;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -97,6 +98,7 @@ class FragmentHandler {
     /** The log. */
     protected final Log _log;
     private final Map<Integer, FragmentedMessage> _fragmentedMessages;
+    private final ReassemblyQuota _quota = ReassemblyQuota.getInstance();
     private final DefragmentedReceiver _receiver;
     private final AtomicInteger _completed = new AtomicInteger();
     private final AtomicInteger _failed = new AtomicInteger();
@@ -405,27 +407,44 @@ class FragmentHandler {
                           "; Type: " + (preprocessed[offset] & 0xff));
             _context.statManager().addRateData("tunnel.corruptMessage", 1);
         } else if (fragmented) {
+            if (!FragmentedMessage.isValidFragment(0, offset, size, preprocessed.length)) {
+                if (_log.shouldWarn())
+                    _log.warn("Invalid length (" + size + "/" + offset + " out of " + preprocessed.length + ") for [MsgID " + messageId + "]");
+                return -1;
+            }
             FragmentedMessage msg;
             final long fMessageId = messageId;
             msg = _fragmentedMessages.computeIfAbsent((int) messageId,
                 k -> new FragmentedMessage(_context, fMessageId));
 
-            // synchronized is required, fragments may be arriving in different threads
-            synchronized(msg) {
-                boolean ok = msg.receive(preprocessed, offset, size, false, router, tunnelId);
-                if (!ok) return -1;
-                if (msg.isComplete()) {
-                    _fragmentedMessages.remove((int) messageId);
-                    if (msg.getExpireEvent() != null)
-                        msg.getExpireEvent().cancel();
-                    receiveComplete(msg);
-                } else {
-                    if (msg.getExpireEvent() == null) {
-                        RemoveFailed evt = new RemoveFailed(msg);
-                        msg.setExpireEvent(evt);
-                        if (_log.shouldDebug())
-                            _log.debug("In " + (MAX_DEFRAGMENT_TIME / 1000) + "s, dropping [MsgID " + messageId + "]");
-                        evt.schedule(MAX_DEFRAGMENT_TIME);
+            if (reserve(msg)) {
+                // synchronized is required, fragments may be arriving in different threads
+                synchronized(msg) {
+                    if (msg.isReleased()) {
+                        // completed, expired or evicted in another thread
+                        _quota.release(msg);
+                    } else {
+                        boolean dup = msg.hasFragment(0);
+                        boolean ok = msg.receive(preprocessed, offset, size, false, router, tunnelId);
+                        if (!ok || dup)
+                            _quota.unreserve(msg);
+                        if (!ok) return -1;
+                        if (msg.isComplete()) {
+                            _fragmentedMessages.remove((int) messageId);
+                            if (msg.getExpireEvent() != null)
+                                msg.getExpireEvent().cancel();
+                            _quota.release(msg);
+                            _context.statManager().addRateData("tunnel.fragmentedReassemblyTime", msg.getLifetime());
+                            receiveComplete(msg);
+                        } else {
+                            if (msg.getExpireEvent() == null) {
+                                RemoveFailed evt = new RemoveFailed(msg);
+                                msg.setExpireEvent(evt);
+                                if (_log.shouldDebug())
+                                    _log.debug("In " + (MAX_DEFRAGMENT_TIME / 1000) + "s, dropping [MsgID " + messageId + "]");
+                                evt.schedule(MAX_DEFRAGMENT_TIME);
+                            }
+                        }
                     }
                 }
             }
@@ -463,22 +482,43 @@ class FragmentHandler {
         if (messageId < 0)
             throw new RuntimeException("Preprocessed message was invalid [messageId: " + messageId + "; size:"
                                        + size + "; offset: " + offset + "; fragment:" + fragmentNum);
+        if (fragmentNum == 0 || !FragmentedMessage.isValidFragment(fragmentNum, offset, size, preprocessed.length)) {
+            if (_log.shouldWarn())
+                _log.warn("Invalid fragment " + fragmentNum + " length (" + size + "/" + offset + " out of " + preprocessed.length + ") for [MsgID " + messageId + "]");
+            return -1;
+        }
 
         final long fMessageId = messageId;
         FragmentedMessage msg = null;
         msg = _fragmentedMessages.computeIfAbsent((int) messageId,
             k -> new FragmentedMessage(_context, fMessageId));
 
+        if (!reserve(msg)) {
+            offset += size;
+            return offset;
+        }
+
         // synchronized is required, fragments may be arriving in different threads
         synchronized(msg) {
+            if (msg.isReleased()) {
+                // completed, expired or evicted in another thread
+                _quota.release(msg);
+                offset += size;
+                return offset;
+            }
+            boolean dup = msg.hasFragment(fragmentNum);
             boolean ok = msg.receive(fragmentNum, preprocessed, offset, size, isLast);
+            if (!ok || dup)
+                _quota.unreserve(msg);
             if (!ok) return -1;
 
             if (msg.isComplete()) {
                 _fragmentedMessages.remove((int) messageId);
                 if (msg.getExpireEvent() != null)
                     msg.getExpireEvent().cancel();
+                _quota.release(msg);
                 _context.statManager().addRateData("tunnel.fragmentedComplete", msg.getFragmentCount(), msg.getLifetime());
+                _context.statManager().addRateData("tunnel.fragmentedReassemblyTime", msg.getLifetime());
                 receiveComplete(msg);
             } else {
                 if (msg.getExpireEvent() == null) {
@@ -495,6 +535,51 @@ class FragmentHandler {
         return offset;
     }
 
+    /**
+     * Reserve a buffer in the ReassemblyQuota for a fragment of msg,
+     * and fail any messages evicted to make room.
+     * Must not be called while holding the lock on any FragmentedMessage.
+     *
+     * @return false if there is no room, msg has been dropped and the fragment must be skipped
+     * @since 0.9.71+
+     */
+    private boolean reserve(FragmentedMessage msg) {
+        List<ReassemblyQuota.Reservation> evicted = _quota.reserve(this, msg);
+        boolean dropped = false;
+        for (ReassemblyQuota.Reservation res : evicted) {
+            if (res.msg == msg)
+                dropped = true;
+            res.handler.evict(res.msg);
+        }
+        if (dropped) {
+            // msg alone fills the quota, it will never complete
+            _context.statManager().addRateData("tunnel.fragmentedQuotaDrop", 1);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drop an incomplete message evicted by the ReassemblyQuota.
+     * Its buffers have already been removed from the quota.
+     *
+     * @since 0.9.71+
+     */
+    private void evict(FragmentedMessage msg) {
+        _fragmentedMessages.remove((int) msg.getMessageId(), msg);
+        synchronized (msg) {
+            if (msg.isReleased())
+                return;
+            if (msg.getExpireEvent() != null)
+                msg.getExpireEvent().cancel();
+            _failed.incrementAndGet();
+            if (_log.shouldInfo())
+                _log.info("Evicting incomplete fragmented message (reassembly memory limit) " + msg);
+            _context.statManager().addRateData("tunnel.fragmentedEvicted", msg.getFragmentCount(), msg.getLifetime());
+            msg.failed();
+        }
+    }
+
     private void receiveComplete(FragmentedMessage msg) {
         if (msg == null)
             return;
@@ -596,9 +681,10 @@ class FragmentHandler {
 
         public void timeReached() {
             boolean removed;
-            removed = (null != _fragmentedMessages.remove((int) _msg.getMessageId()));
+            removed = _fragmentedMessages.remove((int) _msg.getMessageId(), _msg);
             synchronized (_msg) {
-                if (removed && !_msg.getReleased()) {
+                _quota.release(_msg);
+                if (removed && !_msg.isReleased()) {
                     _failed.incrementAndGet();
                     if (_log.shouldInfo())
                         _log.warn("Dropping incomplete fragmented message " + _msg);
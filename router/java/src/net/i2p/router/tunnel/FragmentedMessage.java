@@ -81,6 +81,7 @@ class FragmentedMessage {
         System.arraycopy(payload, offset, ba.getData(), 0, length);
         ba.setValid(length);
         ba.setOffset(0);
+        release(_fragments[fragmentNum]);
         _fragments[fragmentNum] = ba;
         _lastReceived = _lastReceived || isLast;
         if (fragmentNum > _highFragmentNum)
@@ -118,6 +119,7 @@ class FragmentedMessage {
         System.arraycopy(payload, offset, ba.getData(), 0, length);
         ba.setValid(length);
         ba.setOffset(0);
+        release(_fragments[0]);
         _fragments[0] = ba;
         _lastReceived = _lastReceived || isLast;
         _toRouter = toRouter;
@@ -127,6 +129,41 @@ class FragmentedMessage {
         return true;
     }
 
+    /**
+     * Would receive() accept this fragment?
+     * Check before creating or reserving a message for it,
+     * so a bad fragment doesn't leave an empty message behind.
+     *
+     * @param fragmentNum 0 - 63
+     * @param payloadLength length of the payload array
+     * @since 0.9.71+
+     */
+    static boolean isValidFragment(int fragmentNum, int offset, int length, int payloadLength) {
+        return fragmentNum >= 0 && fragmentNum < MAX_FRAGMENTS &&
+               length > 0 && length <= MAX_FRAGMENT_SIZE &&
+               offset + length <= payloadLength;
+    }
+
+    /**
+     * Release a duplicate fragment's buffer
+     * @param ba may be null
+     * @since 0.9.71+
+     */
+    private static void release(ByteArray ba) {
+        if (ba != null && ba.getData().length == TrivialPreprocessor.PREPROCESSED_SIZE)
+            _cache.release(ba);
+    }
+
+    /**
+     * Have we received this fragment already?
+     *
+     * @param fragmentNum 0 - 63
+     * @since 0.9.71+
+     */
+    public boolean hasFragment(int fragmentNum) {
+        return fragmentNum >= 0 && fragmentNum < MAX_FRAGMENTS && _fragments[fragmentNum] != null;
+    }
+
     /**
      * The unique ID of this fragmented message.
      *
@@ -242,6 +279,13 @@ class FragmentedMessage {
      * @return the released after
      */
     public synchronized long getReleasedAfter() { return _releasedAfter; }
+
+    /**
+     * Have the fragments been released, i.e. has the message completed or failed?
+     *
+     * @since 0.9.71+
+     */
+    public synchronized boolean isReleased() { return _releasedAfter >= 0; }
     /**
      * Releases the fragments, marking the message as failed.
      */
@@ -52,6 +52,25 @@ class HopProcessor {
      * @return true if the message was updated and valid, false if it was not.
      */
     public boolean process(byte[] orig, int offset, int length, Hash prev) {
+        return process(orig, offset, orig, offset, length, prev);
+    }
+
+    /**
+     * Process the data for the current hop, writing what should be sent to
+     * the next peer to a different buffer, so the received data need not
+     * be copied first. Same as process(orig, offset, length, prev) otherwise.
+     * The source and destination ranges must not overlap unless they are the same.
+     *
+     * @param src IV+data of the message
+     * @param srcOffset index into src where the IV begins
+     * @param dst output for the IV+data
+     * @param dstOffset index into dst to write the IV
+     * @param length IV+data length, should always be 1024 bytes
+     * @param prev previous hop in the tunnel, or null if we are the gateway
+     * @return true if dst was written and the message was valid, false if it was not.
+     * @since 0.9.71+
+     */
+    public boolean process(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length, Hash prev) {
         // prev is null on gateways
         if (prev != null) {
             if (_config.getReceiveFrom() == null) {
@@ -74,7 +93,7 @@ class HopProcessor {
             }
         }
 
-        boolean okIV = _validator.receiveIV(orig, offset, orig, offset + IV_LENGTH);
+        boolean okIV = _validator.receiveIV(src, srcOffset, src, srcOffset + IV_LENGTH);
         if (!okIV) {
             if (_log.shouldInfo())
                 _log.info("Invalid IV, dropping at hop... " + _config);
@@ -84,10 +103,10 @@ class HopProcessor {
         SessionKey ivkey = _config.getIVKey();
         AESEngine aes = _context.aes();
         // double IV encryption
-        aes.encryptBlock(orig, offset, ivkey, orig, offset);
-        aes.encrypt(orig, offset + IV_LENGTH, orig, offset + IV_LENGTH, _config.getLayerKey(),
-                    orig, offset, length - IV_LENGTH);
-        aes.encryptBlock(orig, offset, ivkey, orig, offset);
+        aes.encryptBlock(src, srcOffset, ivkey, dst, dstOffset);
+        aes.encrypt(src, srcOffset + IV_LENGTH, dst, dstOffset + IV_LENGTH, _config.getLayerKey(),
+                    dst, dstOffset, length - IV_LENGTH);
+        aes.encryptBlock(dst, dstOffset, ivkey, dst, dstOffset);
 
         return true;
     }
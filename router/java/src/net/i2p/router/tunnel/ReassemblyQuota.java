@@ -0,0 +1,202 @@
+package net.i2p.router.tunnel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.i2p.util.SystemVersion;
+
+/**
+ * Bounds the fragment buffers held by incomplete messages at all tunnel endpoints,
+ * so that memory for reassembly is fixed whatever the loss rate, or an attacker, does.
+ * <p>
+ * Each fragment of an incomplete message holds one TrivialPreprocessor.PREPROCESSED_SIZE
+ * buffer from the ByteCache until the message completes or times out.
+ * There is a global limit on those buffers, and a lower one per FragmentHandler,
+ * i.e. per tunnel. When a new fragment would exceed either, the oldest incomplete
+ * messages are evicted, first from the same tunnel for the per-tunnel limit,
+ * then from any tunnel for the global limit.
+ * <p>
+ * Evicted messages are returned to the caller, which must fail them after
+ * releasing any locks it holds, see FragmentHandler.
+ * <p>
+ * Thread-safe.
+ *
+ * @since 0.9.71+
+ */
+class ReassemblyQuota {
+    /** oldest first */
+    private final LinkedHashMap<FragmentedMessage, Reservation> _pending;
+    private final Map<FragmentHandler, Integer> _perTunnel;
+    private final int _maxBuffers;
+    private final int _maxPerTunnel;
+    private int _buffers;
+
+    /** 1/32 of the heap, between 2 MB and 16 MB */
+    private static final int MAX_BUFFERS = (int) Math.max(2048, Math.min(16384,
+                                               SystemVersion.getMaxMemory() / (32 * TrivialPreprocessor.PREPROCESSED_SIZE)));
+    /** eight max-size messages */
+    private static final int MAX_PER_TUNNEL = 512;
+
+    private static final ReassemblyQuota _instance = new ReassemblyQuota(MAX_BUFFERS, MAX_PER_TUNNEL);
+
+    /**
+     * @return the quota shared by all FragmentHandlers
+     */
+    public static ReassemblyQuota getInstance() {return _instance;}
+
+    /**
+     * @param maxBuffers global limit
+     * @param maxPerTunnel per-FragmentHandler limit
+     */
+    public ReassemblyQuota(int maxBuffers, int maxPerTunnel) {
+        _pending = new LinkedHashMap<FragmentedMessage, Reservation>(64);
+        _perTunnel = new HashMap<FragmentHandler, Integer>(64);
+        _maxBuffers = maxBuffers;
+        _maxPerTunnel = Math.min(maxPerTunnel, maxBuffers);
+    }
+
+    /**
+     * An incomplete message and the buffers it holds.
+     */
+    static class Reservation {
+        final FragmentedMessage msg;
+        final FragmentHandler handler;
+        int buffers;
+
+        Reservation(FragmentedMessage msg, FragmentHandler handler) {
+            this.msg = msg;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Reserve a buffer for one more fragment of msg, evicting older messages if necessary.
+     * The caller must fail all the returned messages.
+     * If msg is not among them, the caller must call unreserve() if the
+     * fragment is not stored, and release() when msg completes or fails.
+     *
+     * @return the evicted messages, possibly empty, non-null.
+     *         If there is no room for another fragment even after evicting the others,
+     *         msg itself is evicted too, last in the list, and the fragment must be dropped.
+     */
+    public synchronized List<Reservation> reserve(FragmentHandler handler, FragmentedMessage msg) {
+        Reservation res = _pending.get(msg);
+        if (res == null) {
+            res = new Reservation(msg, handler);
+            _pending.put(msg, res);
+        }
+        List<Reservation> evicted = null;
+        while (getTunnelBuffers(handler) >= _maxPerTunnel) {
+            Reservation victim = oldest(handler, msg);
+            if (victim == null)
+                break;
+            evicted = remove(victim, evicted);
+        }
+        while (_buffers >= _maxBuffers) {
+            Reservation victim = oldest(null, msg);
+            if (victim == null)
+                break;
+            evicted = remove(victim, evicted);
+        }
+        if (getTunnelBuffers(handler) >= _maxPerTunnel || _buffers >= _maxBuffers) {
+            // msg itself is at the limit, it will never complete
+            return remove(res, evicted);
+        }
+        res.buffers++;
+        _buffers++;
+        _perTunnel.put(handler, Integer.valueOf(getTunnelBuffers(handler) + 1));
+        return evicted != null ? evicted : Collections.<Reservation>emptyList();
+    }
+
+    /**
+     * Give back a buffer from reserve() that was not used,
+     * e.g. the fragment was invalid or a duplicate.
+     */
+    public synchronized void unreserve(FragmentedMessage msg) {
+        Reservation res = _pending.get(msg);
+        if (res == null || res.buffers <= 0)
+            return;
+        res.buffers--;
+        _buffers--;
+        adjustTunnel(res.handler, -1);
+    }
+
+    /**
+     * The message completed, failed, or was dropped, and no longer holds any buffers.
+     * Does nothing if not reserved.
+     */
+    public synchronized void release(FragmentedMessage msg) {
+        Reservation res = _pending.remove(msg);
+        if (res != null) {
+            _buffers -= res.buffers;
+            adjustTunnel(res.handler, -res.buffers);
+        }
+    }
+
+    /**
+     * @return total buffers reserved
+     */
+    public synchronized int getBuffers() {return _buffers;}
+
+    /**
+     * @return buffers reserved by this handler
+     */
+    public synchronized int getBuffers(FragmentHandler handler) {return getTunnelBuffers(handler);}
+
+    /**
+     * @return incomplete messages
+     */
+    public synchronized int getPending() {return _pending.size();}
+
+    /**
+     * @return max total buffers
+     */
+    public int getMaxBuffers() {return _maxBuffers;}
+
+    /** caller must synch */
+    private int getTunnelBuffers(FragmentHandler handler) {
+        Integer rv = _perTunnel.get(handler);
+        return rv != null ? rv.intValue() : 0;
+    }
+
+    /** caller must synch */
+    private void adjustTunnel(FragmentHandler handler, int delta) {
+        int v = getTunnelBuffers(handler) + delta;
+        if (v > 0)
+            _perTunnel.put(handler, Integer.valueOf(v));
+        else
+            _perTunnel.remove(handler);
+    }
+
+    /**
+     * Caller must synch
+     * @param handler only this handler's messages, or null for any
+     * @param exclude never this one
+     * @return the oldest message holding buffers, or null
+     */
+    private Reservation oldest(FragmentHandler handler, FragmentedMessage exclude) {
+        for (Iterator<Reservation> iter = _pending.values().iterator(); iter.hasNext(); ) {
+            Reservation res = iter.next();
+            if (res.msg == exclude || res.buffers <= 0)
+                continue;
+            if (handler == null || res.handler == handler)
+                return res;
+        }
+        return null;
+    }
+
+    /** caller must synch */
+    private List<Reservation> remove(Reservation victim, List<Reservation> evicted) {
+        _pending.remove(victim.msg);
+        _buffers -= victim.buffers;
+        adjustTunnel(victim.handler, -victim.buffers);
+        if (evicted == null)
+            evicted = new ArrayList<Reservation>(4);
+        evicted.add(victim);
+        return evicted;
+    }
+}
@@ -374,6 +374,12 @@ public class TunnelDispatcher implements Service {
         _context.statManager().createRateStat("tunnel.cache.participants", "Participant cache size", "Tunnels [Memory]", RATES);
         _context.statManager().createRateStat("tunnel.cache.inboundGateways", "Inbound gateway cache size", "Tunnels [Memory]", RATES);
         _context.statManager().createRateStat("tunnel.cache.participatingConfig", "Participating config cache size", "Tunnels [Memory]", RATES);
+        _context.statManager().createRateStat("tunnel.cache.fragmentBuffers", "Fragment buffers held for reassembly at endpoints", "Tunnels [Memory]", RATES);
+        _context.statManager().createRateStat("tunnel.fragmentedComplete", "Fragments in reassembled messages at endpoints", "Tunnels [Memory]", RATES);
+        _context.statManager().createRateStat("tunnel.fragmentedReassemblyTime", "Time to reassemble fragmented messages at endpoints (ms)", "Tunnels [Memory]", RATES);
+        _context.statManager().createRateStat("tunnel.fragmentedDropped", "Fragments in incomplete messages expired at endpoints", "Tunnels [Memory]", RATES);
+        _context.statManager().createRateStat("tunnel.fragmentedEvicted", "Fragments in incomplete messages evicted at endpoints (reassembly memory limit)", "Tunnels [Memory]", RATES);
+        _context.statManager().createRateStat("tunnel.fragmentedQuotaDrop", "Fragments dropped at endpoints (reassembly memory limit)", "Tunnels [Memory]", RATES);
         _context.statManager().createRateStat("tunnel.joinOutboundGatewayZeroHop", "Zero hop tunnels joined as Outbound Gateway", "Tunnels [Participating]", RATES);
         _context.statManager().createRateStat("tunnel.joinInboundEndpoint", "Tunnels joined as Inbound Endpoint", "Tunnels [Participating]", RATES);
         _context.statManager().createRateStat("tunnel.joinInboundEndpointZeroHop", "Zero hop tunnels joined as Inbound Endpoint", "Tunnels [Participating]", RATES);
@@ -773,9 +779,10 @@ public class TunnelDispatcher implements Service {
      * Dispatch a TunnelDataMessage to the appropriate participant or endpoint
      */
     public void dispatch(TunnelDataMessage msg, Hash recvFrom) {
-        byte[] data = msg.getData();
-        if (data != null && shouldDropParticipatingInboundMessage(Location.PARTICIPANT, TunnelDataMessage.MESSAGE_TYPE, data.length, null)) {
-            _context.statManager().addRateData("tunnel.participatingInBps", (long) data.length * 1024 / 1, 0);
+        // don't getData() here, so the payload is not copied out of the transport's buffer
+        int length = TunnelDataMessage.DATA_SIZE;
+        if (shouldDropParticipatingInboundMessage(Location.PARTICIPANT, TunnelDataMessage.MESSAGE_TYPE, length, null)) {
+            _context.statManager().addRateData("tunnel.participatingInBps", (long) length * 1024 / 1, 0);
             return;
         }
         TunnelParticipant participant = _participants.get(msg.getTunnelIdObj());
@@ -993,6 +1000,7 @@ public class TunnelDispatcher implements Service {
         _context.statManager().addRateData("tunnel.cache.participants", _participants.size());
         _context.statManager().addRateData("tunnel.cache.inboundGateways", _inboundGateways.size());
         _context.statManager().addRateData("tunnel.cache.participatingConfig", _participatingConfig.size());
+        _context.statManager().addRateData("tunnel.cache.fragmentBuffers", ReassemblyQuota.getInstance().getBuffers());
     }
 
     /**
@@ -154,14 +154,25 @@ class TunnelParticipant {
      * Process an incoming tunnel data message.
      */
     public void dispatch(TunnelDataMessage msg, Hash recvFrom) {
-        byte[] data = msg.getData();
+        byte[] data;
         boolean ok;
 
         if (_processor != null) {
-            ok = _processor.process(data, 0, data.length, recvFrom);
+            byte[] view = msg.getView();
+            if (view != null) {
+                // decrypt straight out of the transport's buffer
+                int off = msg.getViewOffset();
+                data = msg.detachForWrite();
+                ok = _processor.process(view, off, data, 0, TunnelDataMessage.DATA_SIZE, recvFrom);
+            } else {
+                data = msg.getData();
+                ok = _processor.process(data, 0, data.length, recvFrom);
+            }
         } else if (_inboundEndpointProcessor != null) {
+            data = msg.getData();
             ok = _inboundEndpointProcessor.retrievePreprocessedData(data, 0, data.length, recvFrom);
         } else {
+            data = null;
             ok = false;
         }
 
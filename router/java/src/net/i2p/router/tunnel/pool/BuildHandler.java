@@ -53,6 +53,12 @@ import net.i2p.util.VersionComparator;
 /**
  * Handle the received tunnel build message requests and replies,
  * including sending responses and updating tunnel lists.
+ *
+ * Requests are handled in stages. On receipt, cheap checks with no crypto
+ * (queue backlog, previous hop throttle, a record for us that isn't a replay)
+ * decide whether the request is queued at all. The BuildHandler threads then
+ * take requests off the queue in parallel, decrypt them, and handle them.
+ * Queue depth and the time spent in each stage are in the tunnel.buildHandler stats.
  */
 public class BuildHandler implements Runnable {
     private final RouterContext _context;
@@ -400,6 +406,10 @@ public class BuildHandler implements Runnable {
         ctx.statManager().createRequiredRateStat("tunnel.dropLookupStale", "Dropped deferred next-hop lookup (expired in queue)", "Tunnels [Participating]", RATES);
         ctx.statManager().createRequiredRateStat("tunnel.rejectTooOld", "Rejected tunnel build (too old)", "Tunnels [Participating]", RATES);
         ctx.statManager().createRequiredRateStat("tunnel.buildHandler.queueSize", "Build handler inbound queue depth", "Tunnels", RATES);
+        ctx.statManager().createRequiredRateStat("tunnel.buildHandler.queueTime", "Time a build request waits for a handler thread (ms)", "Tunnels [Participating]", RATES);
+        ctx.statManager().createRequiredRateStat("tunnel.buildHandler.handleTime", "Time to handle a decrypted build request (ms)", "Tunnels [Participating]", RATES);
+        ctx.statManager().createRequiredRateStat("tunnel.buildRequestDup", "Dropped tunnel build (duplicate record)", "Tunnels [Participating]", RATES);
+        ctx.statManager().createRequiredRateStat("tunnel.dropPrecheck", "Dropped tunnel build before decryption (no record for us or duplicate)", "Tunnels [Participating]", RATES);
         ctx.statManager().createRequiredRateStat("tunnel.acceptLoad", "Delay processing accepted request (ms)", "Tunnels [Participating]", RATES);
         ctx.statManager().createRequiredRateStat("tunnel.decryptRequestTime", "Time to decrypt a build request (ms)", "Tunnels [Participating]", RATES);
         ctx.statManager().createRequiredRateStat("tunnel.dropLoadBacklog", "Pending request count when dropped", "Tunnels [Participating]", RATES);
@@ -508,6 +518,7 @@ public class BuildHandler implements Runnable {
         // check for poison
         if (state.msg == null) {Thread.currentThread().interrupt(); return;}
         long now = System.currentTimeMillis();
+        _context.statManager().addRateData("tunnel.buildHandler.queueTime", now - state.recvTime);
         long uptime = _context.router().getUptime();
         // Half the originator's adaptive budget: a request older than this can
         // no longer reliably reach its originator before they give up, but
@@ -838,6 +849,7 @@ public class BuildHandler implements Runnable {
             long beforeHandle = System.currentTimeMillis();
             handleReq(nextPeerInfo, state, req, nextPeer);
             long handleTime = System.currentTimeMillis() - beforeHandle;
+            _context.statManager().addRateData("tunnel.buildHandler.handleTime", handleTime);
             long msgId = 0;
             if (state.msg != null) {msgId = state.msg.getUniqueId();}
             if (_log.shouldDebug()) {
@@ -1510,6 +1522,14 @@ public class BuildHandler implements Runnable {
                             accept = false;
                         }
                     }
+                    if (accept && !_processor.precheck((TunnelBuildMessage) receivedMessage, _context.routerHash())) {
+                        // not for us or a replay, drop before it takes a place in the queue
+                        if (_log.shouldInfo()) {
+                            _log.info("Dropping Tunnel Request [ID: " + reqId + "] -> No new record for us");
+                        }
+                        _context.statManager().addRateData("tunnel.dropPrecheck", 1);
+                        accept = false;
+                    }
                     if (accept) {
                         accept = _inboundBuildMessages.offer(new BuildMessageState(_context, receivedMessage, from, fromHash));
                         if (accept) {
@@ -14,6 +14,7 @@ import net.i2p.data.i2np.ShortEncryptedBuildRecord;
 import net.i2p.data.i2np.ShortTunnelBuildMessage;
 import net.i2p.data.i2np.TunnelBuildMessage;
 import net.i2p.router.RouterContext;
+import net.i2p.router.util.ConcurrentDecayingBloomFilter;
 import net.i2p.router.util.DecayingBloomFilter;
 import net.i2p.util.Log;
 import net.i2p.util.SystemVersion;
@@ -33,6 +34,11 @@ class BuildMessageProcessor {
     private final RouterContext ctx;
     private final Log log;
     private final DecayingBloomFilter _filter;
+    /** ECIES ephemeral keys of records seen by precheck() */
+    private final DecayingBloomFilter _ephemeralFilter;
+
+    /** Set to false to use the locking DecayingBloomFilter */
+    private static final String PROP_CONCURRENT = "router.concurrentBuildFilter";
 
     /**
      *  Creates a new BuildMessageProcessor.
@@ -41,7 +47,8 @@ class BuildMessageProcessor {
     public BuildMessageProcessor(RouterContext ctx) {
         this.ctx = ctx;
         log = ctx.logManager().getLog(getClass());
-        _filter = selectFilter();
+        _filter = selectFilter("TunnelBMP");
+        _ephemeralFilter = selectFilter("TunnelBMPEph");
         // all createRateStat in TunnelDispatcher
     }
 
@@ -51,9 +58,10 @@ class BuildMessageProcessor {
      *
      *  Target false positive rate is 1E-5 or lower
      *
+     *  @param name for the filter stats
      *  @since 0.9.24
      */
-    private DecayingBloomFilter selectFilter() {
+    private DecayingBloomFilter selectFilter(String name) {
         long maxMemory = SystemVersion.getMaxMemory();
         boolean isSlow = SystemVersion.isSlow();
         boolean isAndroid = SystemVersion.isAndroid();
@@ -99,8 +107,48 @@ class BuildMessageProcessor {
             duration = 60*60*1000;
         }
         if (log.shouldInfo())
-            log.info("Selected Bloom filter m = " + m);
-        return new DecayingBloomFilter(ctx, duration, 32, "TunnelBMP", m);
+            log.info("Selected " + name + " Bloom filter m = " + m);
+        if (ctx.getProperty(PROP_CONCURRENT, true))
+            return new ConcurrentDecayingBloomFilter(ctx, duration, 32, name, m);
+        return new DecayingBloomFilter(ctx, duration, 32, name, m);
+    }
+
+    /**
+     * Cheap checks on the cleartext part of the records, before the message
+     * is queued for decrypt(): there must be a record for us, and for ECIES,
+     * its ephemeral key must not have been seen before.
+     *
+     * decrypt() catches replays as well, but only after the DH.
+     * A replayed record has the same ephemeral key, so it can be dropped here
+     * without doing any crypto or taking a place in the queue.
+     *
+     * @param msg the tunnel build message
+     * @param ourHash our router hash
+     * @return true if decrypt() should be attempted
+     * @since 0.9.71+
+     */
+    public boolean precheck(TunnelBuildMessage msg, Hash ourHash) {
+        byte[] ourHashData = ourHash.getData();
+        // ElG records have no ephemeral key
+        boolean isEC = ctx.keyManager().getPrivateKey().getType() == EncType.ECIES_X25519;
+        boolean found = false;
+        for (int i = 0; i < msg.getRecordCount(); i++) {
+            byte[] data = msg.getRecord(i).getData();
+            if (!DataHelper.eq(ourHashData, 0, data, 0, BuildRequestRecord.PEER_SIZE))
+                continue;
+            found = true;
+            if (!isEC)
+                break;
+            if (_ephemeralFilter.add(data, BuildRequestRecord.PEER_SIZE, 32)) {
+                if (log.shouldWarn())
+                    log.warn("[MsgID " + msg.getUniqueId() + "] Duplicate record received, dropping before decryption");
+                ctx.statManager().addRateData("tunnel.buildRequestDup", 1);
+                return false;
+            }
+            // on the microscopic chance that there's another router
+            // out there with the same first 16 bytes, check them all
+        }
+        return found;
     }
 
     /**
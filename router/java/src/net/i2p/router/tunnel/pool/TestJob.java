@@ -12,8 +12,8 @@ import net.i2p.data.SessionTag;
 import net.i2p.data.TunnelId;
 import net.i2p.data.i2np.DeliveryStatusMessage;
 import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.JobImpl;
-import net.i2p.router.MessageSelector;
 import net.i2p.router.OutNetMessage;
 import net.i2p.router.ReplyJob;
 import net.i2p.router.RouterContext;
@@ -1712,7 +1712,7 @@ Long tunnelKey = getTunnelKey(cfg);
         return false;
     }
 
-    private class ReplySelector implements MessageSelector {
+    private class ReplySelector implements IndexedMessageSelector {
         private final long _id;
         private final long _expiration;
 
@@ -1730,6 +1730,10 @@ Long tunnelKey = getTunnelKey(cfg);
 
         @Override public long getExpiration() { return _expiration; }
 
+        @Override public long getReplyId() { return _id; }
+
+        @Override public Hash getReplyKey() { return null; }
+
         @Override public boolean isMatch(I2NPMessage m) {
             return m.getType() == DeliveryStatusMessage.MESSAGE_TYPE &&
                    ((DeliveryStatusMessage) m).getMessageId() == _id;
@@ -1949,7 +1949,7 @@ public abstract class TunnelPeerSelector extends ConnectChecker {
 
         // Collect top Fast + HighCap peers that aren't in first-hop fail cooldown
         Set<Hash> targets = new HashSet<>(512);
-        // Must use mutable set — locked_selectPeers may add to the exclude set
+        // Must use mutable set — selectFromTier may add to the exclude set
         rctx.profileOrganizer().selectFastPeers(400, new HashSet<>(4), targets);
         // Also add top HighCap to cover more candidates
         rctx.profileOrganizer().selectHighCapacityPeers(400, targets, targets);
@@ -0,0 +1,242 @@
+package net.i2p.router.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.i2p.I2PAppContext;
+
+/**
+ * Lock-free version of DecayingBloomFilter, for the filters on the tunnel data path.
+ * <p>
+ * The two filters are flat AtomicLongArray bit sets. Bits are set with
+ * compare-and-swap, and the current and previous filters are swapped by replacing
+ * a single volatile reference, so add() takes no lock and does not allocate.
+ * <p>
+ * The k bit positions are derived from two 64-bit hashes of the entry, keyed
+ * with a random seed per filter (Kirsch-Mitzenmacher double hashing),
+ * rather than from SHA1-style key selection over an extended 32-byte entry.
+ * For the same m and k the false positive rate is the same as DecayingBloomFilter.
+ * <p>
+ * At decay, the previous filter is cleared and then becomes the current one.
+ * Lookups racing the clear can only miss entries at least durationMs old,
+ * which the filter is allowed to forget.
+ * <p>
+ * As with DecayingBloomFilter, two threads adding the same new entry at the
+ * same moment may both be told it is new.
+ *
+ * @since 0.9.71+
+ */
+public class ConcurrentDecayingBloomFilter extends DecayingBloomFilter {
+    private final int _k;
+    private final int _mask;
+    private final long _seed1;
+    private final long _seed2;
+    private volatile Generation _gen;
+
+    private static class Generation {
+        final AtomicLongArray current;
+        final AtomicLongArray previous;
+        final AtomicInteger inserted = new AtomicInteger();
+        final int previousInserted;
+
+        Generation(AtomicLongArray current, AtomicLongArray previous, int previousInserted) {
+            this.current = current;
+            this.previous = previous;
+            this.previousInserted = previousInserted;
+        }
+    }
+
+    /**
+     * Uses the same m as DecayingBloomFilter, memory usage is 2 MB.
+     *
+     * @param durationMs entries last for at least this long, but no more than twice this long
+     * @param entryBytes how large are the entries
+     * @param name just for logging / debugging / stats
+     */
+    public ConcurrentDecayingBloomFilter(I2PAppContext context, int durationMs, int entryBytes, String name) {
+        this(context, durationMs, entryBytes, name, context.getProperty("router.decayingBloomFilterM", DEFAULT_M));
+    }
+
+    /**
+     * Memory usage is 2 * (2**m) bits or 2**(m-2) bytes.
+     *
+     * @param durationMs entries last for at least this long, but no more than twice this long
+     * @param entryBytes how large are the entries, 1 to 32 bytes
+     * @param name just for logging / debugging / stats
+     * @param m filter size exponent, 6 to 29
+     */
+    public ConcurrentDecayingBloomFilter(I2PAppContext context, int durationMs, int entryBytes, String name, int m) {
+        super(durationMs, entryBytes, name, context);
+        if (entryBytes <= 0 || entryBytes > 32)
+            throw new IllegalArgumentException("Bad size");
+        if (m < 6 || m > 29)
+            throw new IllegalArgumentException("Bad m " + m);
+        _k = getK(m);
+        _mask = (1 << m) - 1;
+        _seed1 = context.random().nextLong();
+        _seed2 = context.random().nextLong();
+        int longs = 1 << (m - 6);
+        _gen = new Generation(new AtomicLongArray(longs), new AtomicLongArray(longs), 0);
+        if (_log.shouldWarn())
+           _log.warn("New ConcurrentDecayingBloomFilter " + name + " m = " + m + " k = " + _k +
+                     " entryBytes = " + entryBytes + " cycle (s) = " + (durationMs / 1000));
+    }
+
+    /** Unsynchronized but only used for logging elsewhere. */
+    @Override
+    public int getInsertedCount() {
+        Generation g = _gen;
+        return g.inserted.get() + g.previousInserted;
+    }
+
+    /**
+     * Theoretical false positive rate of the current filter, from the number of entries.
+     */
+    @Override
+    public double getFalsePositiveRate() {
+        int n = _gen.inserted.get();
+        return Math.pow(1d - Math.exp(-((double) _k) * n / (_mask + 1d)), _k);
+    }
+
+    /**
+     * @return true if the entry added is a duplicate
+     */
+    @Override
+    public boolean add(byte[] entry, int off, int len) {
+        if (entry == null)
+            throw new IllegalArgumentException("Null entry");
+        if (len != _entryBytes)
+            throw new IllegalArgumentException("Bad entry [" + len + ", expected "
+                                               + _entryBytes + "]");
+        long h1 = _seed1;
+        long h2 = _seed2;
+        int end = off + len;
+        for (int i = off; i < end; i += 8) {
+            long word = 0;
+            int wend = Math.min(i + 8, end);
+            for (int j = i; j < wend; j++) {
+                word = (word << 8) | (entry[j] & 0xff);
+            }
+            h1 = mix(h1 ^ word);
+            h2 = mix(h2 + word);
+        }
+        return add(h1, h2, true);
+    }
+
+    /**
+     * The number of low order bits used is determined by the entryBytes parameter
+     * used on creation of the filter.
+     *
+     * @return true if the entry added is a duplicate
+     */
+    @Override
+    public boolean add(long entry) {
+        return add(entry, true);
+    }
+
+    /**
+     * @return true if the entry is already known. This does NOT add the entry however.
+     */
+    @Override
+    public boolean isKnown(long entry) {
+        return add(entry, false);
+    }
+
+    private boolean add(long entry, boolean addIfNew) {
+        if (_entryBytes < 8)
+            entry &= (1L << (_entryBytes * 8)) - 1;
+        return add(mix(_seed1 ^ entry), mix(_seed2 + entry), addIfNew);
+    }
+
+    /**
+     * Check the previous filter, then test-and-set the bits in the current filter.
+     *
+     * @return true if all k bits were already set in either filter
+     */
+    private boolean add(long h1, long h2, boolean addIfNew) {
+        // odd, so the k positions are distinct
+        h2 |= 1;
+        Generation g = _gen;
+        boolean seen = isSet(g.previous, h1, h2);
+        if (!seen) {
+            if (addIfNew) {
+                seen = true;
+                AtomicLongArray bits = g.current;
+                long h = h1;
+                for (int i = 0; i < _k; i++) {
+                    int idx = ((int) h) & _mask;
+                    int word = idx >>> 6;
+                    long bit = 1L << idx;
+                    long old;
+                    do {
+                        old = bits.get(word);
+                        if ((old & bit) != 0)
+                            break;
+                    } while (!bits.compareAndSet(word, old, old | bit));
+                    if ((old & bit) == 0)
+                        seen = false;
+                    h += h2;
+                }
+                if (!seen)
+                    g.inserted.incrementAndGet();
+            } else {
+                seen = isSet(g.current, h1, h2);
+            }
+        }
+        if (seen)
+            _currentDuplicates.incrementAndGet();
+        return seen;
+    }
+
+    private boolean isSet(AtomicLongArray bits, long h1, long h2) {
+        long h = h1;
+        for (int i = 0; i < _k; i++) {
+            int idx = ((int) h) & _mask;
+            if ((bits.get(idx >>> 6) & (1L << idx)) == 0)
+                return false;
+            h += h2;
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit finalizer from SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void clearBits(AtomicLongArray bits) {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.lazySet(i, 0);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        Generation g = _gen;
+        clearBits(g.current);
+        clearBits(g.previous);
+        _gen = new Generation(g.current, g.previous, 0);
+        _currentDuplicates.set(0);
+    }
+
+    @Override
+    protected void decay() {
+        int currentCount;
+        long dups;
+        synchronized (this) {
+            Generation g = _gen;
+            // everything in previous is at least durationMs old, so clear it before the swap
+            clearBits(g.previous);
+            currentCount = g.inserted.get();
+            _gen = new Generation(g.previous, g.current, currentCount);
+            dups = _currentDuplicates.getAndSet(0);
+        }
+        if (_log.shouldDebug())
+            _log.debug("Decaying the " + _name + " filter after inserting " + currentCount
+                       + " elements and " + dups + " false positives");
+    }
+}
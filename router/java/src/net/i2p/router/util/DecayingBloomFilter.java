@@ -67,13 +67,13 @@ public class DecayingBloomFilter {
     /** Synchronize against this lock when switching double buffers. */
     protected final ReentrantReadWriteLock _reorganizeLock = new ReentrantReadWriteLock();
 
-    private static final int DEFAULT_M = 23;
+    static final int DEFAULT_M = 23;
     private static final int DEFAULT_K = 11;
     /** True for debugging. */
     private static final boolean ALWAYS_MISS = false;
 
     /**
-     * Only for extension by DecayingHashSet
+     * Only for extension by DecayingHashSet and ConcurrentDecayingBloomFilter
      *
      * @param durationMs entries last for at least this long
      * @param entryBytes how large are the entries
@@ -144,16 +144,9 @@ public class DecayingBloomFilter {
         _log = context.logManager().getLog(DecayingBloomFilter.class);
         _entryBytes = entryBytes;
         _name = name;
-        int k = DEFAULT_K;
-        // max is (23,11) or (26,10) or (29,9); see KeySelector for details
-        if (m > DEFAULT_M) {
-            k--;
-            if (m > 26) {
-                k--;
-                if (m > 29)
-                    throw new IllegalArgumentException("Max m is 29");
-            }
-        }
+        if (m > 29)
+            throw new IllegalArgumentException("Max m is 29");
+        int k = getK(m);
         _current = new BloomSHA1(m, k);
         _previous = new BloomSHA1(m, k);
         _durationMs = durationMs;
@@ -187,6 +180,22 @@ public class DecayingBloomFilter {
         context.addShutdownTask(new Shutdown());
     }
 
+    /**
+     * @param m filter size exponent
+     * @return number of hash functions for this m
+     * @since 0.9.71+ moved from constructor
+     */
+    static int getK(int m) {
+        int k = DEFAULT_K;
+        // max is (23,11) or (26,10) or (29,9); see KeySelector for details
+        if (m > DEFAULT_M) {
+            k--;
+            if (m > 26)
+                k--;
+        }
+        return k;
+    }
+
     /**
      * @since 0.8.8
      */
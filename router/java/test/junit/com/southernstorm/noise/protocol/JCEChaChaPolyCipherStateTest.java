@@ -0,0 +1,112 @@
+package com.southernstorm.noise.protocol;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.BadPaddingException;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JCEChaChaPolyCipherStateTest {
+
+    private final Random _rand = new Random(7);
+    private byte[] _key;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(JCEChaChaPolyCipherState.isAvailable());
+        _key = new byte[32];
+        _rand.nextBytes(_key);
+    }
+
+    private ChaChaPolyCipherState init(ChaChaPolyCipherState cs) {
+        cs.initializeKey(_key, 0);
+        return cs;
+    }
+
+    @Test
+    public void testSameOutput() throws Exception {
+        ChaChaPolyCipherState builtin = init(new ChaChaPolyCipherState());
+        ChaChaPolyCipherState jce = init(new JCEChaChaPolyCipherState());
+        for (int len : new int[] { 0, 1, 63, 64, 65, 1200, 16384 }) {
+            byte[] ad = new byte[16];
+            _rand.nextBytes(ad);
+            byte[] pt = new byte[len];
+            _rand.nextBytes(pt);
+            byte[] a = new byte[len + 16];
+            byte[] b = new byte[len + 16];
+            assertEquals(len + 16, builtin.encryptWithAd(ad, pt, 0, a, 0, len));
+            assertEquals(len + 16, jce.encryptWithAd(ad, pt, 0, b, 0, len));
+            assertArrayEquals("len " + len, a, b);
+        }
+    }
+
+    @Test
+    public void testDecryptInPlace() throws Exception {
+        ChaChaPolyCipherState builtin = init(new ChaChaPolyCipherState());
+        ChaChaPolyCipherState jce = init(new JCEChaChaPolyCipherState());
+        byte[] pt = new byte[1000];
+        _rand.nextBytes(pt);
+        byte[] buf = new byte[8 + pt.length + 16];
+        System.arraycopy(pt, 0, buf, 8, pt.length);
+        builtin.setNonce(12345);
+        builtin.encryptWithAd(buf, 0, 8, buf, 8, buf, 8, pt.length);
+        jce.setNonce(12345);
+        assertEquals(pt.length, jce.decryptWithAd(buf, 0, 8, buf, 8, buf, 8, pt.length + 16));
+        assertArrayEquals(pt, Arrays.copyOfRange(buf, 8, 8 + pt.length));
+    }
+
+    @Test
+    public void testRepeatedNonce() throws Exception {
+        ChaChaPolyCipherState jce = init(new JCEChaChaPolyCipherState());
+        ChaChaPolyCipherState rcv = init(new JCEChaChaPolyCipherState());
+        byte[] a = new byte[48];
+        byte[] b = new byte[48];
+        jce.setNonce(5);
+        jce.encryptWithAd(null, a, 0, a, 0, 32);
+        // the JDK refuses this, so it falls back
+        jce.setNonce(5);
+        jce.encryptWithAd(null, b, 0, b, 0, 32);
+        assertArrayEquals(a, b);
+        // duplicate packet
+        byte[] out = new byte[32];
+        rcv.setNonce(5);
+        assertEquals(32, rcv.decryptWithAd(null, a, 0, out, 0, 48));
+        rcv.setNonce(5);
+        assertEquals(32, rcv.decryptWithAd(null, b, 0, out, 0, 48));
+    }
+
+    @Test
+    public void testBadTag() throws Exception {
+        ChaChaPolyCipherState jce = init(new JCEChaChaPolyCipherState());
+        ChaChaPolyCipherState rcv = init(new JCEChaChaPolyCipherState());
+        byte[] a = new byte[116];
+        jce.encryptWithAd(null, a, 0, a, 0, 100);
+        a[50] ^= 1;
+        try {
+            rcv.decryptWithAd(null, a, 0, a, 0, a.length);
+            fail();
+        } catch (BadPaddingException expected) {}
+        // nonce not consumed
+        a[50] ^= 1;
+        assertEquals(100, rcv.decryptWithAd(null, a, 0, a, 0, a.length));
+    }
+
+    @Test
+    public void testCloneAndFork() throws Exception {
+        ChaChaPolyCipherState jce = init(new JCEChaChaPolyCipherState());
+        jce.setNonce(9);
+        ChaChaPolyCipherState copy = jce.clone();
+        assertTrue(copy instanceof JCEChaChaPolyCipherState);
+        byte[] a = new byte[32];
+        byte[] b = new byte[32];
+        jce.encryptWithAd(null, a, 0, a, 0, 16);
+        copy.encryptWithAd(null, b, 0, b, 0, 16);
+        assertArrayEquals(a, b);
+        CipherState forked = new ChaChaPolyCipherState().fork(_key, 0);
+        assertEquals(forked.getClass(), ChaChaPolyCipherState.create().getClass());
+    }
+}
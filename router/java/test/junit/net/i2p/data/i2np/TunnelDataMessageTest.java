@@ -0,0 +1,80 @@
+package net.i2p.data.i2np;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import net.i2p.I2PAppContext;
+import net.i2p.data.DataHelper;
+
+import org.junit.Test;
+
+/**
+ *  Tests for reading a TunnelDataMessage as a view of the transport's buffer.
+ */
+public class TunnelDataMessageTest {
+
+    private static final int OFFSET = 7;
+
+    /** a 9-byte header NTCP2/SSU2 block at OFFSET in a larger buffer */
+    private byte[] block(I2PAppContext ctx) {
+        byte[] buf = new byte[OFFSET + 9 + 4 + TunnelDataMessage.DATA_SIZE + 5];
+        ctx.random().nextBytes(buf);
+        buf[OFFSET] = (byte) TunnelDataMessage.MESSAGE_TYPE;
+        DataHelper.toLong(buf, OFFSET + 5, 4, (ctx.clock().now() / 1000) + 60);
+        DataHelper.toLong(buf, OFFSET + 9, 4, 12345);
+        return buf;
+    }
+
+    private static final int LEN = 9 + 4 + TunnelDataMessage.DATA_SIZE;
+
+    @Test
+    public void testViewMatchesCopy() throws Exception {
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        byte[] buf = block(ctx);
+        TunnelDataMessage copy = (TunnelDataMessage) I2NPMessageImpl.fromRawByteArrayNTCP2(ctx, buf, OFFSET, LEN, null);
+        TunnelDataMessage view = (TunnelDataMessage) I2NPMessageImpl.fromRawByteArrayNTCP2(ctx, buf, OFFSET, LEN, null, true);
+        assertNull(copy.getView());
+        assertSame(buf, view.getView());
+        assertEquals(OFFSET + 13, view.getViewOffset());
+        assertEquals(12345, view.getTunnelId());
+        assertEquals(copy.getUniqueId(), view.getUniqueId());
+        assertEquals(copy.getMessageExpiration(), view.getMessageExpiration());
+
+        // serialized from the view without detaching
+        byte[] out1 = new byte[LEN];
+        byte[] out2 = new byte[LEN];
+        assertEquals(LEN, copy.toRawByteArrayNTCP2(out1, 0));
+        assertEquals(LEN, view.toRawByteArrayNTCP2(out2, 0));
+        assertArrayEquals(out1, out2);
+        assertSame(buf, view.getView());
+    }
+
+    @Test
+    public void testDetach() throws Exception {
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        byte[] buf = block(ctx);
+        byte[] payload = Arrays.copyOfRange(buf, OFFSET + 13, OFFSET + 13 + TunnelDataMessage.DATA_SIZE);
+        TunnelDataMessage view = (TunnelDataMessage) I2NPMessageImpl.fromRawByteArrayNTCP2(ctx, buf, OFFSET, LEN, null, true);
+        view.detach();
+        assertNull(view.getView());
+        // transport reuses its buffer
+        Arrays.fill(buf, (byte) 0);
+        assertArrayEquals(payload, view.getData());
+
+        view = (TunnelDataMessage) I2NPMessageImpl.fromRawByteArrayNTCP2(ctx, block(ctx), OFFSET, LEN, null, true);
+        byte[] data = view.detachForWrite();
+        assertNull(view.getView());
+        assertSame(data, view.getData());
+        try {
+            view.detachForWrite();
+            fail();
+        } catch (IllegalStateException expected) {}
+    }
+
+    @Test(expected = I2NPMessageException.class)
+    public void testViewBadLength() throws Exception {
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        I2NPMessageImpl.fromRawByteArrayNTCP2(ctx, block(ctx), OFFSET, LEN - 16, null, true);
+    }
+}
@@ -0,0 +1,156 @@
+package net.i2p.router;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.i2p.router.message.OutboundClientMessageOneShotJob;
+import net.i2p.router.networkdb.kademlia.HandleFloodfillDatabaseLookupMessageJob;
+import net.i2p.router.peermanager.PeerTestJob;
+import net.i2p.router.tunnel.pool.TestJob;
+import net.i2p.router.tunnel.pool.TunnelPoolManager;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *  Tests for the JobQueue lanes: classification, weighted selection,
+ *  and local deques with stealing.
+ */
+public class JobLanesTest {
+
+    private static RouterContext _ctx;
+    private JobLanes _lanes;
+
+    @BeforeClass
+    public static void checkContext() {
+        _ctx = RouterTestHelper.getContext();
+    }
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("No RouterContext available", _ctx != null);
+        _lanes = new JobLanes(_ctx);
+        _lanes.setLane(BuildJob.class, JobLanes.Lane.BUILD);
+        _lanes.setLane(NetDbJob.class, JobLanes.Lane.NETDB);
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(JobLanes.Lane.TEST, JobLanes.classify(TestJob.class));
+        assertEquals(JobLanes.Lane.TEST, JobLanes.classify(PeerTestJob.class));
+        assertEquals(JobLanes.Lane.NETDB, JobLanes.classify(HandleFloodfillDatabaseLookupMessageJob.class));
+        assertEquals(JobLanes.Lane.CLIENT, JobLanes.classify(OutboundClientMessageOneShotJob.class));
+        assertEquals(JobLanes.Lane.BUILD, JobLanes.classify(TunnelPoolManager.class));
+        assertEquals(JobLanes.Lane.DEFAULT, JobLanes.classify(BuildJob.class));
+    }
+
+    @Test
+    public void testBurstDoesNotStarve() throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            _lanes.offer(new NetDbJob());
+        }
+        assertTrue(_lanes.take(0, 10) instanceof NetDbJob);
+        BuildJob build = new BuildJob();
+        _lanes.offer(build);
+        // netdb weight 2, so the build job is at most a couple of jobs behind
+        boolean found = false;
+        for (int i = 0; i < 8 && !found; i++) {
+            found = _lanes.take(0, 10) == build;
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void testWeights() throws InterruptedException {
+        for (int i = 0; i < 400; i++) {
+            _lanes.offer(new NetDbJob());
+            _lanes.offer(new BuildJob());
+        }
+        int build = 0;
+        for (int i = 0; i < 200; i++) {
+            if (_lanes.take(0, 10) instanceof BuildJob)
+                build++;
+        }
+        // 8:2
+        assertTrue("build jobs: " + build, build >= 150 && build <= 170);
+    }
+
+    @Test
+    public void testFifoWithinLane() throws InterruptedException {
+        List<Job> jobs = new ArrayList<Job>();
+        for (int i = 0; i < 20; i++) {
+            Job j = new BuildJob();
+            jobs.add(j);
+            _lanes.offer(j);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertSame(jobs.get(i), _lanes.take(0, 10));
+        }
+        assertNull(_lanes.take(0, 10));
+        assertEquals(0, _lanes.size());
+    }
+
+    @Test
+    public void testStealAndRemoveRunner() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            _lanes.offer(new BuildJob());
+        }
+        assertNotNull(_lanes.take(0, 10));
+        assertEquals(19, _lanes.size());
+        // runner 0 has batched some locally
+        List<Job> heads = new ArrayList<Job>();
+        _lanes.getHeads(heads);
+        assertEquals(2, heads.size());
+
+        _lanes.removeRunner(0);
+        assertEquals(19, _lanes.size());
+        _lanes.getHeads(heads = new ArrayList<Job>());
+        assertEquals(1, heads.size());
+
+        // drain the lane via runner 1, leaving some in its local deque, then steal from it
+        int taken = 0;
+        while (_lanes.take(1, 10) != null && ++taken < 17) {}
+        assertTrue(_lanes.size() > 0);
+        assertNotNull(_lanes.take(2, 10));
+    }
+
+    @Test
+    public void testRemove() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            _lanes.offer(new BuildJob());
+        }
+        Job last = new BuildJob();
+        _lanes.offer(last);
+        assertTrue(_lanes.contains(last));
+        assertTrue(_lanes.remove(last));
+        assertFalse(_lanes.contains(last));
+        // batched into the local deque
+        Job first = _lanes.take(0, 10);
+        assertNotNull(first);
+        List<Job> all = new ArrayList<Job>();
+        _lanes.getJobs(all);
+        assertEquals(19, all.size());
+        for (Job j : all) {
+            assertTrue(_lanes.remove(j));
+        }
+        assertEquals(0, _lanes.size());
+        assertNull(_lanes.take(0, 10));
+        assertEquals(0, _lanes.count(BuildJob.class));
+    }
+
+    private static class BuildJob extends JobImpl {
+        public BuildJob() { super(_ctx); }
+        public String getName() { return "Test build"; }
+        public void runJob() {}
+    }
+
+    private static class NetDbJob extends JobImpl {
+        public NetDbJob() { super(_ctx); }
+        public String getName() { return "Test netdb"; }
+        public void runJob() {}
+    }
+}
@@ -0,0 +1,149 @@
+package net.i2p.router.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.i2p.data.i2cp.GetDateMessage;
+import net.i2p.data.i2cp.I2CPMessage;
+import net.i2p.data.i2cp.I2CPMessageHandler;
+import net.i2p.data.i2cp.I2CPMessageReader;
+import net.i2p.data.i2cp.SetDateMessage;
+import net.i2p.router.RouterContext;
+import net.i2p.router.RouterTestHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NIOClientConnectionRunnerTest {
+
+    private RouterContext _context;
+    private NIOClientListenerRunner _nio;
+    private ServerSocketChannel _server;
+    private SocketChannel _client;
+    private SocketChannel _chan;
+    private final List<I2CPMessage> _received = new ArrayList<I2CPMessage>();
+    private final List<Exception> _errors = new ArrayList<Exception>();
+    private int _disconnects;
+    private int _wantWrites;
+
+    private class Listener implements I2CPMessageReader.I2CPMessageEventListener {
+        public void messageReceived(I2CPMessageReader reader, I2CPMessage message) { _received.add(message); }
+        public void readError(I2CPMessageReader reader, Exception error) { _errors.add(error); }
+        public void disconnected(I2CPMessageReader reader) { _disconnects++; }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _context = RouterTestHelper.getContext();
+        // process inline so the test sees results immediately
+        _nio = new NIOClientListenerRunner(_context, null, 0) {
+            @Override
+            void process(Runnable task) { task.run(); }
+            @Override
+            void wantWrite(NIOClientConnectionRunner runner) { _wantWrites++; }
+        };
+        _server = ServerSocketChannel.open();
+        _server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        _client = SocketChannel.open(_server.socket().getLocalSocketAddress());
+        _chan = _server.accept();
+        _chan.configureBlocking(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _client.close();
+        _chan.close();
+        _server.close();
+    }
+
+    private NIOClientConnectionRunner newRunner() {
+        NIOClientConnectionRunner rv = new NIOClientConnectionRunner(_context, null, _nio, _chan) {
+            @Override
+            protected I2CPMessageReader.I2CPMessageEventListener createListener() { return new Listener(); }
+        };
+        rv.startRunning();
+        return rv;
+    }
+
+    private static byte[] frames(I2CPMessage... msgs) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (I2CPMessage msg : msgs) {
+            msg.writeMessage(baos);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testFramingAcrossReads() throws Exception {
+        byte[] data = frames(new GetDateMessage("0.9.99"), new SetDateMessage("1.2.3"), new GetDateMessage(null));
+        // every split point, so headers and bodies span reads
+        for (int split = 0; split <= data.length; split++) {
+            _received.clear();
+            NIOClientConnectionRunner runner = newRunner();
+            assertTrue(runner.read(ByteBuffer.wrap(data, 0, split).slice()));
+            assertTrue(runner.read(ByteBuffer.wrap(data, split, data.length - split).slice()));
+            assertEquals("split " + split, 3, _received.size());
+            assertEquals("0.9.99", ((GetDateMessage) _received.get(0)).getVersion());
+            assertEquals("1.2.3", ((SetDateMessage) _received.get(1)).getVersion());
+            assertNull(((GetDateMessage) _received.get(2)).getVersion());
+            assertEquals(0, runner.getPendingReads());
+        }
+        // byte at a time
+        _received.clear();
+        NIOClientConnectionRunner runner = newRunner();
+        for (int i = 0; i < data.length; i++) {
+            assertTrue(runner.read(ByteBuffer.wrap(data, i, 1).slice()));
+        }
+        assertEquals(3, _received.size());
+        assertTrue(_errors.isEmpty());
+    }
+
+    @Test
+    public void testBadFrameAndClose() throws Exception {
+        NIOClientConnectionRunner runner = newRunner();
+        byte[] good = frames(new GetDateMessage("0.9.99"));
+        byte[] bad = new byte[] { (byte) 0xff, 0, 0, 0, 32 };
+        ByteBuffer buf = ByteBuffer.allocate(good.length + bad.length);
+        buf.put(good).put(bad).flip();
+        assertFalse(runner.read(buf));
+        // message before the error is still delivered, in order
+        assertEquals(1, _received.size());
+        assertEquals(1, _errors.size());
+        assertEquals(0, _disconnects);
+
+        runner = newRunner();
+        runner.readClosed();
+        assertEquals(1, _disconnects);
+    }
+
+    @Test
+    public void testBatchedWrite() throws Exception {
+        NIOClientConnectionRunner runner = newRunner();
+        for (int i = 0; i < 10; i++) {
+            runner.doSend(new SetDateMessage("v" + i));
+        }
+        // one wakeup until the selector drains the queue
+        assertEquals(1, _wantWrites);
+        assertTrue(runner.write());
+        runner.doSend(new SetDateMessage("last"));
+        assertEquals(2, _wantWrites);
+        assertTrue(runner.write());
+
+        InputStream in = _client.socket().getInputStream();
+        for (int i = 0; i < 10; i++) {
+            I2CPMessage msg = I2CPMessageHandler.readMessage(in);
+            assertEquals("v" + i, ((SetDateMessage) msg).getVersion());
+        }
+        assertEquals("last", ((SetDateMessage) I2CPMessageHandler.readMessage(in)).getVersion());
+    }
+}
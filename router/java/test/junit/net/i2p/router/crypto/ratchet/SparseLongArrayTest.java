@@ -0,0 +1,62 @@
+package net.i2p.router.crypto.ratchet;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SparseLongArrayTest {
+
+    private SparseLongArray sa;
+
+    @Before
+    public void setUp() {
+        sa = new SparseLongArray(2);
+    }
+
+    @Test
+    public void testAppendAndGrow() {
+        for (int i = 0; i < 100; i++) {
+            sa.append(i * 2, 1000L + i);
+        }
+        assertEquals(100, sa.size());
+        assertEquals(10, sa.keyAt(5));
+        assertEquals(1005L, sa.valueAt(5));
+        assertEquals(5, sa.indexOfKey(10));
+        assertTrue(sa.indexOfKey(11) < 0);
+        assertEquals(7, sa.indexOfValue(1007L));
+        assertEquals(-1, sa.indexOfValue(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendOutOfOrder() {
+        sa.append(5, 1L);
+        sa.append(5, 2L);
+    }
+
+    @Test
+    public void testRemove() {
+        for (int i = 0; i < 10; i++) {
+            sa.append(i, i);
+        }
+        sa.removeAt(3);
+        assertEquals(9, sa.size());
+        assertEquals(4, sa.keyAt(3));
+        sa.removeAtRange(0, 2);
+        assertEquals(7, sa.size());
+        assertEquals(2, sa.keyAt(0));
+        assertArrayEquals(new long[] {2, 4, 5, 6, 7, 8, 9}, sa.values());
+        sa.removeAtRange(5, 10);
+        assertEquals(5, sa.size());
+        sa.clear();
+        assertEquals(0, sa.size());
+        sa.append(1, 1L);
+        assertEquals(1, sa.size());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testKeyAtOutOfBounds() {
+        sa.append(1, 1L);
+        sa.keyAt(1);
+    }
+}
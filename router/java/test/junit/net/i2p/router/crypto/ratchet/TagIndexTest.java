@@ -0,0 +1,103 @@
+package net.i2p.router.crypto.ratchet;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import net.i2p.data.SessionKey;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TagIndexTest {
+
+    private TagIndex idx;
+    private RatchetTagSet ts1;
+    private RatchetTagSet ts2;
+
+    /** SingleTagSet registers its tag on creation, ignore it */
+    private static class NullListener implements SessionTagListener {
+        public boolean addTag(long tag, RatchetTagSet ts) { return true; }
+        public void expireTag(long tag, RatchetTagSet ts) {}
+    }
+
+    @Before
+    public void setUp() {
+        idx = new TagIndex();
+        SessionKey key = new SessionKey(new byte[32]);
+        ts1 = new SingleTagSet(new NullListener(), key, new RatchetSessionTag(1L), 1000, 1000);
+        ts2 = new SingleTagSet(new NullListener(), key, new RatchetSessionTag(2L), 5000, 1000);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        assertTrue(idx.putIfAbsent(123L, ts1));
+        assertFalse(idx.putIfAbsent(123L, ts2));
+        assertTrue(idx.putIfAbsent(0L, ts2));
+        assertSame(ts1, idx.get(123L));
+        assertSame(ts2, idx.get(0L));
+        assertEquals(2, idx.size());
+        assertFalse(idx.remove(123L, ts2));
+        assertSame(ts1, idx.remove(123L));
+        assertNull(idx.remove(123L));
+        assertTrue(idx.remove(0L, ts2));
+        assertEquals(0, idx.size());
+    }
+
+    /**
+     * Many tags with a random mix of adds and removes,
+     * checked against a HashMap, to exercise probing, resize,
+     * and backward-shift deletion.
+     */
+    @Test
+    public void testAgainstMap() {
+        Random r = new Random(7);
+        Map<Long, RatchetTagSet> map = new HashMap<Long, RatchetTagSet>();
+        long[] tags = new long[5000];
+        for (int i = 0; i < tags.length; i++) {
+            // some small values so they collide in the low bits
+            tags[i] = (i % 3 == 0) ? i : r.nextLong();
+        }
+        for (int n = 0; n < 50000; n++) {
+            long tag = tags[r.nextInt(tags.length)];
+            RatchetTagSet ts = r.nextBoolean() ? ts1 : ts2;
+            if (r.nextInt(3) > 0) {
+                boolean added = idx.putIfAbsent(tag, ts);
+                assertEquals(!map.containsKey(tag), added);
+                if (added)
+                    map.put(tag, ts);
+            } else {
+                assertSame(map.remove(tag), idx.remove(tag));
+            }
+        }
+        assertEquals(map.size(), idx.size());
+        for (long tag : tags) {
+            assertSame(map.get(tag), idx.get(tag));
+        }
+        // remove everything, tables shrink back
+        for (Long tag : map.keySet()) {
+            assertNotNull(idx.remove(tag.longValue()));
+        }
+        assertEquals(0, idx.size());
+        assertNull(idx.get(tags[0]));
+    }
+
+    @Test
+    public void testRemoveExpired() {
+        for (long i = 0; i < 1000; i++) {
+            idx.putIfAbsent(i, (i & 1) == 0 ? ts1 : ts2);
+        }
+        assertEquals(2, idx.getTagSets().size());
+        // ts1 expires at 2000, ts2 at 6000
+        assertEquals(0, idx.removeExpired(1500));
+        assertEquals(500, idx.removeExpired(3000));
+        assertEquals(500, idx.size());
+        assertNull(idx.get(0));
+        assertSame(ts2, idx.get(1));
+        assertEquals(1, idx.getTagSets().size());
+        idx.clear();
+        assertEquals(0, idx.size());
+    }
+}
@@ -0,0 +1,109 @@
+package net.i2p.router.networkdb.kademlia;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import net.i2p.data.Hash;
+import net.i2p.kademlia.XORComparator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FloodfillIndexTest {
+
+    private Random _rand;
+
+    @Before
+    public void setUp() {
+        _rand = new Random(12);
+    }
+
+    private Hash random() {
+        byte[] b = new byte[Hash.HASH_LENGTH];
+        _rand.nextBytes(b);
+        return new Hash(b);
+    }
+
+    private static List<Hash> walk(FloodfillIndex idx, Hash key) {
+        List<Hash> rv = new ArrayList<Hash>();
+        for (Iterator<Hash> iter = idx.iterator(key); iter.hasNext(); ) {
+            rv.add(iter.next());
+        }
+        return rv;
+    }
+
+    @Test
+    public void testEmpty() {
+        FloodfillIndex idx = new FloodfillIndex();
+        assertFalse(idx.iterator(random()).hasNext());
+        assertEquals(-1, idx.getRotation());
+    }
+
+    @Test
+    public void testOrderMatchesSort() {
+        FloodfillIndex idx = new FloodfillIndex();
+        List<Hash> all = new ArrayList<Hash>();
+        for (int i = 0; i < 3000; i++) {
+            Hash h = random();
+            all.add(h);
+            assertTrue(idx.add(h));
+        }
+        assertFalse(idx.add(all.get(0)));
+        assertEquals(all.size(), idx.size());
+        for (int n = 0; n < 20; n++) {
+            // include keys equal to and sharing long prefixes with entries
+            Hash key;
+            if (n == 0) {
+                key = all.get(7);
+            } else if (n == 1) {
+                byte[] b = all.get(9).getData().clone();
+                b[Hash.HASH_LENGTH - 1] ^= 1;
+                key = new Hash(b);
+            } else {
+                key = random();
+            }
+            List<Hash> expected = new ArrayList<Hash>(all);
+            Collections.sort(expected, new XORComparator<Hash>(key));
+            assertEquals(expected, walk(idx, key));
+        }
+    }
+
+    @Test
+    public void testRemoveAndRebuild() {
+        FloodfillIndex idx = new FloodfillIndex();
+        List<Hash> all = new ArrayList<Hash>();
+        for (int i = 0; i < 100; i++) {
+            Hash h = random();
+            all.add(h);
+            idx.add(h);
+        }
+        Hash key = random();
+        Iterator<Hash> snapshot = idx.iterator(key);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(idx.remove(all.get(i)));
+        }
+        assertFalse(idx.remove(all.get(0)));
+        assertEquals(50, idx.size());
+        assertFalse(idx.contains(all.get(0)));
+        assertTrue(idx.contains(all.get(50)));
+        // iterator works on the snapshot it was created with
+        int count = 0;
+        while (snapshot.hasNext()) {
+            snapshot.next();
+            count++;
+        }
+        assertEquals(100, count);
+
+        List<Hash> half = all.subList(0, 50);
+        idx.rebuild(half, 1234);
+        assertEquals(1234, idx.getRotation());
+        List<Hash> expected = new ArrayList<Hash>(half);
+        Collections.sort(expected, new XORComparator<Hash>(key));
+        assertEquals(expected, walk(idx, key));
+    }
+}
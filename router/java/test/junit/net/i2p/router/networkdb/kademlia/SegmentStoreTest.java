@@ -0,0 +1,205 @@
+package net.i2p.router.networkdb.kademlia;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.i2p.I2PAppContext;
+import net.i2p.data.Hash;
+import net.i2p.util.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentStoreTest {
+
+    private I2PAppContext _context;
+    private File _dir;
+    private Random _rand;
+
+    @Before
+    public void setUp() throws Exception {
+        _context = I2PAppContext.getGlobalContext();
+        _dir = File.createTempFile("segmentstore", "test");
+        _dir.delete();
+        _rand = new Random(42);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.rmdir(_dir, false);
+    }
+
+    private Hash hash(int i) {
+        byte[] b = new byte[Hash.HASH_LENGTH];
+        b[0] = (byte) (i >> 8);
+        b[1] = (byte) i;
+        return Hash.create(b);
+    }
+
+    private byte[] data(int len) {
+        byte[] rv = new byte[len];
+        _rand.nextBytes(rv);
+        return rv;
+    }
+
+    @Test
+    public void testPutGetReopen() throws Exception {
+        SegmentStore store = new SegmentStore(_context, _dir);
+        assertEquals(0, store.open());
+        byte[] a = data(1000);
+        byte[] b = data(2000);
+        store.put(hash(1), 100, a);
+        store.put(hash(2), 200, b);
+        // unsynced, still readable
+        assertArrayEquals(a, store.get(hash(1)));
+        assertEquals(200, store.getPublished(hash(2)));
+        assertEquals(-1, store.getPublished(hash(3)));
+        byte[] a2 = data(1500);
+        store.put(hash(1), 300, a2);
+        store.close();
+
+        store = new SegmentStore(_context, _dir);
+        assertEquals(2, store.open());
+        assertArrayEquals(a2, store.get(hash(1)));
+        assertArrayEquals(b, store.get(hash(2)));
+        assertEquals(300, store.getPublished(hash(1)));
+        store.close();
+    }
+
+    @Test
+    public void testRemoveSurvivesReopen() throws Exception {
+        SegmentStore store = new SegmentStore(_context, _dir);
+        store.open();
+        store.put(hash(1), 100, data(100));
+        store.put(hash(2), 100, data(100));
+        assertTrue(store.remove(hash(1)));
+        assertFalse(store.remove(hash(1)));
+        assertNull(store.get(hash(1)));
+        store.close();
+
+        store = new SegmentStore(_context, _dir);
+        assertEquals(1, store.open());
+        assertNull(store.get(hash(1)));
+        assertNotNull(store.get(hash(2)));
+        store.close();
+    }
+
+    @Test
+    public void testTornRecordTruncated() throws Exception {
+        SegmentStore store = new SegmentStore(_context, _dir);
+        store.open();
+        byte[] a = data(500);
+        store.put(hash(1), 100, a);
+        store.put(hash(2), 100, data(500));
+        store.close();
+        File[] files = _dir.listFiles();
+        assertEquals(1, files.length);
+        long len = files[0].length();
+        // cut the second record short, as a crash during append would
+        try (RandomAccessFile raf = new RandomAccessFile(files[0], "rw")) {
+            raf.setLength(len - 100);
+        }
+
+        store = new SegmentStore(_context, _dir);
+        assertEquals(1, store.open());
+        assertArrayEquals(a, store.get(hash(1)));
+        assertNull(store.get(hash(2)));
+        assertEquals(len / 2, files[0].length());
+        // appends after the truncation point are readable after reopen
+        byte[] c = data(300);
+        store.put(hash(3), 100, c);
+        store.close();
+        store = new SegmentStore(_context, _dir);
+        assertEquals(2, store.open());
+        assertArrayEquals(c, store.get(hash(3)));
+        store.close();
+    }
+
+    @Test
+    public void testCorruptRecordIgnored() throws Exception {
+        SegmentStore store = new SegmentStore(_context, _dir);
+        store.open();
+        store.put(hash(1), 100, data(500));
+        store.close();
+        File f = _dir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(200);
+            int b = raf.read();
+            raf.seek(200);
+            raf.write(b ^ 0xff);
+        }
+        store = new SegmentStore(_context, _dir);
+        assertEquals(0, store.open());
+        store.close();
+    }
+
+    @Test
+    public void testRollAndCompact() throws Exception {
+        // small segments so a few hundred puts roll over several
+        SegmentStore store = new SegmentStore(_context, _dir, 64*1024);
+        store.open();
+        int keys = 50;
+        byte[][] latest = new byte[keys][];
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < keys; i++) {
+                latest[i] = data(1000);
+                store.put(hash(i), round, latest[i]);
+            }
+        }
+        for (int i = 40; i < keys; i++) {
+            store.remove(hash(i));
+        }
+        store.sync();
+        int before = store.getSegmentCount();
+        assertTrue(before > 10);
+        store.compact();
+        int after = store.getSegmentCount();
+        assertTrue("before " + before + " after " + after, after < 4);
+        assertEquals(40, store.size());
+        store.close();
+
+        store = new SegmentStore(_context, _dir, 64*1024);
+        assertEquals(40, store.open());
+        for (int i = 0; i < 40; i++) {
+            assertArrayEquals(latest[i], store.get(hash(i)));
+            assertEquals(19, store.getPublished(hash(i)));
+        }
+        assertNull(store.get(hash(45)));
+        store.close();
+    }
+
+    @Test
+    public void testReadAllInFileOrder() throws Exception {
+        SegmentStore store = new SegmentStore(_context, _dir, 8*1024);
+        store.open();
+        for (int i = 0; i < 30; i++) {
+            store.put(hash(i), i, data(1000));
+        }
+        // moves 5 to the end
+        final byte[] five = data(700);
+        store.put(hash(5), 99, five);
+        store.remove(hash(7));
+        final List<Hash> seen = new ArrayList<Hash>();
+        int count = store.readAll(new SegmentStore.Visitor() {
+            public boolean visit(Hash key, long published, byte[] data) {
+                seen.add(key);
+                if (key.equals(hash(5))) {
+                    assertEquals(99, published);
+                    assertArrayEquals(five, data);
+                }
+                return true;
+            }
+        });
+        assertEquals(29, count);
+        assertEquals(hash(0), seen.get(0));
+        assertEquals(hash(5), seen.get(28));
+        assertFalse(seen.contains(hash(7)));
+        store.close();
+    }
+}
@@ -0,0 +1,108 @@
+package net.i2p.router.networkdb.kademlia;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+
+import net.i2p.crypto.KeyGenerator;
+import net.i2p.data.Certificate;
+import net.i2p.data.DatabaseEntry;
+import net.i2p.data.Destination;
+import net.i2p.data.EncryptedLeaseSet;
+import net.i2p.data.Hash;
+import net.i2p.data.Lease2;
+import net.i2p.data.LeaseSet2;
+import net.i2p.data.PublicKey;
+import net.i2p.data.Signature;
+import net.i2p.data.SigningPrivateKey;
+import net.i2p.data.SigningPublicKey;
+import net.i2p.data.TunnelId;
+import net.i2p.data.router.RouterInfo;
+
+import org.junit.Test;
+
+public class VerifiedEntryCacheTest {
+
+    @Test
+    public void testKeyIsContent() throws Exception {
+        RouterInfo ri = RouterGenerator.createRouterInfo(1);
+        assertTrue(ri.isValid());
+        Hash key = VerifiedEntryCache.getKey(ri);
+        assertNotNull(key);
+
+        // same bytes from another peer
+        RouterInfo copy = new RouterInfo();
+        copy.readBytes(new ByteArrayInputStream(ri.toByteArray()));
+        assertEquals(key, VerifiedEntryCache.getKey(copy));
+
+        // same identity, published date and signature but different content
+        RouterInfo forged = new RouterInfo();
+        forged.setAddresses(RouterGenerator.createAddresses(2));
+        forged.setPublished(ri.getPublished());
+        forged.setIdentity(ri.getIdentity());
+        forged.setSignature(ri.getSignature());
+        assertFalse(key.equals(VerifiedEntryCache.getKey(forged)));
+
+        assertNull(VerifiedEntryCache.getKey(new EncryptedLeaseSet()));
+        assertNull(VerifiedEntryCache.getKey(new RouterInfo()));
+    }
+
+    @Test
+    public void testKeyIncludesType() throws Exception {
+        Object[] kp = KeyGenerator.getInstance().generateSigningKeypair();
+        Destination d = new Destination();
+        d.setPublicKey(new PublicKey(new byte[PublicKey.KEYSIZE_BYTES]));
+        d.setSigningPublicKey((SigningPublicKey) kp[0]);
+        d.setCertificate(Certificate.NULL_CERT);
+        LeaseSet2 ls = new LeaseSet2();
+        ls.setDestination(d);
+        ls.addEncryptionKey(new PublicKey(new byte[PublicKey.KEYSIZE_BYTES]));
+        Lease2 lease = new Lease2();
+        lease.setGateway(new Hash(new byte[Hash.HASH_LENGTH]));
+        lease.setTunnelId(new TunnelId(1));
+        lease.setEndDate(System.currentTimeMillis() + 10*60*1000);
+        ls.addLease(lease);
+        ls.sign((SigningPrivateKey) kp[1]);
+        Hash key = VerifiedEntryCache.getKey(ls);
+        assertNotNull(key);
+
+        // same bytes presented as another LS2 type
+        LeaseSet2 meta = new LeaseSet2() {
+            @Override
+            public int getType() {return DatabaseEntry.KEY_TYPE_META_LS2;}
+        };
+        meta.readBytes(new ByteArrayInputStream(ls.toByteArray()));
+        assertArrayEquals(ls.toByteArray(), meta.toByteArray());
+        assertFalse(key.equals(VerifiedEntryCache.getKey(meta)));
+    }
+
+    @Test
+    public void testBoundedAndExpiring() throws Exception {
+        VerifiedEntryCache cache = new VerifiedEntryCache(4);
+        RouterInfo ri = RouterGenerator.createRouterInfo(1);
+        Hash key = VerifiedEntryCache.getKey(ri);
+        assertFalse(cache.isVerified(key, 0));
+        cache.verified(key, ri);
+        assertTrue(cache.isVerified(key, Long.MAX_VALUE));
+        for (int i = 2; i < 10; i++) {
+            RouterInfo r = RouterGenerator.createRouterInfo(i);
+            cache.verified(VerifiedEntryCache.getKey(r), r);
+        }
+        assertEquals(4, cache.size());
+        assertFalse(cache.isVerified(key, 0));
+
+        // offline keys are good until the transient key expires
+        Object[] kp = KeyGenerator.getInstance().generateSigningKeypair();
+        SigningPublicKey spk = (SigningPublicKey) kp[0];
+        Destination d = new Destination();
+        d.setPublicKey(new PublicKey(new byte[PublicKey.KEYSIZE_BYTES]));
+        d.setSigningPublicKey(spk);
+        d.setCertificate(Certificate.NULL_CERT);
+        LeaseSet2 ls = new LeaseSet2();
+        ls.setDestination(d);
+        ls.setOfflineSignature(100000, spk, new Signature(new byte[Signature.SIGNATURE_BYTES]));
+        cache.verified(key, ls);
+        assertTrue(cache.isVerified(key, 100000));
+        assertFalse(cache.isVerified(key, 100001));
+    }
+}
@@ -7,6 +7,8 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.i2p.crypto.EncType;
 import net.i2p.crypto.SigType;
@@ -180,6 +182,62 @@ public class ProfileOrganizerTest {
         assertFalse("lossy peer must not be selected", matches.contains(peer));
     }
 
+    @Test(timeout = 10000)
+    public void testSelectionDoesNotWaitForReorganize() throws Exception {
+        Hash peer = register(7000);
+        int count = _org.countNotFailingPeers();
+        Field f = ProfileOrganizer.class.getDeclaredField("_reorganizeLock");
+        f.setAccessible(true);
+        final ReentrantReadWriteLock lock = (ReentrantReadWriteLock) f.get(_org);
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread holder = new Thread() {
+            public void run() {
+                lock.writeLock().lock();
+                try {
+                    locked.countDown();
+                    done.await();
+                } catch (InterruptedException ie) {
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        };
+        holder.start();
+        locked.await();
+        try {
+            // served from the last copy while the write lock is held
+            assertEquals(count, _org.countNotFailingPeers());
+            Set<Hash> matches = new HashSet<>();
+            _org.selectNotFailingPeers(count, new HashSet<Hash>(), matches);
+            assertTrue(matches.contains(peer));
+        } finally {
+            done.countDown();
+            holder.join();
+        }
+        // changes are visible after the next write
+        register(7001);
+        assertEquals(count + 1, _org.countNotFailingPeers());
+    }
+
+    @Test
+    public void testNoOpWriteKeepsTierCopy() throws Exception {
+        register(7100);
+        Field f = ProfileOrganizer.class.getDeclaredField("_tierVersion");
+        f.setAccessible(true);
+        int version = f.getInt(_org);
+        byte[] b = new byte[Hash.HASH_LENGTH];
+        b[0] = 0x5a;
+        Hash unknown = new Hash(b);
+        // not in any tier, nothing moves
+        _org.demoteIfHighLatency(unknown);
+        _org.demoteIfCongested(unknown);
+        _org.demoteIfLossy(unknown);
+        assertEquals(version, f.getInt(_org));
+        register(7101);
+        assertTrue(f.getInt(_org) != version);
+    }
+
     // ---- static threshold clamps ----
 
     @Test
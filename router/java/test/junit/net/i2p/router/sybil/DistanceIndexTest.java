@@ -0,0 +1,132 @@
+package net.i2p.router.sybil;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.i2p.data.Hash;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.router.util.HashDistance;
+
+import org.junit.Test;
+
+/**
+ *  DistanceIndex vs. comparing every pair, for random hashes
+ *  and for a cluster of hashes sharing a long prefix.
+ *
+ *  @since 0.9.71+
+ */
+public class DistanceIndexTest {
+
+    private static class TestRouterInfo extends RouterInfo {
+        private final Hash _h;
+
+        TestRouterInfo(Hash h) {_h = h;}
+
+        @Override
+        public Hash getHash() {return _h;}
+    }
+
+    private static List<RouterInfo> random(Random rand, int count) {
+        List<RouterInfo> rv = new ArrayList<RouterInfo>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] b = new byte[Hash.HASH_LENGTH];
+            rand.nextBytes(b);
+            rv.add(new TestRouterInfo(new Hash(b)));
+        }
+        return rv;
+    }
+
+    /** count hashes sharing the first prefixBytes bytes */
+    private static List<RouterInfo> cluster(Random rand, int count, int prefixBytes) {
+        byte[] prefix = new byte[prefixBytes];
+        rand.nextBytes(prefix);
+        List<RouterInfo> rv = random(rand, count);
+        for (RouterInfo ri : rv) {
+            System.arraycopy(prefix, 0, ri.getHash().getData(), 0, prefixBytes);
+        }
+        return rv;
+    }
+
+    private static List<BigInteger> allPairs(List<RouterInfo> ris, int max) {
+        List<BigInteger> rv = new ArrayList<BigInteger>();
+        for (int i = 0; i < ris.size(); i++) {
+            for (int j = i + 1; j < ris.size(); j++) {
+                rv.add(HashDistance.getDistance(ris.get(i).getHash(), ris.get(j).getHash()));
+            }
+        }
+        Collections.sort(rv);
+        return rv.subList(0, Math.min(max, rv.size()));
+    }
+
+    private static void check(List<RouterInfo> ris, int max) {
+        List<BigInteger> expected = allPairs(ris, max);
+        List<Pair> pairs = new DistanceIndex(ris).getClosestPairs(max);
+        assertEquals(expected.size(), pairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            Pair p = pairs.get(i);
+            assertEquals(expected.get(i), p.dist);
+            assertEquals(HashDistance.getDistance(p.r1.getHash(), p.r2.getHash()), p.dist);
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        Random rand = new Random(1);
+        check(random(rand, 500), Analysis.PAIRMAX);
+    }
+
+    @Test
+    public void testCluster() {
+        Random rand = new Random(2);
+        List<RouterInfo> ris = random(rand, 300);
+        ris.addAll(cluster(rand, 40, 4));
+        ris.addAll(cluster(rand, 3, 8));
+        check(ris, Analysis.PAIRMAX);
+    }
+
+    @Test
+    public void testFewerThanMax() {
+        Random rand = new Random(3);
+        check(random(rand, 5), Analysis.PAIRMAX);
+        check(random(rand, 1), Analysis.PAIRMAX);
+        check(new ArrayList<RouterInfo>(), Analysis.PAIRMAX);
+    }
+
+    @Test
+    public void testCountPairs() {
+        Random rand = new Random(4);
+        List<RouterInfo> ris = random(rand, 200);
+        ris.addAll(cluster(rand, 10, 2));
+        DistanceIndex index = new DistanceIndex(ris);
+        for (int prefix = 0; prefix <= 24; prefix += 4) {
+            long expected = 0;
+            for (int i = 0; i < ris.size(); i++) {
+                for (int j = i + 1; j < ris.size(); j++) {
+                    if (DistanceIndex.commonPrefix(ris.get(i).getHash().getData(), ris.get(j).getHash().getData()) >= prefix)
+                        expected++;
+                }
+            }
+            assertEquals("prefix " + prefix, expected, index.countPairs(prefix));
+        }
+    }
+
+    @Test
+    public void testTotalLog2Distance() {
+        Random rand = new Random(5);
+        List<RouterInfo> ris = random(rand, 300);
+        double expected = 0;
+        for (int i = 0; i < ris.size(); i++) {
+            for (int j = i + 1; j < ris.size(); j++) {
+                expected += Util.biLog2(HashDistance.getDistance(ris.get(i).getHash(), ris.get(j).getHash()));
+            }
+        }
+        int pairs = ris.size() * (ris.size() - 1) / 2;
+        double avg = new DistanceIndex(ris).totalLog2Distance() / pairs;
+        assertEquals(expected / pairs, avg, 0.05);
+    }
+}
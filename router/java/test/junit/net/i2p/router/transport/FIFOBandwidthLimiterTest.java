@@ -2,6 +2,14 @@ package net.i2p.router.transport;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import net.i2p.data.i2np.DatabaseStoreMessage;
+import net.i2p.data.i2np.DataMessage;
+import net.i2p.data.i2np.ShortTunnelBuildMessage;
+import net.i2p.data.i2np.TunnelDataMessage;
+import net.i2p.router.OutNetMessage;
 import net.i2p.router.RouterContext;
 import net.i2p.router.RouterTestHelper;
 
@@ -107,4 +115,44 @@ public class FIFOBandwidthLimiterTest {
         FIFOBandwidthLimiter.Request req = limiter.requestOutbound(100, 0, "test");
         assertNotNull(req);
     }
+
+    @Test
+    public void testTrafficClass() {
+        assertEquals(FIFOBandwidthLimiter.CLASS_BUILD,
+                     FIFOBandwidthLimiter.trafficClass(ShortTunnelBuildMessage.MESSAGE_TYPE, OutNetMessage.PRIORITY_MY_BUILD_REQUEST));
+        assertEquals(FIFOBandwidthLimiter.CLASS_NETDB,
+                     FIFOBandwidthLimiter.trafficClass(DatabaseStoreMessage.MESSAGE_TYPE, OutNetMessage.PRIORITY_MY_NETDB_STORE));
+        assertEquals(FIFOBandwidthLimiter.CLASS_PARTICIPATING,
+                     FIFOBandwidthLimiter.trafficClass(TunnelDataMessage.MESSAGE_TYPE, OutNetMessage.PRIORITY_PARTICIPATING));
+        assertEquals(FIFOBandwidthLimiter.CLASS_CLIENT,
+                     FIFOBandwidthLimiter.trafficClass(TunnelDataMessage.MESSAGE_TYPE, OutNetMessage.PRIORITY_MY_DATA));
+        assertEquals(FIFOBandwidthLimiter.CLASS_CLIENT,
+                     FIFOBandwidthLimiter.trafficClass(DataMessage.MESSAGE_TYPE, OutNetMessage.PRIORITY_MY_DATA));
+        assertEquals(FIFOBandwidthLimiter.CLASS_OTHER, FIFOBandwidthLimiter.trafficClass(-1, 0));
+    }
+
+    /**
+     *  A small request in one class is not stuck behind a big one in another
+     */
+    @Test
+    public void testClassesTakeTurns() {
+        Assume.assumeTrue("No RouterContext available", _ctx != null);
+        FIFOBandwidthLimiter limiter = new FIFOBandwidthLimiter(_ctx);
+        // stop the refiller and empty the buckets, only addBandwidth() below refills
+        limiter.shutdown();
+        limiter.setOutboundBurstKBps(64);
+        FIFOBandwidthLimiter.Request big = limiter.requestOutbound(1024*1024, 0, FIFOBandwidthLimiter.CLASS_CLIENT, "test");
+        FIFOBandwidthLimiter.Request small = limiter.requestOutbound(1000, 0, FIFOBandwidthLimiter.CLASS_NETDB, "test");
+        FIFOBandwidthLimiter.Request small2 = limiter.requestOutbound(1000, 0, FIFOBandwidthLimiter.CLASS_NETDB, "test");
+        assertTrue(small.getPendingRequested() > 0);
+
+        List<FIFOBandwidthLimiter.Request> buf = new ArrayList<FIFOBandwidthLimiter.Request>();
+        limiter.addBandwidth(0, 16*1024, 0, 0);
+        limiter.satisfyRequests(buf);
+        assertTrue(buf.isEmpty());
+        assertEquals(0, small.getPendingRequested());
+        assertEquals(0, small2.getPendingRequested());
+        assertTrue(big.getPendingRequested() > 0);
+        assertTrue(big.getPendingRequested() < 1024*1024);
+    }
 }
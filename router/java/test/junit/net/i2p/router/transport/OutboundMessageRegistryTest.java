@@ -0,0 +1,181 @@
+package net.i2p.router.transport;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import net.i2p.data.Hash;
+import net.i2p.data.i2np.DatabaseSearchReplyMessage;
+import net.i2p.data.i2np.DeliveryStatusMessage;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.router.IndexedMessageSelector;
+import net.i2p.router.JobImpl;
+import net.i2p.router.MessageSelector;
+import net.i2p.router.OutNetMessage;
+import net.i2p.router.ReplyJob;
+import net.i2p.router.RouterContext;
+import net.i2p.router.RouterTestHelper;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *  Tests for OutboundMessageRegistry reply matching,
+ *  indexed and unindexed.
+ */
+public class OutboundMessageRegistryTest {
+
+    private static RouterContext _ctx;
+    private OutboundMessageRegistry _registry;
+
+    @BeforeClass
+    public static void checkContext() {
+        _ctx = RouterTestHelper.getContext();
+    }
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("No RouterContext available", _ctx != null);
+        _registry = new OutboundMessageRegistry(_ctx);
+    }
+
+    @Test
+    public void testIndexedStatusMatch() {
+        StatusSelector sel = new StatusSelector(1234, false);
+        OutNetMessage pending = _registry.registerPending(sel, new NoopReplyJob(), null);
+        assertTrue(_registry.getOriginalMessages(status(1235)).isEmpty());
+        assertEquals(0, sel.calls);
+
+        List<OutNetMessage> rv = _registry.getOriginalMessages(status(1234));
+        assertEquals(1, rv.size());
+        assertSame(pending, rv.get(0));
+        // removed after continueMatching() returned false
+        assertTrue(_registry.getOriginalMessages(status(1234)).isEmpty());
+        assertEquals(1, sel.calls);
+    }
+
+    @Test
+    public void testIndexedKeyContinueMatching() {
+        Hash key = randomHash();
+        KeySelector sel = new KeySelector(key);
+        _registry.registerPending(sel, new NoopReplyJob(), null);
+        assertTrue(_registry.getOriginalMessages(searchReply(randomHash())).isEmpty());
+        assertEquals(1, _registry.getOriginalMessages(searchReply(key)).size());
+        assertEquals(1, _registry.getOriginalMessages(searchReply(key)).size());
+    }
+
+    @Test
+    public void testSameKeyMultipleSelectors() {
+        StatusSelector sel1 = new StatusSelector(42, false);
+        StatusSelector sel2 = new StatusSelector(42, false);
+        _registry.registerPending(sel1, new NoopReplyJob(), null);
+        _registry.registerPending(sel2, new NoopReplyJob(), null);
+        assertEquals(2, _registry.getOriginalMessages(status(42)).size());
+        assertTrue(_registry.getOriginalMessages(status(42)).isEmpty());
+    }
+
+    @Test
+    public void testSameSelectorMultipleMessages() {
+        StatusSelector sel = new StatusSelector(7, false);
+        _registry.registerPending(sel, new NoopReplyJob(), null);
+        OutNetMessage second = _registry.registerPending(sel, new NoopReplyJob(), null);
+        _registry.unregisterPending(second);
+        assertEquals(1, _registry.getOriginalMessages(status(7)).size());
+    }
+
+    @Test
+    public void testUnindexedFallback() {
+        MessageSelector sel = new StatusSelector(99, false).unindexed();
+        assertFalse(sel instanceof IndexedMessageSelector);
+        _registry.registerPending(sel, new NoopReplyJob(), null);
+        assertTrue(_registry.getOriginalMessages(status(98)).isEmpty());
+        assertEquals(1, _registry.getOriginalMessages(status(99)).size());
+    }
+
+    @Test
+    public void testUnregister() {
+        StatusSelector sel = new StatusSelector(5, false);
+        OutNetMessage pending = _registry.registerPending(sel, new NoopReplyJob(), null);
+        _registry.unregisterPending(pending);
+        assertTrue(_registry.getOriginalMessages(status(5)).isEmpty());
+        assertEquals(0, sel.calls);
+    }
+
+    private static DeliveryStatusMessage status(long id) {
+        DeliveryStatusMessage msg = new DeliveryStatusMessage(_ctx);
+        msg.setMessageId(id);
+        msg.setArrival(_ctx.clock().now());
+        return msg;
+    }
+
+    private static DatabaseSearchReplyMessage searchReply(Hash key) {
+        DatabaseSearchReplyMessage msg = new DatabaseSearchReplyMessage(_ctx);
+        msg.setSearchKey(key);
+        msg.setFromHash(randomHash());
+        return msg;
+    }
+
+    private static Hash randomHash() {
+        byte[] b = new byte[Hash.HASH_LENGTH];
+        _ctx.random().nextBytes(b);
+        return new Hash(b);
+    }
+
+    private static class StatusSelector implements IndexedMessageSelector {
+        private final long _id;
+        private final boolean _continue;
+        private final long _expiration = _ctx.clock().now() + 60*1000;
+        int calls;
+
+        public StatusSelector(long id, boolean cont) {
+            _id = id;
+            _continue = cont;
+        }
+
+        public boolean continueMatching() { return _continue; }
+        public long getExpiration() { return _expiration; }
+        public long getReplyId() { return _id; }
+        public Hash getReplyKey() { return null; }
+
+        public boolean isMatch(I2NPMessage msg) {
+            calls++;
+            return msg.getType() == DeliveryStatusMessage.MESSAGE_TYPE &&
+                   ((DeliveryStatusMessage) msg).getMessageId() == _id;
+        }
+
+        /** same matching, as a plain MessageSelector */
+        public MessageSelector unindexed() {
+            return new MessageSelector() {
+                public boolean continueMatching() { return false; }
+                public long getExpiration() { return _expiration; }
+                public boolean isMatch(I2NPMessage msg) { return StatusSelector.this.isMatch(msg); }
+            };
+        }
+    }
+
+    private static class KeySelector implements IndexedMessageSelector {
+        private final Hash _key;
+        private final long _expiration = _ctx.clock().now() + 60*1000;
+
+        public KeySelector(Hash key) { _key = key; }
+
+        public boolean continueMatching() { return true; }
+        public long getExpiration() { return _expiration; }
+        public long getReplyId() { return -1; }
+        public Hash getReplyKey() { return _key; }
+
+        public boolean isMatch(I2NPMessage msg) {
+            return msg.getType() == DatabaseSearchReplyMessage.MESSAGE_TYPE &&
+                   _key.equals(((DatabaseSearchReplyMessage) msg).getSearchKey());
+        }
+    }
+
+    private static class NoopReplyJob extends JobImpl implements ReplyJob {
+        public NoopReplyJob() { super(_ctx); }
+        public String getName() { return "Noop reply"; }
+        public void runJob() {}
+        public void setMessage(I2NPMessage message) {}
+    }
+}
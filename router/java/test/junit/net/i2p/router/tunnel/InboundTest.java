@@ -57,6 +57,26 @@ public class InboundTest extends TestCase {
         assertTrue(DataHelper.eq(orig, 16, message, 16, orig.length - 16));
     }
 
+    @Test
+    public void testOutOfPlace() {
+        int numHops = 4;
+        TunnelCreatorConfig config = prepareConfig(numHops);
+
+        byte[] inPlace = new byte[1024];
+        _context.random().nextBytes(inPlace);
+        for (int i = 1; i < numHops - 1; i++) {
+            HopProcessor hop = new HopProcessor(_context, config.getConfig(i), DummyValidator.getInstance());
+            Hash prev = config.getConfig(i).getReceiveFrom();
+            // as from a transport buffer
+            byte[] src = new byte[inPlace.length + 13];
+            System.arraycopy(inPlace, 0, src, 13, inPlace.length);
+            byte[] dst = new byte[inPlace.length];
+            assertTrue(hop.process(src, 13, dst, 0, inPlace.length, prev));
+            assertTrue(hop.process(inPlace, 0, inPlace.length, prev));
+            assertTrue(DataHelper.eq(inPlace, dst));
+        }
+    }
+
     private TunnelCreatorConfig prepareConfig(int numHops) {
         Hash[] peers = new Hash[numHops];
         long[] tunnelIds = new long[numHops];
@@ -0,0 +1,174 @@
+package net.i2p.router.tunnel;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import net.i2p.data.DataHelper;
+import net.i2p.router.RouterContext;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Limits and eviction order of the ReassemblyQuota
+ */
+public class ReassemblyQuotaTest {
+
+    private static RouterContext _context;
+
+    @BeforeClass
+    public static void globalSetUp() {
+        _context = new RouterContext(null);
+    }
+
+    private FragmentHandler handler() {
+        return new FragmentHandler(_context, null);
+    }
+
+    private void fill(ReassemblyQuota quota, FragmentHandler h, FragmentedMessage msg, int count) {
+        for (int i = 0; i < count; i++) {
+            List<ReassemblyQuota.Reservation> evicted = quota.reserve(h, msg);
+            assertNotNull(evicted);
+            assertTrue(evicted.isEmpty());
+        }
+    }
+
+    @Test
+    public void testPerTunnel() {
+        ReassemblyQuota quota = new ReassemblyQuota(100, 4);
+        FragmentHandler h1 = handler();
+        FragmentHandler h2 = handler();
+        FragmentedMessage m1 = new FragmentedMessage(_context, 1);
+        FragmentedMessage m2 = new FragmentedMessage(_context, 2);
+        FragmentedMessage other = new FragmentedMessage(_context, 3);
+        fill(quota, h1, m1, 2);
+        fill(quota, h2, other, 3);
+        fill(quota, h1, m2, 2);
+        assertEquals(4, quota.getBuffers(h1));
+
+        // the oldest message on the same tunnel goes
+        List<ReassemblyQuota.Reservation> evicted = quota.reserve(h1, m2);
+        assertEquals(1, evicted.size());
+        assertSame(m1, evicted.get(0).msg);
+        assertSame(h1, evicted.get(0).handler);
+        assertEquals(3, quota.getBuffers(h1));
+        assertEquals(3, quota.getBuffers(h2));
+        assertEquals(6, quota.getBuffers());
+
+        // a single message can't exceed the limit
+        quota.reserve(h1, m2);
+        evicted = quota.reserve(h1, m2);
+        assertEquals(1, evicted.size());
+        assertSame(m2, evicted.get(0).msg);
+        assertEquals(0, quota.getBuffers(h1));
+        assertEquals(3, quota.getBuffers());
+        assertEquals(1, quota.getPending());
+    }
+
+    @Test
+    public void testDropEvictsVictims() {
+        ReassemblyQuota quota = new ReassemblyQuota(6, 4);
+        FragmentHandler h1 = handler();
+        FragmentHandler h2 = handler();
+        FragmentedMessage m1 = new FragmentedMessage(_context, 1);
+        FragmentedMessage m2 = new FragmentedMessage(_context, 2);
+        fill(quota, h1, m1, 2);
+        fill(quota, h2, m2, 4);
+
+        // m1 goes for the global limit, m2 still at the tunnel limit
+        List<ReassemblyQuota.Reservation> evicted = quota.reserve(h2, m2);
+        assertEquals(2, evicted.size());
+        assertSame(m1, evicted.get(0).msg);
+        assertSame(h1, evicted.get(0).handler);
+        assertSame(m2, evicted.get(1).msg);
+        assertEquals(0, quota.getBuffers());
+        assertEquals(0, quota.getPending());
+    }
+
+    @Test
+    public void testGlobal() {
+        ReassemblyQuota quota = new ReassemblyQuota(6, 4);
+        FragmentHandler h1 = handler();
+        FragmentHandler h2 = handler();
+        FragmentHandler h3 = handler();
+        FragmentedMessage m1 = new FragmentedMessage(_context, 1);
+        FragmentedMessage m2 = new FragmentedMessage(_context, 2);
+        FragmentedMessage m3 = new FragmentedMessage(_context, 3);
+        fill(quota, h1, m1, 3);
+        fill(quota, h2, m2, 3);
+
+        // the oldest message on any tunnel goes
+        List<ReassemblyQuota.Reservation> evicted = quota.reserve(h3, m3);
+        assertEquals(1, evicted.size());
+        assertSame(m1, evicted.get(0).msg);
+        assertEquals(4, quota.getBuffers());
+        assertEquals(2, quota.getPending());
+
+        // released buffers are reusable, unused ones given back
+        quota.release(m1);
+        quota.unreserve(m3);
+        assertEquals(0, quota.getBuffers(h3));
+        quota.release(m2);
+        quota.release(m3);
+        assertEquals(0, quota.getBuffers());
+        assertEquals(0, quota.getPending());
+    }
+
+    @Test
+    public void testHandlerEvicts() {
+        FragmentHandler h = handler();
+        ReassemblyQuota quota = ReassemblyQuota.getInstance();
+        int before = quota.getBuffers();
+        byte[] frag = new byte[TrivialPreprocessor.PREPROCESSED_SIZE];
+        FragmentedMessage msg = new FragmentedMessage(_context, 99);
+        assertNotNull(quota.reserve(h, msg));
+        assertTrue(msg.receive(frag, 0, 100, false, null, null));
+        assertEquals(before + 1, quota.getBuffers());
+        quota.release(msg);
+        msg.failed();
+        assertTrue(msg.isReleased());
+        assertEquals(before, quota.getBuffers());
+    }
+
+    /**
+     * A tunnel message holding one fragment, with a valid checksum
+     *
+     * @param flag the fragment's first byte
+     */
+    private byte[] tunnelMessage(int flag, long messageId, int size) {
+        byte[] rv = new byte[TrivialPreprocessor.PREPROCESSED_SIZE];
+        _context.random().nextBytes(rv, 0, HopProcessor.IV_LENGTH);
+        // no padding
+        int off = HopProcessor.IV_LENGTH + 4 + 1;
+        int start = off;
+        rv[off++] = (byte) flag;
+        DataHelper.toLong(rv, off, 4, messageId);
+        off += 4;
+        DataHelper.toLong(rv, off, 2, size);
+        // H(payload + IV)[0:3]
+        byte[] v = new byte[rv.length - start + HopProcessor.IV_LENGTH];
+        System.arraycopy(rv, start, v, 0, rv.length - start);
+        System.arraycopy(rv, 0, v, rv.length - start, HopProcessor.IV_LENGTH);
+        System.arraycopy(_context.sha().calculateHash(v).getData(), 0, rv, HopProcessor.IV_LENGTH, 4);
+        return rv;
+    }
+
+    @Test
+    public void testBadFragmentNotReserved() {
+        FragmentHandler h = handler();
+        ReassemblyQuota quota = ReassemblyQuota.getInstance();
+        int pending = quota.getPending();
+        // first fragment, local delivery, too big
+        assertFalse(h.receiveTunnelMessage(tunnelMessage(FragmentHandler.MASK_FRAGMENTED, 1001, 2000),
+                                           0, TrivialPreprocessor.PREPROCESSED_SIZE));
+        // fragment 0 can't be subsequent
+        assertFalse(h.receiveTunnelMessage(tunnelMessage(FragmentHandler.MASK_IS_SUBSEQUENT, 1002, 100),
+                                           0, TrivialPreprocessor.PREPROCESSED_SIZE));
+        // fragment 1, empty
+        assertFalse(h.receiveTunnelMessage(tunnelMessage(FragmentHandler.MASK_IS_SUBSEQUENT | (1 << 1), 1003, 0),
+                                           0, TrivialPreprocessor.PREPROCESSED_SIZE));
+        assertEquals(pending, quota.getPending());
+        assertEquals(0, quota.getBuffers(h));
+    }
+}
@@ -0,0 +1,73 @@
+package net.i2p.router.tunnel.pool;
+
+import static org.junit.Assert.*;
+
+import net.i2p.crypto.EncType;
+import net.i2p.crypto.KeyPair;
+import net.i2p.data.Hash;
+import net.i2p.data.SigningPrivateKey;
+import net.i2p.data.SigningPublicKey;
+import net.i2p.data.i2np.BuildRequestRecord;
+import net.i2p.data.i2np.ShortEncryptedBuildRecord;
+import net.i2p.data.i2np.ShortTunnelBuildMessage;
+import net.i2p.router.RouterContext;
+import net.i2p.router.RouterTestHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BuildMessageProcessorPrecheckTest {
+
+    private RouterContext _context;
+    private BuildMessageProcessor _proc;
+    private Hash _us;
+
+    @Before
+    public void setUp() {
+        _context = RouterTestHelper.getContext();
+        KeyPair kpr = _context.keyGenerator().generatePKIKeys(EncType.ECIES_X25519);
+        Object[] kp = _context.keyGenerator().generateSigningKeypair();
+        _context.keyManager().setKeys(kpr.getPublic(), kpr.getPrivate(),
+                                      (SigningPublicKey) kp[0], (SigningPrivateKey) kp[1]);
+        _proc = new BuildMessageProcessor(_context);
+        _us = randomHash();
+    }
+
+    private Hash randomHash() {
+        byte[] b = new byte[Hash.HASH_LENGTH];
+        _context.random().nextBytes(b);
+        return new Hash(b);
+    }
+
+    /** @param ours index of our record, or -1 */
+    private ShortTunnelBuildMessage message(int ours) {
+        ShortTunnelBuildMessage msg = new ShortTunnelBuildMessage(_context, 4);
+        for (int i = 0; i < 4; i++) {
+            byte[] data = new byte[ShortEncryptedBuildRecord.LENGTH];
+            _context.random().nextBytes(data);
+            if (i == ours)
+                System.arraycopy(_us.getData(), 0, data, 0, BuildRequestRecord.PEER_SIZE);
+            msg.setRecord(i, new ShortEncryptedBuildRecord(data));
+        }
+        return msg;
+    }
+
+    @Test
+    public void testNotForUs() {
+        assertFalse(_proc.precheck(message(-1), _us));
+    }
+
+    @Test
+    public void testReplayDroppedBeforeDecrypt() {
+        ShortTunnelBuildMessage msg = message(2);
+        assertTrue(_proc.precheck(msg, _us));
+        // same records again, e.g. from another peer
+        ShortTunnelBuildMessage replay = new ShortTunnelBuildMessage(_context, 4);
+        for (int i = 0; i < 4; i++) {
+            replay.setRecord(i, new ShortEncryptedBuildRecord(msg.getRecord(i).getData().clone()));
+        }
+        assertFalse(_proc.precheck(replay, _us));
+        // a fresh request is still accepted
+        assertTrue(_proc.precheck(message(0), _us));
+    }
+}
@@ -0,0 +1,155 @@
+package net.i2p.router.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.i2p.I2PAppContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentDecayingBloomFilterTest {
+
+    private I2PAppContext _context;
+    private ConcurrentDecayingBloomFilter _filter;
+
+    @Before
+    public void setUp() {
+        _context = I2PAppContext.getGlobalContext();
+        _filter = new ConcurrentDecayingBloomFilter(_context, 60*60*1000, 16, "test", 16);
+    }
+
+    @After
+    public void tearDown() {
+        _filter.stopDecaying();
+    }
+
+    @Test
+    public void testDuplicate() {
+        byte[] buf = new byte[64];
+        new Random(1).nextBytes(buf);
+        assertFalse(_filter.add(buf, 8, 16));
+        assertTrue(_filter.add(buf, 8, 16));
+        assertFalse(_filter.add(buf, 24, 16));
+        assertEquals(2, _filter.getInsertedCount());
+        assertEquals(1, _filter.getCurrentDuplicateCount());
+        byte[] copy = new byte[16];
+        System.arraycopy(buf, 8, copy, 0, 16);
+        assertTrue(_filter.add(copy));
+    }
+
+    @Test
+    public void testLong() {
+        ConcurrentDecayingBloomFilter f = new ConcurrentDecayingBloomFilter(_context, 60*60*1000, 4, "test", 16);
+        try {
+            assertFalse(f.isKnown(12345));
+            assertFalse(f.add(12345));
+            assertTrue(f.isKnown(12345));
+            assertTrue(f.add(12345));
+            // only the low 4 bytes count
+            assertTrue(f.isKnown(12345 | (1L << 40)));
+        } finally {
+            f.stopDecaying();
+        }
+    }
+
+    @Test
+    public void testDecay() {
+        byte[] a = new byte[16];
+        byte[] b = new byte[16];
+        a[0] = 1;
+        b[0] = 2;
+        assertFalse(_filter.add(a));
+        _filter.decay();
+        // still known after one decay
+        assertTrue(_filter.add(a));
+        assertFalse(_filter.add(b));
+        _filter.decay();
+        // a was only in previous, now forgotten; b still known
+        assertFalse(_filter.add(a));
+        assertTrue(_filter.add(b));
+        _filter.clear();
+        assertFalse(_filter.add(b));
+        assertEquals(1, _filter.getInsertedCount());
+    }
+
+    @Test
+    public void testBadEntry() {
+        try {
+            _filter.add(new byte[15]);
+            fail();
+        } catch (IllegalArgumentException iae) {}
+    }
+
+    /**
+     * Same m and k as DecayingBloomFilter, so the false positive rates should be close,
+     * and near the theoretical rate, about 1% here.
+     */
+    @Test
+    public void testFalsePositiveRate() {
+        int m = 20;
+        int n = 100000;
+        int probes = 10000;
+        ConcurrentDecayingBloomFilter filter = new ConcurrentDecayingBloomFilter(_context, 60*60*1000, 16, "test", m);
+        DecayingBloomFilter locked = new DecayingBloomFilter(_context, 60*60*1000, 16, "test", m);
+        try {
+            Random r = new Random(42);
+            byte[] e = new byte[16];
+            for (int i = 0; i < n; i++) {
+                r.nextBytes(e);
+                filter.add(e);
+                locked.add(e);
+            }
+            double expected = filter.getFalsePositiveRate();
+            int fp = 0;
+            int fpLocked = 0;
+            for (int i = 0; i < probes; i++) {
+                r.nextBytes(e);
+                if (filter.add(e))
+                    fp++;
+                if (locked.add(e))
+                    fpLocked++;
+            }
+            double rate = fp / (double) probes;
+            double lockedRate = fpLocked / (double) probes;
+            String msg = "concurrent " + rate + " locked " + lockedRate + " expected " + expected;
+            assertTrue(msg, expected > 0.005 && expected < 0.02);
+            assertTrue(msg, rate > expected * 0.6 && rate < expected * 1.6);
+            assertTrue(msg, lockedRate > expected * 0.6 && lockedRate < expected * 1.6);
+        } finally {
+            filter.stopDecaying();
+            locked.stopDecaying();
+        }
+    }
+
+    @Test
+    public void testConcurrentAdds() throws InterruptedException {
+        final AtomicInteger dups = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    byte[] e = new byte[16];
+                    for (int i = 0; i < 1000; i++) {
+                        e[0] = (byte) id;
+                        e[1] = (byte) (i >> 8);
+                        e[2] = (byte) i;
+                        if (_filter.add(e))
+                            dups.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        // 4000 distinct entries in 2**16 bits, a handful of false positives at most
+        assertTrue("dups: " + dups.get(), dups.get() < 10);
+        assertEquals(4000 - dups.get(), _filter.getInsertedCount());
+    }
+}